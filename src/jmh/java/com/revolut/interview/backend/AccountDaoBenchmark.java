@@ -0,0 +1,171 @@
+package com.revolut.interview.backend;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.NotEnoughMoneyException;
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.embedded.RedisServer;
+
+/**
+ * Transfers money between random accounts by every type of {@link AccountDao}, Redis is embedded.
+ * The accounts are picked uniformly or by the Zipf's law (a few hot accounts get most of the
+ * transfers). The number of threads is set by -t (or -PjmhThreads for Gradle).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountDaoBenchmark {
+
+  private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000_000);
+  private static final BigDecimal SUM = BigDecimal.ONE;
+
+  @Param({"optimistic", "script", "minor_units", "in_memory", "partitioned", "off_heap"})
+  private String accountDaoType;
+
+  @Param({"100", "100000"})
+  private int accountsNum;
+
+  @Param({"uniform", "zipfian"})
+  private String skew;
+
+  private RedisServer redisServer;
+  private Injector injector;
+  private AccountDao accountDao;
+  private long[] accountIds;
+  private AccountPicker accountPicker;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final AccountDaoType type = AccountDaoType.valueOf(accountDaoType.toUpperCase());
+    redisServer = new RedisServer(Protocol.DEFAULT_PORT);
+
+    if (type.isRedisUsed()) {
+      redisServer.start();
+    }
+
+    injector = Guice
+        .createInjector(new TransferModule(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT, type));
+
+    if (type.isRedisUsed()) {
+      try (Jedis jedis = injector.getInstance(JedisPool.class).getResource()) {
+        jedis.flushAll();
+      }
+    }
+
+    accountDao = injector.getInstance(AccountDao.class);
+    accountIds = new long[accountsNum];
+
+    for (int i = 0; i < accountsNum; i++) {
+      accountIds[i] = accountDao.create(new Account(INITIAL_BALANCE)).getId();
+    }
+
+    accountPicker = "zipfian".equals(skew) ? new ZipfianAccountPicker(accountsNum)
+        : (random, accountsNum) -> random.nextInt(accountsNum);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    injector.getInstance(JedisPool.class).destroy();
+    redisServer.stop();
+  }
+
+  @Benchmark
+  public void transferMoneyTransactionally(ThreadRandom threadRandom) throws Exception {
+    final SplittableRandom random = threadRandom.random;
+    final int from = accountPicker.pick(random, accountsNum);
+    int to = accountPicker.pick(random, accountsNum);
+
+    if (to == from) {
+      to = (from + 1) % accountsNum;
+    }
+
+    try {
+      accountDao.transferMoneyTransactionally(SUM, accountIds[from], accountIds[to]);
+    } catch (NotEnoughMoneyException e) {
+      // NOTE it's unlikely with the initial balance, the attempt counts anyway
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadRandom {
+
+    final SplittableRandom random = new SplittableRandom();
+  }
+
+  @FunctionalInterface
+  interface AccountPicker {
+
+    /**
+     * @return an index of an account
+     */
+    int pick(SplittableRandom random, int accountsNum);
+  }
+
+  /**
+   * The probability of the account k is proportional to 1 / k^{@link #EXPONENT}, the accounts are
+   * picked by a binary search in the precomputed cumulative probabilities.
+   */
+  static class ZipfianAccountPicker implements AccountPicker {
+
+    private static final double EXPONENT = 0.99;
+
+    private final double[] cumulativeProbabilities;
+
+    ZipfianAccountPicker(int accountsNum) {
+      cumulativeProbabilities = new double[accountsNum];
+      double sum = 0;
+
+      for (int i = 0; i < accountsNum; i++) {
+        sum += 1 / Math.pow(i + 1, EXPONENT);
+        cumulativeProbabilities[i] = sum;
+      }
+
+      for (int i = 0; i < accountsNum; i++) {
+        cumulativeProbabilities[i] /= sum;
+      }
+    }
+
+    @Override
+    public int pick(SplittableRandom random, int accountsNum) {
+      final double value = random.nextDouble();
+      int low = 0;
+      int high = accountsNum - 1;
+
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+
+        if (cumulativeProbabilities[middle] < value) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.revolut.interview.backend;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountDaoAsyncImpl;
+import com.revolut.interview.backend.dao.CachedAccountDao;
+import com.revolut.interview.backend.model.Account;
+import io.lettuce.core.RedisClient;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.embedded.RedisServer;
+
+/**
+ * Transfers money by a fixed pool of request threads the way TransferHandler does it: a thread
+ * calls {@link AccountDao#transferMoneyAsync} and is free when it returns. A blocking DAO keeps the
+ * thread till Redis replies, the async one doesn't. An invocation is a burst of transfers between
+ * random accounts which is over when all of them are done. Redis is embedded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferThreadsBenchmark {
+
+  private static final int TRANSFERS_PER_INVOCATION = 1000;
+  private static final int ACCOUNTS_NUM = 1000;
+  private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000_000);
+  private static final BigDecimal SUM = BigDecimal.ONE;
+
+  @Param({"minor_units", "async"})
+  private String accountDaoType;
+
+  @Param({"8"})
+  private int requestThreadsNum;
+
+  private RedisServer redisServer;
+  private Injector injector;
+  private AccountDao accountDao;
+  private long[] accountIds;
+  private ExecutorService requestThreads;
+  private SplittableRandom random;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final AccountDaoType type = AccountDaoType.valueOf(accountDaoType.toUpperCase());
+    redisServer = new RedisServer(Protocol.DEFAULT_PORT);
+    redisServer.start();
+    injector = Guice
+        .createInjector(new TransferModule(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT, type));
+
+    try (Jedis jedis = injector.getInstance(JedisPool.class).getResource()) {
+      jedis.flushAll();
+    }
+
+    accountDao = injector.getInstance(AccountDao.class);
+    accountIds = accountDao.createInBulk(range(0, ACCOUNTS_NUM)
+        .mapToObj(value -> new Account(INITIAL_BALANCE)).collect(toList())).stream()
+        .mapToLong(Account::getId).toArray();
+    requestThreads = Executors.newFixedThreadPool(requestThreadsNum);
+    random = new SplittableRandom();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    requestThreads.shutdown();
+    injector.getInstance(CachedAccountDao.class).close();
+
+    if (AccountDaoType.ASYNC.name().equalsIgnoreCase(accountDaoType)) {
+      injector.getInstance(AccountDaoAsyncImpl.class).close();
+      injector.getInstance(RedisClient.class).shutdown();
+    }
+
+    injector.getInstance(JedisPool.class).destroy();
+    redisServer.stop();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TRANSFERS_PER_INVOCATION)
+  public void transferMoneyAsync() throws InterruptedException {
+    final CountDownLatch transfersDone = new CountDownLatch(TRANSFERS_PER_INVOCATION);
+
+    for (int i = 0; i < TRANSFERS_PER_INVOCATION; i++) {
+      final int from = random.nextInt(ACCOUNTS_NUM);
+      final int to = (from + 1 + random.nextInt(ACCOUNTS_NUM - 1)) % ACCOUNTS_NUM;
+
+      // NOTE a failed transfer counts anyway, it's unlikely with the initial balance
+      requestThreads.execute(() -> accountDao
+          .transferMoneyAsync(SUM, accountIds[from], accountIds[to])
+          .whenComplete((ignored, e) -> transfersDone.countDown()));
+    }
+
+    transfersDone.await();
+  }
+}
@@ -0,0 +1,120 @@
+package com.revolut.interview.backend.rest;
+
+import static com.revolut.interview.backend.rest.TransferHandler.PARAM_FROM;
+import static com.revolut.interview.backend.rest.TransferHandler.PARAM_SUM;
+import static com.revolut.interview.backend.rest.TransferHandler.PARAM_TO;
+import static com.revolut.interview.backend.rest.TransferHandler.PATH;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountNotFoundException;
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import io.javalin.Context;
+import io.javalin.Javalin;
+import io.javalin.core.HandlerType;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and validation of a transfer request by {@link TransferHandler}, the DAO does nothing.
+ * NOTE the request is a mock, so the numbers are only comparable with each other
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class TransferHandlerBenchmark {
+
+  private static final CompletableFuture<Void> TRANSFERRED = CompletableFuture.completedFuture(null);
+
+  @Param({"100.50", "a"})
+  private String sum;
+
+  private TransferHandler transferHandler;
+  private Context ctx;
+
+  private static void setField(Context context, String fieldName, Object fieldValue)
+      throws NoSuchFieldException, IllegalAccessException {
+    final Field field = Context.class.getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(context, fieldValue);
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    transferHandler = new TransferHandler(new NoOpAccountDao(), new Metrics());
+
+    // NOTE the mocks don't record the invocations, otherwise the memory would leak
+    final HttpServletRequest request = mock(HttpServletRequest.class, withSettings().stubOnly());
+    when(request.getQueryString()).thenReturn(PARAM_FROM + "=1&" + PARAM_TO + "=2");
+
+    ctx = new Context(request, mock(HttpServletResponse.class, withSettings().stubOnly()),
+        mock(Javalin.class, withSettings().stubOnly()));
+    setField(ctx, "pathParamMap", Collections.singletonMap(PARAM_SUM, sum));
+    setField(ctx, "matchedPath", PATH);
+    setField(ctx, "handlerType", HandlerType.POST);
+  }
+
+  @Benchmark
+  public Object handle() {
+    try {
+      transferHandler.handle(ctx);
+    } catch (IllegalRequestException e) {
+      return e;
+    }
+
+    return ctx;
+  }
+
+  private static class NoOpAccountDao implements AccountDao {
+
+    @Override
+    public Account create(Account account) {
+      return account;
+    }
+
+    @Override
+    public Account findById(Long id) throws AccountNotFoundException {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    @Override
+    public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId,
+        Long toAccountId) {
+      // Nothing to do
+    }
+
+    @Override
+    public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+        Long toAccountId) {
+      return TRANSFERRED;
+    }
+
+    @Override
+    public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+        String idempotencyKey) {
+      // Nothing to do
+    }
+  }
+}
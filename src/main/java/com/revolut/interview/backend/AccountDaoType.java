@@ -0,0 +1,85 @@
+package com.revolut.interview.backend;
+
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountDaoAsyncImpl;
+import com.revolut.interview.backend.dao.AccountDaoClusterImpl;
+import com.revolut.interview.backend.dao.AccountDaoImpl;
+import com.revolut.interview.backend.dao.AccountDaoInMemoryImpl;
+import com.revolut.interview.backend.dao.AccountDaoMinorUnitsImpl;
+import com.revolut.interview.backend.dao.AccountDaoOffHeapImpl;
+import com.revolut.interview.backend.dao.AccountDaoPartitionedImpl;
+import com.revolut.interview.backend.dao.AccountDaoScriptImpl;
+
+enum AccountDaoType {
+  /**
+   * WATCH/MULTI/EXEC in Redis, a transfer is retried when the accounts are changed concurrently
+   */
+  OPTIMISTIC(AccountDaoImpl.class, true, false),
+  /**
+   * One Lua script (EVALSHA) per transfer in Redis, no retries
+   */
+  SCRIPT(AccountDaoScriptImpl.class, true, false),
+  /**
+   * Like {@link #SCRIPT} but balances are long minor units changed by HINCRBY, decimal balances are
+   * converted on start
+   */
+  MINOR_UNITS(AccountDaoMinorUnitsImpl.class, true, false),
+  /**
+   * Like {@link #MINOR_UNITS} but a transfer request doesn't block a thread while Redis executes
+   * the script, a non-blocking client is used for it
+   */
+  ASYNC(AccountDaoAsyncImpl.class, true, false),
+  /**
+   * Accounts are kept in the memory of this process, a transfer locks both accounts. It fits a
+   * single node deployment only
+   */
+  IN_MEMORY(AccountDaoInMemoryImpl.class, false, false),
+  /**
+   * Like {@link #IN_MEMORY} but accounts are split into partitions each owned by one thread, so
+   * there are no locks and request threads aren't blocked by transfers
+   */
+  PARTITIONED(AccountDaoPartitionedImpl.class, false, false),
+  /**
+   * Like {@link #IN_MEMORY} but balances are long minor units outside of the heap indexed by
+   * account ids, it fits millions of accounts
+   */
+  OFF_HEAP(AccountDaoOffHeapImpl.class, false, false),
+  /**
+   * Like {@link #MINOR_UNITS} but in Redis Cluster, a transfer across slots is done in 2 recoverable
+   * steps: a debit and a credit
+   */
+  CLUSTER(AccountDaoClusterImpl.class, true, true);
+
+  private final Class<? extends AccountDao> implementation;
+  private final boolean redisUsed;
+  private final boolean clusterUsed;
+
+  AccountDaoType(Class<? extends AccountDao> implementation, boolean redisUsed,
+      boolean clusterUsed) {
+    this.implementation = implementation;
+    this.redisUsed = redisUsed;
+    this.clusterUsed = clusterUsed;
+  }
+
+  Class<? extends AccountDao> getImplementation() {
+    return implementation;
+  }
+
+  /**
+   * @return true if transfers are done by a Lua script, see {@link AccountDaoScriptImpl}
+   */
+  boolean isScriptUsed() {
+    return AccountDaoScriptImpl.class.isAssignableFrom(implementation);
+  }
+
+  boolean isRedisUsed() {
+    return redisUsed;
+  }
+
+  /**
+   * NOTE the Redis pool and the account cache aren't used then
+   */
+  boolean isClusterUsed() {
+    return clusterUsed;
+  }
+}
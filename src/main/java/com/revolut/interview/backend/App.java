@@ -1,29 +1,69 @@
 package com.revolut.interview.backend;
 
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.rangeClosed;
+
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.revolut.interview.backend.dao.AccountDaoAsyncImpl;
+import com.revolut.interview.backend.dao.AccountDaoClusterImpl;
+import com.revolut.interview.backend.dao.AccountDaoMinorUnitsImpl;
+import com.revolut.interview.backend.dao.AccountDaoPartitionedImpl;
+import com.revolut.interview.backend.dao.AccountJournal;
 import com.revolut.interview.backend.dao.AccountNotFoundException;
+import com.revolut.interview.backend.dao.CachedAccountDao;
+import com.revolut.interview.backend.dao.CoalescingAccountDao;
 import com.revolut.interview.backend.dao.FromAndToAccountsTheSameException;
+import com.revolut.interview.backend.dao.IdempotencyKeyReusedException;
 import com.revolut.interview.backend.dao.NotEnoughMoneyException;
+import com.revolut.interview.backend.dao.RetryPolicy;
+import com.revolut.interview.backend.dao.TransferConflictException;
+import com.revolut.interview.backend.dao.TransferLedger;
+import com.revolut.interview.backend.dao.WriteAheadLog;
+import com.revolut.interview.backend.metrics.Counter;
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import com.revolut.interview.backend.rest.AccountBulkHandler;
+import com.revolut.interview.backend.rest.AccountHandler;
+import com.revolut.interview.backend.rest.IllegalRequestException;
+import com.revolut.interview.backend.rest.LedgerHandler;
+import com.revolut.interview.backend.rest.MetricsHandler;
+import com.revolut.interview.backend.rest.TransferBatchHandler;
 import com.revolut.interview.backend.rest.TransferHandler;
+import com.revolut.interview.backend.rest.TransferHistoryHandler;
+import com.revolut.interview.backend.rest.VirtualThreadPool;
 import io.javalin.ExceptionHandler;
 import io.javalin.Javalin;
+import io.lettuce.core.RedisClient;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Protocol;
+import redis.embedded.Redis;
 import redis.embedded.RedisServer;
+import redis.embedded.RedisShardedCluster;
+import redis.embedded.core.RedisShardedClusterBuilder;
 
 public class App {
 
   static final int DEFAULT_REST_PORT = 7000;
+  static final AccountDaoType DEFAULT_ACCOUNT_DAO_TYPE = AccountDaoType.OPTIMISTIC;
+  static final int EMBEDDED_CLUSTER_SHARDS_NUM = 3;
+  static final String PROPERTY_VIRTUAL_THREADS = "rest.virtualThreads";
+  private static final int EMBEDDED_CLUSTER_READY_ATTEMPTS = 100;
+  private static final long EMBEDDED_CLUSTER_READY_DELAY_MILLIS = 100;
   private static final Logger LOG = LoggerFactory.getLogger(App.class);
   private Injector injector;
-  private RedisServer redisServer;
+  private AccountDaoType accountDaoType;
+  private Redis redisServer;
   private Javalin restApp;
 
   public static void main(String[] args) throws IOException {
@@ -31,6 +71,7 @@ public class App {
     String redisHost = Protocol.DEFAULT_HOST;
     int redisPort = Protocol.DEFAULT_PORT;
     int restPort = DEFAULT_REST_PORT;
+    AccountDaoType accountDaoType = DEFAULT_ACCOUNT_DAO_TYPE;
 
     if (mandatoryArgsSpecified) {
       redisHost = getRedisHost(args[0]);
@@ -38,7 +79,11 @@ public class App {
       restPort = parsePort(args[2], DEFAULT_REST_PORT);
     }
 
-    new App().start(redisHost, redisPort, restPort);
+    if (mandatoryArgsSpecified && args.length > 3) {
+      accountDaoType = parseAccountDaoType(args[3]);
+    }
+
+    new App().start(redisHost, redisPort, restPort, accountDaoType);
   }
 
   @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -68,42 +113,267 @@ public class App {
     return result;
   }
 
+  private static AccountDaoType parseAccountDaoType(String accountDaoTypeStr) {
+    AccountDaoType result;
+
+    try {
+      result = AccountDaoType.valueOf(accountDaoTypeStr.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Wrong account DAO type: " + accountDaoTypeStr + ". Use default: "
+          + DEFAULT_ACCOUNT_DAO_TYPE);
+      result = DEFAULT_ACCOUNT_DAO_TYPE;
+    }
+
+    return result;
+  }
+
   void start() throws IOException {
-    start(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT, DEFAULT_REST_PORT);
+    start(DEFAULT_ACCOUNT_DAO_TYPE);
+  }
+
+  void start(AccountDaoType accountDaoType) throws IOException {
+    start(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT, DEFAULT_REST_PORT, accountDaoType);
   }
 
-  private void start(String redisHost, int redisPort, int restPort) throws IOException {
-    redisServer = new RedisServer(redisPort);
+  private void start(String redisHost, int redisPort, int restPort, AccountDaoType accountDaoType)
+      throws IOException {
+    final long startNanos = System.nanoTime();
 
     // Use external Redis otherwise
-    if (Protocol.DEFAULT_HOST.equals(redisHost)) {
+    if (Protocol.DEFAULT_HOST.equals(redisHost) && accountDaoType.isRedisUsed()) {
+      redisServer = accountDaoType.isClusterUsed() ? makeEmbeddedCluster(redisPort)
+          : new RedisServer(redisPort);
       redisServer.start();
+
+      if (accountDaoType.isClusterUsed()) {
+        waitForEmbeddedCluster(redisPort);
+      }
+    }
+
+    this.accountDaoType = accountDaoType;
+    final VirtualThreadPool virtualThreadPool = Boolean.getBoolean(PROPERTY_VIRTUAL_THREADS)
+        ? makeVirtualThreadPool() : null;
+    injector = Guice.createInjector(
+        new TransferModule(redisHost, redisPort, accountDaoType, virtualThreadPool != null));
+
+    // The async DAO keeps balances as minor units as well
+    if (accountDaoType == AccountDaoType.MINOR_UNITS || accountDaoType == AccountDaoType.ASYNC) {
+      injector.getInstance(AccountDaoMinorUnitsImpl.class).migrateDecimalBalances();
+    }
+
+    // The accounts kept in memory are restored before the first request
+    if (!accountDaoType.isRedisUsed() && WriteAheadLog.isEnabled()) {
+      injector.getInstance(WriteAheadLog.class).recover(
+          (AccountJournal.Target) injector.getInstance(accountDaoType.getImplementation()));
+    }
+
+    final Metrics metrics = injector.getInstance(Metrics.class);
+
+    if (accountDaoType.isRedisUsed() && !accountDaoType.isClusterUsed()) {
+      registerPoolMetrics(metrics, injector.getInstance(JedisPool.class));
     }
 
-    injector = Guice.createInjector(new TransferModule(redisHost, redisPort));
     final TransferHandler transferHandler = injector.getInstance(TransferHandler.class);
-    final ExceptionHandler<Exception> exceptionHandler = getExceptionExceptionHandler();
+    final TransferBatchHandler transferBatchHandler = injector
+        .getInstance(TransferBatchHandler.class);
+
+    restApp = Javalin.create();
 
-    restApp = Javalin.create().start(restPort);
+    if (virtualThreadPool != null) {
+      metrics.gauge("rest_threads", "The number of virtual threads running requests",
+          virtualThreadPool::getThreads);
+      restApp.server(() -> new Server(virtualThreadPool));
+    }
+
+    restApp.start(restPort);
     restApp.get("/", ctx -> ctx.result("Revolut Backend Test"));
     restApp.post(TransferHandler.PATH, transferHandler);
-    restApp.exception(IllegalArgumentException.class, exceptionHandler);
-    restApp.exception(NotEnoughMoneyException.class, exceptionHandler);
-    restApp.exception(AccountNotFoundException.class, exceptionHandler);
-    restApp.exception(FromAndToAccountsTheSameException.class, exceptionHandler);
+    restApp.post(TransferBatchHandler.PATH, transferBatchHandler);
+    restApp.post(AccountBulkHandler.PATH, injector.getInstance(AccountBulkHandler.class));
+    restApp.get(AccountHandler.PATH, injector.getInstance(AccountHandler.class));
+    restApp.get(MetricsHandler.PATH, injector.getInstance(MetricsHandler.class));
+
+    // NOTE the ledgers of a cluster are per account group and there are no transfer histories, see
+    // AccountDaoClusterImpl
+    if (accountDaoType.isRedisUsed() && !accountDaoType.isClusterUsed()) {
+      restApp.get(LedgerHandler.PATH, injector.getInstance(LedgerHandler.class));
+      restApp.get(TransferHistoryHandler.PATH, injector.getInstance(TransferHistoryHandler.class));
+    }
+
+    restApp.exception(IllegalArgumentException.class,
+        getErrorExceptionHandler(metrics, IllegalArgumentException.class,
+            HttpStatus.BAD_REQUEST_400, Status.ILLEGAL_ARGUMENT));
+    restApp.exception(IllegalRequestException.class,
+        getExceptionExceptionHandler(metrics, IllegalRequestException.class,
+            HttpStatus.BAD_REQUEST_400, Status.ILLEGAL_ARGUMENT));
+    restApp.exception(NotEnoughMoneyException.class,
+        getExceptionExceptionHandler(metrics, NotEnoughMoneyException.class,
+            HttpStatus.BAD_REQUEST_400, Status.NOT_ENOUGH_MONEY));
+    restApp.exception(AccountNotFoundException.class,
+        getExceptionExceptionHandler(metrics, AccountNotFoundException.class,
+            HttpStatus.BAD_REQUEST_400, Status.ACCOUNT_NOT_FOUND));
+    restApp.exception(FromAndToAccountsTheSameException.class,
+        getExceptionExceptionHandler(metrics, FromAndToAccountsTheSameException.class,
+            HttpStatus.BAD_REQUEST_400, Status.FROM_AND_TO_ACCOUNTS_THE_SAME));
+    // A client should repeat the request later
+    restApp.exception(TransferConflictException.class,
+        getExceptionExceptionHandler(metrics, TransferConflictException.class,
+            HttpStatus.CONFLICT_409, Status.CONFLICT));
+    // The same key with another transfer is an error of a client
+    restApp.exception(IdempotencyKeyReusedException.class,
+        getExceptionExceptionHandler(metrics, IdempotencyKeyReusedException.class,
+            HttpStatus.UNPROCESSABLE_ENTITY_422, Status.IDEMPOTENCY_KEY_REUSED));
+
+    // NOTE it includes the start of embedded Redis and the recovery of the accounts kept in memory
+    final double startSeconds = (System.nanoTime() - startNanos) / 1e9;
+    metrics.gauge("app_start_duration_seconds", "The time of the start of the application",
+        () -> startSeconds);
+    LOG.info("Started in " + startSeconds + " s");
+  }
+
+  private static VirtualThreadPool makeVirtualThreadPool() {
+    final VirtualThreadPool result = VirtualThreadPool.create("rest-").orElse(null);
+
+    if (result == null) {
+      LOG.warn("Virtual threads aren't supported by Java " + Runtime.version().feature()
+          + ". Use default thread pool");
+    }
+
+    return result;
   }
 
-  private ExceptionHandler<Exception> getExceptionExceptionHandler() {
+  /**
+   * The shards have no replicas and listen to the ports starting from the given one
+   */
+  private static Redis makeEmbeddedCluster(int firstPort) throws IOException {
+    final RedisShardedClusterBuilder builder = RedisShardedCluster.newRedisCluster()
+        .serverPorts(rangeClosed(firstPort, firstPort + EMBEDDED_CLUSTER_SHARDS_NUM - 1).boxed()
+            .collect(toList()));
+
+    for (int i = 0; i < EMBEDDED_CLUSTER_SHARDS_NUM; i++) {
+      builder.shard("shard-" + i, 0);
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * NOTE every node turns its state into OK on its own (a master waits ~2 s after its start), so
+   * the cluster is down for the keys of a node till then
+   */
+  private static void waitForEmbeddedCluster(int firstPort) throws IOException {
+    for (int port = firstPort; port < firstPort + EMBEDDED_CLUSTER_SHARDS_NUM; port++) {
+      try (Jedis jedis = new Jedis(Protocol.DEFAULT_HOST, port)) {
+        int attempt = 0;
+
+        while (!jedis.clusterInfo().contains("cluster_state:ok")) {
+          if (++attempt == EMBEDDED_CLUSTER_READY_ATTEMPTS) {
+            throw new IOException("Embedded Redis Cluster node isn't ready: " + port);
+          }
+
+          Thread.sleep(EMBEDDED_CLUSTER_READY_DELAY_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for embedded Redis Cluster", e);
+      }
+    }
+  }
+
+  private void registerPoolMetrics(Metrics metrics, JedisPool pool) {
+    metrics.gauge("redis_pool_active_connections", "The number of borrowed Redis connections",
+        pool::getNumActive);
+    metrics.gauge("redis_pool_idle_connections", "The number of idle Redis connections",
+        pool::getNumIdle);
+    metrics.gauge("redis_pool_waiters", "The number of threads waiting for a Redis connection",
+        pool::getNumWaiters);
+    metrics.gauge("redis_pool_borrow_wait_mean_seconds",
+        "The mean time of waiting for a Redis connection (the last 100 borrows)",
+        () -> pool.getMeanBorrowWaitTimeMillis() / 1000.0);
+    metrics.gauge("redis_pool_borrow_wait_max_seconds",
+        "The max time of waiting for a Redis connection since the start",
+        () -> pool.getMaxBorrowWaitTimeMillis() / 1000.0);
+  }
+
+  /**
+   * The response is {"status": "NOT_ENOUGH_MONEY", "message": "..."}, see {@link TransferResult}
+   * NOTE the errors are the rejections of the requests of clients, so they're logged sampled
+   */
+  private <T extends Exception> ExceptionHandler<T> getExceptionExceptionHandler(Metrics metrics,
+      Class<T> exceptionClass, int status, Status code) {
+    final Counter errors = makeErrorsCounter(metrics, exceptionClass, status);
+    final RejectionLog rejectionLog = new RejectionLog(LOG, exceptionClass.getSimpleName());
+
     return (e, ctx) -> {
+      errors.increment();
+      rejectionLog.log(e);
+      ctx.status(status);
+      ctx.json(new TransferResult(code, e.getMessage()));
+    };
+  }
+
+  /**
+   * The response is the same as for a rejection, see {@link #getExceptionExceptionHandler}
+   * NOTE the expected rejections are checked before a DAO is called (see
+   * {@link IllegalRequestException}), so these errors are logged one by one with stack traces
+   */
+  private <T extends Exception> ExceptionHandler<T> getErrorExceptionHandler(Metrics metrics,
+      Class<T> exceptionClass, int status, Status code) {
+    final Counter errors = makeErrorsCounter(metrics, exceptionClass, status);
+
+    return (e, ctx) -> {
+      errors.increment();
       LOG.error("Error", e);
-      ctx.status(HttpStatus.BAD_REQUEST_400);
-      ctx.result(e.toString());
+      ctx.status(status);
+      ctx.json(new TransferResult(code, e.getMessage()));
     };
   }
 
-  void stop() {
+  private static Counter makeErrorsCounter(Metrics metrics,
+      Class<? extends Exception> exceptionClass, int status) {
+    return metrics.counter("http_errors_total",
+        "The number of failed requests by the response status and the exception",
+        "status=\"" + status + "\",exception=\"" + exceptionClass.getSimpleName() + "\"");
+  }
+
+  void stop() throws IOException {
+    if (accountDaoType.isRedisUsed() && !accountDaoType.isClusterUsed()) {
+      injector.getInstance(TransferLedger.class).close();
+    }
+
     restApp.stop();
-    injector.getInstance(JedisPoolAbstract.class).destroy();
-    redisServer.stop();
+
+    // NOTE the partitions are stopped before the WAL is closed: they record the transfers to it
+    if (accountDaoType == AccountDaoType.PARTITIONED) {
+      injector.getInstance(AccountDaoPartitionedImpl.class).close();
+    }
+
+    if (!accountDaoType.isRedisUsed() && WriteAheadLog.isEnabled()) {
+      injector.getInstance(WriteAheadLog.class).close();
+    }
+
+    if (accountDaoType.isClusterUsed()) {
+      injector.getInstance(AccountDaoClusterImpl.class).close();
+      injector.getInstance(JedisCluster.class).close();
+    } else {
+      if (accountDaoType.isRedisUsed()) {
+        injector.getInstance(CachedAccountDao.class).close();
+      }
+
+      if (TransferModule.isCoalescingUsed(accountDaoType)) {
+        injector.getInstance(CoalescingAccountDao.class).close();
+      }
+
+      if (accountDaoType == AccountDaoType.ASYNC) {
+        injector.getInstance(AccountDaoAsyncImpl.class).close();
+        injector.getInstance(RedisClient.class).shutdown();
+      }
+
+      injector.getInstance(JedisPool.class).destroy();
+    }
+
+    if (redisServer != null) {
+      redisServer.stop();
+    }
   }
 }
@@ -0,0 +1,59 @@
+package com.revolut.interview.backend;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+
+/**
+ * Logs the rejected requests of one kind at most once per interval, the rest are only counted and
+ * the count is added to the next line. NOTE rejections like not enough money are a normal outcome
+ * under load, logging each of them (with a stack trace) costs more than the rejection itself
+ */
+class RejectionLog {
+
+  static final String PROPERTY_INTERVAL_MILLIS = "rest.rejections.logIntervalMillis";
+  private static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+  private final Logger log;
+  private final String kind;
+  private final long intervalNanos;
+  private final AtomicLong nextNanos;
+  private final LongAdder suppressed = new LongAdder();
+
+  RejectionLog(Logger log, String kind) {
+    this(log, kind, Long.getLong(PROPERTY_INTERVAL_MILLIS, DEFAULT_INTERVAL_MILLIS));
+  }
+
+  RejectionLog(Logger log, String kind, long intervalMillis) {
+    this.log = log;
+    this.kind = kind;
+    intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    nextNanos = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * @return true if the rejection is logged, false if it's only counted
+   */
+  boolean log(Exception e) {
+    final long now = System.nanoTime();
+    final long next = nextNanos.get();
+
+    if (now - next < 0 || !nextNanos.compareAndSet(next, now + intervalNanos)) {
+      suppressed.increment();
+
+      return false;
+    }
+
+    final long suppressedNum = suppressed.sumThenReset();
+
+    if (suppressedNum == 0) {
+      log.info("Rejected: {}: {}", kind, e.getMessage());
+    } else {
+      log.info("Rejected: {}: {} ({} more since the last one)", kind, e.getMessage(),
+          suppressedNum);
+    }
+
+    return true;
+  }
+}
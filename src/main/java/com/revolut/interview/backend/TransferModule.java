@@ -1,23 +1,50 @@
 package com.revolut.interview.backend;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 import com.revolut.interview.backend.dao.AccountDao;
-import com.revolut.interview.backend.dao.AccountDaoImpl;
+import com.revolut.interview.backend.dao.AccountDaoScriptImpl;
+import com.revolut.interview.backend.dao.AccountJournal;
+import com.revolut.interview.backend.dao.CachedAccountDao;
+import com.revolut.interview.backend.dao.CoalescingAccountDao;
+import com.revolut.interview.backend.dao.DurableAccountDao;
+import com.revolut.interview.backend.dao.LocalIdempotentAccountDao;
+import com.revolut.interview.backend.dao.RetryPolicy;
+import com.revolut.interview.backend.dao.TransferJedisCluster;
 import com.revolut.interview.backend.dao.TransferJedisPool;
 import com.revolut.interview.backend.dao.TransferJedisPool.RedisHost;
 import com.revolut.interview.backend.dao.TransferJedisPool.RedisPort;
+import com.revolut.interview.backend.dao.TransferRedisClient;
+import com.revolut.interview.backend.dao.WriteAheadLog;
+import com.revolut.interview.backend.metrics.MeteredAccountDao;
+import io.lettuce.core.RedisClient;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
-import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
 public class TransferModule extends AbstractModule {
 
+  static final String PROPERTY_POOL_MAX_TOTAL = "redis.pool.maxTotal";
+  static final int VIRTUAL_THREADS_POOL_MAX_TOTAL = 128;
+
   private final String redisHost;
   private final int redisPort;
+  private final AccountDaoType accountDaoType;
+  private final boolean virtualThreadsUsed;
+
+  TransferModule(String redisHost, int redisPort, AccountDaoType accountDaoType) {
+    this(redisHost, redisPort, accountDaoType, false);
+  }
 
-  TransferModule(String redisHost, int redisPort) {
+  TransferModule(String redisHost, int redisPort, AccountDaoType accountDaoType,
+      boolean virtualThreadsUsed) {
     this.redisHost = redisHost;
     this.redisPort = redisPort;
+    this.accountDaoType = accountDaoType;
+    this.virtualThreadsUsed = virtualThreadsUsed;
   }
 
   @Override
@@ -25,9 +52,78 @@ public class TransferModule extends AbstractModule {
     bindConstant().annotatedWith(RedisHost.class).to(redisHost);
     bindConstant().annotatedWith(RedisPort.class).to(redisPort);
 
-    bind(GenericObjectPoolConfig.class).to(JedisPoolConfig.class);
-    bind(JedisPoolAbstract.class).to(TransferJedisPool.class);
-    bind(AccountDao.class).to(AccountDaoImpl.class);
+    bind(new TypeLiteral<GenericObjectPoolConfig<Jedis>>() {}).toInstance(makePoolConfig());
+    // NOTE one pool is shared, so its metrics are the metrics of all the connections
+    bind(JedisPool.class).to(TransferJedisPool.class).in(Singleton.class);
+    bind(JedisCluster.class).to(TransferJedisCluster.class).in(Singleton.class);
+    bind(RedisClient.class).to(TransferRedisClient.class).in(Singleton.class);
+    bind(RetryPolicy.class).toInstance(RetryPolicy.fromSystemProperties());
+    bind(AccountDao.class).to(MeteredAccountDao.class);
+
+    // NOTE the DAOs keeping accounts in memory don't need a cache, keyspace notifications of
+    // a cluster are sent by every node separately, so they aren't used to invalidate it
+    if (accountDaoType.isRedisUsed() && !accountDaoType.isClusterUsed()) {
+      bind(AccountDao.class).annotatedWith(MeteredAccountDao.Delegate.class)
+          .to(CachedAccountDao.class);
+
+      // The concurrent transfers are done by one call of the batch script
+      if (isCoalescingUsed(accountDaoType)) {
+        bind(AccountDao.class).annotatedWith(CachedAccountDao.Delegate.class)
+            .to(CoalescingAccountDao.class);
+        bind(AccountDaoScriptImpl.class).annotatedWith(CoalescingAccountDao.Delegate.class)
+            .to(accountDaoType.getImplementation().asSubclass(AccountDaoScriptImpl.class));
+      } else {
+        bind(AccountDao.class).annotatedWith(CachedAccountDao.Delegate.class)
+            .to(accountDaoType.getImplementation());
+      }
+    } else if (accountDaoType.isRedisUsed()) {
+      bind(AccountDao.class).annotatedWith(MeteredAccountDao.Delegate.class)
+          .to(accountDaoType.getImplementation());
+    } else {
+      // The idempotency keys are recorded by the Redis DAOs with the transfers
+      bind(AccountDao.class).annotatedWith(MeteredAccountDao.Delegate.class)
+          .to(LocalIdempotentAccountDao.class);
+
+      // The changes are acknowledged when they are durable, see App#start for the recovery
+      if (WriteAheadLog.isEnabled()) {
+        bind(AccountJournal.class).to(WriteAheadLog.class);
+        bind(AccountDao.class).annotatedWith(LocalIdempotentAccountDao.Delegate.class)
+            .to(DurableAccountDao.class);
+        bind(AccountDao.class).annotatedWith(DurableAccountDao.Delegate.class)
+            .to(accountDaoType.getImplementation());
+      } else {
+        bind(AccountDao.class).annotatedWith(LocalIdempotentAccountDao.Delegate.class)
+            .to(accountDaoType.getImplementation());
+      }
+    }
+  }
+
+  /**
+   * NOTE coalescing is enabled by -Daccount.coalescing.enabled=true, it's supported by the DAO
+   * types doing a transfer by a Lua script in one Redis only
+   */
+  static boolean isCoalescingUsed(AccountDaoType accountDaoType) {
+    return CoalescingAccountDao.isEnabled() && accountDaoType.isScriptUsed()
+        && !accountDaoType.isClusterUsed();
+  }
+
+  /**
+   * The max number of connections is overridden by -Dredis.pool.maxTotal=<N>.
+   * NOTE virtual threads aren't limited, so the pool is bigger then and it's filled on start: the
+   * pool creates a connection under its monitor, which would pin the carrier thread of a request
+   */
+  private JedisPoolConfig makePoolConfig() {
+    final JedisPoolConfig result = new JedisPoolConfig();
+    final int maxTotal = Integer.getInteger(PROPERTY_POOL_MAX_TOTAL,
+        virtualThreadsUsed ? VIRTUAL_THREADS_POOL_MAX_TOTAL : result.getMaxTotal());
+    result.setMaxTotal(maxTotal);
+    result.setMaxIdle(maxTotal);
+
+    if (virtualThreadsUsed) {
+      result.setMinIdle(maxTotal);
+    }
+
+    return result;
   }
 
 }
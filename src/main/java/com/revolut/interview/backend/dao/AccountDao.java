@@ -1,14 +1,104 @@
 package com.revolut.interview.backend.dao;
 
 import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface AccountDao {
 
   Account create(Account account);
 
+  /**
+   * Creates the accounts in the given order, every account gets its id.
+   * NOTE by default they are created one by one, so the ids may be not contiguous
+   *
+   * @return the given accounts
+   */
+  default List<Account> createInBulk(List<Account> accounts) {
+    for (Account account : accounts) {
+      create(account);
+    }
+
+    return accounts;
+  }
+
   Account findById(Long id) throws AccountNotFoundException;
 
   void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
-      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException;
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException;
+
+  /**
+   * Like {@link #transferMoneyTransactionally(BigDecimal, Long, Long)} but the caller isn't blocked
+   * if the implementation can avoid it. The future fails with the same exceptions.
+   * NOTE by default the transfer is done synchronously by the calling thread
+   */
+  default CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    try {
+      transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+      result.complete(null);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Like {@link #transferMoneyTransactionally(BigDecimal, Long, Long)} but the transfer is done
+   * once per idempotency key (see {@link IdempotencyKeys}): the key is recorded atomically with the
+   * transfer, a repeated call with the same key and transfer completes normally without changing
+   * anything.
+   *
+   * @throws IdempotencyKeyReusedException if the key is recorded for another transfer
+   */
+  void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException, IdempotencyKeyReusedException;
+
+  /**
+   * Like {@link #transferMoneyOnce(BigDecimal, Long, Long, String)} but the caller isn't blocked if
+   * the implementation can avoid it.
+   * NOTE by default the transfer is done synchronously by the calling thread
+   */
+  default CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    try {
+      transferMoneyOnce(sum, fromAccountId, toAccountId, idempotencyKey);
+      result.complete(null);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Does the transfers in the given order, each of them is atomic and a failed one doesn't affect
+   * the rest.
+   *
+   * @return a result per transfer in the same order
+   */
+  default List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    final List<TransferResult> result = new ArrayList<>(transfers.size());
+
+    for (Transfer transfer : transfers) {
+      result.add(TransferResults.of(() -> {
+        TransferResults.checkComplete(transfer);
+        transferMoneyTransactionally(transfer.getSum(), transfer.getFrom(), transfer.getTo());
+      }));
+    }
+
+    return result;
+  }
 }
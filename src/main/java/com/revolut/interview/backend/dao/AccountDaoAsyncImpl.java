@@ -0,0 +1,108 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Like {@link AccountDaoMinorUnitsImpl} but {@link #transferMoneyAsync} doesn't block the caller:
+ * the script is sent by a non-blocking client and the returned future is completed by an I/O
+ * thread of the client when Redis replies.
+ * NOTE one connection is shared by all the callers, the scripts of concurrent transfers are
+ * pipelined through it, so they aren't limited by the number of threads or by the Jedis pool
+ */
+@Singleton
+public class AccountDaoAsyncImpl extends AccountDaoMinorUnitsImpl implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoAsyncImpl.class);
+
+  private final StatefulRedisConnection<String, String> connection;
+  private final RedisAsyncCommands<String, String> commands;
+
+  @Inject
+  public AccountDaoAsyncImpl(JedisPool jedisPool, RedisClient redisClient) {
+    super(jedisPool);
+    connection = redisClient.connect();
+    commands = connection.async();
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    return transfer(sum, fromAccountId, toAccountId, null);
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    return transfer(sum, fromAccountId, toAccountId, idempotencyKey);
+  }
+
+  /**
+   * @param idempotencyKey null if the transfer isn't done once per key
+   */
+  private CompletableFuture<Void> transfer(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    try {
+      if (idempotencyKey != null) {
+        IdempotencyKeys.checkKey(idempotencyKey);
+      }
+
+      checkSum(sum, fromAccountId, toAccountId);
+      checkAccountIds(fromAccountId, toAccountId);
+    } catch (IllegalArgumentException | FromAndToAccountsTheSameException e) {
+      result.completeExceptionally(e);
+
+      return result;
+    }
+
+    final List<String> keys = makeTransferScriptKeys(fromAccountId, toAccountId, idempotencyKey);
+    final List<String> args = makeTransferScriptArgs(sum, fromAccountId, toAccountId,
+        idempotencyKey);
+
+    transferScript.<List<?>>eval(commands, ScriptOutputType.MULTI, keys, args)
+        .whenComplete((scriptResult, e) -> {
+          if (e != null) {
+            result.completeExceptionally(e);
+
+            return;
+          }
+
+          LOG.debug(String.valueOf(scriptResult));
+
+          try {
+            if (idempotencyKey == null
+                || !isDoneBefore(scriptResult, idempotencyKey, sum, fromAccountId, toAccountId)) {
+              checkScriptResult(scriptResult, sum, fromAccountId, toAccountId);
+            }
+
+            result.complete(null);
+          } catch (AccountNotFoundException | NotEnoughMoneyException
+              | FromAndToAccountsTheSameException | IdempotencyKeyReusedException
+              | RuntimeException checkError) {
+            result.completeExceptionally(checkError);
+          }
+        });
+
+    return result;
+  }
+
+  @Override
+  public void close() {
+    connection.close();
+  }
+}
@@ -0,0 +1,414 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.AccountDaoMinorUnitsImpl.FIELD_SCALE;
+import static com.revolut.interview.backend.dao.AccountDaoMinorUnitsImpl.FIELD_UNITS;
+import static com.revolut.interview.backend.dao.AccountDaoScriptImpl.STATUS_OK;
+import static com.revolut.interview.backend.dao.AccountDaoScriptImpl.checkScriptResult;
+import static com.revolut.interview.backend.dao.AccountDaoScriptImpl.isDoneBefore;
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+/**
+ * Keeps accounts in Redis Cluster as long minor units like {@link AccountDaoMinorUnitsImpl}. The
+ * key of an account has the hash tag of its id group (see {@link #PROPERTY_GROUP_SIZE}), i.e. the
+ * accounts with close ids, e.g. created together, are in the same slot.
+ * A transfer between accounts of the same slot is one script (see transfer_units.lua). A transfer
+ * across slots is done in 2 steps: the from account is debited and the transfer is recorded as
+ * pending atomically (debit_units.lua), then the to account is credited (credit_units.lua) and the
+ * pending transfer is removed, or the money goes back (refund_units.lua) if the credit fails. The
+ * credit keeps its outcome, so a pending transfer left by a failed node is completed by any node
+ * later (see {@link #recoverPendingTransfers(long)}) and money is never lost or created.
+ * The record of an idempotency key is in the slot of the from account, it's set by the transfer
+ * script or by the debit and it's removed by the refund.
+ * A done transfer is appended to the ledger of a group (see {@link TransferLedger}): the ledger of
+ * the from account for a transfer within a slot or the ledger of the to account for a credit.
+ * NOTE there is no ledger of the whole cluster, a follower should merge the ledgers of all groups
+ * NOTE a key is unique per from account group, a repeated transfer across slots completes normally
+ * while the first one is pending
+ * NOTE a batch is done transfer by transfer, see {@link AccountDao#transferMoneyInBatch(List)}
+ */
+@Singleton
+public class AccountDaoClusterImpl implements AccountDao, AutoCloseable {
+
+  static final String PROPERTY_GROUP_SIZE = "account.cluster.groupSize";
+  static final String PROPERTY_PENDING_TIMEOUT_MILLIS = "account.cluster.pendingTimeoutMillis";
+  private static final int DEFAULT_GROUP_SIZE = 100;
+  private static final long DEFAULT_PENDING_TIMEOUT_MILLIS = 10_000;
+  private static final int CREDIT_OUTCOME_TTL_SECONDS = 24 * 60 * 60;
+  private static final int SCAN_BATCH_SIZE = 1000;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoClusterImpl.class);
+  private static final RedisScript CREATE_SCRIPT = new RedisScript("create_units.lua");
+  private static final RedisScript TRANSFER_SCRIPT = new RedisScript("transfer_units.lua");
+  private static final RedisScript DEBIT_SCRIPT = new RedisScript("debit_units.lua");
+  private static final RedisScript CREDIT_SCRIPT = new RedisScript("credit_units.lua");
+  private static final RedisScript REFUND_SCRIPT = new RedisScript("refund_units.lua");
+  private static final String KEY_UNIQUE_IDS = "unique_ids";
+  private static final String KEY_AUTHOR = "author";
+  private static final String KEY_PENDING_TRANSFER = "transfer";
+  private static final String KEY_CREDIT_OUTCOME = "credit";
+  // The max length and the max age of a transfer history which turn the histories off
+  private static final String NO_HISTORY = "0";
+
+  private final JedisCluster jedisCluster;
+  private final IdBlockAllocator idAllocator;
+  private final int groupSize;
+  private final ScheduledExecutorService recoveryExecutor;
+
+  @Inject
+  public AccountDaoClusterImpl(JedisCluster jedisCluster) {
+    this(jedisCluster, Integer.getInteger(PROPERTY_GROUP_SIZE, DEFAULT_GROUP_SIZE),
+        Long.getLong(PROPERTY_PENDING_TIMEOUT_MILLIS, DEFAULT_PENDING_TIMEOUT_MILLIS));
+  }
+
+  AccountDaoClusterImpl(JedisCluster jedisCluster, int groupSize, long pendingTimeoutMillis) {
+    if (groupSize < 1) {
+      throw new IllegalArgumentException("Illegal account group size: " + groupSize);
+    }
+
+    this.jedisCluster = jedisCluster;
+    this.groupSize = groupSize;
+    idAllocator = new IdBlockAllocator(
+        increment -> jedisCluster.hincrBy(KEY_UNIQUE_IDS, KEY_AUTHOR, increment),
+        Integer.getInteger(AccountDaoImpl.PROPERTY_ID_BLOCK_SIZE,
+            AccountDaoImpl.DEFAULT_ID_BLOCK_SIZE));
+    recoveryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread result = new Thread(runnable, "pending-transfers-recovery");
+      result.setDaemon(true);
+
+      return result;
+    });
+    recoveryExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        recoverPendingTransfers(pendingTimeoutMillis);
+      } catch (RuntimeException e) {
+        LOG.error("Pending transfers recovery failed", e);
+      }
+    }, pendingTimeoutMillis, pendingTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  String makeAccountKey(long id) {
+    return KEY_AUTHOR + ":" + makeHashTag(id) + ":" + id;
+  }
+
+  private String makeHashTag(long accountId) {
+    return "{" + Math.floorDiv(accountId, groupSize) + "}";
+  }
+
+  @Override
+  public Account create(Account account) {
+    final Map<String, String> fieldsHash = AccountDaoMinorUnitsImpl
+        .makeUnitsHash(account.getBalance());
+    final long newId = idAllocator.nextId();
+    jedisCluster.hmset(makeAccountKey(newId), fieldsHash);
+    account.setId(newId);
+
+    LOG.debug("Created: " + account);
+
+    return account;
+  }
+
+  /**
+   * The accounts get a contiguous range of ids, the accounts of every group are created by one
+   * script.
+   */
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    if (accounts.isEmpty()) {
+      return accounts;
+    }
+
+    final List<Map<String, String>> fieldsHashes = new ArrayList<>(accounts.size());
+
+    for (Account account : accounts) {
+      fieldsHashes.add(AccountDaoMinorUnitsImpl.makeUnitsHash(account.getBalance()));
+    }
+
+    final long firstId = idAllocator.nextIds(accounts.size());
+    int groupStart = 0;
+
+    while (groupStart < accounts.size()) {
+      final long groupEndId = (Math.floorDiv(firstId + groupStart, groupSize) + 1) * groupSize;
+      final int groupEnd = (int) Math.min(accounts.size(), groupEndId - firstId);
+      final List<String> keys = new ArrayList<>(groupEnd - groupStart);
+      final List<String> args = new ArrayList<>(2 + (groupEnd - groupStart) * 2);
+      args.add(FIELD_UNITS);
+      args.add(FIELD_SCALE);
+
+      for (int i = groupStart; i < groupEnd; i++) {
+        keys.add(makeAccountKey(firstId + i));
+        args.add(fieldsHashes.get(i).get(FIELD_UNITS));
+        args.add(fieldsHashes.get(i).get(FIELD_SCALE));
+      }
+
+      CREATE_SCRIPT.eval(jedisCluster, keys, args);
+      groupStart = groupEnd;
+    }
+
+    for (int i = 0; i < accounts.size(); i++) {
+      accounts.get(i).setId(firstId + i);
+    }
+
+    LOG.debug("Created: " + accounts.size() + " accounts from id " + firstId);
+
+    return accounts;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final List<String> accountFields = jedisCluster
+        .hmget(makeAccountKey(id), FIELD_UNITS, FIELD_SCALE);
+
+    if (accountFields.get(0) == null) {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    final Account result = new Account(id, AccountDaoMinorUnitsImpl.toBalance(accountFields));
+
+    LOG.debug("Found: " + result);
+
+    return result;
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    try {
+      transfer(sum, fromAccountId, toAccountId, null);
+    } catch (IdempotencyKeyReusedException e) {
+      // There is no key
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      IdempotencyKeyReusedException {
+    IdempotencyKeys.checkKey(idempotencyKey);
+    transfer(sum, fromAccountId, toAccountId, idempotencyKey);
+  }
+
+  /**
+   * @param idempotencyKey null if the transfer isn't done once per key
+   */
+  private void transfer(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      IdempotencyKeyReusedException {
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    final String fromKey = makeAccountKey(fromAccountId);
+    final String toKey = makeAccountKey(toAccountId);
+
+    if (JedisClusterCRC16.getSlot(fromKey) == JedisClusterCRC16.getSlot(toKey)) {
+      // NOTE there are no transfer histories in a cluster, their keys aren't used by the script
+      final List<String> keys = new ArrayList<>(asList(fromKey, toKey,
+          makeLedgerKey(fromAccountId), makeHistoryKey(fromAccountId),
+          makeHistoryKey(toAccountId)));
+      List<String> args = new ArrayList<>(TransferLedger.appendEntryArgs(
+          asList(FIELD_UNITS, FIELD_SCALE, sum.toPlainString()), fromAccountId, toAccountId));
+      args.addAll(asList(NO_HISTORY, NO_HISTORY));
+
+      if (idempotencyKey != null) {
+        keys.add(makeRecordKey(fromAccountId, idempotencyKey));
+        args = IdempotencyKeys.appendRecordArgs(args, sum, fromAccountId, toAccountId);
+      }
+
+      final List<?> scriptResult = (List<?>) TRANSFER_SCRIPT.eval(jedisCluster, keys, args);
+
+      LOG.debug(String.valueOf(scriptResult));
+
+      if (idempotencyKey == null
+          || !isDoneBefore(scriptResult, idempotencyKey, sum, fromAccountId, toAccountId)) {
+        checkScriptResult(scriptResult, sum, fromAccountId, toAccountId);
+      }
+    } else {
+      final String pendingTransferKey = debit(sum, fromAccountId, toAccountId, idempotencyKey);
+
+      // Done before with the same key
+      if (pendingTransferKey == null) {
+        return;
+      }
+
+      final long status = completePendingTransfer(pendingTransferKey);
+
+      checkScriptResult(singletonList(status), sum, fromAccountId, toAccountId);
+    }
+  }
+
+  /**
+   * @return the key of the ledger of the group of the account
+   */
+  String makeLedgerKey(long accountId) {
+    return TransferLedger.KEY_LEDGER + ":" + makeHashTag(accountId);
+  }
+
+  private String makeHistoryKey(long accountId) {
+    return TransferHistory.KEY_HISTORY + ":" + makeHashTag(accountId) + ":" + accountId;
+  }
+
+  private String makeRecordKey(Long fromAccountId, String idempotencyKey) {
+    return IdempotencyKeys.makeRecordKey(makeHashTag(fromAccountId) + ":" + idempotencyKey);
+  }
+
+  /**
+   * The first step of a transfer across slots
+   *
+   * @param idempotencyKey null if the transfer isn't done once per key
+   * @return the key of the pending transfer or null if it's done before with the same key
+   */
+  String debit(BigDecimal sum, Long fromAccountId, Long toAccountId, String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      IdempotencyKeyReusedException {
+    final String transferId = UUID.randomUUID().toString();
+    final String result =
+        KEY_PENDING_TRANSFER + ":" + makeHashTag(fromAccountId) + ":" + transferId;
+    final String creditOutcomeKey =
+        KEY_CREDIT_OUTCOME + ":" + makeHashTag(toAccountId) + ":" + transferId;
+    final String toKey = makeAccountKey(toAccountId);
+    final String toScale = jedisCluster.hget(toKey, FIELD_SCALE);
+    final List<String> keys = new ArrayList<>(asList(makeAccountKey(fromAccountId), result));
+    List<String> args = asList(FIELD_UNITS, FIELD_SCALE, sum.toPlainString(),
+        toScale == null ? "" : toScale, toKey, creditOutcomeKey,
+        Long.toString(System.currentTimeMillis()));
+
+    if (idempotencyKey != null) {
+      keys.add(makeRecordKey(fromAccountId, idempotencyKey));
+      args = IdempotencyKeys.appendRecordArgs(args, sum, fromAccountId, toAccountId);
+    }
+
+    final List<?> scriptResult = (List<?>) DEBIT_SCRIPT.eval(jedisCluster, keys, args);
+
+    LOG.debug(String.valueOf(scriptResult));
+
+    if (idempotencyKey != null
+        && isDoneBefore(scriptResult, idempotencyKey, sum, fromAccountId, toAccountId)) {
+      return null;
+    }
+
+    checkScriptResult(scriptResult, sum, fromAccountId, toAccountId);
+
+    return result;
+  }
+
+  /**
+   * The second step of a transfer across slots: credits the to account or gives the money back if
+   * it's impossible. It's safe to do it concurrently or repeatedly for the same transfer.
+   *
+   * @return the status of the credit, see {@link AccountDaoScriptImpl}
+   */
+  long completePendingTransfer(String pendingTransferKey) {
+    final Map<String, String> pendingTransfer = jedisCluster.hgetAll(pendingTransferKey);
+
+    // Already completed
+    if (pendingTransfer.isEmpty()) {
+      return STATUS_OK;
+    }
+
+    final Long fromAccountId = getAccountId(pendingTransfer.get("from"));
+    final Long toAccountId = getAccountId(pendingTransfer.get("to"));
+    final long result = (Long) CREDIT_SCRIPT.eval(jedisCluster,
+        asList(pendingTransfer.get("to"), pendingTransfer.get("credit"),
+            makeLedgerKey(toAccountId)),
+        TransferLedger.appendEntryArgs(asList(FIELD_UNITS, FIELD_SCALE, pendingTransfer.get("sum"),
+            Integer.toString(CREDIT_OUTCOME_TTL_SECONDS)), fromAccountId, toAccountId));
+
+    if (result == STATUS_OK) {
+      jedisCluster.del(pendingTransferKey);
+    } else {
+      final List<String> keys = new ArrayList<>(
+          asList(pendingTransfer.get("from"), pendingTransferKey));
+
+      if (pendingTransfer.containsKey("record")) {
+        keys.add(pendingTransfer.get("record"));
+      }
+
+      REFUND_SCRIPT.eval(jedisCluster, keys, singletonList(FIELD_UNITS));
+    }
+
+    LOG.debug("Completed: " + pendingTransferKey + ", status: " + result);
+
+    return result;
+  }
+
+  private static Long getAccountId(String accountKey) {
+    return Long.valueOf(accountKey.substring(accountKey.lastIndexOf(':') + 1));
+  }
+
+  /**
+   * Completes the transfers which are pending longer than the timeout, e.g. because the node doing
+   * them failed. Every master node of the cluster is scanned.
+   * NOTE it's done periodically by every node, a transfer which is just slow might be completed by
+   * another node, it's safe but the timeout should be much longer than a transfer
+   *
+   * @return the number of completed transfers
+   */
+  long recoverPendingTransfers(long timeoutMillis) {
+    final long createdBefore = System.currentTimeMillis() - timeoutMillis;
+    final ScanParams scanParams = new ScanParams().match(KEY_PENDING_TRANSFER + ":*")
+        .count(SCAN_BATCH_SIZE);
+    long result = 0;
+
+    for (JedisPool nodePool : jedisCluster.getClusterNodes().values()) {
+      final List<String> pendingTransferKeys = new ArrayList<>();
+
+      try (Jedis jedis = nodePool.getResource()) {
+        if (!jedis.info("replication").contains("role:master")) {
+          continue;
+        }
+
+        String cursor = ScanParams.SCAN_POINTER_START;
+
+        do {
+          final ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
+          pendingTransferKeys.addAll(scanResult.getResult());
+          cursor = scanResult.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+      }
+
+      for (String pendingTransferKey : pendingTransferKeys) {
+        final String created = jedisCluster.hget(pendingTransferKey, "created");
+
+        if (created != null && Long.parseLong(created) <= createdBefore) {
+          final long status = completePendingTransfer(pendingTransferKey);
+          result++;
+
+          LOG.warn("Recovered: " + pendingTransferKey + ", status: " + status
+              + (status == STATUS_OK ? "" : " (the money is given back)"));
+        }
+      }
+    }
+
+    return result;
+  }
+
+  @Override
+  public void close() {
+    recoveryExecutor.shutdownNow();
+  }
+}
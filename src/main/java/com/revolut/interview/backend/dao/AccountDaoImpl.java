@@ -1,39 +1,130 @@
 package com.revolut.interview.backend.dao;
 
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkHasEnoughMoney;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 
 import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.TransferLedger.QueuedEntry;
+import com.revolut.interview.backend.metrics.Counter;
+import com.revolut.interview.backend.metrics.Metrics;
 import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
-
+import redis.clients.jedis.params.SetParams;
+
+/**
+ * Keeps an account as a hash with the balance field (author:<ID>) by default. With
+ * -Daccount.bucketSize=<N> the accounts are grouped into bucket hashes of N accounts with a field
+ * per account (acct:{<ID / N>} and <ID % N>), so Redis keeps a bucket in its compact encoding
+ * instead of paying the overhead of a key per account.
+ * The balance of a hot account is split into slots, so it takes credits without conflicts (see
+ * {@link HotAccounts}).
+ * NOTE a transfer watches the buckets, so it's retried on any change of their accounts
+ */
 public class AccountDaoImpl implements AccountDao {
 
   private static final Logger LOG = LoggerFactory.getLogger(AccountDaoImpl.class);
 
+  static final int BATCH_CHUNK_SIZE = 100;
+  static final String PROPERTY_ID_BLOCK_SIZE = "account.ids.blockSize";
+  static final int DEFAULT_ID_BLOCK_SIZE = 1000;
   private static final String KEY_UNIQUE_IDS = "unique_ids";
-  private static final String KEY_AUTHOR = "author";
-  private static final String FIELD_BALANCE = "balance";
-
-  private final JedisPoolAbstract jedisPool;
+  static final String KEY_AUTHOR = "author";
+  static final String FIELD_BALANCE = "balance";
+  static final String PROPERTY_BUCKET_SIZE = "account.bucketSize";
+  static final String KEY_BUCKET = "acct";
+  // The max number of fields of a hash in the compact encoding (an alias of
+  // hash-max-listpack-entries since Redis 7)
+  private static final String COMPACT_HASH_ENTRIES_PARAM = "hash-max-ziplist-entries";
+
+  final JedisPool jedisPool;
+  private final IdBlockAllocator idAllocator;
+  // 0 if every account is a hash of its own
+  private final int bucketSize;
+  private final HotAccounts hotAccounts;
+  private Counter retries = new Counter();
+  private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
 
   @Inject
-  public AccountDaoImpl(JedisPoolAbstract jedisPool) {
+  public AccountDaoImpl(JedisPool jedisPool) {
+    this(jedisPool, Integer.getInteger(PROPERTY_BUCKET_SIZE, 0), HotAccounts.fromProperties());
+  }
+
+  AccountDaoImpl(JedisPool jedisPool, int bucketSize) {
+    this(jedisPool, bucketSize, HotAccounts.NONE);
+  }
+
+  /**
+   * @param bucketSize the number of accounts per bucket hash or 0 for a hash per account
+   */
+  AccountDaoImpl(JedisPool jedisPool, int bucketSize, HotAccounts hotAccounts) {
+    if (bucketSize < 0) {
+      throw new IllegalArgumentException("Illegal account bucket size: " + bucketSize);
+    }
+
     this.jedisPool = jedisPool;
+    this.bucketSize = bucketSize;
+    this.hotAccounts = hotAccounts;
+    idAllocator = new IdBlockAllocator(jedisPool, KEY_UNIQUE_IDS, KEY_AUTHOR,
+        Integer.getInteger(PROPERTY_ID_BLOCK_SIZE, DEFAULT_ID_BLOCK_SIZE));
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      TransferLedger.loadEntryScript(jedis);
+
+      if (bucketSize > 0) {
+        enableCompactBuckets(jedis);
+      }
+    }
+  }
+
+  /**
+   * NOTE a hash with more fields than the limit is converted into a hash table for good
+   */
+  private void enableCompactBuckets(Jedis jedis) {
+    final List<String> param = jedis.configGet(COMPACT_HASH_ENTRIES_PARAM);
+
+    if (param.size() > 1 && Long.parseLong(param.get(1)) < bucketSize) {
+      jedis.configSet(COMPACT_HASH_ENTRIES_PARAM, Integer.toString(bucketSize));
+    }
+  }
+
+  /**
+   * Exposes the number of WATCH/MULTI/EXEC retries caused by concurrent changes of accounts
+   */
+  @Inject(optional = true)
+  void setMetrics(Metrics metrics) {
+    retries = metrics.counter("account_dao_transfer_retries_total",
+        "The number of transfers retried because the accounts were changed concurrently", "");
   }
 
   @Override
   public Account create(Account account) {
+    final Map<String, String> fieldsHash = makeFieldsHash(account);
+    final long newId = idAllocator.nextId();
+
     try (Jedis jedis = jedisPool.getResource()) {
-      final Long newId = jedis.hincrBy(KEY_UNIQUE_IDS, KEY_AUTHOR, 1);
-      jedis.hmset(makeAccountKey(newId), makeFieldsHash(account));
+      jedis.hmset(makeAccountKey(newId), placeFieldsHash(newId, fieldsHash));
       account.setId(newId);
 
       LOG.debug("Created: " + account);
@@ -42,18 +133,72 @@ public class AccountDaoImpl implements AccountDao {
     }
   }
 
-  private String makeAccountKey(Long newId) {
-    return KEY_AUTHOR + ":" + newId;
+  /**
+   * The accounts get a contiguous range of ids leased by one HINCRBY and they are written by one
+   * pipeline, i.e. 2 round trips for the whole list.
+   */
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    if (accounts.isEmpty()) {
+      return accounts;
+    }
+
+    final List<Map<String, String>> fieldsHashes = new ArrayList<>(accounts.size());
+
+    for (Account account : accounts) {
+      fieldsHashes.add(makeFieldsHash(account));
+    }
+
+    final long firstId = idAllocator.nextIds(accounts.size());
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      final Pipeline pipeline = jedis.pipelined();
+
+      for (int i = 0; i < accounts.size(); i++) {
+        final long id = firstId + i;
+        pipeline.hmset(makeAccountKey(id), placeFieldsHash(id, fieldsHashes.get(i)));
+      }
+
+      pipeline.sync();
+    }
+
+    for (int i = 0; i < accounts.size(); i++) {
+      accounts.get(i).setId(firstId + i);
+    }
+
+    LOG.debug("Created: " + accounts.size() + " accounts from id " + firstId);
+
+    return accounts;
+  }
+
+  /**
+   * @return the key of the hash of the account or of its bucket
+   */
+  String makeAccountKey(Long id) {
+    return bucketSize == 0 ? KEY_AUTHOR + ":" + id : KEY_BUCKET + ":{" + id / bucketSize + "}";
+  }
+
+  private String makeBalanceField(Long id) {
+    return bucketSize == 0 ? FIELD_BALANCE : Long.toString(id % bucketSize);
+  }
+
+  Map<String, String> makeFieldsHash(Account account) {
+    return singletonMap(FIELD_BALANCE, account.getBalance().toPlainString());
+  }
+
+  private Map<String, String> placeFieldsHash(Long id, Map<String, String> fieldsHash) {
+    return bucketSize == 0 ? fieldsHash
+        : singletonMap(makeBalanceField(id), fieldsHash.get(FIELD_BALANCE));
   }
 
-  private Map<String, String> makeFieldsHash(Account account) {
-    return singletonMap(FIELD_BALANCE, account.getBalance().toString());
+  private Map<String, String> makeBalanceHash(Long id, BigDecimal balance) {
+    return singletonMap(makeBalanceField(id), balance.toPlainString());
   }
 
   @Override
   public Account findById(Long id) throws AccountNotFoundException {
-    final List<String> accountFields = getAccountFields(id);
-    final BigDecimal balance = new BigDecimal(accountFields.get(0));
+    final BigDecimal balance = hotAccounts.isHot(id) ? getHotBalance(id)
+        : new BigDecimal(getAccountFields(id).get(0));
     final Account result = new Account(id, balance);
 
     LOG.debug("Found: " + result);
@@ -65,7 +210,7 @@ public class AccountDaoImpl implements AccountDao {
     List<String> accountFields;
 
     try (Jedis jedis = jedisPool.getResource()) {
-      accountFields = getBalance(jedis, makeAccountKey(id));
+      accountFields = getBalance(jedis, id);
     }
 
     if (accountFields.size() == 0 || accountFields.get(0) == null) {
@@ -75,8 +220,70 @@ public class AccountDaoImpl implements AccountDao {
     return accountFields;
   }
 
-  private List<String> getBalance(Jedis jedis, String fromKey) {
-    return jedis.hmget(fromKey, FIELD_BALANCE);
+  /**
+   * The main balance and the slots are read by one transaction, so a concurrent sweep of the slots
+   * isn't seen halfway
+   */
+  private BigDecimal getHotBalance(Long id) throws AccountNotFoundException {
+    final Response<List<String>> balance;
+    final List<Response<String>> slotBalances = new ArrayList<>();
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      final Transaction transaction = jedis.multi();
+      balance = transaction.hmget(makeAccountKey(id), makeBalanceField(id));
+
+      for (String slotKey : hotAccounts.makeSlotKeys(id)) {
+        slotBalances.add(transaction.hget(slotKey, FIELD_BALANCE));
+      }
+
+      transaction.exec();
+    }
+
+    if (balance.get().get(0) == null) {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    BigDecimal result = new BigDecimal(balance.get().get(0));
+
+    for (Response<String> slotBalance : slotBalances) {
+      result = addSlotBalance(result, slotBalance.get());
+    }
+
+    return result;
+  }
+
+  private static BigDecimal addSlotBalance(BigDecimal balance, String slotBalance) {
+    return slotBalance == null ? balance : balance.add(new BigDecimal(slotBalance));
+  }
+
+  /**
+   * Watches the slots of the hot account and reads them by one pipeline
+   *
+   * @return the sum of the slots
+   */
+  private BigDecimal watchSlots(Jedis jedis, String[] slotKeys) {
+    jedis.watch(slotKeys);
+
+    final Pipeline pipeline = jedis.pipelined();
+    final List<Response<String>> slotBalances = new ArrayList<>(slotKeys.length);
+
+    for (String slotKey : slotKeys) {
+      slotBalances.add(pipeline.hget(slotKey, FIELD_BALANCE));
+    }
+
+    pipeline.sync();
+
+    BigDecimal result = BigDecimal.ZERO;
+
+    for (Response<String> slotBalance : slotBalances) {
+      result = addSlotBalance(result, slotBalance.get());
+    }
+
+    return result;
+  }
+
+  private List<String> getBalance(Jedis jedis, Long id) {
+    return jedis.hmget(makeAccountKey(id), makeBalanceField(id));
   }
 
   // FIXED The solution is not synchronised: balances might change between get and set operations
@@ -84,55 +291,329 @@ public class AccountDaoImpl implements AccountDao {
   // NOTE it's not implemented using HINCRBYFLOAT because of not precise operations in Redis
   @Override
   public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
-      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
-    checkSum(sum, fromAccountId, toAccountId);
-    checkAccountIds(fromAccountId, toAccountId);
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    transfer(sum, fromAccountId, toAccountId, null, null);
+  }
 
-    try (Jedis jedis = jedisPool.getResource()) {
-      final String fromKey = makeAccountKey(fromAccountId);
-      final String toKey = makeAccountKey(toAccountId);
-      List<Object> transactionResult;
+  /**
+   * The record of the key is watched with the accounts and it's set by the same transaction as
+   * the balances.
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException, IdempotencyKeyReusedException {
+    IdempotencyKeys.checkKey(idempotencyKey);
+
+    final String recordedFingerprint = transfer(sum, fromAccountId, toAccountId,
+        IdempotencyKeys.makeRecordKey(idempotencyKey),
+        IdempotencyKeys.makeFingerprint(sum, fromAccountId, toAccountId));
+
+    if (recordedFingerprint != null) {
+      IdempotencyKeys.checkFingerprint(recordedFingerprint, idempotencyKey, sum, fromAccountId,
+          toAccountId);
+    }
+  }
 
-      do {
-        jedis.watch(fromKey, toKey);
+  /**
+   * @param recordKey the key of the idempotency key record or null if there is no such key
+   * @return the fingerprint recorded before or null if the transfer is done now
+   */
+  private String transfer(BigDecimal sum, Long fromAccountId, Long toAccountId, String recordKey,
+      String fingerprint)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
 
-        final List<String> fromBalance = getBalanceAndCheck(fromKey, fromAccountId, jedis);
-        final BigDecimal oldFromBalance = new BigDecimal(fromBalance.get(0));
-        final List<String> toBalance = getBalanceAndCheck(toKey, toAccountId, jedis);
-        final BigDecimal oldToBalance = new BigDecimal(toBalance.get(0));
+    final String fromKey = makeAccountKey(fromAccountId);
+    final boolean toHot = hotAccounts.isHot(toAccountId);
+    int failedAttempts = 0;
+
+    while (true) {
+      // NOTE a connection is borrowed per attempt, so it's back in the pool while the thread backs
+      // off before the next one
+      try (Jedis jedis = jedisPool.getResource()) {
+        // A credit of a hot account watches one of its slots instead of its main balance
+        final String toKey = toHot ? hotAccounts.makeRandomSlotKey(toAccountId)
+            : makeAccountKey(toAccountId);
+
+        if (recordKey == null) {
+          jedis.watch(fromKey, toKey);
+        } else {
+          jedis.watch(fromKey, toKey, recordKey);
+
+          final String recordedFingerprint = jedis.get(recordKey);
+
+          if (recordedFingerprint != null) {
+            jedis.unwatch();
+
+            return recordedFingerprint;
+          }
+        }
+
+        final List<String> fromBalance = getBalanceAndCheck(fromAccountId, jedis);
+        BigDecimal oldFromBalance = new BigDecimal(fromBalance.get(0));
+        String[] sweptSlotKeys = null;
+
+        if (oldFromBalance.compareTo(sum) < 0 && hotAccounts.isHot(fromAccountId)) {
+          sweptSlotKeys = hotAccounts.makeSlotKeys(fromAccountId);
+          oldFromBalance = oldFromBalance.add(watchSlots(jedis, sweptSlotKeys));
+        }
+
+        final List<String> toBalance = getBalanceAndCheck(toAccountId, jedis);
+        final BigDecimal oldToBalance = toHot
+            ? addSlotBalance(BigDecimal.ZERO, jedis.hget(toKey, FIELD_BALANCE))
+            : new BigDecimal(toBalance.get(0));
         final BigDecimal newFromBalance = oldFromBalance.subtract(sum);
         final BigDecimal newToBalance = oldToBalance.add(sum);
 
         checkHasEnoughMoney(newFromBalance, oldFromBalance, sum, fromAccountId, toAccountId);
 
         final Transaction transaction = jedis.multi();
-        transaction.hmset(fromKey, singletonMap(FIELD_BALANCE, newFromBalance.toString()));
-        transaction.hmset(toKey, singletonMap(FIELD_BALANCE, newToBalance.toString()));
-        transactionResult = transaction.exec();
+        transaction.hmset(fromKey, makeBalanceHash(fromAccountId, newFromBalance));
+
+        if (sweptSlotKeys != null) {
+          transaction.del(sweptSlotKeys);
+        }
+
+        if (toHot) {
+          transaction.hset(toKey, FIELD_BALANCE, newToBalance.toPlainString());
+        } else {
+          transaction.hmset(toKey, makeBalanceHash(toAccountId, newToBalance));
+        }
+
+        final QueuedEntry entry = TransferLedger
+            .appendEntry(transaction, sum, fromAccountId, toAccountId);
+
+        if (recordKey != null) {
+          transaction.set(recordKey, fingerprint,
+              SetParams.setParams().ex((long) IdempotencyKeys.getTtlSeconds()));
+        }
+
+        final List<Object> transactionResult = transaction.exec();
 
         LOG.debug(String.valueOf(transactionResult));
-      } while (transactionResult == null);
+
+        if (transactionResult != null) {
+          TransferLedger.checkAppended(jedis, singletonList(entry));
+
+          return null;
+        }
+      }
+
+      prepareRetry(++failedAttempts, "from: " + fromAccountId + ", to: " + toAccountId);
     }
   }
 
-  private void checkSum(BigDecimal sum, Long fromAccountId, Long toAccountId) {
-    if (sum.compareTo(BigDecimal.ZERO) < 0) {
-      throw new IllegalArgumentException(
-          "Negative sum: " + sum + " (from: " + fromAccountId + ", to: " + toAccountId + ")");
+  /**
+   * A chunk of transfers is done in one WATCH/MULTI/EXEC: the balances of all its accounts are read
+   * by one pipeline, the transfers are applied in memory and the changed balances are written by
+   * one transaction. The whole chunk is retried when any of its accounts is changed concurrently,
+   * the transfers of the chunk which would be done get {@link Status#CONFLICT} if the retries run
+   * out.
+   * NOTE the slots of a hot account are watched and swept into its main balance by a chunk
+   */
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    final List<TransferResult> result = new ArrayList<>(transfers.size());
+
+    for (int from = 0; from < transfers.size(); from += BATCH_CHUNK_SIZE) {
+      final int to = Math.min(from + BATCH_CHUNK_SIZE, transfers.size());
+      result.addAll(transferChunk(transfers.subList(from, to)));
     }
+
+    return result;
   }
 
-  private void checkAccountIds(Long fromAccountId, Long toAccountId)
-      throws FromAndToAccountsTheSameException {
-    if (fromAccountId.equals(toAccountId)) {
-      throw new FromAndToAccountsTheSameException(fromAccountId.toString());
+  private List<TransferResult> transferChunk(List<Transfer> chunk) {
+    final Set<Long> accountIds = new LinkedHashSet<>();
+
+    for (Transfer transfer : chunk) {
+      if (transfer != null) {
+        accountIds.add(transfer.getFrom());
+        accountIds.add(transfer.getTo());
+      }
+    }
+
+    accountIds.remove(null);
+
+    final Set<String> watchedKeys = new LinkedHashSet<>();
+
+    for (Long accountId : accountIds) {
+      watchedKeys.add(makeAccountKey(accountId));
+
+      if (hotAccounts.isHot(accountId)) {
+        watchedKeys.addAll(Arrays.asList(hotAccounts.makeSlotKeys(accountId)));
+      }
     }
+
+    final String[] keys = watchedKeys.toArray(new String[0]);
+    int failedAttempts = 0;
+
+    while (true) {
+      final List<TransferResult> result = new ArrayList<>(chunk.size());
+
+      // The connection is back in the pool while the thread backs off, see transfer
+      try (Jedis jedis = jedisPool.getResource()) {
+        if (keys.length > 0) {
+          jedis.watch(keys);
+        }
+
+        final Map<Long, BigDecimal> oldBalances = getBalances(jedis, accountIds);
+        final Map<Long, BigDecimal> newBalances = new HashMap<>();
+
+        for (Transfer transfer : chunk) {
+          result.add(
+              TransferResults.of(() -> transferInMemory(transfer, oldBalances, newBalances)));
+        }
+
+        if (newBalances.isEmpty()) {
+          jedis.unwatch();
+
+          return result;
+        }
+
+        final Transaction transaction = jedis.multi();
+        newBalances.forEach((accountId, balance) -> {
+          transaction.hmset(makeAccountKey(accountId), makeBalanceHash(accountId, balance));
+
+          if (hotAccounts.isHot(accountId)) {
+            transaction.del(hotAccounts.makeSlotKeys(accountId));
+          }
+        });
+
+        final List<QueuedEntry> entries = new ArrayList<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+          if (result.get(i).getStatus() == Status.OK) {
+            final Transfer transfer = chunk.get(i);
+            entries.add(TransferLedger.appendEntry(transaction, transfer.getSum(),
+                transfer.getFrom(), transfer.getTo()));
+          }
+        }
+
+        final List<Object> transactionResult = transaction.exec();
+
+        LOG.debug(String.valueOf(transactionResult));
+
+        if (transactionResult != null) {
+          TransferLedger.checkAppended(jedis, entries);
+
+          return result;
+        }
+      }
+
+      try {
+        prepareRetry(++failedAttempts, "a chunk of " + chunk.size() + " transfers");
+      } catch (TransferConflictException e) {
+        final TransferResult conflict = new TransferResult(Status.CONFLICT, e.getMessage());
+        result.replaceAll(transferResult ->
+            transferResult.getStatus() == Status.OK ? conflict : transferResult);
+
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Backs off before the next attempt of an optimistic transaction
+   *
+   * @throws TransferConflictException if the attempts run out
+   */
+  private void prepareRetry(int failedAttempts, String details) throws TransferConflictException {
+    if (!retryPolicy.canRetry(failedAttempts)) {
+      throw new TransferConflictException(
+          "Accounts are changed concurrently, attempts: " + failedAttempts + " (" + details + ")");
+    }
+
+    retries.increment();
+    retryPolicy.backOff(failedAttempts);
+  }
+
+  @Inject(optional = true)
+  void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  private Map<Long, BigDecimal> getBalances(Jedis jedis, Set<Long> accountIds) {
+    final Pipeline pipeline = jedis.pipelined();
+    final Map<Long, Response<List<String>>> responses = new HashMap<>();
+    final Map<Long, List<Response<String>>> slotResponses = new HashMap<>();
+
+    for (Long accountId : accountIds) {
+      responses.put(accountId,
+          pipeline.hmget(makeAccountKey(accountId), makeBalanceField(accountId)));
+
+      if (hotAccounts.isHot(accountId)) {
+        final List<Response<String>> slotBalances = new ArrayList<>();
+
+        for (String slotKey : hotAccounts.makeSlotKeys(accountId)) {
+          slotBalances.add(pipeline.hget(slotKey, FIELD_BALANCE));
+        }
+
+        slotResponses.put(accountId, slotBalances);
+      }
+    }
+
+    pipeline.sync();
+
+    final Map<Long, BigDecimal> result = new HashMap<>();
+    responses.forEach((accountId, response) -> {
+      final String balance = response.get().get(0);
+
+      if (balance != null) {
+        BigDecimal total = new BigDecimal(balance);
+
+        for (Response<String> slotBalance : slotResponses.getOrDefault(accountId, emptyList())) {
+          total = addSlotBalance(total, slotBalance.get());
+        }
+
+        result.put(accountId, total);
+      }
+    });
+
+    return result;
+  }
+
+  private void transferInMemory(Transfer transfer, Map<Long, BigDecimal> oldBalances,
+      Map<Long, BigDecimal> newBalances)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    TransferResults.checkComplete(transfer);
+
+    final BigDecimal sum = transfer.getSum();
+    final Long fromAccountId = transfer.getFrom();
+    final Long toAccountId = transfer.getTo();
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    final BigDecimal oldFromBalance = newBalances
+        .getOrDefault(fromAccountId, oldBalances.get(fromAccountId));
+
+    if (oldFromBalance == null) {
+      throw new AccountNotFoundException(fromAccountId.toString());
+    }
+
+    final BigDecimal oldToBalance = newBalances
+        .getOrDefault(toAccountId, oldBalances.get(toAccountId));
+
+    if (oldToBalance == null) {
+      throw new AccountNotFoundException(toAccountId.toString());
+    }
+
+    final BigDecimal newFromBalance = oldFromBalance.subtract(sum);
+    checkHasEnoughMoney(newFromBalance, oldFromBalance, sum, fromAccountId, toAccountId);
+
+    newBalances.put(fromAccountId, newFromBalance);
+    newBalances.put(toAccountId, oldToBalance.add(sum));
   }
 
   @NotNull
-  private List<String> getBalanceAndCheck(String fromKey, Long accountId, Jedis jedis)
+  private List<String> getBalanceAndCheck(Long accountId, Jedis jedis)
       throws AccountNotFoundException {
-    final List<String> result = getBalance(jedis, fromKey);
+    final List<String> result = getBalance(jedis, accountId);
 
     if (result.get(0) == null) {
       throw new AccountNotFoundException(accountId.toString());
@@ -140,13 +621,4 @@ public class AccountDaoImpl implements AccountDao {
 
     return result;
   }
-
-  private void checkHasEnoughMoney(BigDecimal newBalance, BigDecimal oldBalance, BigDecimal sum,
-      Long fromAccountId, Long toAccountId) throws NotEnoughMoneyException {
-    if (newBalance.compareTo(BigDecimal.ZERO) < 0) {
-      throw new NotEnoughMoneyException(
-          "Not enough money: (" + oldBalance + " - " + sum + ") = " + newBalance + " (from: "
-              + fromAccountId + ", to: " + toAccountId + ")");
-    }
-  }
 }
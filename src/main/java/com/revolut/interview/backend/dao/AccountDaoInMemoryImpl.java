@@ -0,0 +1,132 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkHasEnoughMoney;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps accounts in the memory of this process, i.e. there is no network hop at all. It fits a
+ * single node deployment only.
+ * Balances are immutable values of a concurrent map, so they're read without locking, a transfer
+ * locks both accounts (see {@link StripedLocks}). The changes are recorded by the journal if it's
+ * set, e.g. to the {@link WriteAheadLog}.
+ */
+@Singleton
+public class AccountDaoInMemoryImpl implements AccountDao, AccountJournal.Target {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoInMemoryImpl.class);
+  private static final int STRIPES_NUM = 1024;
+
+  private final Map<Long, BigDecimal> balances = new ConcurrentHashMap<>();
+  private final AtomicLong lastId = new AtomicLong();
+  private final StripedLocks locks = new StripedLocks(STRIPES_NUM);
+  private AccountJournal journal = AccountJournal.NONE;
+
+  @Inject(optional = true)
+  void setJournal(AccountJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * NOTE an account is recorded before it's visible, so it's recorded before its transfers
+   */
+  @Override
+  public Account create(Account account) {
+    final long newId = lastId.incrementAndGet();
+    journal.created(newId, account.getBalance());
+    balances.put(newId, account.getBalance());
+    account.setId(newId);
+
+    LOG.debug("Created: " + account);
+
+    return account;
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final long firstId = lastId.getAndAdd(accounts.size()) + 1;
+
+    for (int i = 0; i < accounts.size(); i++) {
+      final Account account = accounts.get(i);
+      account.setId(firstId + i);
+      journal.created(account.getId(), account.getBalance());
+      balances.put(account.getId(), account.getBalance());
+    }
+
+    return accounts;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final Account result = new Account(id, getBalance(id));
+
+    LOG.debug("Found: " + result);
+
+    return result;
+  }
+
+  private BigDecimal getBalance(Long id) throws AccountNotFoundException {
+    final BigDecimal result = balances.get(id);
+
+    if (result == null) {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    return result;
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    locks.lock(fromAccountId, toAccountId);
+
+    try {
+      final BigDecimal oldFromBalance = getBalance(fromAccountId);
+      final BigDecimal oldToBalance = getBalance(toAccountId);
+      final BigDecimal newFromBalance = oldFromBalance.subtract(sum);
+
+      checkHasEnoughMoney(newFromBalance, oldFromBalance, sum, fromAccountId, toAccountId);
+
+      journal.transferred(sum, fromAccountId, toAccountId);
+      balances.put(fromAccountId, newFromBalance);
+      balances.put(toAccountId, oldToBalance.add(sum));
+    } finally {
+      locks.unlock(fromAccountId, toAccountId);
+    }
+  }
+
+  /**
+   * NOTE the keys are recorded by the decorator, see {@link LocalIdempotentAccountDao}
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    throw LocalIdempotentAccountDao.notDecorated(this);
+  }
+
+  @Override
+  public void restoreAccount(long id, BigDecimal balance) {
+    balances.put(id, balance);
+    lastId.accumulateAndGet(id, Math::max);
+  }
+
+  @Override
+  public void restoreTransfer(BigDecimal sum, long fromAccountId, long toAccountId) {
+    balances.merge(fromAccountId, sum.negate(), BigDecimal::add);
+    balances.merge(toAccountId, sum, BigDecimal::add);
+  }
+}
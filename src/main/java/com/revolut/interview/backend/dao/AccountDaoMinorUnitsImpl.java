@@ -0,0 +1,148 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * Keeps a balance as a long number of minor units with a fixed scale per account, so a transfer is
+ * done by HINCRBY (see transfer_units.lua), i.e. by exact integer arithmetic of Redis.
+ * NOTE the scale of an account is the scale of its opening balance but at least {@link #MIN_SCALE},
+ * a sum with more significant fraction digits than the scale is rejected
+ */
+public class AccountDaoMinorUnitsImpl extends AccountDaoScriptImpl {
+
+  static final String FIELD_UNITS = "units";
+  static final String FIELD_SCALE = "scale";
+  static final int MIN_SCALE = 2;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoMinorUnitsImpl.class);
+  private static final RedisScript TRANSFER_SCRIPT = new RedisScript("transfer_units.lua");
+  private static final RedisScript MIGRATE_SCRIPT = new RedisScript("migrate_units.lua");
+  private static final int MIGRATE_BATCH_SIZE = 1000;
+  private static final long MIGRATED = 1;
+  private static final long TOO_BIG_TO_MIGRATE = -1;
+
+  @Inject
+  public AccountDaoMinorUnitsImpl(JedisPool jedisPool) {
+    super(jedisPool, TRANSFER_SCRIPT);
+  }
+
+  @Override
+  Map<String, String> makeFieldsHash(Account account) {
+    return makeUnitsHash(account.getBalance());
+  }
+
+  static Map<String, String> makeUnitsHash(BigDecimal balance) {
+    final int scale = Math.max(balance.scale(), MIN_SCALE);
+    final long units;
+
+    try {
+      units = balance.setScale(scale).unscaledValue().longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Balance doesn't fit into minor units: " + balance, e);
+    }
+
+    final Map<String, String> result = new HashMap<>();
+    result.put(FIELD_UNITS, Long.toString(units));
+    result.put(FIELD_SCALE, Integer.toString(scale));
+
+    return result;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final List<String> accountFields;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      accountFields = jedis.hmget(makeAccountKey(id), FIELD_UNITS, FIELD_SCALE);
+    }
+
+    if (accountFields.get(0) == null) {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    final Account result = new Account(id, toBalance(accountFields));
+
+    LOG.debug("Found: " + result);
+
+    return result;
+  }
+
+  /**
+   * @param unitsFields the units and the scale of an account
+   */
+  static BigDecimal toBalance(List<String> unitsFields) {
+    return BigDecimal
+        .valueOf(Long.parseLong(unitsFields.get(0)), Integer.parseInt(unitsFields.get(1)));
+  }
+
+  @Override
+  List<String> makeTransferScriptArgs(BigDecimal sum) {
+    return asList(FIELD_UNITS, FIELD_SCALE, sum.toPlainString());
+  }
+
+  /**
+   * Converts decimal balances (see {@link AccountDaoImpl}) of all accounts into minor units in
+   * place. Already converted accounts are skipped, so it's safe to run it on every start.
+   * NOTE it should be done before the DAO is used: an account is not found until it's converted
+   *
+   * @return the number of converted accounts
+   */
+  public long migrateDecimalBalances() {
+    final ScanParams scanParams = new ScanParams().match(KEY_AUTHOR + ":*")
+        .count(MIGRATE_BATCH_SIZE);
+    final List<String> scriptArgs = asList(FIELD_BALANCE, FIELD_UNITS, FIELD_SCALE,
+        Integer.toString(MIN_SCALE));
+    long result = 0;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      MIGRATE_SCRIPT.load(jedis);
+      String cursor = ScanParams.SCAN_POINTER_START;
+
+      do {
+        final ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
+        final List<String> keys = scanResult.getResult();
+        final List<Response<Object>> responses = new ArrayList<>(keys.size());
+        final Pipeline pipeline = jedis.pipelined();
+
+        for (String key : keys) {
+          responses.add(pipeline.evalsha(MIGRATE_SCRIPT.getSha(), singletonList(key), scriptArgs));
+        }
+
+        pipeline.sync();
+
+        for (int i = 0; i < keys.size(); i++) {
+          final long status = (Long) responses.get(i).get();
+
+          if (status == MIGRATED) {
+            result++;
+          } else if (status == TOO_BIG_TO_MIGRATE) {
+            LOG.warn("Balance doesn't fit into minor units: " + keys.get(i));
+          }
+        }
+
+        cursor = scanResult.getCursor();
+      } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    LOG.info("Converted into minor units: " + result);
+
+    return result;
+  }
+}
@@ -0,0 +1,217 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkHasEnoughMoney;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps balances in the memory of this process as long minor units with the fixed scale
+ * {@link #SCALE} outside of the heap (see {@link OffHeapLongArray}), an account id is the index of
+ * its balance. So millions of accounts cost 8 bytes each and nothing for the GC. A transfer locks
+ * both accounts (see {@link StripedLocks}) and changes their units in place.
+ * NOTE a transfer of a sum of up to 15 digits doesn't allocate (see {@link #toUnits}), a
+ * contended lock does (its queue node)
+ * The changes are recorded by the journal if it's set, e.g. to the {@link WriteAheadLog}.
+ * NOTE a balance or a sum with more fraction digits than the scale is rejected
+ */
+@Singleton
+public class AccountDaoOffHeapImpl implements AccountDao, AccountJournal.Target {
+
+  static final int SCALE = 2;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoOffHeapImpl.class);
+  private static final int STRIPES_NUM = 1024;
+  private static final long NOT_CREATED = Long.MIN_VALUE;
+  // The unscaled value of a decimal of up to 15 digits is below 2^50
+  private static final int MAX_DOUBLE_PRECISION = 15;
+  private static final double[] POWERS_OF_TEN = {1, 10, 100};
+
+  private final OffHeapLongArray balances = new OffHeapLongArray(NOT_CREATED);
+  private final AtomicLong lastId = new AtomicLong();
+  private final StripedLocks locks = new StripedLocks(STRIPES_NUM);
+  private AccountJournal journal = AccountJournal.NONE;
+
+  /**
+   * NOTE a value of up to 15 digits with up to {@link #SCALE} fraction digits is converted via its
+   * double which doesn't allocate (unlike unscaledValue or setScale): doubleValue is the unscaled
+   * value divided by 10^scale, so its product with 10^scale is within 0.25 of the unscaled value
+   * and it's rounded to it exactly
+   */
+  private static long toUnits(BigDecimal value) {
+    final int scale = value.scale();
+
+    if (scale >= 0 && scale <= SCALE && value.precision() <= MAX_DOUBLE_PRECISION) {
+      return Math.round(value.doubleValue() * POWERS_OF_TEN[scale])
+          * (long) POWERS_OF_TEN[SCALE - scale];
+    }
+
+    final long result = value.setScale(SCALE).unscaledValue().longValueExact();
+
+    if (result == NOT_CREATED) {
+      throw new ArithmeticException("Reserved value: " + result);
+    }
+
+    return result;
+  }
+
+  @Inject(optional = true)
+  void setJournal(AccountJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * NOTE an account is recorded before it's visible, so it's recorded before its transfers
+   */
+  @Override
+  public Account create(Account account) {
+    final long units;
+
+    try {
+      units = toUnits(account.getBalance());
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+          "Balance doesn't fit into minor units: " + account.getBalance(), e);
+    }
+
+    final long newId = lastId.incrementAndGet();
+    journal.created(newId, account.getBalance());
+    balances.set(newId - 1, units);
+    account.setId(newId);
+
+    LOG.debug("Created: " + account);
+
+    return account;
+  }
+
+  /**
+   * NOTE no account is created if any balance doesn't fit into minor units
+   */
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final long[] units = new long[accounts.size()];
+
+    for (int i = 0; i < units.length; i++) {
+      try {
+        units[i] = toUnits(accounts.get(i).getBalance());
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException(
+            "Balance doesn't fit into minor units: " + accounts.get(i).getBalance(), e);
+      }
+    }
+
+    final long firstId = lastId.getAndAdd(units.length) + 1;
+
+    for (int i = 0; i < units.length; i++) {
+      journal.created(firstId + i, accounts.get(i).getBalance());
+      balances.set(firstId + i - 1, units[i]);
+      accounts.get(i).setId(firstId + i);
+    }
+
+    return accounts;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final Account result = new Account(id, BigDecimal.valueOf(getUnits(id), SCALE));
+
+    LOG.debug("Found: " + result);
+
+    return result;
+  }
+
+  private long getUnits(long id) throws AccountNotFoundException {
+    final long result = id < 1 ? NOT_CREATED : balances.get(id - 1);
+
+    if (result == NOT_CREATED) {
+      throw new AccountNotFoundException(Long.toString(id));
+    }
+
+    return result;
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    final long units;
+
+    try {
+      units = toUnits(sum);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+          "Illegal sum: " + sum + " (from: " + fromAccountId + ", to: " + toAccountId + ")", e);
+    }
+
+    transferUnits(units, fromAccountId, toAccountId);
+  }
+
+  void transferUnits(long units, long fromAccountId, long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException {
+    locks.lock(fromAccountId, toAccountId);
+
+    try {
+      final long oldFromUnits = getUnits(fromAccountId);
+      final long oldToUnits = getUnits(toAccountId);
+
+      if (oldFromUnits < units) {
+        final BigDecimal sum = BigDecimal.valueOf(units, SCALE);
+        final BigDecimal oldFromBalance = BigDecimal.valueOf(oldFromUnits, SCALE);
+        checkHasEnoughMoney(oldFromBalance.subtract(sum), oldFromBalance, sum, fromAccountId,
+            toAccountId);
+      }
+
+      final long newToUnits;
+
+      try {
+        newToUnits = Math.addExact(oldToUnits, units);
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException(
+            "Balance doesn't fit into minor units: " + BigDecimal.valueOf(oldToUnits, SCALE)
+                + " + " + BigDecimal.valueOf(units, SCALE) + " (to: " + toAccountId + ")");
+      }
+
+      journal.transferredUnits(units, SCALE, fromAccountId, toAccountId);
+      balances.set(fromAccountId - 1, oldFromUnits - units);
+      balances.set(toAccountId - 1, newToUnits);
+    } finally {
+      locks.unlock(fromAccountId, toAccountId);
+    }
+  }
+
+  /**
+   * NOTE the keys are recorded by the decorator, see {@link LocalIdempotentAccountDao}
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    throw LocalIdempotentAccountDao.notDecorated(this);
+  }
+
+  @Override
+  public void restoreAccount(long id, BigDecimal balance) {
+    balances.set(id - 1, toUnits(balance));
+    lastId.accumulateAndGet(id, Math::max);
+  }
+
+  @Override
+  public void restoreTransfer(BigDecimal sum, long fromAccountId, long toAccountId) {
+    final long units = toUnits(sum);
+    balances.set(fromAccountId - 1, balances.get(fromAccountId - 1) - units);
+    balances.set(toAccountId - 1, balances.get(toAccountId - 1) + units);
+  }
+
+  long getOffHeapBytes() {
+    return balances.getAllocatedBytes();
+  }
+}
@@ -0,0 +1,405 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkHasEnoughMoney;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits accounts into partitions by id, every partition is owned by one thread which is the only
+ * one reading and writing its balances, so there are no locks at all. The other threads send
+ * tasks to the owner via a lock-free queue.
+ * A transfer within a partition is one task. A transfer across partitions is a debit task in the
+ * partition of the from account followed by a credit task in the partition of the to account. The
+ * credit can't fail unless the to account is not created yet (its id is taken but the creation is
+ * in progress), in that case the debited money goes back by one more task. So money is never lost
+ * or created although it's in flight between the tasks.
+ * The changes are recorded by the journal if it's set, e.g. to the {@link WriteAheadLog}: a
+ * transfer is recorded by its credit, i.e. after the changes its debit depends on.
+ */
+@Singleton
+public class AccountDaoPartitionedImpl implements AccountDao, AccountJournal.Target,
+    AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoPartitionedImpl.class);
+  private static final int MAX_TASKS_PER_TRANSFER = 3;
+
+  private final Partition[] partitions;
+  private final AtomicLong lastId = new AtomicLong();
+  private boolean closed;
+  private AccountJournal journal = AccountJournal.NONE;
+
+  public AccountDaoPartitionedImpl() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  AccountDaoPartitionedImpl(int partitionsNum) {
+    partitions = new Partition[partitionsNum];
+
+    for (int i = 0; i < partitionsNum; i++) {
+      partitions[i] = new Partition("account-partition-" + i);
+    }
+  }
+
+  @Inject(optional = true)
+  void setJournal(AccountJournal journal) {
+    this.journal = journal;
+  }
+
+  private Partition getPartition(long accountId) {
+    return partitions[(int) Math.floorMod(accountId, (long) partitions.length)];
+  }
+
+  @Override
+  public Account create(Account account) {
+    final long newId = lastId.incrementAndGet();
+    final BigDecimal balance = account.getBalance();
+    journal.created(newId, balance);
+    getPartition(newId).call(balances -> balances.put(newId, balance)).join();
+    account.setId(newId);
+
+    LOG.debug("Created: " + account);
+
+    return account;
+  }
+
+  /**
+   * The accounts are put by one task per partition
+   */
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final long firstId = lastId.getAndAdd(accounts.size()) + 1;
+    final List<CompletableFuture<?>> results = new ArrayList<>(partitions.length);
+
+    for (int i = 0; i < accounts.size(); i++) {
+      accounts.get(i).setId(firstId + i);
+      journal.created(firstId + i, accounts.get(i).getBalance());
+    }
+
+    for (int i = 0; i < partitions.length && i < accounts.size(); i++) {
+      final int firstIndex = i;
+      final Partition partition = getPartition(firstId + firstIndex);
+      results.add(partition.call(balances -> {
+        for (int j = firstIndex; j < accounts.size(); j += partitions.length) {
+          balances.put(firstId + j, accounts.get(j).getBalance());
+        }
+
+        return null;
+      }));
+    }
+
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+
+    return accounts;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final BigDecimal balance = getPartition(id).call(balances -> balances.get(id)).join();
+
+    if (balance == null) {
+      throw new AccountNotFoundException(id.toString());
+    }
+
+    final Account result = new Account(id, balance);
+
+    LOG.debug("Found: " + result);
+
+    return result;
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    try {
+      transfer(sum, fromAccountId, toAccountId).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof AccountNotFoundException) {
+        throw (AccountNotFoundException) cause;
+      } else if (cause instanceof NotEnoughMoneyException) {
+        throw (NotEnoughMoneyException) cause;
+      } else if (cause instanceof FromAndToAccountsTheSameException) {
+        throw (FromAndToAccountsTheSameException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * NOTE the returned future is completed outside of the partition threads, so its callbacks don't
+   * delay other transfers
+   */
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    return transfer(sum, fromAccountId, toAccountId).thenApplyAsync(Function.identity());
+  }
+
+  private CompletableFuture<Void> transfer(BigDecimal sum, Long fromAccountId, Long toAccountId) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    try {
+      checkSum(sum, fromAccountId, toAccountId);
+      checkAccountIds(fromAccountId, toAccountId);
+      checkIdTaken(fromAccountId);
+      checkIdTaken(toAccountId);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+
+      return result;
+    }
+
+    final Partition fromPartition = getPartition(fromAccountId);
+    final Partition toPartition = getPartition(toAccountId);
+
+    try {
+      fromPartition.execute(fromBalances -> debit(fromBalances, sum, fromAccountId, toAccountId,
+          fromPartition, toPartition, result));
+    } catch (IllegalStateException e) {
+      result.completeExceptionally(e);
+    }
+
+    return result;
+  }
+
+  private void debit(Map<Long, BigDecimal> fromBalances, BigDecimal sum, Long fromAccountId,
+      Long toAccountId, Partition fromPartition, Partition toPartition,
+      CompletableFuture<Void> result) {
+    final BigDecimal oldFromBalance = fromBalances.get(fromAccountId);
+    final BigDecimal newFromBalance;
+
+    try {
+      if (oldFromBalance == null) {
+        throw new AccountNotFoundException(fromAccountId.toString());
+      }
+
+      newFromBalance = oldFromBalance.subtract(sum);
+      checkHasEnoughMoney(newFromBalance, oldFromBalance, sum, fromAccountId, toAccountId);
+    } catch (AccountNotFoundException | NotEnoughMoneyException e) {
+      result.completeExceptionally(e);
+
+      return;
+    }
+
+    fromBalances.put(fromAccountId, newFromBalance);
+
+    if (fromPartition == toPartition) {
+      credit(fromBalances, sum, fromAccountId, toAccountId, fromPartition, result);
+    } else {
+      toPartition.forward(toBalances ->
+          credit(toBalances, sum, fromAccountId, toAccountId, fromPartition, result));
+    }
+  }
+
+  private void checkIdTaken(Long accountId) throws AccountNotFoundException {
+    if (accountId < 1 || accountId > lastId.get()) {
+      throw new AccountNotFoundException(accountId.toString());
+    }
+  }
+
+  private void credit(Map<Long, BigDecimal> toBalances, BigDecimal sum, Long fromAccountId,
+      Long toAccountId, Partition fromPartition, CompletableFuture<Void> result) {
+    final BigDecimal oldToBalance = toBalances.get(toAccountId);
+
+    try {
+      if (oldToBalance == null) {
+        throw new AccountNotFoundException(toAccountId.toString());
+      }
+
+      journal.transferred(sum, fromAccountId, toAccountId);
+    } catch (AccountNotFoundException | RuntimeException e) {
+      fromPartition
+          .forward(fromBalances -> fromBalances.merge(fromAccountId, sum, BigDecimal::add));
+      result.completeExceptionally(e);
+
+      return;
+    }
+
+    toBalances.put(toAccountId, oldToBalance.add(sum));
+    result.complete(null);
+  }
+
+  /**
+   * NOTE the keys are recorded by the decorator, see {@link LocalIdempotentAccountDao}
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    throw LocalIdempotentAccountDao.notDecorated(this);
+  }
+
+  /**
+   * NOTE the change is applied by the tasks of the partitions, so it's visible to the later tasks
+   */
+  @Override
+  public void restoreAccount(long id, BigDecimal balance) {
+    getPartition(id).execute(balances -> balances.put(id, balance));
+    lastId.accumulateAndGet(id, Math::max);
+  }
+
+  @Override
+  public void restoreTransfer(BigDecimal sum, long fromAccountId, long toAccountId) {
+    getPartition(fromAccountId)
+        .execute(balances -> balances.merge(fromAccountId, sum.negate(), BigDecimal::add));
+    getPartition(toAccountId)
+        .execute(balances -> balances.merge(toAccountId, sum, BigDecimal::add));
+  }
+
+  /**
+   * Stops the partition threads after the tasks accepted so far are run, the later calls fail with
+   * an IllegalStateException. A transfer in flight is completed, i.e. its credit (or the refund of
+   * a failed credit) is run after its debit even if the partitions are being closed.
+   * NOTE a transfer is up to 3 tasks in a row (a debit, a credit and a refund), so after 3 rounds
+   * of barriers in every partition there are no tasks left
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    for (Partition partition : partitions) {
+      partition.close();
+    }
+
+    for (int i = 0; i < MAX_TASKS_PER_TRANSFER; i++) {
+      final List<CompletableFuture<?>> barriers = new ArrayList<>(partitions.length);
+
+      for (Partition partition : partitions) {
+        final CompletableFuture<Void> barrier = new CompletableFuture<>();
+        partition.forward(balances -> barrier.complete(null));
+        barriers.add(barrier);
+      }
+
+      CompletableFuture.allOf(barriers.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    for (Partition partition : partitions) {
+      partition.thread.interrupt();
+    }
+
+    try {
+      for (Partition partition : partitions) {
+        partition.thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class Partition implements Runnable {
+
+    private final Map<Long, BigDecimal> balances = new HashMap<>();
+    private final Queue<Consumer<Map<Long, BigDecimal>>> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    // The number of the callers between the check of closed and the offer of their tasks
+    private final AtomicInteger executing = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile boolean parked;
+
+    Partition(String name) {
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /**
+     * @throws IllegalStateException if the partition is closed
+     */
+    void execute(Consumer<Map<Long, BigDecimal>> task) {
+      executing.incrementAndGet();
+
+      try {
+        if (closed) {
+          throw new IllegalStateException("Closed: " + thread.getName());
+        }
+
+        forward(task);
+      } finally {
+        executing.decrementAndGet();
+      }
+    }
+
+    /**
+     * Offers a task of a transfer in flight, it's accepted even if the partition is closed
+     */
+    void forward(Consumer<Map<Long, BigDecimal>> task) {
+      tasks.offer(task);
+
+      if (parked) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    /**
+     * Stops accepting tasks and waits for the callers which passed the check to offer theirs
+     */
+    void close() {
+      closed = true;
+
+      while (executing.get() != 0) {
+        Thread.onSpinWait();
+      }
+    }
+
+    <T> CompletableFuture<T> call(Function<Map<Long, BigDecimal>, T> task) {
+      final CompletableFuture<T> result = new CompletableFuture<>();
+      execute(balances -> result.complete(task.apply(balances)));
+
+      return result;
+    }
+
+    @Override
+    public void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        final Consumer<Map<Long, BigDecimal>> task = tasks.poll();
+
+        if (task == null) {
+          parked = true;
+
+          // NOTE a task might be offered after the poll but before parked is set
+          if (tasks.isEmpty()) {
+            LockSupport.park(this);
+          }
+
+          parked = false;
+        } else {
+          try {
+            task.accept(balances);
+          } catch (RuntimeException e) {
+            LOG.error("Task failed", e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkHasEnoughMoney;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyIterator;
+import static java.util.stream.Collectors.toList;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Transfers money by one Lua script (see transfer.lua): it checks the accounts and updates both
+ * balances atomically in a single round trip, so there are no retries on concurrent updates. The
+ * script appends the transfer to the ledger (see {@link TransferLedger}) as well. Many transfers
+ * are done by one call of the batch script which calls it per transfer (see batch.lua).
+ */
+public class AccountDaoScriptImpl extends AccountDaoImpl {
+
+  static final long STATUS_OK = 0;
+  static final long STATUS_FROM_NOT_FOUND = 1;
+  static final long STATUS_TO_NOT_FOUND = 2;
+  static final long STATUS_NOT_ENOUGH_MONEY = 3;
+  static final long STATUS_SAME_ACCOUNTS = 4;
+  static final long STATUS_ILLEGAL_SUM = 5;
+  static final long STATUS_OVERFLOW = 6;
+  // The transfer is done before with the same idempotency key
+  static final long STATUS_DONE = 7;
+  static final long STATUS_KEY_REUSED = 8;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AccountDaoScriptImpl.class);
+  private static final RedisScript TRANSFER_SCRIPT = new RedisScript("transfer.lua");
+
+  final RedisScript transferScript;
+  private final RedisScript transferBatchScript;
+
+  @Inject
+  public AccountDaoScriptImpl(JedisPool jedisPool) {
+    this(jedisPool, TRANSFER_SCRIPT);
+  }
+
+  /**
+   * NOTE the script changes the balance field of the account hashes, so the accounts aren't
+   * bucketed
+   */
+  AccountDaoScriptImpl(JedisPool jedisPool, RedisScript transferScript) {
+    super(jedisPool, 0);
+    this.transferScript = transferScript;
+    transferBatchScript = transferScript.toBatch();
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      transferScript.load(jedis);
+      transferBatchScript.load(jedis);
+    }
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    final List<?> scriptResult;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      scriptResult = (List<?>) transferScript.eval(jedis,
+          makeTransferScriptKeys(fromAccountId, toAccountId, null),
+          makeTransferScriptArgs(sum, fromAccountId, toAccountId, null));
+    }
+
+    LOG.debug(String.valueOf(scriptResult));
+
+    checkScriptResult(scriptResult, sum, fromAccountId, toAccountId);
+  }
+
+  /**
+   * The script checks and sets the record of the key with the balances.
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      IdempotencyKeyReusedException {
+    IdempotencyKeys.checkKey(idempotencyKey);
+    checkSum(sum, fromAccountId, toAccountId);
+    checkAccountIds(fromAccountId, toAccountId);
+
+    final List<?> scriptResult;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      scriptResult = (List<?>) transferScript.eval(jedis,
+          makeTransferScriptKeys(fromAccountId, toAccountId, idempotencyKey),
+          makeTransferScriptArgs(sum, fromAccountId, toAccountId, idempotencyKey));
+    }
+
+    LOG.debug(String.valueOf(scriptResult));
+
+    if (!isDoneBefore(scriptResult, idempotencyKey, sum, fromAccountId, toAccountId)) {
+      checkScriptResult(scriptResult, sum, fromAccountId, toAccountId);
+    }
+  }
+
+  /**
+   * @param idempotencyKey the idempotency key or null if there is no such key
+   */
+  List<String> makeTransferScriptKeys(Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    final List<String> result = TransferHistory.appendKeys(asList(makeAccountKey(fromAccountId),
+        makeAccountKey(toAccountId), TransferLedger.KEY_LEDGER), fromAccountId, toAccountId);
+
+    if (idempotencyKey != null) {
+      result.add(IdempotencyKeys.makeRecordKey(idempotencyKey));
+    }
+
+    return result;
+  }
+
+  /**
+   * @param idempotencyKey the idempotency key or null if there is no such key
+   */
+  List<String> makeTransferScriptArgs(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    final List<String> result = TransferHistory.appendArgs(TransferLedger
+        .appendEntryArgs(makeTransferScriptArgs(sum), fromAccountId, toAccountId));
+
+    return idempotencyKey == null ? result
+        : IdempotencyKeys.appendRecordArgs(result, sum, fromAccountId, toAccountId);
+  }
+
+  /**
+   * The script is called for every transfer of a chunk by one call of the batch script, i.e. a
+   * chunk costs one round trip.
+   */
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    final List<TransferResult> result = new ArrayList<>(transfers.size());
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      for (int from = 0; from < transfers.size(); from += BATCH_CHUNK_SIZE) {
+        final int to = Math.min(from + BATCH_CHUNK_SIZE, transfers.size());
+        result.addAll(transferChunk(jedis, transfers.subList(from, to)));
+      }
+    }
+
+    return result;
+  }
+
+  private List<TransferResult> transferChunk(Jedis jedis, List<Transfer> chunk) {
+    final List<Transfer> validTransfers = chunk.stream().filter(AccountDaoScriptImpl::isValid)
+        .collect(toList());
+    final Iterator<?> scriptResults = validTransfers.isEmpty() ? emptyIterator()
+        : evalTransferBatch(jedis, validTransfers).iterator();
+    final List<TransferResult> result = new ArrayList<>(chunk.size());
+
+    for (Transfer transfer : chunk) {
+      final Object scriptResult = isValid(transfer) ? scriptResults.next() : null;
+
+      result.add(TransferResults.of(() -> {
+        // An invalid transfer isn't sent to Redis, one of these checks fails for it
+        if (scriptResult == null) {
+          TransferResults.checkComplete(transfer);
+          checkSum(transfer.getSum(), transfer.getFrom(), transfer.getTo());
+        }
+
+        checkScriptResult(toScriptResult(scriptResult), transfer.getSum(), transfer.getFrom(),
+            transfer.getTo());
+      }));
+    }
+
+    return result;
+  }
+
+  /**
+   * @return true if the transfer can be sent to the script
+   */
+  static boolean isValid(Transfer transfer) {
+    return transfer != null && transfer.getSum() != null && transfer.getFrom() != null
+        && transfer.getTo() != null && transfer.getSum().signum() >= 0;
+  }
+
+  /**
+   * Calls the transfer script for every transfer by one call of the batch script (see batch.lua),
+   * i.e. in one round trip, atomically and in the given order. A failed transfer doesn't affect
+   * the rest.
+   *
+   * @param transfers the valid transfers, see {@link #isValid(Transfer)}
+   * @return the result of the transfer script or the error of Redis (JedisDataException) per
+   * transfer, see {@link #toScriptResult(Object)}
+   */
+  List<?> evalTransferBatch(Jedis jedis, List<Transfer> transfers) {
+    final List<String> keys = new ArrayList<>();
+    final List<String> args = new ArrayList<>();
+    args.add(Integer.toString(transfers.size()));
+
+    for (Transfer transfer : transfers) {
+      final List<String> transferKeys = makeTransferScriptKeys(transfer.getFrom(),
+          transfer.getTo(), null);
+      final List<String> transferArgs = makeTransferScriptArgs(transfer.getSum(),
+          transfer.getFrom(), transfer.getTo(), null);
+      keys.addAll(transferKeys);
+      args.add(Integer.toString(transferKeys.size()));
+      args.add(Integer.toString(transferArgs.size()));
+      args.addAll(transferArgs);
+    }
+
+    final List<?> result = (List<?>) transferBatchScript.eval(jedis, keys, args);
+
+    LOG.debug(String.valueOf(result));
+
+    return result;
+  }
+
+  /**
+   * @param reply a reply of {@link #evalTransferBatch(Jedis, List)} per transfer
+   * @return the result of the transfer script
+   * @throws JedisDataException if the transfer failed with an error of Redis
+   */
+  static List<?> toScriptResult(Object reply) {
+    if (reply instanceof JedisDataException) {
+      throw (JedisDataException) reply;
+    }
+
+    return (List<?>) reply;
+  }
+
+  /**
+   * @return the arguments of the transfer script which change the balances
+   */
+  List<String> makeTransferScriptArgs(BigDecimal sum) {
+    return asList(FIELD_BALANCE, sum.toPlainString());
+  }
+
+  /**
+   * @return true if the transfer is done before with the same idempotency key
+   * @throws IdempotencyKeyReusedException if the key is recorded for another transfer
+   */
+  static boolean isDoneBefore(List<?> scriptResult, String idempotencyKey, BigDecimal sum,
+      Long fromAccountId, Long toAccountId) throws IdempotencyKeyReusedException {
+    final long status = (Long) scriptResult.get(0);
+
+    if (status == STATUS_KEY_REUSED) {
+      IdempotencyKeys.checkFingerprint((String) scriptResult.get(1), idempotencyKey, sum,
+          fromAccountId, toAccountId);
+    }
+
+    return status == STATUS_DONE;
+  }
+
+  static void checkScriptResult(List<?> scriptResult, BigDecimal sum, Long fromAccountId,
+      Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    final long status = (Long) scriptResult.get(0);
+
+    if (status == STATUS_FROM_NOT_FOUND) {
+      throw new AccountNotFoundException(fromAccountId.toString());
+    } else if (status == STATUS_TO_NOT_FOUND) {
+      throw new AccountNotFoundException(toAccountId.toString());
+    } else if (status == STATUS_NOT_ENOUGH_MONEY) {
+      final BigDecimal oldFromBalance = new BigDecimal((String) scriptResult.get(1));
+      checkHasEnoughMoney(oldFromBalance.subtract(sum), oldFromBalance, sum, fromAccountId,
+          toAccountId);
+    } else if (status == STATUS_SAME_ACCOUNTS) {
+      throw new FromAndToAccountsTheSameException(fromAccountId.toString());
+    } else if (status == STATUS_ILLEGAL_SUM) {
+      throw new IllegalArgumentException(
+          "Illegal sum: " + sum + " (from: " + fromAccountId + ", to: " + toAccountId + ")");
+    } else if (status == STATUS_OVERFLOW) {
+      // The same error as Redis replies to HINCRBY
+      throw new JedisDataException("ERR increment or decrement would overflow (to: " + toAccountId
+          + ")");
+    } else if (status != STATUS_OK) {
+      throw new IllegalStateException("Unknown transfer status: " + status);
+    }
+  }
+}
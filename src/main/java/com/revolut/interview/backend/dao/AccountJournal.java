@@ -0,0 +1,49 @@
+package com.revolut.interview.backend.dao;
+
+import java.math.BigDecimal;
+
+/**
+ * Records the changes of accounts kept in the memory of this process, so they can be restored after
+ * a restart (see {@link WriteAheadLog}). A DAO records a change before it applies it and inside the
+ * critical section which applies it, so the changes of every account are recorded in the order they
+ * are applied. A change isn't applied if it can't be recorded.
+ */
+public interface AccountJournal {
+
+  AccountJournal NONE = new AccountJournal() {
+    @Override
+    public void created(long id, BigDecimal balance) {
+    }
+
+    @Override
+    public void transferred(BigDecimal sum, long fromAccountId, long toAccountId) {
+    }
+
+    // NOTE the default one would convert the units to a sum for nothing
+    @Override
+    public void transferredUnits(long units, int scale, long fromAccountId, long toAccountId) {
+    }
+  };
+
+  void created(long id, BigDecimal balance);
+
+  void transferred(BigDecimal sum, long fromAccountId, long toAccountId);
+
+  /**
+   * Like {@link #transferred(BigDecimal, long, long)} for a sum of minor units
+   */
+  default void transferredUnits(long units, int scale, long fromAccountId, long toAccountId) {
+    transferred(BigDecimal.valueOf(units, scale), fromAccountId, toAccountId);
+  }
+
+  /**
+   * A DAO the recorded changes are applied to as they are, i.e. without any check, before it's
+   * used
+   */
+  interface Target {
+
+    void restoreAccount(long id, BigDecimal balance);
+
+    void restoreTransfer(BigDecimal sum, long fromAccountId, long toAccountId);
+  }
+}
@@ -1,6 +1,6 @@
 package com.revolut.interview.backend.dao;
 
-public class AccountNotFoundException extends Exception {
+public class AccountNotFoundException extends DomainException {
 
   private static final long serialVersionUID = 7241613258348808765L;
 
@@ -0,0 +1,161 @@
+package com.revolut.interview.backend.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A binary file of the balances of all accounts at a position of the {@link WriteAheadLog}:
+ * [int magic][long position] then [long id][int scale][int length][unscaled bytes] per account in
+ * the ascending order of ids and [int CRC32] of all that at the end. A snapshot is written to a
+ * temporary file which is renamed when it's complete, so a crash never leaves a partial one.
+ */
+final class AccountSnapshot {
+
+  static final String PREFIX = "snapshot-";
+  static final String SUFFIX = ".bin";
+  static final String TEMP_SUFFIX = ".tmp";
+  private static final int MAGIC = 0x41434E54;
+  private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private AccountSnapshot() {
+  }
+
+  static Path makePath(Path dir, long position) {
+    return dir.resolve(String.format("%s%020d%s", PREFIX, position, SUFFIX));
+  }
+
+  static long parsePosition(Path path) {
+    final String name = path.getFileName().toString();
+
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+
+  /**
+   * Passes the accounts to the consumer in the ascending order of ids. The file is mapped into
+   * memory, so it's read sequentially without copying.
+   * NOTE a snapshot is limited by 2 GiB, i.e. ~100M accounts
+   *
+   * @return the position of the log the snapshot is taken at
+   * @throws IOException if the file can't be read or it's corrupted
+   */
+  static long load(Path path, Consumer consumer) throws IOException {
+    final MappedByteBuffer buffer;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.remaining() < HEADER_BYTES + Integer.BYTES || buffer.getInt() != MAGIC) {
+      throw new IOException("Not an account snapshot: " + path);
+    }
+
+    final ByteBuffer content = buffer.duplicate();
+    content.position(0).limit(buffer.limit() - Integer.BYTES);
+    final CRC32 crc = new CRC32();
+    crc.update(content);
+
+    if ((int) crc.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+      throw new IOException("Account snapshot is corrupted: " + path);
+    }
+
+    final long result = buffer.getLong();
+    buffer.limit(buffer.limit() - Integer.BYTES);
+
+    while (buffer.hasRemaining()) {
+      final long id = buffer.getLong();
+      final int scale = buffer.getInt();
+      final byte[] unscaled = new byte[buffer.getInt()];
+      buffer.get(unscaled);
+      consumer.accept(id, new BigDecimal(new BigInteger(unscaled), scale));
+    }
+
+    return result;
+  }
+
+  static Writer create(Path dir, long position) throws IOException {
+    return new Writer(dir, position);
+  }
+
+  interface Consumer {
+
+    void accept(long id, BigDecimal balance) throws IOException;
+  }
+
+  static class Writer implements Closeable {
+
+    private final Path path;
+    private final Path tempPath;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final DataOutputStream out;
+    private long lastId = Long.MIN_VALUE;
+    private boolean committed;
+
+    private Writer(Path dir, long position) throws IOException {
+      path = makePath(dir, position);
+      tempPath = dir.resolve(path.getFileName() + TEMP_SUFFIX);
+      channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      out = new DataOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES), crc));
+      out.writeInt(MAGIC);
+      out.writeLong(position);
+    }
+
+    void add(long id, BigDecimal balance) throws IOException {
+      if (id <= lastId) {
+        throw new IllegalArgumentException("Account ids aren't ascending: " + lastId + ", " + id);
+      }
+
+      final byte[] unscaled = balance.unscaledValue().toByteArray();
+      out.writeLong(id);
+      out.writeInt(balance.scale());
+      out.writeInt(unscaled.length);
+      out.write(unscaled);
+      lastId = id;
+    }
+
+    /**
+     * Fsyncs the snapshot and renames it, it replaces a snapshot of the same position
+     *
+     * @return the path of the snapshot
+     */
+    Path commit() throws IOException {
+      // NOTE the checksum itself isn't checksummed
+      final int checksum = (int) crc.getValue();
+      out.writeInt(checksum);
+      out.flush();
+      channel.force(false);
+      Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      committed = true;
+
+      return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+
+      if (!committed) {
+        Files.deleteIfExists(tempPath);
+      }
+    }
+  }
+}
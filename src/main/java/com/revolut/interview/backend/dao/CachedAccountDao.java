@@ -0,0 +1,282 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.dao.NearCache.Stats;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisHost;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisPort;
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Caches the balances found by the {@link Delegate} DAO in the memory of this node (see
+ * {@link NearCache}). The accounts changed by this node are invalidated right after the change,
+ * the accounts changed by any node are invalidated by Redis keyspace notifications of hash
+ * commands. The whole cache is invalidated when the notifications (re)start, so the changes made
+ * while they were off aren't missed.
+ * NOTE the notifications are enabled in Redis by this class (notify-keyspace-events). A change of
+ * a bucket of accounts (see {@link AccountDaoImpl}) invalidates all its accounts, a change of a
+ * slot of a hot account (see {@link HotAccounts}) invalidates the account
+ */
+@Singleton
+public class CachedAccountDao implements AccountDao, AutoCloseable {
+
+  static final String PROPERTY_MAX_SIZE = "account.cache.maxSize";
+  static final String PROPERTY_TTL_MILLIS = "account.cache.ttlMillis";
+  private static final Logger LOG = LoggerFactory.getLogger(CachedAccountDao.class);
+  private static final int DEFAULT_MAX_SIZE = 100_000;
+  private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final String KEYSPACE_CHANNEL_PREFIX = "__keyspace@*__:";
+  private static final String KEYSPACE_CHANNEL_DB_END = "__:";
+  private static final String KEYSPACE_EVENTS_PARAM = "notify-keyspace-events";
+  // K - keyspace notifications, h - hash commands
+  private static final String KEYSPACE_EVENTS = "Kh";
+  private static final long RESUBSCRIBE_DELAY_MILLIS = 1000;
+
+  private final AccountDao delegate;
+  private final NearCache<Long, BigDecimal> cache;
+  private final String redisHost;
+  private final int redisPort;
+  private final Thread invalidationThread;
+  private final Invalidator invalidator = new Invalidator();
+  private final int bucketSize = Integer.getInteger(AccountDaoImpl.PROPERTY_BUCKET_SIZE, 0);
+  private volatile boolean closed;
+
+  @Inject
+  public CachedAccountDao(@Delegate AccountDao delegate, @RedisHost String redisHost,
+      @RedisPort int redisPort, Metrics metrics) {
+    this.delegate = delegate;
+    this.redisHost = redisHost;
+    this.redisPort = redisPort;
+
+    final String cacheHelp = "The requests of the account cache by the result";
+    final String evictionsHelp = "The entries removed from the account cache by the cause";
+    cache = new NearCache<>(Integer.getInteger(PROPERTY_MAX_SIZE, DEFAULT_MAX_SIZE),
+        TimeUnit.MILLISECONDS.toNanos(Long.getLong(PROPERTY_TTL_MILLIS, DEFAULT_TTL_MILLIS)),
+        new Stats(
+            metrics.counter("account_cache_requests_total", cacheHelp, "result=\"hit\""),
+            metrics.counter("account_cache_requests_total", cacheHelp, "result=\"miss\""),
+            metrics.counter("account_cache_evictions_total", evictionsHelp, "cause=\"size\""),
+            metrics.counter("account_cache_evictions_total", evictionsHelp, "cause=\"expired\""),
+            metrics.counter("account_cache_evictions_total", evictionsHelp,
+                "cause=\"invalidated\"")));
+    metrics.gauge("account_cache_size", "The number of entries in the account cache",
+        cache::size);
+
+    invalidationThread = new Thread(this::listenToInvalidations, "account-cache-invalidation");
+    invalidationThread.setDaemon(true);
+    invalidationThread.start();
+  }
+
+  private static String parseKey(String channel) {
+    return channel
+        .substring(channel.indexOf(KEYSPACE_CHANNEL_DB_END) + KEYSPACE_CHANNEL_DB_END.length());
+  }
+
+  /**
+   * @return the number after the prefix and before the suffix of the key or null if there is no
+   * such number
+   */
+  private static Long parseNumber(String key, String prefix, String suffix) {
+    if (!key.startsWith(prefix) || !key.endsWith(suffix)) {
+      return null;
+    }
+
+    try {
+      return Long.valueOf(key.substring(prefix.length(), key.length() - suffix.length()));
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  private void invalidate(String key) {
+    Long accountId = parseNumber(key, AccountDaoImpl.KEY_AUTHOR + ":", "");
+
+    if (accountId == null) {
+      accountId = HotAccounts.parseSlotKey(key);
+    }
+
+    if (accountId != null) {
+      cache.invalidate(accountId);
+    } else if (bucketSize > 0) {
+      final Long bucket = parseNumber(key, AccountDaoImpl.KEY_BUCKET + ":{", "}");
+
+      if (bucket != null) {
+        for (long id = bucket * bucketSize; id < (bucket + 1) * bucketSize; id++) {
+          cache.invalidate(id);
+        }
+      }
+    }
+  }
+
+  private void listenToInvalidations() {
+    while (!closed) {
+      try (Jedis jedis = new Jedis(redisHost, redisPort)) {
+        enableKeyspaceEvents(jedis);
+        jedis.psubscribe(invalidator, KEYSPACE_CHANNEL_PREFIX + AccountDaoImpl.KEY_AUTHOR + ":*",
+            KEYSPACE_CHANNEL_PREFIX + AccountDaoImpl.KEY_BUCKET + ":*");
+      } catch (JedisException e) {
+        if (!closed) {
+          LOG.warn("Account cache invalidation failed, retry in " + RESUBSCRIBE_DELAY_MILLIS
+              + " ms: " + e);
+        }
+      }
+
+      // The notifications of the changes might be lost
+      cache.invalidateAll();
+
+      try {
+        Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void enableKeyspaceEvents(Jedis jedis) {
+    final List<String> param = jedis.configGet(KEYSPACE_EVENTS_PARAM);
+    final String oldEvents = param.size() > 1 ? param.get(1) : "";
+    final StringBuilder newEvents = new StringBuilder(oldEvents);
+
+    for (char event : KEYSPACE_EVENTS.toCharArray()) {
+      // "A" is an alias of all the classes of commands
+      if (oldEvents.indexOf(event) < 0 && (event == 'K' || oldEvents.indexOf('A') < 0)) {
+        newEvents.append(event);
+      }
+    }
+
+    if (newEvents.length() != oldEvents.length()) {
+      jedis.configSet(KEYSPACE_EVENTS_PARAM, newEvents.toString());
+    }
+  }
+
+  @Override
+  public Account create(Account account) {
+    final Account result = delegate.create(account);
+    cache.invalidate(result.getId());
+
+    return result;
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final List<Account> result = delegate.createInBulk(accounts);
+    result.forEach(account -> cache.invalidate(account.getId()));
+
+    return result;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    return new Account(id, cache.get(id, accountId -> delegate.findById(accountId).getBalance()));
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    try {
+      delegate.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+    } finally {
+      invalidate(fromAccountId, toAccountId);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    return delegate.transferMoneyAsync(sum, fromAccountId, toAccountId)
+        .whenComplete((ignored, e) -> invalidate(fromAccountId, toAccountId));
+  }
+
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException, IdempotencyKeyReusedException {
+    try {
+      delegate.transferMoneyOnce(sum, fromAccountId, toAccountId, idempotencyKey);
+    } finally {
+      invalidate(fromAccountId, toAccountId);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    return delegate.transferMoneyOnceAsync(sum, fromAccountId, toAccountId, idempotencyKey)
+        .whenComplete((ignored, e) -> invalidate(fromAccountId, toAccountId));
+  }
+
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    try {
+      return delegate.transferMoneyInBatch(transfers);
+    } finally {
+      for (Transfer transfer : transfers) {
+        if (transfer != null) {
+          invalidate(transfer.getFrom(), transfer.getTo());
+        }
+      }
+    }
+  }
+
+  // NOTE a failed transfer might be done anyway, e.g. if the connection is lost before the reply
+  private void invalidate(Long fromAccountId, Long toAccountId) {
+    if (fromAccountId != null) {
+      cache.invalidate(fromAccountId);
+    }
+
+    if (toAccountId != null) {
+      cache.invalidate(toAccountId);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+
+    if (invalidator.isSubscribed()) {
+      invalidator.punsubscribe();
+    }
+
+    invalidationThread.interrupt();
+  }
+
+  private class Invalidator extends JedisPubSub {
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+      LOG.info("Account cache invalidation started: " + pattern);
+      cache.invalidateAll();
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+      invalidate(parseKey(channel));
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER})
+  @BindingAnnotation
+  public @interface Delegate {
+
+  }
+}
@@ -0,0 +1,276 @@
+package com.revolut.interview.backend.dao;
+
+import static com.revolut.interview.backend.dao.TransferChecks.checkAccountIds;
+import static com.revolut.interview.backend.dao.TransferChecks.checkSum;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.metrics.Counter;
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+
+/**
+ * Coalesces concurrent transfers into batches which are done by one call of the batch script of
+ * the {@link Delegate} DAO (see {@link AccountDaoScriptImpl#evalTransferBatch}), i.e. a batch
+ * costs one round trip to Redis instead of one per transfer. The batches are collected by one
+ * thread: it takes the first waiting transfer and the ones coming within the window after it, up
+ * to the max size. Every transfer gets its own result as if it were done alone.
+ * NOTE a transfer with an idempotency key isn't coalesced
+ */
+@Singleton
+public class CoalescingAccountDao implements AccountDao, AutoCloseable {
+
+  static final String PROPERTY_ENABLED = "account.coalescing.enabled";
+  static final String PROPERTY_WINDOW_MICROS = "account.coalescing.windowMicros";
+  static final String PROPERTY_MAX_BATCH_SIZE = "account.coalescing.maxBatchSize";
+  private static final Logger LOG = LoggerFactory.getLogger(CoalescingAccountDao.class);
+  private static final long DEFAULT_WINDOW_MICROS = 200;
+  private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+  private final AccountDaoScriptImpl delegate;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final BlockingQueue<PendingTransfer> pendingTransfers = new LinkedBlockingQueue<>();
+  private final Thread coalescingThread;
+  private Counter batches = new Counter();
+  private Counter coalescedTransfers = new Counter();
+  private volatile boolean closed;
+
+  @Inject
+  public CoalescingAccountDao(@Delegate AccountDaoScriptImpl delegate) {
+    this(delegate,
+        TimeUnit.MICROSECONDS.toNanos(Long.getLong(PROPERTY_WINDOW_MICROS, DEFAULT_WINDOW_MICROS)),
+        Integer.getInteger(PROPERTY_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE));
+  }
+
+  CoalescingAccountDao(AccountDaoScriptImpl delegate, long windowNanos, int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+    }
+
+    this.delegate = delegate;
+    this.windowNanos = windowNanos;
+    this.maxBatchSize = maxBatchSize;
+    coalescingThread = new Thread(this::coalesce, "account-coalescing");
+    coalescingThread.setDaemon(true);
+    coalescingThread.start();
+  }
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(PROPERTY_ENABLED);
+  }
+
+  @Inject(optional = true)
+  void setMetrics(Metrics metrics) {
+    batches = metrics.counter("account_coalescing_batches_total",
+        "The number of batches of coalesced transfers done by one call of Redis", "");
+    coalescedTransfers = metrics.counter("account_coalescing_transfers_total",
+        "The number of transfers done in the batches of coalesced transfers", "");
+  }
+
+  @Override
+  public Account create(Account account) {
+    return delegate.create(account);
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    return delegate.createInBulk(accounts);
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    return delegate.findById(id);
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+    try {
+      transferMoneyAsync(sum, fromAccountId, toAccountId).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof AccountNotFoundException) {
+        throw (AccountNotFoundException) cause;
+      } else if (cause instanceof NotEnoughMoneyException) {
+        throw (NotEnoughMoneyException) cause;
+      } else if (cause instanceof FromAndToAccountsTheSameException) {
+        throw (FromAndToAccountsTheSameException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * NOTE the returned future is completed by the coalescing thread, so its callbacks delay the next
+   * batch and they should be short (like the ones of {@link AccountDaoAsyncImpl})
+   */
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    final PendingTransfer pendingTransfer = new PendingTransfer(
+        new Transfer(sum, fromAccountId, toAccountId));
+
+    try {
+      checkSum(sum, fromAccountId, toAccountId);
+      checkAccountIds(fromAccountId, toAccountId);
+      pendingTransfers.add(pendingTransfer);
+
+      // NOTE the coalescing thread might have failed the waiting transfers before it was added
+      if (closed && pendingTransfers.remove(pendingTransfer)) {
+        pendingTransfer.done.completeExceptionally(makeClosedException());
+      }
+    } catch (IllegalArgumentException | FromAndToAccountsTheSameException e) {
+      pendingTransfer.done.completeExceptionally(e);
+    }
+
+    return pendingTransfer.done;
+  }
+
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      IdempotencyKeyReusedException {
+    delegate.transferMoneyOnce(sum, fromAccountId, toAccountId, idempotencyKey);
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    return delegate.transferMoneyOnceAsync(sum, fromAccountId, toAccountId, idempotencyKey);
+  }
+
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    return delegate.transferMoneyInBatch(transfers);
+  }
+
+  private void coalesce() {
+    final List<PendingTransfer> batch = new ArrayList<>(maxBatchSize);
+
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        batch.add(pendingTransfers.take());
+        final long windowEnd = System.nanoTime() + windowNanos;
+        pendingTransfers.drainTo(batch, maxBatchSize - batch.size());
+
+        while (batch.size() < maxBatchSize) {
+          final PendingTransfer pendingTransfer = pendingTransfers
+              .poll(windowEnd - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+          if (pendingTransfer == null) {
+            break;
+          }
+
+          batch.add(pendingTransfer);
+          pendingTransfers.drainTo(batch, maxBatchSize - batch.size());
+        }
+
+        transfer(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    final IllegalStateException closedException = makeClosedException();
+    batch.addAll(pendingTransfers);
+    pendingTransfers.clear();
+    batch.forEach(pendingTransfer -> pendingTransfer.done.completeExceptionally(closedException));
+  }
+
+  private static IllegalStateException makeClosedException() {
+    return new IllegalStateException("Coalescing account DAO is closed");
+  }
+
+  private void transfer(List<PendingTransfer> batch) {
+    final List<Transfer> transfers = new ArrayList<>(batch.size());
+    batch.forEach(pendingTransfer -> transfers.add(pendingTransfer.transfer));
+    final List<?> scriptResults;
+
+    try (Jedis jedis = delegate.jedisPool.getResource()) {
+      scriptResults = delegate.evalTransferBatch(jedis, transfers);
+    } catch (RuntimeException e) {
+      LOG.error("Batch of transfers failed: " + batch.size(), e);
+      batch.forEach(pendingTransfer -> pendingTransfer.done.completeExceptionally(e));
+
+      return;
+    }
+
+    batches.increment();
+    coalescedTransfers.add(batch.size());
+
+    for (int i = 0; i < batch.size(); i++) {
+      final Transfer transfer = transfers.get(i);
+      final CompletableFuture<Void> done = batch.get(i).done;
+
+      try {
+        AccountDaoScriptImpl.checkScriptResult(
+            AccountDaoScriptImpl.toScriptResult(scriptResults.get(i)), transfer.getSum(),
+            transfer.getFrom(), transfer.getTo());
+        done.complete(null);
+      } catch (AccountNotFoundException | NotEnoughMoneyException
+          | FromAndToAccountsTheSameException | RuntimeException e) {
+        done.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Stops the coalescing thread, the waiting transfers fail
+   */
+  @Override
+  public void close() {
+    closed = true;
+    coalescingThread.interrupt();
+
+    try {
+      coalescingThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class PendingTransfer {
+
+    private final Transfer transfer;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    PendingTransfer(Transfer transfer) {
+      this.transfer = transfer;
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER})
+  @BindingAnnotation
+  public @interface Delegate {
+
+  }
+}
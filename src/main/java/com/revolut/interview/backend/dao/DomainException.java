@@ -0,0 +1,15 @@
+package com.revolut.interview.backend.dao;
+
+/**
+ * An expected outcome of an operation which is reported to a client, e.g. there is not enough
+ * money for a transfer. NOTE such exceptions are frequent under load and their stack traces are
+ * never used, so they aren't filled in (it's the most expensive part of creating an exception)
+ */
+public abstract class DomainException extends Exception {
+
+  private static final long serialVersionUID = 3860145326471537218L;
+
+  protected DomainException(String message) {
+    super(message, null, false, false);
+  }
+}
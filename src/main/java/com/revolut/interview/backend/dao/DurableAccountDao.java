@@ -0,0 +1,103 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Returns from the changes of the {@link Delegate} DAO when they are fsynced by the
+ * {@link WriteAheadLog}, the DAO records them there (see {@link AccountJournal}). So a change is
+ * applied in memory at once but it's acknowledged with the batch of the log it belongs to.
+ * NOTE a change failed by the log is applied in memory anyway, it's lost by a restart
+ */
+@Singleton
+public class DurableAccountDao implements AccountDao {
+
+  private final AccountDao delegate;
+  private final WriteAheadLog writeAheadLog;
+
+  @Inject
+  public DurableAccountDao(@Delegate AccountDao delegate, WriteAheadLog writeAheadLog) {
+    this.delegate = delegate;
+    this.writeAheadLog = writeAheadLog;
+  }
+
+  @Override
+  public Account create(Account account) {
+    final Account result = delegate.create(account);
+    writeAheadLog.awaitDurable();
+
+    return result;
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final List<Account> result = delegate.createInBulk(accounts);
+    writeAheadLog.awaitDurable();
+
+    return result;
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    return delegate.findById(id);
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    delegate.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+    writeAheadLog.awaitDurable();
+  }
+
+  /**
+   * NOTE the returned future is completed outside of the flusher thread of the log, so its
+   * callbacks don't delay the next batch
+   */
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    return delegate.transferMoneyAsync(sum, fromAccountId, toAccountId)
+        .thenCompose(ignored -> writeAheadLog.whenDurable())
+        .thenApplyAsync(Function.identity());
+  }
+
+  /**
+   * NOTE the keys are recorded by the decorator, see {@link LocalIdempotentAccountDao}
+   */
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey) {
+    throw LocalIdempotentAccountDao.notDecorated(this);
+  }
+
+  /**
+   * The whole batch waits for one fsync
+   */
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    final List<TransferResult> result = delegate.transferMoneyInBatch(transfers);
+    writeAheadLog.awaitDurable();
+
+    return result;
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER})
+  @BindingAnnotation
+  public @interface Delegate {
+
+  }
+}
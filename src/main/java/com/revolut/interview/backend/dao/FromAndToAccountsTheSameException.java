@@ -1,6 +1,6 @@
 package com.revolut.interview.backend.dao;
 
-public class FromAndToAccountsTheSameException extends Exception {
+public class FromAndToAccountsTheSameException extends DomainException {
 
   private static final long serialVersionUID = 8458510191241110087L;
 
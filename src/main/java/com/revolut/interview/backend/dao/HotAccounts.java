@@ -0,0 +1,87 @@
+package com.revolut.interview.backend.dao;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * The accounts which receive many concurrent transfers (-Daccount.hot.ids=<ID>,<ID>,...). The
+ * balance of such an account is the sum of its main balance (see {@link AccountDaoImpl}) and of
+ * the sub-balances in its slot hashes author:<ID>:<0..K-1> (-Daccount.hot.slots=<K>). A credit
+ * adds to one random slot, so concurrent credits rarely watch the same key, and a debit takes the
+ * main balance and sweeps the slots into it only when the main balance isn't enough.
+ * NOTE an account mustn't stop being hot while its slots have money
+ */
+final class HotAccounts {
+
+  static final String PROPERTY_IDS = "account.hot.ids";
+  static final String PROPERTY_SLOTS = "account.hot.slots";
+  static final HotAccounts NONE = new HotAccounts(id -> false, 1);
+  private static final int DEFAULT_SLOTS = 8;
+
+  private final LongPredicate hot;
+  private final int slotsNum;
+
+  HotAccounts(LongPredicate hot, int slotsNum) {
+    if (slotsNum < 1) {
+      throw new IllegalArgumentException("Illegal number of hot account slots: " + slotsNum);
+    }
+
+    this.hot = hot;
+    this.slotsNum = slotsNum;
+  }
+
+  static HotAccounts fromProperties() {
+    final String ids = System.getProperty(PROPERTY_IDS, "").trim();
+
+    if (ids.isEmpty()) {
+      return NONE;
+    }
+
+    final Set<Long> hotIds = Arrays.stream(ids.split(",")).map(String::trim).map(Long::valueOf)
+        .collect(Collectors.toSet());
+
+    return new HotAccounts(hotIds::contains, Integer.getInteger(PROPERTY_SLOTS, DEFAULT_SLOTS));
+  }
+
+  boolean isHot(Long id) {
+    return id != null && hot.test(id);
+  }
+
+  String[] makeSlotKeys(Long id) {
+    final String[] result = new String[slotsNum];
+
+    for (int slot = 0; slot < slotsNum; slot++) {
+      result[slot] = makeSlotKey(id, slot);
+    }
+
+    return result;
+  }
+
+  String makeRandomSlotKey(Long id) {
+    return makeSlotKey(id, ThreadLocalRandom.current().nextInt(slotsNum));
+  }
+
+  private static String makeSlotKey(Long id, int slot) {
+    return AccountDaoImpl.KEY_AUTHOR + ":" + id + ":" + slot;
+  }
+
+  /**
+   * @return the id of the account of the slot key or null if it isn't a slot key
+   */
+  static Long parseSlotKey(String key) {
+    final String prefix = AccountDaoImpl.KEY_AUTHOR + ":";
+    final int idEnd = key.lastIndexOf(':');
+
+    if (!key.startsWith(prefix) || idEnd < prefix.length()) {
+      return null;
+    }
+
+    final String id = key.substring(prefix.length(), idEnd);
+
+    return !id.isEmpty() && id.chars().allMatch(Character::isDigit) && id.length() < 19
+        ? Long.valueOf(id) : null;
+  }
+}
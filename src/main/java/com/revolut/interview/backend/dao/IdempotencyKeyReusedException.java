@@ -0,0 +1,14 @@
+package com.revolut.interview.backend.dao;
+
+/**
+ * The idempotency key of a transfer was already used by another transfer, i.e. with another sum
+ * or accounts, the transfer isn't done.
+ */
+public class IdempotencyKeyReusedException extends DomainException {
+
+  private static final long serialVersionUID = -4526310793415087261L;
+
+  public IdempotencyKeyReusedException(String message) {
+    super(message);
+  }
+}
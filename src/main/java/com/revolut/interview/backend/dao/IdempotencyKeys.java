@@ -0,0 +1,84 @@
+package com.revolut.interview.backend.dao;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The idempotency keys of transfers shared by all account DAOs. A key is recorded with the
+ * fingerprint of its transfer when the transfer is done and it's kept for the TTL, so a repeated
+ * transfer with the same key isn't done again.
+ * NOTE a failed transfer isn't recorded, i.e. it's done again when it's repeated
+ */
+public final class IdempotencyKeys {
+
+  public static final int MAX_LENGTH = 255;
+  public static final String ERR_MSG_KEY = "Idempotency key must have 1-" + MAX_LENGTH
+      + " characters: ";
+  static final String PROPERTY_TTL_SECONDS = "transfer.idempotency.ttlSeconds";
+  private static final int DEFAULT_TTL_SECONDS = 24 * 60 * 60;
+  private static final String KEY_RECORD = "idempotency";
+
+  private IdempotencyKeys() {
+  }
+
+  public static void checkKey(String idempotencyKey) {
+    if (!isKey(idempotencyKey)) {
+      throw new IllegalArgumentException(ERR_MSG_KEY + idempotencyKey);
+    }
+  }
+
+  /**
+   * @return true if the key passes {@link #checkKey}
+   */
+  public static boolean isKey(String idempotencyKey) {
+    return !idempotencyKey.isEmpty() && idempotencyKey.length() <= MAX_LENGTH;
+  }
+
+  /**
+   * @return the same value for the same transfer, e.g. for the sums 1 and 1.00, the sum is written
+   * as its unscaled value and exponent (10.5 is 105e-1), so it's as short as the sum's digits
+   * NOTE the plain string of a sum like 1E+999999999 has a billion digits
+   */
+  public static String makeFingerprint(BigDecimal sum, Long fromAccountId, Long toAccountId) {
+    final BigDecimal strippedSum = sum.stripTrailingZeros();
+    final String exponent = strippedSum.scale() == 0 ? "" : "e" + -strippedSum.scale();
+
+    return strippedSum.unscaledValue() + exponent + ":" + fromAccountId + ":" + toAccountId;
+  }
+
+  public static int getTtlSeconds() {
+    return Integer.getInteger(PROPERTY_TTL_SECONDS, DEFAULT_TTL_SECONDS);
+  }
+
+  static String makeRecordKey(String idempotencyKey) {
+    return KEY_RECORD + ":" + idempotencyKey;
+  }
+
+  /**
+   * @return the arguments of a transfer script followed by the fingerprint and the TTL
+   */
+  static List<String> appendRecordArgs(List<String> args, BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    final List<String> result = new ArrayList<>(args.size() + 2);
+    result.addAll(args);
+    result.add(makeFingerprint(sum, fromAccountId, toAccountId));
+    result.add(Integer.toString(getTtlSeconds()));
+
+    return result;
+  }
+
+  /**
+   * @throws IdempotencyKeyReusedException if the key is recorded with another fingerprint
+   */
+  public static void checkFingerprint(String recordedFingerprint, String idempotencyKey, BigDecimal sum,
+      Long fromAccountId, Long toAccountId) throws IdempotencyKeyReusedException {
+    final String fingerprint = makeFingerprint(sum, fromAccountId, toAccountId);
+
+    if (!fingerprint.equals(recordedFingerprint)) {
+      throw new IdempotencyKeyReusedException(
+          "Idempotency key " + idempotencyKey + " is used by another transfer (" + fingerprint
+              + " vs " + recordedFingerprint + ")");
+    }
+  }
+}
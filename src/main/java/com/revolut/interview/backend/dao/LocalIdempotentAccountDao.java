@@ -0,0 +1,199 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Records the idempotency keys of the transfers done by the {@link Delegate} DAO in the memory of
+ * this process, it's for the DAOs keeping accounts in memory as well. A key is recorded before its
+ * transfer starts, so a concurrent repeat waits for the same transfer instead of doing it again.
+ * The record is removed if the transfer fails and it expires after the TTL when it's done.
+ */
+@Singleton
+public class LocalIdempotentAccountDao implements AccountDao {
+
+  private final AccountDao delegate;
+  private final long ttlNanos;
+  private final Map<String, Record> records = new ConcurrentHashMap<>();
+  // The records of done transfers by their expiration time
+  private final Queue<Record> doneRecords = new ConcurrentLinkedQueue<>();
+
+  @Inject
+  public LocalIdempotentAccountDao(@Delegate AccountDao delegate) {
+    this(delegate, TimeUnit.SECONDS.toNanos(IdempotencyKeys.getTtlSeconds()));
+  }
+
+  LocalIdempotentAccountDao(AccountDao delegate, long ttlNanos) {
+    this.delegate = delegate;
+    this.ttlNanos = ttlNanos;
+  }
+
+  /**
+   * @return the exception of a DAO which relies on this decorator to record the keys
+   */
+  static UnsupportedOperationException notDecorated(AccountDao accountDao) {
+    return new UnsupportedOperationException(accountDao.getClass().getSimpleName()
+        + " is expected to be decorated by " + LocalIdempotentAccountDao.class.getSimpleName());
+  }
+
+  @Override
+  public Account create(Account account) {
+    return delegate.create(account);
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    return delegate.createInBulk(accounts);
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    return delegate.findById(id);
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    delegate.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    return delegate.transferMoneyAsync(sum, fromAccountId, toAccountId);
+  }
+
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException, IdempotencyKeyReusedException {
+    try {
+      transferMoneyOnceAsync(sum, fromAccountId, toAccountId, idempotencyKey).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof AccountNotFoundException) {
+        throw (AccountNotFoundException) cause;
+      } else if (cause instanceof NotEnoughMoneyException) {
+        throw (NotEnoughMoneyException) cause;
+      } else if (cause instanceof FromAndToAccountsTheSameException) {
+        throw (FromAndToAccountsTheSameException) cause;
+      } else if (cause instanceof TransferConflictException) {
+        throw (TransferConflictException) cause;
+      } else if (cause instanceof IdempotencyKeyReusedException) {
+        throw (IdempotencyKeyReusedException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    try {
+      IdempotencyKeys.checkKey(idempotencyKey);
+    } catch (IllegalArgumentException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    removeExpiredRecords();
+
+    final String fingerprint = IdempotencyKeys.makeFingerprint(sum, fromAccountId, toAccountId);
+    final Record record = new Record(idempotencyKey, fingerprint);
+    final Record recorded = records.putIfAbsent(idempotencyKey, record);
+
+    if (recorded != null) {
+      try {
+        IdempotencyKeys.checkFingerprint(recorded.fingerprint, idempotencyKey, sum,
+            fromAccountId, toAccountId);
+      } catch (IdempotencyKeyReusedException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+
+      // It's a copy, so a caller can't complete the transfer of another one
+      return recorded.done.thenApply(Function.identity());
+    }
+
+    delegate.transferMoneyAsync(sum, fromAccountId, toAccountId).whenComplete((ignored, e) -> {
+      if (e == null) {
+        record.expiresAt = System.nanoTime() + ttlNanos;
+        doneRecords.add(record);
+        record.done.complete(null);
+      } else {
+        records.remove(idempotencyKey, record);
+        record.done.completeExceptionally(e);
+      }
+    });
+
+    return record.done.thenApply(Function.identity());
+  }
+
+  private void removeExpiredRecords() {
+    final long now = System.nanoTime();
+    Record record;
+
+    while ((record = doneRecords.peek()) != null && now - record.expiresAt >= 0) {
+      if (doneRecords.remove(record)) {
+        records.remove(record.idempotencyKey, record);
+      }
+    }
+  }
+
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    return delegate.transferMoneyInBatch(transfers);
+  }
+
+  /**
+   * @return the number of recorded keys, the expired ones included till they are removed
+   */
+  int size() {
+    return records.size();
+  }
+
+  private static class Record {
+
+    private final String idempotencyKey;
+    private final String fingerprint;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile long expiresAt;
+
+    Record(String idempotencyKey, String fingerprint) {
+      this.idempotencyKey = idempotencyKey;
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER})
+  @BindingAnnotation
+  public @interface Delegate {
+
+  }
+}
@@ -0,0 +1,237 @@
+package com.revolut.interview.backend.dao;
+
+import com.revolut.interview.backend.metrics.Counter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded read-through cache split into segments, each of them is an LRU map guarded by its own
+ * lock. An entry expires after the TTL. A value loaded concurrently with an invalidation of its
+ * segment isn't cached, so an invalidated value never comes back.
+ * NOTE a value can be put without a loader as well, e.g. when it's known from a write
+ */
+public class NearCache<K, V> {
+
+  private static final int SEGMENTS_NUM = 16;
+
+  private final Segment[] segments;
+  private final long ttlNanos;
+  private final Stats stats;
+
+  public NearCache(int maxSize, long ttlNanos, Stats stats) {
+    this.ttlNanos = ttlNanos;
+    this.stats = stats;
+    segments = makeSegments();
+
+    for (int i = 0; i < SEGMENTS_NUM; i++) {
+      segments[i] = new Segment(Math.max(maxSize / SEGMENTS_NUM, 1));
+    }
+  }
+
+  /**
+   * NOTE an array of a generic type can't be created, so it's an array of any segments till
+   * it's filled by the segments of this cache
+   */
+  @SuppressWarnings("unchecked")
+  private Segment[] makeSegments() {
+    return (Segment[]) new NearCache<?, ?>.Segment[SEGMENTS_NUM];
+  }
+
+  private Segment getSegment(K key) {
+    final int hash = key.hashCode();
+
+    return segments[(hash ^ (hash >>> 16)) & (SEGMENTS_NUM - 1)];
+  }
+
+  <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+    final Segment segment = getSegment(key);
+    final long generation;
+
+    segment.lock.lock();
+
+    try {
+      final CachedValue<V> entry = segment.entries.get(key);
+
+      if (entry != null) {
+        if (System.nanoTime() - entry.expiresAt < 0) {
+          stats.hits.increment();
+
+          return entry.value;
+        }
+
+        segment.entries.remove(key);
+        stats.expirations.increment();
+      }
+
+      generation = segment.generation;
+    } finally {
+      segment.lock.unlock();
+    }
+
+    stats.misses.increment();
+
+    final V result = loader.load(key);
+
+    segment.lock.lock();
+
+    try {
+      if (segment.generation == generation) {
+        segment.entries.put(key, new CachedValue<>(result, System.nanoTime() + ttlNanos));
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+
+    return result;
+  }
+
+  /**
+   * @return null if there is no such entry or it's expired
+   */
+  public V getIfPresent(K key) {
+    final Segment segment = getSegment(key);
+
+    segment.lock.lock();
+
+    try {
+      final CachedValue<V> entry = segment.entries.get(key);
+
+      if (entry != null) {
+        if (System.nanoTime() - entry.expiresAt < 0) {
+          stats.hits.increment();
+
+          return entry.value;
+        }
+
+        segment.entries.remove(key);
+        stats.expirations.increment();
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+
+    stats.misses.increment();
+
+    return null;
+  }
+
+  public void put(K key, V value) {
+    final Segment segment = getSegment(key);
+
+    segment.lock.lock();
+
+    try {
+      segment.entries.put(key, new CachedValue<>(value, System.nanoTime() + ttlNanos));
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  void invalidate(K key) {
+    final Segment segment = getSegment(key);
+    segment.lock.lock();
+
+    final boolean removed;
+
+    try {
+      segment.generation++;
+      removed = segment.entries.remove(key) != null;
+    } finally {
+      segment.lock.unlock();
+    }
+
+    if (removed) {
+      stats.invalidations.increment();
+    }
+  }
+
+  void invalidateAll() {
+    for (Segment segment : segments) {
+      segment.lock.lock();
+
+      try {
+        segment.generation++;
+        segment.entries.clear();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  public int size() {
+    int result = 0;
+
+    for (Segment segment : segments) {
+      segment.lock.lock();
+
+      try {
+        result += segment.entries.size();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+
+    return result;
+  }
+
+  @FunctionalInterface
+  interface Loader<K, V, E extends Exception> {
+
+    V load(K key) throws E;
+  }
+
+  public static class Stats {
+
+    final Counter hits;
+    final Counter misses;
+    final Counter evictions;
+    final Counter expirations;
+    final Counter invalidations;
+
+    public Stats(Counter hits, Counter misses, Counter evictions, Counter expirations,
+        Counter invalidations) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.expirations = expirations;
+      this.invalidations = invalidations;
+    }
+  }
+
+  private static class CachedValue<V> {
+
+    private final V value;
+    private final long expiresAt;
+
+    CachedValue(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private class Segment {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, CachedValue<V>> entries;
+    // It's changed by every invalidation
+    private long generation;
+
+    Segment(int maxSize) {
+      entries = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2371512359117370372L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+          final boolean result = size() > maxSize;
+
+          if (result) {
+            stats.evictions.increment();
+          }
+
+          return result;
+        }
+      };
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package com.revolut.interview.backend.dao;
 
-public class NotEnoughMoneyException extends Exception {
+public class NotEnoughMoneyException extends DomainException {
 
   private static final long serialVersionUID = -7092570773428424585L;
 
@@ -0,0 +1,99 @@
+package com.revolut.interview.backend.dao;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A growable array of longs kept outside of the heap in direct buffers of a fixed size (segments),
+ * so neither the GC nor the boxing are involved. An element is read and written with volatile
+ * semantics without any allocation.
+ * NOTE a segment is never moved or freed, the array only grows
+ */
+class OffHeapLongArray {
+
+  private static final VarHandle LONGS = MethodHandles
+      .byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+  private static final int SEGMENT_BITS = 20;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+  private final long initialValue;
+  private final ReentrantLock growLock = new ReentrantLock();
+  private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+  OffHeapLongArray(long initialValue) {
+    this.initialValue = initialValue;
+  }
+
+  private static int offset(long index) {
+    return (int) (index & (SEGMENT_SIZE - 1)) << 3;
+  }
+
+  /**
+   * @return the element or the initial value if the element isn't allocated yet
+   */
+  long get(long index) {
+    final ByteBuffer[] currentSegments = segments;
+    final long segment = index >>> SEGMENT_BITS;
+
+    if (segment >= currentSegments.length) {
+      return initialValue;
+    }
+
+    return (long) LONGS.getVolatile(currentSegments[(int) segment], offset(index));
+  }
+
+  void set(long index, long value) {
+    final int segment = (int) (index >>> SEGMENT_BITS);
+    ensureSegments(segment + 1);
+
+    LONGS.setVolatile(segments[segment], offset(index), value);
+  }
+
+  private void ensureSegments(int segmentsNum) {
+    if (segments.length >= segmentsNum) {
+      return;
+    }
+
+    growLock.lock();
+
+    try {
+      final ByteBuffer[] oldSegments = segments;
+
+      if (oldSegments.length >= segmentsNum) {
+        return;
+      }
+
+      final ByteBuffer[] newSegments = new ByteBuffer[segmentsNum];
+      System.arraycopy(oldSegments, 0, newSegments, 0, oldSegments.length);
+
+      for (int i = oldSegments.length; i < segmentsNum; i++) {
+        newSegments[i] = allocateSegment();
+      }
+
+      segments = newSegments;
+    } finally {
+      growLock.unlock();
+    }
+  }
+
+  private ByteBuffer allocateSegment() {
+    final ByteBuffer result = ByteBuffer.allocateDirect(SEGMENT_SIZE * Long.BYTES)
+        .order(ByteOrder.nativeOrder());
+
+    // NOTE a direct buffer is zeroed
+    if (initialValue != 0) {
+      for (int i = 0; i < SEGMENT_SIZE; i++) {
+        result.putLong(i << 3, initialValue);
+      }
+    }
+
+    return result;
+  }
+
+  long getAllocatedBytes() {
+    return (long) segments.length * SEGMENT_SIZE * Long.BYTES;
+  }
+}
@@ -0,0 +1,165 @@
+package com.revolut.interview.backend.dao;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * A Lua script which is executed by its SHA1 digest (EVALSHA), so the script body is sent to Redis
+ * only once. The functions appending to the ledger and the transfer histories are kept in
+ * ledger.lua and spliced into a script at its --LEDGER-- line.
+ * NOTE the script is (re)loaded on demand: e.g. after Redis restart or SCRIPT FLUSH
+ */
+public class RedisScript {
+
+  private static final String BATCH_RESOURCE_NAME = "batch.lua";
+  private static final String BATCH_SCRIPT_PLACEHOLDER = "--SCRIPT--";
+  private static final String LEDGER_PLACEHOLDER = "--LEDGER--";
+  private static final String LEDGER_SOURCE = readResource("ledger.lua")
+      .replace("--MS_WIDTH--", Integer.toString(TransferHistory.MS_WIDTH))
+      .replace("--SEQ_WIDTH--", Integer.toString(TransferHistory.SEQ_WIDTH));
+
+  private final String name;
+  private final String source;
+  private final String sha;
+
+  public RedisScript(String resourceName) {
+    this(resourceName, readResource(resourceName).replace(LEDGER_PLACEHOLDER, LEDGER_SOURCE));
+  }
+
+  private RedisScript(String name, String source) {
+    this.name = name;
+    this.source = source;
+    sha = sha1Hex(source);
+  }
+
+  private static String readResource(String resourceName) {
+    try (InputStream in = RedisScript.class.getResourceAsStream(resourceName)) {
+      if (in == null) {
+        throw new IllegalStateException("Script not found: " + resourceName);
+      }
+
+      return new String(in.readAllBytes(), UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException("Script can't be read: " + resourceName, e);
+    }
+  }
+
+  private static String sha1Hex(String source) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(UTF_8));
+      final StringBuilder result = new StringBuilder(digest.length * 2);
+
+      for (byte b : digest) {
+        result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return result.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return a script which calls this one for every call of a batch in one round trip and
+   * atomically, see batch.lua for its keys and args
+   */
+  public RedisScript toBatch() {
+    return new RedisScript(BATCH_RESOURCE_NAME + " of " + name,
+        readResource(BATCH_RESOURCE_NAME).replace(BATCH_SCRIPT_PLACEHOLDER, source));
+  }
+
+  public String getSha() {
+    return sha;
+  }
+
+  public void load(Jedis jedis) {
+    jedis.scriptLoad(source);
+  }
+
+  public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+    try {
+      return jedis.evalsha(sha, keys, args);
+    } catch (JedisNoScriptException e) {
+      load(jedis);
+
+      return jedis.evalsha(sha, keys, args);
+    }
+  }
+
+  /**
+   * Queues the script in the transaction by its digest.
+   * NOTE if the script is missing in Redis only this command of the transaction fails (NOSCRIPT)
+   * when the rest of it is done, so the caller loads it up front and checks the response
+   */
+  public Response<Object> eval(Transaction transaction, List<String> keys, List<String> args) {
+    return transaction.evalsha(sha, keys, args);
+  }
+
+  /**
+   * NOTE every node of the cluster loads the script on demand, i.e. on the first call of a key of
+   * this node
+   */
+  public Object eval(JedisCluster jedisCluster, List<String> keys, List<String> args) {
+    try {
+      return jedisCluster.evalsha(sha, keys, args);
+    } catch (JedisNoScriptException e) {
+      jedisCluster.scriptLoad(source, keys.get(0));
+
+      return jedisCluster.evalsha(sha, keys, args);
+    }
+  }
+
+  /**
+   * NOTE the caller isn't blocked, the returned future is completed by an I/O thread of the client
+   */
+  public <T> CompletableFuture<T> eval(RedisAsyncCommands<String, String> commands,
+      ScriptOutputType outputType, List<String> keys, List<String> args) {
+    final String[] keysArray = keys.toArray(new String[0]);
+    final String[] argsArray = args.toArray(new String[0]);
+    final CompletableFuture<T> result = new CompletableFuture<>();
+
+    commands.<T>evalsha(sha, outputType, keysArray, argsArray).whenComplete((value, e) -> {
+      if (e instanceof RedisNoScriptException) {
+        // EVAL loads the script as well
+        commands.<T>eval(source, outputType, keysArray, argsArray).whenComplete(completing(result));
+      } else {
+        completing(result).accept(value, e);
+      }
+    });
+
+    return result;
+  }
+
+  private static <T> BiConsumer<T, Throwable> completing(CompletableFuture<T> future) {
+    return (value, e) -> {
+      if (e == null) {
+        future.complete(value);
+      } else {
+        future.completeExceptionally(e);
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "RedisScript{" +
+        "name='" + name + '\'' +
+        ", sha='" + sha + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,73 @@
+package com.revolut.interview.backend.dao;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the attempts of an optimistic transaction which fails because of concurrent changes. The
+ * pause before the next attempt is random between 0 and a bound which grows exponentially up to the
+ * max delay ("full jitter"), so conflicting clients don't retry at the same moment.
+ */
+public class RetryPolicy {
+
+  static final String PROPERTY_MAX_ATTEMPTS = "transfer.retry.maxAttempts";
+  static final String PROPERTY_BASE_DELAY_MICROS = "transfer.retry.baseDelayMicros";
+  static final String PROPERTY_MAX_DELAY_MICROS = "transfer.retry.maxDelayMicros";
+  public static final RetryPolicy DEFAULT = new RetryPolicy(16, 100, 10_000);
+  private static final int MAX_BACKOFF_SHIFT = 20;
+
+  private final int maxAttempts;
+  private final long baseDelayNanos;
+  private final long maxDelayNanos;
+
+  public RetryPolicy(int maxAttempts, long baseDelayMicros, long maxDelayMicros) {
+    if (maxAttempts < 1 || baseDelayMicros < 0 || maxDelayMicros < baseDelayMicros) {
+      throw new IllegalArgumentException(
+          "Illegal retry policy: maxAttempts=" + maxAttempts + ", baseDelayMicros="
+              + baseDelayMicros + ", maxDelayMicros=" + maxDelayMicros);
+    }
+
+    this.maxAttempts = maxAttempts;
+    baseDelayNanos = TimeUnit.MICROSECONDS.toNanos(baseDelayMicros);
+    maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+  }
+
+  /**
+   * The defaults are overridden by -Dtransfer.retry.maxAttempts=<N>,
+   * -Dtransfer.retry.baseDelayMicros=<N> and -Dtransfer.retry.maxDelayMicros=<N>
+   */
+  public static RetryPolicy fromSystemProperties() {
+    return new RetryPolicy(Integer.getInteger(PROPERTY_MAX_ATTEMPTS, DEFAULT.maxAttempts),
+        Long.getLong(PROPERTY_BASE_DELAY_MICROS,
+            TimeUnit.NANOSECONDS.toMicros(DEFAULT.baseDelayNanos)),
+        Long.getLong(PROPERTY_MAX_DELAY_MICROS,
+            TimeUnit.NANOSECONDS.toMicros(DEFAULT.maxDelayNanos)));
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param failedAttempts the number of failed attempts so far
+   */
+  boolean canRetry(int failedAttempts) {
+    return failedAttempts < maxAttempts;
+  }
+
+  /**
+   * Parks the current thread before the next attempt
+   * NOTE a pooled connection isn't held while the thread is parked, other requests may need it
+   *
+   * @param failedAttempts the number of failed attempts so far
+   */
+  void backOff(int failedAttempts) {
+    final int shift = Math.min(Math.max(failedAttempts - 1, 0), MAX_BACKOFF_SHIFT);
+    final long bound = Math.min(maxDelayNanos, baseDelayNanos << shift);
+
+    if (bound > 0) {
+      LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.revolut.interview.backend.dao;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed number of locks shared by all accounts: an account is guarded by the lock of its stripe.
+ * Two accounts are always locked in the order of their stripes, so concurrent transfers can't
+ * deadlock. NOTE the order of stripes is used rather than the order of ids: two ids of one stripe
+ * are locked only once and the stripes of ids may go in the opposite order
+ */
+class StripedLocks {
+
+  private final ReentrantLock[] locks;
+  private final int mask;
+
+  StripedLocks(int minStripesNum) {
+    final int stripesNum = Integer.highestOneBit(Math.max(minStripesNum - 1, 1)) << 1;
+    locks = new ReentrantLock[stripesNum];
+    mask = stripesNum - 1;
+
+    for (int i = 0; i < stripesNum; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  private int stripe(long id) {
+    final int hash = Long.hashCode(id);
+
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  void lock(long id1, long id2) {
+    final int stripe1 = stripe(id1);
+    final int stripe2 = stripe(id2);
+
+    locks[Math.min(stripe1, stripe2)].lock();
+
+    if (stripe1 != stripe2) {
+      locks[Math.max(stripe1, stripe2)].lock();
+    }
+  }
+
+  void unlock(long id1, long id2) {
+    final int stripe1 = stripe(id1);
+    final int stripe2 = stripe(id2);
+
+    if (stripe1 != stripe2) {
+      locks[Math.max(stripe1, stripe2)].unlock();
+    }
+
+    locks[Math.min(stripe1, stripe2)].unlock();
+  }
+}
@@ -0,0 +1,60 @@
+package com.revolut.interview.backend.dao;
+
+import java.math.BigDecimal;
+
+/**
+ * The checks of a transfer shared by all account DAOs, so they fail with the same messages.
+ * NOTE a DAO throws an IllegalArgumentException for an illegal sum, the requests of clients are
+ * checked by {@link #isSum} before
+ */
+public final class TransferChecks {
+
+  /**
+   * NOTE the plain string of a sum is passed to the scripts, so it's bounded, e.g. 1E+999999999
+   * would be a billion digits
+   */
+  public static final int MAX_INTEGER_DIGITS = 64;
+  public static final int MAX_SCALE = 64;
+
+  private TransferChecks() {
+  }
+
+  static void checkSum(BigDecimal sum, Long fromAccountId, Long toAccountId) {
+    if (sum.compareTo(BigDecimal.ZERO) < 0) {
+      throw new IllegalArgumentException(
+          "Negative sum: " + sum + " (from: " + fromAccountId + ", to: " + toAccountId + ")");
+    }
+
+    if (!isInRange(sum)) {
+      throw new IllegalArgumentException("Sum out of range: " + sum + " (from: " + fromAccountId
+          + ", to: " + toAccountId + ")");
+    }
+  }
+
+  /**
+   * @return true if the sum passes {@link #checkSum}
+   */
+  public static boolean isSum(BigDecimal sum) {
+    return sum.signum() >= 0 && isInRange(sum);
+  }
+
+  private static boolean isInRange(BigDecimal sum) {
+    return sum.scale() <= MAX_SCALE && sum.precision() - sum.scale() <= MAX_INTEGER_DIGITS;
+  }
+
+  static void checkAccountIds(Long fromAccountId, Long toAccountId)
+      throws FromAndToAccountsTheSameException {
+    if (fromAccountId.equals(toAccountId)) {
+      throw new FromAndToAccountsTheSameException(fromAccountId.toString());
+    }
+  }
+
+  static void checkHasEnoughMoney(BigDecimal newBalance, BigDecimal oldBalance, BigDecimal sum,
+      Long fromAccountId, Long toAccountId) throws NotEnoughMoneyException {
+    if (newBalance.compareTo(BigDecimal.ZERO) < 0) {
+      throw new NotEnoughMoneyException(
+          "Not enough money: (" + oldBalance + " - " + sum + ") = " + newBalance + " (from: "
+              + fromAccountId + ", to: " + toAccountId + ")");
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.revolut.interview.backend.dao;
+
+/**
+ * The accounts were changed concurrently on every attempt of a transfer (see {@link RetryPolicy}),
+ * the transfer isn't done and may be repeated later.
+ */
+public class TransferConflictException extends DomainException {
+
+  private static final long serialVersionUID = 2467361337504562935L;
+
+  @SuppressWarnings("WeakerAccess")
+  public TransferConflictException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,146 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.model.LedgerEntry;
+import com.revolut.interview.backend.model.TransferPage;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * The transfer history of every account is a sorted set transfers:<ID> of its done transfers, it's
+ * appended by the same script or transaction which changes the balances and appends the ledger.
+ * The entries are ordered by the ids of their ledger entries, so a page after a cursor (the id of
+ * the last entry of the previous page) is read by one ZREVRANGEBYLEX in O(log n) wherever it is.
+ * A history keeps the last -Dtransfer.history.maxLength=<N> entries (0 turns the histories off)
+ * not older than -Dtransfer.history.maxAgeSeconds=<N> (0 keeps them).
+ * NOTE the trimmed entries are still in the ledger till it's trimmed, see {@link TransferLedger}
+ */
+@Singleton
+public class TransferHistory {
+
+  static final String KEY_HISTORY = "transfers";
+  static final String PROPERTY_MAX_LENGTH = "transfer.history.maxLength";
+  static final String PROPERTY_MAX_AGE_SECONDS = "transfer.history.maxAgeSeconds";
+  public static final int MAX_PAGE_SIZE = 1000;
+  private static final int DEFAULT_MAX_LENGTH = 1000;
+  // The widths of the parts of a ledger entry id padded by the scripts, see ledger.lua
+  static final int MS_WIDTH = 13;
+  static final int SEQ_WIDTH = 6;
+  private static final Pattern CURSOR = Pattern
+      .compile("(\\d{1," + MS_WIDTH + "})-(\\d{1," + SEQ_WIDTH + "})");
+  private static final String ENTRY_SEPARATOR = ":";
+
+  private final JedisPool jedisPool;
+
+  @Inject
+  public TransferHistory(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+  }
+
+  static String makeKey(Long accountId) {
+    return KEY_HISTORY + ":" + accountId;
+  }
+
+  /**
+   * @return the keys of a transfer script followed by the keys of the histories of both accounts
+   */
+  static List<String> appendKeys(List<String> keys, Long fromAccountId, Long toAccountId) {
+    final List<String> result = new ArrayList<>(keys.size() + 2);
+    result.addAll(keys);
+    result.add(makeKey(fromAccountId));
+    result.add(makeKey(toAccountId));
+
+    return result;
+  }
+
+  /**
+   * @return the args of a transfer script followed by the max length and the max age of a history
+   */
+  static List<String> appendArgs(List<String> args) {
+    final List<String> result = new ArrayList<>(args.size() + 2);
+    result.addAll(args);
+    result.add(Integer.toString(Integer.getInteger(PROPERTY_MAX_LENGTH, DEFAULT_MAX_LENGTH)));
+    result.add(Long.toString(
+        TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_MAX_AGE_SECONDS, 0))));
+
+    return result;
+  }
+
+  /**
+   * @param cursor the id of the last entry of the previous page or null for the first page
+   * @return up to the limit of the transfers before the cursor, the newest first
+   * @throws IllegalArgumentException if the cursor isn't an id of a ledger entry or the limit isn't
+   * within 1..{@link #MAX_PAGE_SIZE}
+   */
+  public TransferPage read(Long accountId, String cursor, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("Illegal page size: " + limit);
+    }
+
+    final String max = cursor == null ? "+" : "(" + padCursor(cursor);
+    final Set<String> historyEntries;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      historyEntries = jedis.zrevrangeByLex(makeKey(accountId), max, "-", 0, limit);
+    }
+
+    final List<LedgerEntry> entries = new ArrayList<>(historyEntries.size());
+
+    for (String historyEntry : historyEntries) {
+      entries.add(toLedgerEntry(historyEntry));
+    }
+
+    final String nextCursor = entries.size() < limit ? null
+        : entries.get(entries.size() - 1).getId();
+
+    return new TransferPage(entries, nextCursor);
+  }
+
+  /**
+   * @return true if the cursor can be passed to {@link #read}
+   */
+  public static boolean isCursor(String cursor) {
+    return CURSOR.matcher(cursor).matches();
+  }
+
+  private static String padCursor(String cursor) {
+    final Matcher matcher = CURSOR.matcher(cursor);
+
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Not a ledger entry id: " + cursor);
+    }
+
+    return pad(matcher.group(1), MS_WIDTH) + "-" + pad(matcher.group(2), SEQ_WIDTH);
+  }
+
+  private static String pad(String digits, int width) {
+    final StringBuilder result = new StringBuilder(width);
+
+    for (int i = digits.length(); i < width; i++) {
+      result.append('0');
+    }
+
+    return result.append(digits).toString();
+  }
+
+  /**
+   * @param historyEntry <ms>-<seq>:<from>:<to>:<sum> with the zero padded id
+   */
+  private static LedgerEntry toLedgerEntry(String historyEntry) {
+    final String[] parts = historyEntry.split(ENTRY_SEPARATOR);
+    final int idSeparator = parts[0].indexOf('-');
+    final String id = Long.parseLong(parts[0].substring(0, idSeparator)) + "-"
+        + Long.parseLong(parts[0].substring(idSeparator + 1));
+
+    return new LedgerEntry(id, Long.valueOf(parts[1]), Long.valueOf(parts[2]),
+        new BigDecimal(parts[3]));
+  }
+}
@@ -0,0 +1,21 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisHost;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisPort;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * The host and the port are of any node of the cluster, the rest nodes are discovered
+ */
+public class TransferJedisCluster extends JedisCluster {
+
+  @Inject
+  public TransferJedisCluster(GenericObjectPoolConfig<Jedis> poolConfig, @RedisHost String host,
+      @RedisPort int port) {
+    super(new HostAndPort(host, port), poolConfig);
+  }
+}
@@ -7,14 +7,17 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
 public class TransferJedisPool extends JedisPool {
 
   @Inject
-  public TransferJedisPool(GenericObjectPoolConfig poolConfig, @RedisHost String host,
+  public TransferJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, @RedisHost String host,
       @RedisPort int port) {
     super(poolConfig, host, port);
+    // NOTE the rest is created on demand
+    addObjects(poolConfig.getMinIdle());
   }
 
   @Retention(RetentionPolicy.RUNTIME)
@@ -0,0 +1,247 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisHost;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisPort;
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.LedgerEntry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.XReadParams;
+
+/**
+ * The ledger of the done transfers, it's a Redis stream appended by the same script or transaction
+ * which changes the balances, so an entry is there if and only if its transfer is done. The stream
+ * is trimmed to about -Dtransfer.ledger.maxLength=<N> entries, 0 keeps all of them.
+ * NOTE a follower has its own connection blocked by XREAD, the pool isn't used for it
+ */
+@Singleton
+public class TransferLedger implements Closeable {
+
+  static final String KEY_LEDGER = "ledger";
+  static final String FIELD_FROM = "from";
+  static final String FIELD_TO = "to";
+  static final String FIELD_SUM = "sum";
+  static final String PROPERTY_MAX_LENGTH = "transfer.ledger.maxLength";
+  static final int READ_BATCH_SIZE = 1000;
+  static final int BLOCK_MILLIS = 1000;
+  private static final long DEFAULT_MAX_LENGTH = 1_000_000;
+  private static final Logger LOG = LoggerFactory.getLogger(TransferLedger.class);
+  private static final RedisScript ENTRY_SCRIPT = new RedisScript("ledger_entry.lua");
+  // NOTE up to 18 digits, so both parts fit into a long
+  private static final Pattern ENTRY_ID = Pattern.compile("\\d{1,18}-\\d{1,18}");
+
+  private final String redisHost;
+  private final int redisPort;
+  private final AtomicInteger followers = new AtomicInteger();
+  private volatile boolean closed;
+
+  @Inject
+  public TransferLedger(@RedisHost String redisHost, @RedisPort int redisPort) {
+    this.redisHost = redisHost;
+    this.redisPort = redisPort;
+  }
+
+  @Inject(optional = true)
+  void setMetrics(Metrics metrics) {
+    metrics.gauge("transfer_ledger_followers", "The number of clients reading the ledger",
+        followers::get);
+  }
+
+  static long getMaxLength() {
+    return Long.getLong(PROPERTY_MAX_LENGTH, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * @return the arguments of a transfer script followed by the ids and the max length of the ledger
+   */
+  static List<String> appendEntryArgs(List<String> args, Long fromAccountId, Long toAccountId) {
+    final List<String> result = new ArrayList<>(args.size() + 3);
+    result.addAll(args);
+    result.add(fromAccountId.toString());
+    result.add(toAccountId.toString());
+    result.add(Long.toString(getMaxLength()));
+
+    return result;
+  }
+
+  /**
+   * Loads the script appending the entries, so a transaction sends only its digest, see
+   * {@link #appendEntry}
+   */
+  static void loadEntryScript(Jedis jedis) {
+    ENTRY_SCRIPT.load(jedis);
+  }
+
+  /**
+   * Appends the entry of a transfer to the ledger and to the transfer histories of the accounts
+   * (see {@link TransferHistory}) by the given transaction, i.e. with the balances. The caller
+   * passes the returned entry to {@link #checkAppended} when the transaction is done.
+   */
+  static QueuedEntry appendEntry(Transaction transaction, BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    final List<String> keys = TransferHistory
+        .appendKeys(singletonList(KEY_LEDGER), fromAccountId, toAccountId);
+    final List<String> args = TransferHistory.appendArgs(asList(fromAccountId.toString(),
+        toAccountId.toString(), sum.toPlainString(), Long.toString(getMaxLength())));
+
+    return new QueuedEntry(keys, args, ENTRY_SCRIPT.eval(transaction, keys, args));
+  }
+
+  /**
+   * Appends the entries which the done transaction failed to append because the script was missing
+   * in Redis (NOSCRIPT), e.g. after a restart of Redis or SCRIPT FLUSH, the script is reloaded.
+   * NOTE such an entry is appended right after its transaction, not atomically with it
+   */
+  static void checkAppended(Jedis jedis, List<QueuedEntry> entries) {
+    for (QueuedEntry entry : entries) {
+      try {
+        entry.response.get();
+      } catch (JedisNoScriptException e) {
+        LOG.warn("Ledger entry script is missing, the entry is appended after its transfer");
+        ENTRY_SCRIPT.eval(jedis, entry.keys, entry.args);
+      }
+    }
+  }
+
+  /**
+   * Passes the entries after the given one to the consumer by batches of up to
+   * {@link #READ_BATCH_SIZE} in the order of the ledger.
+   *
+   * @param fromId the id of the last entry known to the caller, 0-0 to read from the start or $ to
+   * read the entries appended from now
+   * @param follow false to return when the entries appended so far are read, true to wait for new
+   * ones till the consumer fails or the ledger is closed
+   * @throws IllegalArgumentException if the id isn't an id of a stream entry
+   */
+  public void read(String fromId, boolean follow, Consumer consumer) throws IOException {
+    StreamEntryID lastId = parseId(fromId);
+    final XReadParams params = XReadParams.xReadParams().count(READ_BATCH_SIZE);
+
+    if (follow) {
+      params.block(BLOCK_MILLIS);
+    }
+
+    followers.incrementAndGet();
+
+    try (Jedis jedis = new Jedis(redisHost, redisPort)) {
+      // NOTE $ is resolved once: every XREAD would read after its own call, so the entries appended
+      // between the calls would be skipped
+      if (lastId == StreamEntryID.LAST_ENTRY) {
+        lastId = getLastId(jedis);
+      }
+
+      while (!closed) {
+        final List<Entry<String, List<StreamEntry>>> result = jedis
+            .xread(params, Collections.singletonMap(KEY_LEDGER, lastId));
+
+        if (result == null || result.isEmpty()) {
+          if (follow) {
+            continue;
+          }
+
+          break;
+        }
+
+        final List<StreamEntry> streamEntries = result.get(0).getValue();
+        final List<LedgerEntry> entries = new ArrayList<>(streamEntries.size());
+
+        for (StreamEntry streamEntry : streamEntries) {
+          entries.add(toLedgerEntry(streamEntry));
+        }
+
+        consumer.accept(entries);
+        lastId = streamEntries.get(streamEntries.size() - 1).getID();
+      }
+    } finally {
+      followers.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return the id of the last entry or 0-0 if the ledger is empty
+   */
+  private static StreamEntryID getLastId(Jedis jedis) {
+    final List<StreamEntry> lastEntries = jedis.xrevrange(KEY_LEDGER, null, null, 1);
+
+    return lastEntries.isEmpty() ? new StreamEntryID() : lastEntries.get(0).getID();
+  }
+
+  /**
+   * @return true if the id can be passed to {@link #read}
+   */
+  public static boolean isId(String id) {
+    return StreamEntryID.LAST_ENTRY.toString().equals(id) || ENTRY_ID.matcher(id).matches();
+  }
+
+  private static StreamEntryID parseId(String id) {
+    if (StreamEntryID.LAST_ENTRY.toString().equals(id)) {
+      return StreamEntryID.LAST_ENTRY;
+    }
+
+    if (ENTRY_ID.matcher(id).matches()) {
+      return new StreamEntryID(id);
+    }
+
+    throw new IllegalArgumentException("Not a ledger entry id: " + id);
+  }
+
+  private static LedgerEntry toLedgerEntry(StreamEntry streamEntry) {
+    final Map<String, String> fields = streamEntry.getFields();
+
+    return new LedgerEntry(streamEntry.getID().toString(), Long.valueOf(fields.get(FIELD_FROM)),
+        Long.valueOf(fields.get(FIELD_TO)), new BigDecimal(fields.get(FIELD_SUM)));
+  }
+
+  /**
+   * Stops the followers, a follower returns when its XREAD times out
+   */
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  /**
+   * The entry of a transfer queued in a transaction, see {@link #appendEntry}
+   */
+  static final class QueuedEntry {
+
+    private final List<String> keys;
+    private final List<String> args;
+    private final Response<Object> response;
+
+    private QueuedEntry(List<String> keys, List<String> args, Response<Object> response) {
+      this.keys = keys;
+      this.args = args;
+      this.response = response;
+    }
+  }
+
+  public interface Consumer {
+
+    /**
+     * @throws IOException to stop reading, e.g. if the client is gone
+     */
+    void accept(List<LedgerEntry> entries) throws IOException;
+  }
+}
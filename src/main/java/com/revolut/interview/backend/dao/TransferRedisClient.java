@@ -0,0 +1,19 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisHost;
+import com.revolut.interview.backend.dao.TransferJedisPool.RedisPort;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+
+/**
+ * A non-blocking Redis client, its connections are thread-safe, so one of them can be shared.
+ */
+public class TransferRedisClient extends RedisClient {
+
+  @Inject
+  public TransferRedisClient(@RedisHost String host, @RedisPort int port) {
+    // The default client resources (I/O threads) are created then
+    super(null, RedisURI.create(host, port));
+  }
+}
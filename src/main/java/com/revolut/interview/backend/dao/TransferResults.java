@@ -0,0 +1,47 @@
+package com.revolut.interview.backend.dao;
+
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+
+/**
+ * Converts the outcome of one transfer into a result, so a failed transfer doesn't fail a batch.
+ */
+final class TransferResults {
+
+  private TransferResults() {
+  }
+
+  static TransferResult of(Transferring transferring) {
+    try {
+      transferring.transfer();
+
+      return TransferResult.ok();
+    } catch (IllegalArgumentException e) {
+      return new TransferResult(Status.ILLEGAL_ARGUMENT, e.getMessage());
+    } catch (AccountNotFoundException e) {
+      return new TransferResult(Status.ACCOUNT_NOT_FOUND, e.getMessage());
+    } catch (NotEnoughMoneyException e) {
+      return new TransferResult(Status.NOT_ENOUGH_MONEY, e.getMessage());
+    } catch (FromAndToAccountsTheSameException e) {
+      return new TransferResult(Status.FROM_AND_TO_ACCOUNTS_THE_SAME, e.getMessage());
+    } catch (TransferConflictException e) {
+      return new TransferResult(Status.CONFLICT, e.getMessage());
+    }
+  }
+
+  static void checkComplete(Transfer transfer) {
+    if (transfer == null || transfer.getSum() == null || transfer.getFrom() == null
+        || transfer.getTo() == null) {
+      throw new IllegalArgumentException("Incomplete transfer: " + transfer);
+    }
+  }
+
+  @FunctionalInterface
+  interface Transferring {
+
+    void transfer()
+        throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+        TransferConflictException;
+  }
+}
@@ -0,0 +1,872 @@
+package com.revolut.interview.backend.dao;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.metrics.Counter;
+import com.revolut.interview.backend.metrics.LatencyHistogram;
+import com.revolut.interview.backend.metrics.Metrics;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-ahead log of the accounts kept in memory (see {@link AccountJournal}). A change is
+ * appended to the current batch in memory under a short lock, and one flusher thread writes and
+ * fsyncs the whole batch, i.e. the changes of many threads cost one fsync (group commit). The
+ * flusher waits for -Daccount.wal.flushWindowMicros=<N> after the first change of a batch to
+ * collect more of them, 0 flushes a batch as soon as the previous one is fsynced. A caller waits
+ * for its changes by {@link #whenDurable()}.
+ * The log is a sequence of segment files in -Daccount.wal.dir=<DIR>, a segment is named by its
+ * position in the log and the next one is started when it's longer than
+ * -Daccount.wal.segmentBytes=<N>. A record is framed by its length and CRC32, so a record torn by a
+ * crash is dropped by {@link #recover(Target)}.
+ * When -Daccount.wal.snapshotSegments=<N> segments are complete, a background thread merges them
+ * into the last {@link AccountSnapshot} and removes them, 0 keeps all segments. The complete
+ * segments and snapshots aren't changed, so a snapshot is taken without stopping the changes or
+ * copying the accounts of the DAO, and a start loads the last snapshot and replays the segments
+ * after it only.
+ */
+@Singleton
+public class WriteAheadLog implements AccountJournal, Closeable {
+
+  public static final String PROPERTY_DIR = "account.wal.dir";
+  static final String PROPERTY_FLUSH_WINDOW_MICROS = "account.wal.flushWindowMicros";
+  static final String PROPERTY_SEGMENT_BYTES = "account.wal.segmentBytes";
+  static final String PROPERTY_SNAPSHOT_SEGMENTS = "account.wal.snapshotSegments";
+  private static final long DEFAULT_FLUSH_WINDOW_MICROS = 200;
+  private static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+  private static final int DEFAULT_SNAPSHOT_SEGMENTS = 1;
+  private static final String SEGMENT_PREFIX = "wal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final byte TYPE_CREATED = 1;
+  private static final byte TYPE_TRANSFERRED = 2;
+  // The length of a record body before it and its CRC32 after it
+  private static final int FRAME_BYTES = 2 * Integer.BYTES;
+  private static final int INITIAL_BATCH_BYTES = 64 << 10;
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+  private final Path dir;
+  private final long flushWindowNanos;
+  private final int segmentBytes;
+  private final int snapshotSegments;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition batchStarted = lock.newCondition();
+  private final CRC32 crc = new CRC32();
+  // Guarded by the lock
+  private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+  private ByteBuffer batch = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+  private long appendedPosition;
+  private boolean open;
+  private IOException failure;
+  // The position in the log of the end of the fsynced records
+  private volatile long durablePosition;
+  private volatile boolean closed;
+  // Used by the flusher only
+  private ByteBuffer flushedBatch = ByteBuffer.allocate(INITIAL_BATCH_BYTES);
+  private FileChannel segment;
+  private long segmentStart;
+  private Thread flusher;
+  private int sealedSegments;
+  // The end of the last segment to take a snapshot of
+  private volatile long sealedPosition;
+  // Used by the snapshot thread only
+  private ExecutorService snapshotExecutor;
+  private long snapshotPosition;
+  private Counter flushes = new Counter();
+  private Counter records = new Counter();
+  private LatencyHistogram flushDuration = new LatencyHistogram();
+  private Counter snapshots = new Counter();
+  private LatencyHistogram snapshotDuration = new LatencyHistogram();
+
+  @Inject
+  public WriteAheadLog() {
+    this(Paths.get(System.getProperty(PROPERTY_DIR)),
+        TimeUnit.MICROSECONDS.toNanos(
+            Long.getLong(PROPERTY_FLUSH_WINDOW_MICROS, DEFAULT_FLUSH_WINDOW_MICROS)),
+        Integer.getInteger(PROPERTY_SEGMENT_BYTES, DEFAULT_SEGMENT_BYTES),
+        Integer.getInteger(PROPERTY_SNAPSHOT_SEGMENTS, DEFAULT_SNAPSHOT_SEGMENTS));
+  }
+
+  /**
+   * Without snapshots
+   */
+  WriteAheadLog(Path dir, long flushWindowNanos, int segmentBytes) {
+    this(dir, flushWindowNanos, segmentBytes, 0);
+  }
+
+  WriteAheadLog(Path dir, long flushWindowNanos, int segmentBytes, int snapshotSegments) {
+    if (segmentBytes < 1) {
+      throw new IllegalArgumentException("Illegal WAL segment size: " + segmentBytes);
+    }
+
+    if (snapshotSegments < 0) {
+      throw new IllegalArgumentException("Illegal WAL snapshot segments: " + snapshotSegments);
+    }
+
+    this.dir = dir;
+    this.flushWindowNanos = flushWindowNanos;
+    this.segmentBytes = segmentBytes;
+    this.snapshotSegments = snapshotSegments;
+  }
+
+  /**
+   * @return true if -Daccount.wal.dir=<DIR> is set
+   */
+  public static boolean isEnabled() {
+    return System.getProperty(PROPERTY_DIR) != null;
+  }
+
+  @Inject(optional = true)
+  void setMetrics(Metrics metrics) {
+    flushes = metrics.counter("account_wal_flushes_total",
+        "The number of batches of changes written and fsynced to the WAL", "");
+    records = metrics.counter("account_wal_records_total",
+        "The number of changes appended to the WAL", "");
+    flushDuration = metrics.histogram("account_wal_flush_duration_seconds",
+        "The time of writing and fsyncing a batch of changes to the WAL", "");
+    snapshots = metrics.counter("account_wal_snapshots_total",
+        "The number of account snapshots taken of the WAL", "");
+    snapshotDuration = metrics.histogram("account_wal_snapshot_duration_seconds",
+        "The time of merging WAL segments into an account snapshot", "");
+  }
+
+  /**
+   * Restores the accounts of the last snapshot, applies the changes of the segments after it to
+   * the given DAO in the order they are recorded and opens the log for new changes after them. A
+   * torn record at the end of the last segment is cut off.
+   * NOTE it must be done once before any change is recorded
+   *
+   * @return the number of restored accounts and applied changes
+   * @throws IOException if a snapshot or a segment can't be read or it's corrupted
+   */
+  public long recover(Target target) throws IOException {
+    Files.createDirectories(dir);
+
+    final Path snapshot = findLastSnapshot();
+    final long[] result = {0};
+    long position = 0;
+
+    if (snapshot != null) {
+      position = AccountSnapshot.load(snapshot, (id, balance) -> {
+        target.restoreAccount(id, balance);
+        result[0]++;
+      });
+    }
+
+    // The files left by a crash while a snapshot was taken
+    removeObsoleteFiles(position);
+    snapshotPosition = position;
+    final List<Path> segments = listSegments();
+
+    for (int i = 0; i < segments.size(); i++) {
+      final Path path = segments.get(i);
+      final long start = parseSegmentStart(path);
+
+      if (start != position) {
+        throw new IOException("WAL segment doesn't follow the previous one: " + path);
+      }
+
+      final Replay replay = replaySegment(path, target);
+      result[0] += replay.records;
+      position = start + replay.validBytes;
+
+      if (replay.torn) {
+        if (i < segments.size() - 1) {
+          throw new IOException("WAL segment is corrupted at " + replay.validBytes + ": " + path);
+        }
+
+        LOG.warn("Torn WAL record is cut off at " + replay.validBytes + ": " + path);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+          channel.truncate(replay.validBytes);
+          channel.force(true);
+        }
+      }
+    }
+
+    openForAppends(segments.isEmpty() ? null : segments.get(segments.size() - 1), position);
+
+    LOG.info("Recovered from WAL: " + result[0] + " accounts and changes, " + segments.size()
+        + " segments after " + (snapshot == null ? "no snapshot" : snapshot.getFileName()));
+
+    return result[0];
+  }
+
+  private Path findLastSnapshot() throws IOException {
+    Path result = null;
+
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir,
+        AccountSnapshot.PREFIX + "*" + AccountSnapshot.SUFFIX)) {
+      for (Path path : paths) {
+        if (result == null
+            || AccountSnapshot.parsePosition(path) > AccountSnapshot.parsePosition(result)) {
+          result = path;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the segments and the snapshots before the given position and unfinished snapshots
+   */
+  private void removeObsoleteFiles(long position) throws IOException {
+    for (Path segment : listSegments()) {
+      if (parseSegmentStart(segment) < position) {
+        Files.delete(segment);
+      }
+    }
+
+    try (DirectoryStream<Path> paths = Files
+        .newDirectoryStream(dir, AccountSnapshot.PREFIX + "*")) {
+      for (Path path : paths) {
+        if (path.getFileName().toString().endsWith(AccountSnapshot.TEMP_SUFFIX)
+            || AccountSnapshot.parsePosition(path) < position) {
+          Files.delete(path);
+        }
+      }
+    }
+  }
+
+  private List<Path> listSegments() throws IOException {
+    final List<Path> result = new ArrayList<>();
+
+    try (DirectoryStream<Path> paths = Files
+        .newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      paths.forEach(result::add);
+    }
+
+    result.sort((path1, path2) -> Long
+        .compare(parseSegmentStart(path1), parseSegmentStart(path2)));
+
+    return result;
+  }
+
+  private static long parseSegmentStart(Path path) {
+    final String name = path.getFileName().toString();
+
+    return Long.parseLong(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private Path makeSegmentPath(long start) {
+    return dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * The segment is mapped into memory, so it's read sequentially without copying
+   */
+  private Replay replaySegment(Path path, Target target) throws IOException {
+    final Replay result = new Replay();
+    final MappedByteBuffer buffer;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    final CRC32 recordCrc = new CRC32();
+
+    while (buffer.hasRemaining()) {
+      if (buffer.remaining() < FRAME_BYTES) {
+        result.torn = true;
+        break;
+      }
+
+      final int start = buffer.position();
+      final int bodyBytes = buffer.getInt();
+
+      if (bodyBytes < 1 || buffer.remaining() < bodyBytes + Integer.BYTES) {
+        result.torn = true;
+        break;
+      }
+
+      final ByteBuffer body = buffer.slice();
+      body.limit(bodyBytes);
+      recordCrc.reset();
+      recordCrc.update(body.duplicate());
+      buffer.position(start + Integer.BYTES + bodyBytes);
+
+      if ((int) recordCrc.getValue() != buffer.getInt()) {
+        buffer.position(start);
+        result.torn = true;
+        break;
+      }
+
+      applyRecord(body, target);
+      result.records++;
+      result.validBytes = buffer.position();
+    }
+
+    return result;
+  }
+
+  private static void applyRecord(ByteBuffer body, Target target) throws IOException {
+    final byte type = body.get();
+
+    if (type == TYPE_CREATED) {
+      final long id = body.getLong();
+      target.restoreAccount(id, getAmount(body));
+    } else if (type == TYPE_TRANSFERRED) {
+      final long fromAccountId = body.getLong();
+      final long toAccountId = body.getLong();
+      target.restoreTransfer(getAmount(body), fromAccountId, toAccountId);
+    } else {
+      throw new IOException("Unknown WAL record type: " + type);
+    }
+  }
+
+  private static BigDecimal getAmount(ByteBuffer body) {
+    final int scale = body.getInt();
+    final byte[] unscaled = new byte[body.getInt()];
+    body.get(unscaled);
+
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  private void openForAppends(Path lastSegment, long position) throws IOException {
+    final long lastSegmentStart = lastSegment == null ? 0 : parseSegmentStart(lastSegment);
+
+    if (lastSegment != null && position - lastSegmentStart < segmentBytes) {
+      segment = FileChannel.open(lastSegment, StandardOpenOption.WRITE);
+      segment.position(position - lastSegmentStart);
+      segmentStart = lastSegmentStart;
+    } else {
+      startSegment(position);
+    }
+
+    lock.lock();
+
+    try {
+      if (open || closed) {
+        throw new IllegalStateException("WAL is recovered or closed already");
+      }
+
+      appendedPosition = position;
+      durablePosition = position;
+      open = true;
+    } finally {
+      lock.unlock();
+    }
+
+    if (snapshotSegments > 0) {
+      snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "wal-snapshot");
+        thread.setDaemon(true);
+
+        return thread;
+      });
+    }
+
+    flusher = new Thread(this::flushBatches, "wal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * NOTE the directory is fsynced as well, otherwise a new file might be lost by a crash
+   */
+  private void startSegment(long start) throws IOException {
+    if (segment != null) {
+      segment.close();
+    }
+
+    segment = FileChannel.open(makeSegmentPath(start), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+    segmentStart = start;
+
+    try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      dirChannel.force(true);
+    } catch (IOException e) {
+      // Not supported by some platforms, e.g. Windows
+      LOG.debug("WAL directory isn't fsynced", e);
+    }
+  }
+
+  @Override
+  public void created(long id, BigDecimal balance) {
+    final byte[] unscaled = balance.unscaledValue().toByteArray();
+
+    lock.lock();
+
+    try {
+      final int start = startRecord(1 + Long.BYTES + amountBytes(unscaled.length));
+      batch.put(TYPE_CREATED);
+      batch.putLong(id);
+      putAmount(balance.scale(), unscaled);
+      endRecord(start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void transferred(BigDecimal sum, long fromAccountId, long toAccountId) {
+    final byte[] unscaled = sum.unscaledValue().toByteArray();
+
+    lock.lock();
+
+    try {
+      final int start = startRecord(1 + 2 * Long.BYTES + amountBytes(unscaled.length));
+      putTransferred(fromAccountId, toAccountId);
+      putAmount(sum.scale(), unscaled);
+      endRecord(start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The units are recorded as 8 bytes of a big integer, so nothing is allocated
+   */
+  @Override
+  public void transferredUnits(long units, int scale, long fromAccountId, long toAccountId) {
+    lock.lock();
+
+    try {
+      final int start = startRecord(1 + 2 * Long.BYTES + amountBytes(Long.BYTES));
+      putTransferred(fromAccountId, toAccountId);
+      batch.putInt(scale);
+      batch.putInt(Long.BYTES);
+      batch.putLong(units);
+      endRecord(start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void putTransferred(long fromAccountId, long toAccountId) {
+    batch.put(TYPE_TRANSFERRED);
+    batch.putLong(fromAccountId);
+    batch.putLong(toAccountId);
+  }
+
+  private static int amountBytes(int unscaledBytes) {
+    return 2 * Integer.BYTES + unscaledBytes;
+  }
+
+  private void putAmount(int scale, byte[] unscaled) {
+    batch.putInt(scale);
+    batch.putInt(unscaled.length);
+    batch.put(unscaled);
+  }
+
+  /**
+   * @return the position of the record in the batch
+   * @throws UncheckedIOException if the log failed
+   */
+  private int startRecord(int bodyBytes) {
+    if (failure != null) {
+      throw new UncheckedIOException("WAL failed", failure);
+    }
+
+    if (!open || closed) {
+      throw new IllegalStateException("WAL isn't open");
+    }
+
+    if (batch.remaining() < bodyBytes + FRAME_BYTES) {
+      final ByteBuffer newBatch = ByteBuffer
+          .allocate(Math.max(2 * batch.capacity(), batch.position() + bodyBytes + FRAME_BYTES));
+      batch.flip();
+      newBatch.put(batch);
+      batch = newBatch;
+    }
+
+    final int result = batch.position();
+    batch.putInt(bodyBytes);
+
+    return result;
+  }
+
+  private void endRecord(int start) {
+    final ByteBuffer body = batch.duplicate();
+    body.position(start + Integer.BYTES).limit(batch.position());
+    crc.reset();
+    crc.update(body);
+    batch.putInt((int) crc.getValue());
+
+    appendedPosition += batch.position() - start;
+    records.increment();
+
+    if (start == 0) {
+      batchStarted.signal();
+    }
+  }
+
+  /**
+   * @return a future completed when the changes recorded so far are fsynced or failed with
+   * {@link UncheckedIOException} if the log failed
+   */
+  public CompletableFuture<Void> whenDurable() {
+    final Waiter waiter;
+
+    lock.lock();
+
+    try {
+      if (failure != null) {
+        return CompletableFuture.failedFuture(new UncheckedIOException("WAL failed", failure));
+      }
+
+      if (durablePosition >= appendedPosition) {
+        return CompletableFuture.completedFuture(null);
+      }
+
+      waiter = new Waiter(appendedPosition);
+      waiters.add(waiter);
+    } finally {
+      lock.unlock();
+    }
+
+    return waiter.durable;
+  }
+
+  /**
+   * Blocks till the changes recorded so far are fsynced
+   *
+   * @throws UncheckedIOException if the log failed
+   */
+  public void awaitDurable() {
+    try {
+      whenDurable().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  private void flushBatches() {
+    try {
+      while (true) {
+        lock.lock();
+
+        try {
+          while (batch.position() == 0 && !closed) {
+            batchStarted.await();
+          }
+
+          // The last batch is flushed on close
+          if (batch.position() == 0) {
+            break;
+          }
+        } finally {
+          lock.unlock();
+        }
+
+        if (flushWindowNanos > 0 && !closed) {
+          LockSupport.parkNanos(this, flushWindowNanos);
+        }
+
+        flushBatch();
+      }
+    } catch (IOException e) {
+      LOG.error("WAL failed", e);
+      fail(e);
+    } catch (InterruptedException e) {
+      fail(new IOException("WAL flusher is interrupted", e));
+    }
+  }
+
+  private void flushBatch() throws IOException {
+    final long end;
+
+    lock.lock();
+
+    try {
+      final ByteBuffer swapped = batch;
+      batch = flushedBatch;
+      flushedBatch = swapped;
+      end = appendedPosition;
+    } finally {
+      lock.unlock();
+    }
+
+    final long start = System.nanoTime();
+    flushedBatch.flip();
+
+    while (flushedBatch.hasRemaining()) {
+      segment.write(flushedBatch);
+    }
+
+    segment.force(false);
+    flushedBatch.clear();
+    flushDuration.recordSince(start);
+    flushes.increment();
+    durablePosition = end;
+    completeWaiters(end);
+
+    if (end - segmentStart >= segmentBytes) {
+      startSegment(end);
+
+      if (snapshotExecutor != null && ++sealedSegments >= snapshotSegments) {
+        sealedSegments = 0;
+        sealedPosition = end;
+        snapshotExecutor.execute(this::takeSnapshot);
+      }
+    }
+  }
+
+  /**
+   * Merges the changes of the complete segments into the last snapshot and removes them. The
+   * changes are collected per account in memory, so it takes as much memory as the number of the
+   * changed accounts, then they are merged with the last snapshot as it's read.
+   * NOTE the log stays correct if it fails, the segments are merged by the next snapshot then
+   */
+  private void takeSnapshot() {
+    final long end = sealedPosition;
+
+    if (end <= snapshotPosition) {
+      return;
+    }
+
+    final long start = System.nanoTime();
+
+    try {
+      final Compaction compaction = new Compaction();
+
+      for (Path segment : listSegments()) {
+        final long segmentStart = parseSegmentStart(segment);
+
+        if (segmentStart >= snapshotPosition && segmentStart < end
+            && replaySegment(segment, compaction).torn) {
+          throw new IOException("Complete WAL segment is corrupted: " + segment);
+        }
+      }
+
+      final Path lastSnapshot = findLastSnapshot();
+
+      try (AccountSnapshot.Writer writer = AccountSnapshot.create(dir, end)) {
+        if (lastSnapshot != null) {
+          AccountSnapshot
+              .load(lastSnapshot, (id, balance) -> compaction.merge(id, balance, writer));
+        }
+
+        compaction.finish(writer);
+        writer.commit();
+      }
+
+      removeObsoleteFiles(end);
+      snapshotPosition = end;
+      snapshots.increment();
+      snapshotDuration.recordSince(start);
+    } catch (IOException | RuntimeException e) {
+      LOG.error("WAL snapshot failed", e);
+    }
+  }
+
+  private void completeWaiters(long position) {
+    final List<Waiter> durable = new ArrayList<>();
+
+    lock.lock();
+
+    try {
+      while (!waiters.isEmpty() && waiters.peek().position <= position) {
+        durable.add(waiters.poll());
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    // NOTE outside of the lock, the callbacks of a caller might be slow
+    for (Waiter waiter : durable) {
+      waiter.durable.complete(null);
+    }
+  }
+
+  private void fail(IOException e) {
+    final List<Waiter> failed;
+
+    lock.lock();
+
+    try {
+      failure = e;
+      failed = new ArrayList<>(waiters);
+      waiters.clear();
+    } finally {
+      lock.unlock();
+    }
+
+    for (Waiter waiter : failed) {
+      waiter.durable.completeExceptionally(new UncheckedIOException("WAL failed", e));
+    }
+  }
+
+  /**
+   * Flushes the changes recorded so far and closes the log, a change can't be recorded then
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+
+    try {
+      closed = true;
+      batchStarted.signal();
+    } finally {
+      lock.unlock();
+    }
+
+    if (flusher != null) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while closing WAL", e);
+      }
+
+      segment.close();
+    }
+
+    if (snapshotExecutor != null) {
+      snapshotExecutor.shutdown();
+
+      try {
+        snapshotExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while closing WAL", e);
+      }
+    }
+  }
+
+  private static class Replay {
+
+    private long records;
+    private int validBytes;
+    private boolean torn;
+  }
+
+  /**
+   * The changes of accounts since the last snapshot in the ascending order of ids
+   */
+  private static class Compaction implements Target {
+
+    private final TreeMap<Long, Change> changes = new TreeMap<>();
+    private Iterator<Entry<Long, Change>> iterator;
+    private Entry<Long, Change> next;
+
+    @Override
+    public void restoreAccount(long id, BigDecimal balance) {
+      changes.put(id, new Change(true, balance));
+    }
+
+    @Override
+    public void restoreTransfer(BigDecimal sum, long fromAccountId, long toAccountId) {
+      addSum(fromAccountId, sum.negate());
+      addSum(toAccountId, sum);
+    }
+
+    private void addSum(long accountId, BigDecimal sum) {
+      final Change change = changes.get(accountId);
+
+      if (change == null) {
+        changes.put(accountId, new Change(false, sum));
+      } else {
+        change.value = change.value.add(sum);
+      }
+    }
+
+    /**
+     * Writes the changed accounts before the given one of the last snapshot and the given one
+     */
+    void merge(long id, BigDecimal balance, AccountSnapshot.Writer writer) throws IOException {
+      writeBefore(id, writer);
+
+      if (next != null && next.getKey() == id) {
+        writer.add(id, next.getValue().apply(balance));
+        next = nextChange();
+      } else {
+        writer.add(id, balance);
+      }
+    }
+
+    /**
+     * Writes the changed accounts after the last one of the last snapshot
+     */
+    void finish(AccountSnapshot.Writer writer) throws IOException {
+      writeBefore(null, writer);
+    }
+
+    /**
+     * NOTE an account changed but not created since the last snapshot has to be there, it's
+     * restored like the DAOs do it otherwise: as the zero balance changed by the transfers
+     *
+     * @param id is null for all accounts
+     */
+    private void writeBefore(Long id, AccountSnapshot.Writer writer) throws IOException {
+      if (iterator == null) {
+        iterator = changes.entrySet().iterator();
+        next = nextChange();
+      }
+
+      while (next != null && (id == null || next.getKey() < id)) {
+        writer.add(next.getKey(), next.getValue().apply(BigDecimal.ZERO));
+        next = nextChange();
+      }
+    }
+
+    private Entry<Long, Change> nextChange() {
+      return iterator.hasNext() ? iterator.next() : null;
+    }
+  }
+
+  private static class Change {
+
+    private final boolean created;
+    // The balance of a created account or the sum of the transfers otherwise
+    private BigDecimal value;
+
+    Change(boolean created, BigDecimal value) {
+      this.created = created;
+      this.value = value;
+    }
+
+    BigDecimal apply(BigDecimal balance) {
+      return created ? value : balance.add(value);
+    }
+  }
+
+  private static class Waiter implements Comparable<Waiter> {
+
+    private final long position;
+    private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+    Waiter(long position) {
+      this.position = position;
+    }
+
+    @Override
+    public int compareTo(Waiter other) {
+      return Long.compare(position, other.position);
+    }
+  }
+}
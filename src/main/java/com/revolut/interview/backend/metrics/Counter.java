@@ -0,0 +1,28 @@
+package com.revolut.interview.backend.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic counter which is incremented by concurrent threads without contention
+ */
+public class Counter implements Metric {
+
+  private final LongAdder value = new LongAdder();
+
+  public void increment() {
+    value.increment();
+  }
+
+  public void add(long delta) {
+    value.add(delta);
+  }
+
+  public long get() {
+    return value.sum();
+  }
+
+  @Override
+  public void write(StringBuilder out, String name, String labels) {
+    Metric.writeSample(out, name, labels, Long.toString(get()));
+  }
+}
@@ -0,0 +1,67 @@
+package com.revolut.interview.backend.metrics;
+
+import static com.revolut.interview.backend.metrics.Metric.addLabel;
+import static com.revolut.interview.backend.metrics.Metric.writeSample;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies in nanoseconds recorded by a wait-free {@link Recorder} of HdrHistogram, i.e. a
+ * recording neither locks nor allocates. The recorded values are moved into the total histogram
+ * when the metric is written, it's exposed as a Prometheus summary in seconds since the start.
+ * NOTE a latency longer than {@link #HIGHEST_TRACKABLE_NANOS} is recorded as the highest one
+ */
+public class LatencyHistogram implements Metric {
+
+  private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final double NANOS_IN_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+  private final LongAdder sumNanos = new LongAdder();
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final Histogram interval = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+  private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+  private static String toSeconds(double nanos) {
+    return Double.toString(nanos / NANOS_IN_SECOND);
+  }
+
+  public void record(long nanos) {
+    final long value = Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+    recorder.recordValue(value);
+    sumNanos.add(value);
+  }
+
+  /**
+   * @param startNanos a value of {@link System#nanoTime()} at the start
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public void write(StringBuilder out, String name, String labels) {
+    writeLock.lock();
+
+    try {
+      recorder.getIntervalHistogramInto(interval);
+      total.add(interval);
+
+      for (double quantile : QUANTILES) {
+        writeSample(out, name, addLabel(labels, "quantile=\"" + quantile + "\""),
+            toSeconds(total.getValueAtPercentile(quantile * 100)));
+      }
+
+      writeSample(out, name + "_sum", labels, toSeconds(sumNanos.sum()));
+      writeSample(out, name + "_count", labels, Long.toString(total.getTotalCount()));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+}
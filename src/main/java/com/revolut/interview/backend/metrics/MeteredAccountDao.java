@@ -0,0 +1,160 @@
+package com.revolut.interview.backend.metrics;
+
+import com.google.inject.BindingAnnotation;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountNotFoundException;
+import com.revolut.interview.backend.dao.FromAndToAccountsTheSameException;
+import com.revolut.interview.backend.dao.IdempotencyKeyReusedException;
+import com.revolut.interview.backend.dao.NotEnoughMoneyException;
+import com.revolut.interview.backend.dao.TransferConflictException;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records the latency of every method of the {@link Delegate} DAO, failed calls included.
+ */
+@Singleton
+public class MeteredAccountDao implements AccountDao {
+
+  static final String METRIC_NAME = "account_dao_duration_seconds";
+  private static final String METRIC_HELP = "The latency of the account DAO methods";
+
+  private final AccountDao delegate;
+  private final LatencyHistogram createLatency;
+  private final LatencyHistogram createInBulkLatency;
+  private final LatencyHistogram findByIdLatency;
+  private final LatencyHistogram transferLatency;
+  private final LatencyHistogram transferAsyncLatency;
+  private final LatencyHistogram transferOnceLatency;
+  private final LatencyHistogram transferOnceAsyncLatency;
+  private final LatencyHistogram transferInBatchLatency;
+
+  @Inject
+  public MeteredAccountDao(@Delegate AccountDao delegate, Metrics metrics) {
+    this.delegate = delegate;
+    createLatency = registerLatency(metrics, "create");
+    createInBulkLatency = registerLatency(metrics, "createInBulk");
+    findByIdLatency = registerLatency(metrics, "findById");
+    transferLatency = registerLatency(metrics, "transferMoneyTransactionally");
+    transferAsyncLatency = registerLatency(metrics, "transferMoneyAsync");
+    transferOnceLatency = registerLatency(metrics, "transferMoneyOnce");
+    transferOnceAsyncLatency = registerLatency(metrics, "transferMoneyOnceAsync");
+    transferInBatchLatency = registerLatency(metrics, "transferMoneyInBatch");
+  }
+
+  private static LatencyHistogram registerLatency(Metrics metrics, String method) {
+    return metrics.histogram(METRIC_NAME, METRIC_HELP, "method=\"" + method + "\"");
+  }
+
+  @Override
+  public Account create(Account account) {
+    final long start = System.nanoTime();
+
+    try {
+      return delegate.create(account);
+    } finally {
+      createLatency.recordSince(start);
+    }
+  }
+
+  @Override
+  public List<Account> createInBulk(List<Account> accounts) {
+    final long start = System.nanoTime();
+
+    try {
+      return delegate.createInBulk(accounts);
+    } finally {
+      createInBulkLatency.recordSince(start);
+    }
+  }
+
+  @Override
+  public Account findById(Long id) throws AccountNotFoundException {
+    final long start = System.nanoTime();
+
+    try {
+      return delegate.findById(id);
+    } finally {
+      findByIdLatency.recordSince(start);
+    }
+  }
+
+  @Override
+  public void transferMoneyTransactionally(BigDecimal sum, Long fromAccountId, Long toAccountId)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException {
+    final long start = System.nanoTime();
+
+    try {
+      delegate.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+    } finally {
+      transferLatency.recordSince(start);
+    }
+  }
+
+  /**
+   * NOTE the latency is recorded when the returned future is completed
+   */
+  @Override
+  public CompletableFuture<Void> transferMoneyAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId) {
+    final long start = System.nanoTime();
+
+    return delegate.transferMoneyAsync(sum, fromAccountId, toAccountId)
+        .whenComplete((ignored, e) -> transferAsyncLatency.recordSince(start));
+  }
+
+  @Override
+  public void transferMoneyOnce(BigDecimal sum, Long fromAccountId, Long toAccountId,
+      String idempotencyKey)
+      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException,
+      TransferConflictException, IdempotencyKeyReusedException {
+    final long start = System.nanoTime();
+
+    try {
+      delegate.transferMoneyOnce(sum, fromAccountId, toAccountId, idempotencyKey);
+    } finally {
+      transferOnceLatency.recordSince(start);
+    }
+  }
+
+  /**
+   * NOTE the latency is recorded when the returned future is completed
+   */
+  @Override
+  public CompletableFuture<Void> transferMoneyOnceAsync(BigDecimal sum, Long fromAccountId,
+      Long toAccountId, String idempotencyKey) {
+    final long start = System.nanoTime();
+
+    return delegate.transferMoneyOnceAsync(sum, fromAccountId, toAccountId, idempotencyKey)
+        .whenComplete((ignored, e) -> transferOnceAsyncLatency.recordSince(start));
+  }
+
+  @Override
+  public List<TransferResult> transferMoneyInBatch(List<Transfer> transfers) {
+    final long start = System.nanoTime();
+
+    try {
+      return delegate.transferMoneyInBatch(transfers);
+    } finally {
+      transferInBatchLatency.recordSince(start);
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ElementType.FIELD, ElementType.PARAMETER})
+  @BindingAnnotation
+  public @interface Delegate {
+
+  }
+}
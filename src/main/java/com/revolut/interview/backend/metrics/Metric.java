@@ -0,0 +1,25 @@
+package com.revolut.interview.backend.metrics;
+
+interface Metric {
+
+  /**
+   * Writes the samples of the metric in the Prometheus text format
+   *
+   * @param labels a comma separated list of name="value" or an empty string
+   */
+  void write(StringBuilder out, String name, String labels);
+
+  static void writeSample(StringBuilder out, String name, String labels, String value) {
+    out.append(name);
+
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+
+    out.append(' ').append(value).append('\n');
+  }
+
+  static String addLabel(String labels, String label) {
+    return labels.isEmpty() ? label : labels + "," + label;
+  }
+}
@@ -0,0 +1,77 @@
+package com.revolut.interview.backend.metrics;
+
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The metrics of the application exposed in the Prometheus text format (see {@link #scrape()}). A
+ * metric is registered once, e.g. on start, and then it's recorded without any lookup.
+ * NOTE registering a metric with the same name and labels again returns the registered one
+ */
+@Singleton
+public class Metrics {
+
+  private static final String TYPE_COUNTER = "counter";
+  private static final String TYPE_SUMMARY = "summary";
+  private static final String TYPE_GAUGE = "gauge";
+
+  private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+  public Counter counter(String name, String help, String labels) {
+    return register(name, help, TYPE_COUNTER, labels, new Counter());
+  }
+
+  public LatencyHistogram histogram(String name, String help, String labels) {
+    return register(name, help, TYPE_SUMMARY, labels, new LatencyHistogram());
+  }
+
+  /**
+   * @param value is called on every scrape
+   */
+  public void gauge(String name, String help, DoubleSupplier value) {
+    final Metric gauge = (out, metricName, labels) -> Metric
+        .writeSample(out, metricName, labels, Double.toString(value.getAsDouble()));
+    register(name, help, TYPE_GAUGE, "", gauge);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Metric> T register(String name, String help, String type, String labels,
+      T metric) {
+    final Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException(
+          "Metric " + name + " is already registered as " + family.type);
+    }
+
+    final Metric registered = family.metrics.putIfAbsent(labels, metric);
+
+    return registered == null ? metric : (T) registered;
+  }
+
+  public String scrape() {
+    final StringBuilder result = new StringBuilder();
+
+    families.forEach((name, family) -> {
+      result.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+      result.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+      family.metrics.forEach((labels, metric) -> metric.write(result, name, labels));
+    });
+
+    return result.toString();
+  }
+
+  private static class Family {
+
+    private final String help;
+    private final String type;
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.revolut.interview.backend.model;
+
+public class IdRange {
+
+  private final long from;
+  private final long to;
+
+  public IdRange(long from, long to) {
+    this.from = from;
+    this.to = to;
+  }
+
+  public long getFrom() {
+    return from;
+  }
+
+  public long getTo() {
+    return to;
+  }
+
+  @Override
+  public String toString() {
+    return "IdRange{" +
+        "from=" + from +
+        ", to=" + to +
+        '}';
+  }
+}
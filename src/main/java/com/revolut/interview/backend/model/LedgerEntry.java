@@ -0,0 +1,47 @@
+package com.revolut.interview.backend.model;
+
+import java.math.BigDecimal;
+
+/**
+ * A done transfer in the ledger, the id is the id of its stream entry, e.g. 1546300800000-0
+ */
+public class LedgerEntry {
+
+  private final String id;
+  private final Long from;
+  private final Long to;
+  private final BigDecimal sum;
+
+  public LedgerEntry(String id, Long from, Long to, BigDecimal sum) {
+    this.id = id;
+    this.from = from;
+    this.to = to;
+    this.sum = sum;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Long getFrom() {
+    return from;
+  }
+
+  public Long getTo() {
+    return to;
+  }
+
+  public BigDecimal getSum() {
+    return sum;
+  }
+
+  @Override
+  public String toString() {
+    return "LedgerEntry{" +
+        "id='" + id + '\'' +
+        ", from=" + from +
+        ", to=" + to +
+        ", sum=" + sum +
+        '}';
+  }
+}
@@ -0,0 +1,52 @@
+package com.revolut.interview.backend.model;
+
+import java.math.BigDecimal;
+
+public class Transfer {
+
+  private BigDecimal sum;
+  private Long from;
+  private Long to;
+
+  public Transfer() {
+  }
+
+  public Transfer(BigDecimal sum, Long from, Long to) {
+    this.sum = sum;
+    this.from = from;
+    this.to = to;
+  }
+
+  public BigDecimal getSum() {
+    return sum;
+  }
+
+  public void setSum(BigDecimal sum) {
+    this.sum = sum;
+  }
+
+  public Long getFrom() {
+    return from;
+  }
+
+  public void setFrom(Long from) {
+    this.from = from;
+  }
+
+  public Long getTo() {
+    return to;
+  }
+
+  public void setTo(Long to) {
+    this.to = to;
+  }
+
+  @Override
+  public String toString() {
+    return "Transfer{" +
+        "sum=" + sum +
+        ", from=" + from +
+        ", to=" + to +
+        '}';
+  }
+}
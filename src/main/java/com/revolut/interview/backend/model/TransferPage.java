@@ -0,0 +1,33 @@
+package com.revolut.interview.backend.model;
+
+import java.util.List;
+
+/**
+ * A page of the transfer history of an account, the next cursor is null after the last page
+ */
+public class TransferPage {
+
+  private final List<LedgerEntry> transfers;
+  private final String nextCursor;
+
+  public TransferPage(List<LedgerEntry> transfers, String nextCursor) {
+    this.transfers = transfers;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<LedgerEntry> getTransfers() {
+    return transfers;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferPage{" +
+        "transfers=" + transfers +
+        ", nextCursor='" + nextCursor + '\'' +
+        '}';
+  }
+}
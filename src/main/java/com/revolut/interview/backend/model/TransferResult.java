@@ -0,0 +1,44 @@
+package com.revolut.interview.backend.model;
+
+public class TransferResult {
+
+  private static final TransferResult OK = new TransferResult(Status.OK, null);
+
+  private final Status status;
+  private final String message;
+
+  public TransferResult(Status status, String message) {
+    this.status = status;
+    this.message = message;
+  }
+
+  public static TransferResult ok() {
+    return OK;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferResult{" +
+        "status=" + status +
+        ", message='" + message + '\'' +
+        '}';
+  }
+
+  public enum Status {
+    OK,
+    ILLEGAL_ARGUMENT,
+    ACCOUNT_NOT_FOUND,
+    NOT_ENOUGH_MONEY,
+    FROM_AND_TO_ACCOUNTS_THE_SAME,
+    CONFLICT,
+    IDEMPOTENCY_KEY_REUSED
+  }
+}
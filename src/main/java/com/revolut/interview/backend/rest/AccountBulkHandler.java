@@ -0,0 +1,132 @@
+package com.revolut.interview.backend.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.IdRange;
+import io.javalin.Context;
+import io.javalin.Handler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates accounts with the opening balances from the request body. The body is parsed as a stream
+ * and the accounts are created by chunks of {@link #CHUNK_SIZE}, so the body is never kept in
+ * memory as a whole.
+ * NOTE the accounts of the chunks created before an invalid balance are not removed, their ids
+ * are in the error message
+ */
+public class AccountBulkHandler implements Handler {
+
+  /**
+   * An example: [100.5, 10, 0] or one balance per line (NDJSON)
+   * The response contains the ids of the created accounts in the same order, e.g.
+   * [{"from": 1001, "to": 1003}]
+   */
+  public static final String PATH = "/accounts/bulk";
+  static final int CHUNK_SIZE = 10_000;
+  static final String ERR_MSG = "Expected format: [<BigDecimal>, ...] or one <BigDecimal> per line";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final AccountDao accountDao;
+
+  @Inject
+  public AccountBulkHandler(AccountDao accountDao) {
+    this.accountDao = accountDao;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) throws IOException, IllegalRequestException {
+    final IdRanges result = new IdRanges();
+
+    try (InputStream body = ctx.req.getInputStream();
+        JsonParser parser = JSON_FACTORY.createParser(body)) {
+      createAccounts(parser, result);
+    } catch (JsonProcessingException | IllegalArgumentException | ArithmeticException e) {
+      throw new IllegalRequestException(ERR_MSG + ", created before the error: " + result.get());
+    }
+
+    ctx.json(result.get());
+  }
+
+  private void createAccounts(JsonParser parser, IdRanges result) throws IOException {
+    JsonToken token = parser.nextToken();
+    final boolean array = token == JsonToken.START_ARRAY;
+
+    if (array) {
+      token = parser.nextToken();
+    }
+
+    List<Account> chunk = new ArrayList<>(CHUNK_SIZE);
+
+    while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+      if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+        throw new IllegalArgumentException(ERR_MSG);
+      }
+
+      chunk.add(new Account(parser.getDecimalValue()));
+
+      if (chunk.size() == CHUNK_SIZE) {
+        result.addAll(accountDao.createInBulk(chunk));
+        chunk = new ArrayList<>(CHUNK_SIZE);
+      }
+
+      token = parser.nextToken();
+    }
+
+    if (token == null && array) {
+      throw new IllegalArgumentException(ERR_MSG);
+    }
+
+    if (!chunk.isEmpty()) {
+      result.addAll(accountDao.createInBulk(chunk));
+    }
+  }
+
+  /**
+   * Merges ids into ranges of consecutive ids
+   */
+  private static class IdRanges {
+
+    private final List<IdRange> ranges = new ArrayList<>();
+    private long from;
+    private long to = -1;
+
+    void addAll(List<Account> accounts) {
+      for (Account account : accounts) {
+        final long id = account.getId();
+
+        if (id != to + 1) {
+          flush();
+          from = id;
+        }
+
+        to = id;
+      }
+    }
+
+    private void flush() {
+      if (to >= from) {
+        ranges.add(new IdRange(from, to));
+      }
+    }
+
+    List<IdRange> get() {
+      final List<IdRange> result = new ArrayList<>(ranges);
+
+      if (to >= from) {
+        result.add(new IdRange(from, to));
+      }
+
+      return result;
+    }
+  }
+}
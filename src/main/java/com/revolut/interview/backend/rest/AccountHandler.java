@@ -0,0 +1,48 @@
+package com.revolut.interview.backend.rest;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountNotFoundException;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import io.javalin.Context;
+import io.javalin.Handler;
+import org.eclipse.jetty.http.HttpStatus;
+import org.jetbrains.annotations.NotNull;
+
+public class AccountHandler implements Handler {
+
+  static final String PARAM_ID = "id";
+  /**
+   * An example: /accounts/1
+   * The response is {"id": 1, "balance": 100.5} or 404 with
+   * {"status": "ACCOUNT_NOT_FOUND", "message": "..."} if there is no such account
+   */
+  public static final String PATH = "/accounts/:" + PARAM_ID;
+  static final String ERR_MSG = "Expected format: /accounts/<AccountLongId>";
+
+  private final AccountDao accountDao;
+
+  @Inject
+  public AccountHandler(AccountDao accountDao) {
+    this.accountDao = accountDao;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) throws IllegalRequestException {
+    final String idStr = ctx.pathParam(PARAM_ID);
+
+    if (!RequestParams.isLong(idStr)) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    final long accountId = Long.parseLong(idStr);
+
+    try {
+      ctx.json(accountDao.findById(accountId));
+    } catch (AccountNotFoundException e) {
+      ctx.status(HttpStatus.NOT_FOUND_404);
+      ctx.json(new TransferResult(Status.ACCOUNT_NOT_FOUND, e.getMessage()));
+    }
+  }
+}
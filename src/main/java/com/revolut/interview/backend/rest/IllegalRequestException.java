@@ -0,0 +1,16 @@
+package com.revolut.interview.backend.rest;
+
+import com.revolut.interview.backend.dao.DomainException;
+
+/**
+ * A malformed request, e.g. a sum which isn't a number. It's answered as an
+ * {@link IllegalArgumentException} but without a stack trace, see {@link DomainException}
+ */
+public class IllegalRequestException extends DomainException {
+
+  private static final long serialVersionUID = 5406231792154781625L;
+
+  IllegalRequestException(String message) {
+    super(message);
+  }
+}
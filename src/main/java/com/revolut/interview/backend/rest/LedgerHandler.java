@@ -0,0 +1,89 @@
+package com.revolut.interview.backend.rest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.TransferLedger;
+import com.revolut.interview.backend.model.LedgerEntry;
+import io.javalin.Context;
+import io.javalin.Handler;
+import java.io.IOException;
+import org.eclipse.jetty.http.HttpStatus;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the ledger of done transfers as chunked NDJSON, a line per transfer, e.g.
+ * {"id":"1546300800000-0","from":1,"to":2,"sum":10.5}
+ * A client keeps the id of the last line and passes it as {@link #PARAM_FROM} to resume after a
+ * disconnect. Entries are written and flushed by batches as they are read from Redis, so the
+ * memory per client is bounded by a batch.
+ * NOTE a following client holds its request thread till it disconnects
+ */
+public class LedgerHandler implements Handler {
+
+  /**
+   * An example: /ledger/stream?from=1546300800000-0
+   * The entries after the given id are streamed, all of them by default. The response doesn't end
+   * unless follow=false is passed, then it ends when the entries appended so far are streamed
+   */
+  public static final String PATH = "/ledger/stream";
+  static final String PARAM_FROM = "from";
+  static final String PARAM_FOLLOW = "follow";
+  static final String CONTENT_TYPE = "application/x-ndjson";
+  static final String ERR_MSG = "Expected format: /ledger/stream?from=<LedgerEntryId>"
+      + "&follow=<Boolean>";
+  private static final String DEFAULT_FROM = "0-0";
+
+  private static final Logger LOG = LoggerFactory.getLogger(LedgerHandler.class);
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final TransferLedger ledger;
+
+  @Inject
+  public LedgerHandler(TransferLedger ledger) {
+    this.ledger = ledger;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) throws IOException, IllegalRequestException {
+    final String from = ctx.queryParam(PARAM_FROM, DEFAULT_FROM);
+    final boolean follow = !"false".equalsIgnoreCase(ctx.queryParam(PARAM_FOLLOW));
+
+    if (!TransferLedger.isId(from)) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    ctx.status(HttpStatus.OK_200);
+    ctx.contentType(CONTENT_TYPE);
+
+    // NOTE the output isn't closed: the response is completed by Jetty
+    try (JsonGenerator generator = JSON_FACTORY
+        .createGenerator(ctx.res.getOutputStream(), JsonEncoding.UTF8)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      generator.setRootValueSeparator(null);
+
+      ledger.read(from, follow, entries -> {
+        for (LedgerEntry entry : entries) {
+          writeEntry(generator, entry);
+        }
+
+        generator.flush();
+      });
+    } catch (IOException e) {
+      LOG.debug("Ledger client is gone", e);
+    }
+  }
+
+  private static void writeEntry(JsonGenerator generator, LedgerEntry entry) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("id", entry.getId());
+    generator.writeNumberField("from", entry.getFrom());
+    generator.writeNumberField("to", entry.getTo());
+    generator.writeNumberField("sum", entry.getSum());
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+}
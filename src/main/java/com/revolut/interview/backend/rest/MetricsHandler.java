@@ -0,0 +1,29 @@
+package com.revolut.interview.backend.rest;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.metrics.Metrics;
+import io.javalin.Context;
+import io.javalin.Handler;
+import org.jetbrains.annotations.NotNull;
+
+public class MetricsHandler implements Handler {
+
+  /**
+   * The metrics in the Prometheus text format, e.g. for a scraper
+   */
+  public static final String PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final Metrics metrics;
+
+  @Inject
+  public MetricsHandler(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) {
+    ctx.contentType(CONTENT_TYPE);
+    ctx.result(metrics.scrape());
+  }
+}
@@ -0,0 +1,105 @@
+package com.revolut.interview.backend.rest;
+
+/**
+ * Checks the format of request params before they're parsed, so a malformed request is rejected
+ * without throwing and catching a NumberFormatException per param (it fills in a stack trace).
+ * NOTE a value which passes a check is parsed by Long.parseLong and new BigDecimal without errors
+ */
+final class RequestParams {
+
+  private static final String MAX_LONG = Long.toString(Long.MAX_VALUE);
+  private static final String MIN_LONG_ABS = Long.toString(Long.MIN_VALUE).substring(1);
+  private static final int MAX_EXPONENT_DIGITS = 3;
+
+  private RequestParams() {
+  }
+
+  /**
+   * @return true if the value is [+-]digits within the range of long
+   */
+  static boolean isLong(String value) {
+    if (value == null) {
+      return false;
+    }
+
+    final int start = skipSign(value, 0);
+    final int digitsNum = value.length() - start;
+
+    if (digitsNum == 0 || digitsNum > MAX_LONG.length()
+        || skipDigits(value, start) != value.length()) {
+      return false;
+    }
+
+    if (digitsNum < MAX_LONG.length()) {
+      return true;
+    }
+
+    final String limit = value.charAt(0) == '-' ? MIN_LONG_ABS : MAX_LONG;
+
+    for (int i = 0; i < digitsNum; i++) {
+      final char digit = value.charAt(start + i);
+
+      if (digit != limit.charAt(i)) {
+        return digit < limit.charAt(i);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return true if the value is [+-]digits[.digits][e[+-]digits], e.g. 100, -0.5, .5, 1E+3
+   */
+  static boolean isDecimal(String value) {
+    if (value == null) {
+      return false;
+    }
+
+    final int length = value.length();
+    int i = skipSign(value, 0);
+    final int intStart = i;
+    i = skipDigits(value, i);
+    int digitsNum = i - intStart;
+
+    if (i < length && value.charAt(i) == '.') {
+      final int fractionStart = ++i;
+      i = skipDigits(value, i);
+      digitsNum += i - fractionStart;
+    }
+
+    if (digitsNum == 0) {
+      return false;
+    }
+
+    if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+      final int exponentStart = skipSign(value, i + 1);
+      i = skipDigits(value, exponentStart);
+      final int exponentDigitsNum = i - exponentStart;
+
+      if (exponentDigitsNum == 0 || exponentDigitsNum > MAX_EXPONENT_DIGITS) {
+        return false;
+      }
+    }
+
+    return i == length;
+  }
+
+  private static int skipSign(String value, int from) {
+    return from < value.length() && (value.charAt(from) == '+' || value.charAt(from) == '-')
+        ? from + 1 : from;
+  }
+
+  private static int skipDigits(String value, int from) {
+    int result = from;
+
+    while (result < value.length() && isDigit(value.charAt(result))) {
+      result++;
+    }
+
+    return result;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
@@ -0,0 +1,49 @@
+package com.revolut.interview.backend.rest;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import io.javalin.Context;
+import io.javalin.Handler;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+public class TransferBatchHandler implements Handler {
+
+  /**
+   * An example: [{"sum": 100.5, "from": 1, "to": 2}, {"sum": 10, "from": 2, "to": 3}]
+   * The response contains a result per transfer in the same order, e.g.
+   * [{"status": "OK", "message": null}, {"status": "NOT_ENOUGH_MONEY", "message": "..."}]
+   */
+  public static final String PATH = "/transfers/batch";
+  static final int MAX_BATCH_SIZE = 100_000;
+  static final String ERR_MSG = "Expected format: [{\"sum\": <BigDecimal>, \"from\": <AccountLongId>, \"to\": <AccountLongId>}, ...] of max size " + MAX_BATCH_SIZE;
+
+  private final AccountDao accountDao;
+
+  @Inject
+  public TransferBatchHandler(AccountDao accountDao) {
+    this.accountDao = accountDao;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) throws IllegalRequestException {
+    final Transfer[] transfers;
+
+    try {
+      transfers = ctx.bodyAsClass(Transfer[].class);
+    } catch (Exception e) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    if (transfers == null || transfers.length > MAX_BATCH_SIZE) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    final List<TransferResult> results = accountDao.transferMoneyInBatch(Arrays.asList(transfers));
+
+    ctx.json(results);
+  }
+}
@@ -2,13 +2,19 @@ package com.revolut.interview.backend.rest;
 
 import com.google.inject.Inject;
 import com.revolut.interview.backend.dao.AccountDao;
-import com.revolut.interview.backend.dao.AccountNotFoundException;
-import com.revolut.interview.backend.dao.FromAndToAccountsTheSameException;
-import com.revolut.interview.backend.dao.NotEnoughMoneyException;
+import com.revolut.interview.backend.dao.IdempotencyKeyReusedException;
+import com.revolut.interview.backend.dao.IdempotencyKeys;
+import com.revolut.interview.backend.dao.NearCache;
+import com.revolut.interview.backend.dao.NearCache.Stats;
+import com.revolut.interview.backend.dao.TransferChecks;
+import com.revolut.interview.backend.metrics.LatencyHistogram;
+import com.revolut.interview.backend.metrics.Metrics;
 import io.javalin.Context;
 import io.javalin.Handler;
 import java.math.BigDecimal;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jetty.http.HttpStatus;
 import org.jetbrains.annotations.NotNull;
 
@@ -23,34 +29,127 @@ public class TransferHandler implements Handler {
    */
   public static final String PATH = "/transfer/:" + PARAM_SUM;
   static final String ERR_MSG = "Expected format: /transfer/<BigDecimal>?from=<AccountLongId>&to=<AccountLongId>";
+  static final String ERR_MSG_SUM = "Expected a non-negative sum with up to "
+      + TransferChecks.MAX_INTEGER_DIGITS + " integer and " + TransferChecks.MAX_SCALE
+      + " fraction digits: ";
+  /**
+   * A transfer with this header is done once per its value (see
+   * {@link AccountDao#transferMoneyOnce}), a repeated request gets the same response
+   */
+  public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+  static final String PROPERTY_RECENT_KEYS_MAX_SIZE = "transfer.idempotency.recentKeys";
+  private static final int DEFAULT_RECENT_KEYS_MAX_SIZE = 100_000;
 
   private final AccountDao accountDao;
+  private final LatencyHistogram latency;
+  // The idempotency keys of the transfers done by this node and their fingerprints
+  private final NearCache<String, String> recentKeys;
 
   @Inject
-  public TransferHandler(AccountDao accountDao) {
+  public TransferHandler(AccountDao accountDao, Metrics metrics) {
     this.accountDao = accountDao;
+    latency = metrics.histogram("transfer_request_duration_seconds",
+        "The latency of transfer requests till the transfer is done or failed", "");
+
+    final String keysHelp = "The lookups of idempotency keys in the recent keys of this node";
+    final String evictionsHelp = "The idempotency keys removed from the recent keys by the cause";
+    recentKeys = new NearCache<>(
+        Integer.getInteger(PROPERTY_RECENT_KEYS_MAX_SIZE, DEFAULT_RECENT_KEYS_MAX_SIZE),
+        TimeUnit.SECONDS.toNanos(IdempotencyKeys.getTtlSeconds()),
+        new Stats(
+            metrics.counter("transfer_recent_keys_requests_total", keysHelp, "result=\"hit\""),
+            metrics.counter("transfer_recent_keys_requests_total", keysHelp, "result=\"miss\""),
+            metrics.counter("transfer_recent_keys_evictions_total", evictionsHelp,
+                "cause=\"size\""),
+            metrics.counter("transfer_recent_keys_evictions_total", evictionsHelp,
+                "cause=\"expired\""),
+            metrics.counter("transfer_recent_keys_evictions_total", evictionsHelp,
+                "cause=\"invalidated\"")));
+    metrics.gauge("transfer_recent_keys_size", "The number of recent idempotency keys",
+        recentKeys::size);
   }
 
+  /**
+   * NOTE the response is completed asynchronously when the transfer is done, so a request thread
+   * isn't blocked by a DAO which supports it (see {@link AccountDao#transferMoneyAsync}). A repeated
+   * request with an idempotency key done by this node recently is answered without the DAO
+   */
   @Override
-  public void handle(@NotNull Context ctx)
-      throws AccountNotFoundException, NotEnoughMoneyException, FromAndToAccountsTheSameException {
+  public void handle(@NotNull Context ctx) throws IllegalRequestException {
+    final long start = System.nanoTime();
     final String sumStr = ctx.pathParam(PARAM_SUM);
     final String fromStr = ctx.queryParam(PARAM_FROM);
     final String toStr = ctx.queryParam(PARAM_TO);
-    final BigDecimal sum;
-    final long fromAccountId;
-    final long toAccountId;
 
-    try {
-      sum = new BigDecimal(sumStr);
-      fromAccountId = Long.parseLong(Objects.requireNonNull(fromStr));
-      toAccountId = Long.parseLong(Objects.requireNonNull(toStr));
-    } catch (NullPointerException | IllegalArgumentException e) {
-      throw new IllegalArgumentException(ERR_MSG);
+    if (!RequestParams.isDecimal(sumStr) || !RequestParams.isLong(fromStr)
+        || !RequestParams.isLong(toStr)) {
+      latency.recordSince(start);
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    final BigDecimal sum = new BigDecimal(sumStr);
+
+    if (!TransferChecks.isSum(sum)) {
+      latency.recordSince(start);
+      throw new IllegalRequestException(ERR_MSG_SUM + sumStr);
+    }
+
+    final long fromAccountId = Long.parseLong(fromStr);
+    final long toAccountId = Long.parseLong(toStr);
+    final String idempotencyKey = ctx.header(HEADER_IDEMPOTENCY_KEY);
+    final CompletableFuture<Void> transfer;
+    final String fingerprint;
+
+    if (idempotencyKey == null) {
+      transfer = accountDao.transferMoneyAsync(sum, fromAccountId, toAccountId);
+      fingerprint = null;
+    } else {
+      if (!IdempotencyKeys.isKey(idempotencyKey)) {
+        latency.recordSince(start);
+        throw new IllegalRequestException(IdempotencyKeys.ERR_MSG_KEY + idempotencyKey);
+      }
+
+      fingerprint = IdempotencyKeys.makeFingerprint(sum, fromAccountId, toAccountId);
+      final String recentFingerprint = recentKeys.getIfPresent(idempotencyKey);
+
+      if (recentFingerprint == null) {
+        transfer = accountDao
+            .transferMoneyOnceAsync(sum, fromAccountId, toAccountId, idempotencyKey);
+      } else {
+        transfer = replay(recentFingerprint, idempotencyKey, sum, fromAccountId, toAccountId);
+      }
     }
 
-    accountDao.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    transfer.whenComplete((ignored, e) -> {
+      latency.recordSince(start);
+
+      if (e == null) {
+        if (fingerprint != null) {
+          recentKeys.put(idempotencyKey, fingerprint);
+        }
+
+        ctx.status(HttpStatus.NO_CONTENT_204);
+        result.complete(null);
+      } else {
+        // The exception handlers are chosen by the exception class, so it must not be wrapped
+        result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+      }
+    });
 
-    ctx.status(HttpStatus.NO_CONTENT_204);
+    ctx.result(result);
+  }
+
+  private static CompletableFuture<Void> replay(String recentFingerprint, String idempotencyKey,
+      BigDecimal sum, long fromAccountId, long toAccountId) {
+    try {
+      IdempotencyKeys.checkFingerprint(recentFingerprint, idempotencyKey, sum, fromAccountId,
+          toAccountId);
+
+      return CompletableFuture.completedFuture(null);
+    } catch (IdempotencyKeyReusedException e) {
+      return CompletableFuture.failedFuture(e);
+    }
   }
 }
@@ -0,0 +1,73 @@
+package com.revolut.interview.backend.rest;
+
+import com.google.inject.Inject;
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.AccountNotFoundException;
+import com.revolut.interview.backend.dao.TransferHistory;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import io.javalin.Context;
+import io.javalin.Handler;
+import org.eclipse.jetty.http.HttpStatus;
+import org.jetbrains.annotations.NotNull;
+
+public class TransferHistoryHandler implements Handler {
+
+  static final String PARAM_ID = "id";
+  static final String PARAM_CURSOR = "cursor";
+  static final String PARAM_LIMIT = "limit";
+  /**
+   * An example: /accounts/1/transfers?cursor=1546300800000-0&limit=50
+   * The response is a page of the transfers of the account, the newest first:
+   * {"transfers": [{"id": "1546300700000-3", "from": 1, "to": 2, "sum": 10.5}, ...],
+   * "nextCursor": "1546300600000-0"}
+   * The next page is requested with the next cursor, it's null after the last page. The response
+   * is 404 with {"status": "ACCOUNT_NOT_FOUND", "message": "..."} if there is no such account
+   */
+  public static final String PATH = "/accounts/:" + PARAM_ID + "/transfers";
+  static final String ERR_MSG = "Expected format: /accounts/<AccountLongId>/transfers"
+      + "?cursor=<LedgerEntryId>&limit=<1-" + TransferHistory.MAX_PAGE_SIZE + ">";
+  static final int DEFAULT_LIMIT = 100;
+
+  private final AccountDao accountDao;
+  private final TransferHistory transferHistory;
+
+  @Inject
+  public TransferHistoryHandler(AccountDao accountDao, TransferHistory transferHistory) {
+    this.accountDao = accountDao;
+    this.transferHistory = transferHistory;
+  }
+
+  @Override
+  public void handle(@NotNull Context ctx) throws IllegalRequestException {
+    final String idStr = ctx.pathParam(PARAM_ID);
+    final String cursor = ctx.queryParam(PARAM_CURSOR);
+    final String limitStr = ctx.queryParam(PARAM_LIMIT);
+
+    if (!RequestParams.isLong(idStr) || (limitStr != null && !RequestParams.isLong(limitStr))) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    final long accountId = Long.parseLong(idStr);
+    final long limit = limitStr == null ? DEFAULT_LIMIT : Long.parseLong(limitStr);
+
+    if (limit < 1 || limit > TransferHistory.MAX_PAGE_SIZE) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    if (cursor != null && !TransferHistory.isCursor(cursor)) {
+      throw new IllegalRequestException(ERR_MSG);
+    }
+
+    try {
+      accountDao.findById(accountId);
+    } catch (AccountNotFoundException e) {
+      ctx.status(HttpStatus.NOT_FOUND_404);
+      ctx.json(new TransferResult(Status.ACCOUNT_NOT_FOUND, e.getMessage()));
+
+      return;
+    }
+
+    ctx.json(transferHistory.read(accountId, cursor, (int) limit));
+  }
+}
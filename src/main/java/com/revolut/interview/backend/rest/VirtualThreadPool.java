@@ -0,0 +1,95 @@
+package com.revolut.interview.backend.rest;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A Jetty thread pool which runs every task on a new virtual thread (Java 21+), so a request
+ * blocked on Redis doesn't hold a platform thread and there is no number of threads to tune.
+ * NOTE the virtual threads are created by reflection because the code is compiled for Java 11
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+  private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+  private final ExecutorService executor;
+  private final AtomicInteger threads = new AtomicInteger();
+
+  VirtualThreadPool(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @param namePrefix the prefix of the thread names, a thread number is appended to it
+   * @return empty if the JVM doesn't support virtual threads
+   */
+  public static Optional<VirtualThreadPool> create(String namePrefix) {
+    try {
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      final Object builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(Thread.class.getMethod("ofVirtual").invoke(null), namePrefix, 0L);
+      final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory")
+          .invoke(builder);
+
+      return Optional.of(new VirtualThreadPool((ExecutorService) Executors.class
+          .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+          .invoke(null, threadFactory)));
+    } catch (ReflectiveOperationException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    executor.execute(() -> {
+      threads.incrementAndGet();
+
+      try {
+        task.run();
+      } finally {
+        threads.decrementAndGet();
+      }
+    });
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the number of running tasks, every one of them has its own thread
+   */
+  @Override
+  public int getThreads() {
+    return threads.get();
+  }
+
+  /**
+   * @return 0, a thread isn't reused
+   */
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    executor.shutdown();
+
+    if (!executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+-- Calls a script (see RedisScript.toBatch()) once per call of a batch in the given order
+-- atomically.
+-- KEYS - the keys of all the calls one after another
+-- ARGV[1] - the number of calls
+-- ARGV[2..] - per call: the number of its keys, the number of its args, its args
+-- Returns the reply of the script per call. An error of a call is its reply (nested error reply),
+-- the next calls are done anyway
+-- NOTE the changes made by a call before its error are kept like with a single call of the script
+
+local function call(KEYS, ARGV)
+--SCRIPT--
+end
+
+local result = {}
+local keyIndex, argIndex = 1, 2
+
+for i = 1, tonumber(ARGV[1]) do
+  local keysNum, argsNum = tonumber(ARGV[argIndex]), tonumber(ARGV[argIndex + 1])
+  local keys = { unpack(KEYS, keyIndex, keyIndex + keysNum - 1) }
+  local args = { unpack(ARGV, argIndex + 2, argIndex + 1 + argsNum) }
+  local ok, reply = pcall(call, keys, args)
+
+  -- A failed redis.call() raises an error reply, a Lua error is a string
+  if ok or type(reply) == 'table' then
+    result[i] = reply
+  else
+    result[i] = redis.error_reply(tostring(reply))
+  end
+
+  keyIndex = keyIndex + keysNum
+  argIndex = argIndex + 2 + argsNum
+end
+
+return result
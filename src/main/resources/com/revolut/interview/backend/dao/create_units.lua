@@ -0,0 +1,12 @@
+-- Creates accounts of one cluster slot.
+-- KEYS - the keys of the accounts
+-- ARGV[1] - the units field
+-- ARGV[2] - the scale field
+-- ARGV[2 * i + 1], ARGV[2 * i + 2] - the units and the scale of the account KEYS[i]
+-- Returns the number of created accounts
+
+for i, key in ipairs(KEYS) do
+  redis.call('HMSET', key, ARGV[1], ARGV[2 * i + 1], ARGV[2], ARGV[2 * i + 2])
+end
+
+return #KEYS
@@ -0,0 +1,83 @@
+-- Credits the account to transfer to once per transfer, it's the second step of a transfer between
+-- accounts of different cluster slots. The outcome is kept, so a repeated call returns the same
+-- status without any change, i.e. a transfer can be completed by any node any number of times.
+-- KEYS[1] - the key of the account to transfer to
+-- KEYS[2] - the key of the credit outcome, it's in the slot of the account to transfer to
+-- KEYS[3] - the key of the ledger stream, it's in the slot of the account to transfer to, an entry
+-- is appended to it when the transfer is done
+-- ARGV[1] - the units field
+-- ARGV[2] - the scale field
+-- ARGV[3] - the sum, a non-negative decimal in plain notation
+-- ARGV[4] - the time to keep the outcome, s
+-- ARGV[5] - the id of the account to transfer from
+-- ARGV[6] - the id of the account to transfer to
+-- ARGV[7] - the max length of the ledger, 0 if it's unlimited
+-- Returns the status, see AccountDaoScriptImpl.STATUS_*
+
+local STATUS_OK = 0
+local STATUS_TO_NOT_FOUND = 2
+local STATUS_ILLEGAL_SUM = 5
+local STATUS_OVERFLOW = 6
+
+local function stripZeros(digits)
+  local result = string.gsub(digits, '^0+', '')
+
+  if result == '' then
+    return '0'
+  end
+
+  return result
+end
+
+-- Returns nil if the sum has more significant fraction digits than the scale
+local function toUnits(sum, scale)
+  local int, frac = string.match(sum, '^(%d+)%.?(%d*)$')
+
+  if not int or string.find(string.sub(frac, scale + 1), '[1-9]') then
+    return nil
+  end
+
+  return stripZeros(int .. string.sub(frac, 1, scale) .. string.rep('0', scale - #frac))
+end
+
+-- NOTE the ledger is trimmed approximately, i.e. by whole nodes of the stream
+local function appendToLedger(ledgerKey, from, to, sum, maxLength)
+  if maxLength == '0' then
+    redis.call('XADD', ledgerKey, '*', 'from', from, 'to', to, 'sum', sum)
+  else
+    redis.call('XADD', ledgerKey, 'MAXLEN', '~', maxLength, '*', 'from', from, 'to', to, 'sum', sum)
+  end
+end
+
+local outcome = redis.call('GET', KEYS[2])
+
+if outcome then
+  return tonumber(outcome)
+end
+
+local status = STATUS_OK
+local scale = redis.call('HGET', KEYS[1], ARGV[2])
+
+if not scale then
+  status = STATUS_TO_NOT_FOUND
+else
+  local credit = toUnits(ARGV[3], tonumber(scale))
+
+  if not credit then
+    status = STATUS_ILLEGAL_SUM
+  elseif credit ~= '0' then
+    local result = redis.pcall('HINCRBY', KEYS[1], ARGV[1], credit)
+
+    if type(result) == 'table' and result.err then
+      status = STATUS_OVERFLOW
+    end
+  end
+end
+
+if status == STATUS_OK then
+  appendToLedger(KEYS[3], ARGV[5], ARGV[6], ARGV[3], ARGV[7])
+end
+
+redis.call('SET', KEYS[2], status, 'EX', ARGV[4])
+
+return status
@@ -0,0 +1,117 @@
+-- Debits the account to transfer from and records the transfer as pending atomically, it's the
+-- first step of a transfer between accounts of different cluster slots.
+-- KEYS[1] - the key of the account to transfer from
+-- KEYS[2] - the key of the pending transfer, it's in the slot of the account to transfer from
+-- KEYS[3] - optional, the key of the idempotency key record, it's in the slot of the account to
+-- transfer from
+-- ARGV[1] - the units field
+-- ARGV[2] - the scale field
+-- ARGV[3] - the sum, a non-negative decimal in plain notation
+-- ARGV[4] - the scale of the account to transfer to or an empty string if there is no such account
+-- ARGV[5] - the key of the account to transfer to
+-- ARGV[6] - the key of the credit outcome, it's in the slot of the account to transfer to
+-- ARGV[7] - the current time, ms
+-- ARGV[8] - the fingerprint of the transfer, only with KEYS[3]
+-- ARGV[9] - the time to keep the record, s, only with KEYS[3]
+-- Returns {status}, {status, fromBalance} or {status, recordedFingerprint}, see
+-- AccountDaoScriptImpl.STATUS_*
+
+local STATUS_OK = 0
+local STATUS_FROM_NOT_FOUND = 1
+local STATUS_TO_NOT_FOUND = 2
+local STATUS_NOT_ENOUGH_MONEY = 3
+local STATUS_ILLEGAL_SUM = 5
+local STATUS_DONE = 7
+local STATUS_KEY_REUSED = 8
+
+local function stripZeros(digits)
+  local result = string.gsub(digits, '^0+', '')
+
+  if result == '' then
+    return '0'
+  end
+
+  return result
+end
+
+-- Returns nil if the sum has more significant fraction digits than the scale
+local function toUnits(sum, scale)
+  local int, frac = string.match(sum, '^(%d+)%.?(%d*)$')
+
+  if not int or string.find(string.sub(frac, scale + 1), '[1-9]') then
+    return nil
+  end
+
+  return stripZeros(int .. string.sub(frac, 1, scale) .. string.rep('0', scale - #frac))
+end
+
+local function toDecimal(units, scale)
+  local sign, digits = string.match(units, '^(%-?)(%d+)$')
+
+  if scale == 0 then
+    return units
+  end
+
+  if #digits <= scale then
+    digits = string.rep('0', scale - #digits + 1) .. digits
+  end
+
+  return sign .. string.sub(digits, 1, #digits - scale) .. '.'
+      .. string.sub(digits, #digits - scale + 1)
+end
+
+-- Both are canonical integers as Redis stores them, the amount is non-negative
+local function covers(balance, amount)
+  if string.sub(balance, 1, 1) == '-' then
+    return false
+  end
+
+  return #balance > #amount or (#balance == #amount and balance >= amount)
+end
+
+if KEYS[3] then
+  local recordedFingerprint = redis.call('GET', KEYS[3])
+
+  if recordedFingerprint == ARGV[8] then
+    return { STATUS_DONE }
+  elseif recordedFingerprint then
+    return { STATUS_KEY_REUSED, recordedFingerprint }
+  end
+end
+
+local from = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+
+if not from[1] then
+  return { STATUS_FROM_NOT_FOUND }
+end
+
+if ARGV[4] == '' then
+  return { STATUS_TO_NOT_FOUND }
+end
+
+local fromScale = tonumber(from[2])
+local debit = toUnits(ARGV[3], fromScale)
+
+if not (debit and toUnits(ARGV[3], tonumber(ARGV[4]))) then
+  return { STATUS_ILLEGAL_SUM }
+end
+
+if not covers(from[1], debit) then
+  return { STATUS_NOT_ENOUGH_MONEY, toDecimal(from[1], fromScale) }
+end
+
+-- NOTE Redis doesn't parse '-0' as an integer
+if debit ~= '0' then
+  redis.call('HINCRBY', KEYS[1], ARGV[1], '-' .. debit)
+end
+
+redis.call('HMSET', KEYS[2], 'from', KEYS[1], 'debit', debit, 'to', ARGV[5], 'sum', ARGV[3],
+    'credit', ARGV[6], 'created', ARGV[7])
+
+-- The record is removed by the refund if the credit fails
+if KEYS[3] then
+  redis.call('SET', KEYS[3], ARGV[8], 'EX', ARGV[9])
+  redis.call('HSET', KEYS[2], 'record', KEYS[3])
+end
+
+return { STATUS_OK }
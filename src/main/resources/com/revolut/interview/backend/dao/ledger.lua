@@ -0,0 +1,46 @@
+-- The functions appending a done transfer to the ledger and to the transfer histories shared by
+-- the scripts, see RedisScript
+
+-- The widths of the zero padded parts of a ledger entry id in a history entry, see TransferHistory
+local MS_WIDTH, SEQ_WIDTH = --MS_WIDTH--, --SEQ_WIDTH--
+
+-- Returns the id of the entry
+-- NOTE the ledger is trimmed approximately, i.e. by whole nodes of the stream
+local function appendToLedger(ledgerKey, from, to, sum, maxLength)
+  if maxLength == '0' then
+    return redis.call('XADD', ledgerKey, '*', 'from', from, 'to', to, 'sum', sum)
+  end
+
+  return redis.call('XADD', ledgerKey, 'MAXLEN', '~', maxLength, '*', 'from', from, 'to', to,
+      'sum', sum)
+end
+
+-- The entries of a history are ordered by the zero padded ids of their ledger entries (all the
+-- scores are 0), so a page after a given entry is one ZREVRANGEBYLEX. An entry keeps the whole
+-- transfer: <ms>-<seq>:<from>:<to>:<sum>
+local function pad(digits, width)
+  return string.rep('0', width - #digits) .. digits
+end
+
+local function appendToHistories(historyKeys, entryId, from, to, sum, maxLength, maxAgeMillis)
+  if maxLength == '0' then
+    return
+  end
+
+  local ms, seq = string.match(entryId, '^(%d+)%-(%d+)$')
+  local entry = pad(ms, MS_WIDTH) .. '-' .. pad(seq, SEQ_WIDTH) .. ':' .. from .. ':' .. to .. ':'
+      .. sum
+
+  for _, historyKey in ipairs(historyKeys) do
+    redis.call('ZADD', historyKey, 0, entry)
+    redis.call('ZREMRANGEBYRANK', historyKey, 0, -tonumber(maxLength) - 1)
+
+    if maxAgeMillis ~= '0' then
+      local minMs = math.max(tonumber(ms) - tonumber(maxAgeMillis), 0)
+      redis.call('ZREMRANGEBYLEX', historyKey, '-',
+          '(' .. pad(string.format('%.0f', minMs), MS_WIDTH))
+      -- The history of an account without new transfers expires as a whole
+      redis.call('PEXPIRE', historyKey, maxAgeMillis)
+    end
+  end
+end
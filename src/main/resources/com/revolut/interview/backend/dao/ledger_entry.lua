@@ -0,0 +1,20 @@
+-- Appends the entry of a done transfer to the ledger and to the transfer histories of both
+-- accounts, it's called by the transaction which changes the balances (see AccountDaoImpl): a
+-- transaction can't pass the id of the ledger entry to the histories.
+-- KEYS[1] - the key of the ledger stream
+-- KEYS[2] - the key of the transfer history of the account to transfer from
+-- KEYS[3] - the key of the transfer history of the account to transfer to
+-- ARGV[1] - the id of the account to transfer from
+-- ARGV[2] - the id of the account to transfer to
+-- ARGV[3] - the sum, a non-negative decimal in plain notation
+-- ARGV[4] - the max length of the ledger, 0 if it's unlimited
+-- ARGV[5] - the max length of a transfer history, 0 if the histories aren't kept
+-- ARGV[6] - the max age of a transfer history entry, ms, 0 if it's unlimited
+-- Returns the id of the ledger entry
+
+--LEDGER--
+
+local entryId = appendToLedger(KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4])
+appendToHistories({ KEYS[2], KEYS[3] }, entryId, ARGV[1], ARGV[2], ARGV[3], ARGV[5], ARGV[6])
+
+return entryId
@@ -0,0 +1,39 @@
+-- Converts a decimal balance of an account into integer minor units in place.
+-- KEYS[1] - the key of the account
+-- ARGV[1] - the balance field
+-- ARGV[2] - the units field
+-- ARGV[3] - the scale field
+-- ARGV[4] - the min scale
+-- Returns 1 if the account is converted, 0 if there is nothing to convert,
+-- -1 if the balance doesn't fit into 64 bits
+-- NOTE only digits are moved, so the conversion is exact
+
+local balance = redis.call('HGET', KEYS[1], ARGV[1])
+
+if not balance then
+  return 0
+end
+
+local sign, int, frac = string.match(balance, '^(%-?)(%d+)%.?(%d*)$')
+
+if not int then
+  return redis.error_reply('Not a plain decimal: ' .. balance)
+end
+
+local scale = math.max(#frac, tonumber(ARGV[4]))
+local digits = string.gsub(int .. frac .. string.rep('0', scale - #frac), '^0+', '')
+
+-- 18 digits always fit into a signed 64-bit integer
+if #digits > 18 then
+  return -1
+end
+
+if digits == '' then
+  digits, sign = '0', ''
+end
+
+redis.call('HSET', KEYS[1], ARGV[2], sign .. digits)
+redis.call('HSET', KEYS[1], ARGV[3], scale)
+redis.call('HDEL', KEYS[1], ARGV[1])
+
+return 1
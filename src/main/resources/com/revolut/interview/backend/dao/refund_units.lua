@@ -0,0 +1,26 @@
+-- Gives the debited money back and removes the pending transfer atomically, it's done when the
+-- credit of a transfer between accounts of different cluster slots fails. The idempotency key
+-- record of the transfer is removed as well, so the transfer can be repeated with the same key.
+-- KEYS[1] - the key of the account to transfer from
+-- KEYS[2] - the key of the pending transfer
+-- KEYS[3] - optional, the key of the idempotency key record of the transfer
+-- ARGV[1] - the units field
+-- Returns 1 if the money is given back, 0 if the transfer isn't pending anymore
+
+local debit = redis.call('HGET', KEYS[2], 'debit')
+
+if not debit then
+  return 0
+end
+
+if debit ~= '0' then
+  redis.call('HINCRBY', KEYS[1], ARGV[1], debit)
+end
+
+redis.call('DEL', KEYS[2])
+
+if KEYS[3] then
+  redis.call('DEL', KEYS[3])
+end
+
+return 1
@@ -0,0 +1,221 @@
+-- Transfers money between two accounts atomically.
+-- KEYS[1] - the key of the account to transfer from
+-- KEYS[2] - the key of the account to transfer to
+-- KEYS[3] - the key of the ledger stream, an entry is appended to it per done transfer
+-- KEYS[4] - the key of the transfer history of the account to transfer from
+-- KEYS[5] - the key of the transfer history of the account to transfer to
+-- KEYS[6] - optional, the key of the idempotency key record, the transfer is done once per record
+-- ARGV[1] - the balance field
+-- ARGV[2] - the sum, a non-negative decimal in plain notation
+-- ARGV[3] - the id of the account to transfer from
+-- ARGV[4] - the id of the account to transfer to
+-- ARGV[5] - the max length of the ledger, 0 if it's unlimited
+-- ARGV[6] - the max length of a transfer history, 0 if the histories aren't kept
+-- ARGV[7] - the max age of a transfer history entry, ms, 0 if it's unlimited
+-- ARGV[8] - the fingerprint of the transfer, only with KEYS[6]
+-- ARGV[9] - the time to keep the record, s, only with KEYS[6]
+-- Returns {status}, {status, fromBalance} or {status, recordedFingerprint}, see
+-- AccountDaoScriptImpl.STATUS_*
+-- NOTE Lua numbers are doubles, so balances are added and subtracted as strings of decimal digits
+
+local STATUS_OK = 0
+local STATUS_FROM_NOT_FOUND = 1
+local STATUS_TO_NOT_FOUND = 2
+local STATUS_NOT_ENOUGH_MONEY = 3
+local STATUS_SAME_ACCOUNTS = 4
+local STATUS_ILLEGAL_SUM = 5
+local STATUS_DONE = 7
+local STATUS_KEY_REUSED = 8
+
+local function stripZeros(digits)
+  local result = string.gsub(digits, '^0+', '')
+
+  if result == '' then
+    return '0'
+  end
+
+  return result
+end
+
+local function parse(value)
+  local sign, int, frac = string.match(value, '^(%-?)(%d+)%.?(%d*)$')
+
+  if not int then
+    return nil
+  end
+
+  return { negative = sign == '-', digits = stripZeros(int .. frac), scale = #frac }
+end
+
+local function format(number)
+  local digits = number.digits
+
+  if #digits <= number.scale then
+    digits = string.rep('0', number.scale - #digits + 1) .. digits
+  end
+
+  local result = digits
+
+  if number.scale > 0 then
+    result = string.sub(digits, 1, #digits - number.scale) .. '.'
+        .. string.sub(digits, #digits - number.scale + 1)
+  end
+
+  if number.negative and number.digits ~= '0' then
+    result = '-' .. result
+  end
+
+  return result
+end
+
+local function rescale(number, scale)
+  return {
+    negative = number.negative,
+    digits = stripZeros(number.digits .. string.rep('0', scale - number.scale)),
+    scale = scale
+  }
+end
+
+local function compareMagnitudes(a, b)
+  if #a ~= #b then
+    return #a < #b and -1 or 1
+  end
+
+  if a == b then
+    return 0
+  end
+
+  return a < b and -1 or 1
+end
+
+local function addMagnitudes(a, b)
+  local result, carry = {}, 0
+  local i, j = #a, #b
+
+  while i > 0 or j > 0 or carry > 0 do
+    local digit = carry
+
+    if i > 0 then
+      digit = digit + string.byte(a, i) - 48
+      i = i - 1
+    end
+
+    if j > 0 then
+      digit = digit + string.byte(b, j) - 48
+      j = j - 1
+    end
+
+    result[#result + 1] = digit % 10
+    carry = math.floor(digit / 10)
+  end
+
+  return stripZeros(string.reverse(table.concat(result)))
+end
+
+-- a >= b is expected
+local function subtractMagnitudes(a, b)
+  local result, borrow = {}, 0
+  local j = #b
+
+  for i = #a, 1, -1 do
+    local digit = string.byte(a, i) - 48 - borrow
+
+    if j > 0 then
+      digit = digit - (string.byte(b, j) - 48)
+      j = j - 1
+    end
+
+    if digit < 0 then
+      digit = digit + 10
+      borrow = 1
+    else
+      borrow = 0
+    end
+
+    result[#result + 1] = digit
+  end
+
+  return stripZeros(string.reverse(table.concat(result)))
+end
+
+-- The scale of the result is the max scale of the arguments like in BigDecimal.add()
+local function add(x, y)
+  local scale = math.max(x.scale, y.scale)
+  x, y = rescale(x, scale), rescale(y, scale)
+
+  if x.negative == y.negative then
+    return { negative = x.negative, digits = addMagnitudes(x.digits, y.digits), scale = scale }
+  end
+
+  if compareMagnitudes(x.digits, y.digits) >= 0 then
+    return { negative = x.negative, digits = subtractMagnitudes(x.digits, y.digits), scale = scale }
+  end
+
+  return { negative = y.negative, digits = subtractMagnitudes(y.digits, x.digits), scale = scale }
+end
+
+local function negate(number)
+  return { negative = not number.negative, digits = number.digits, scale = number.scale }
+end
+
+local function isNegative(number)
+  return number.negative and number.digits ~= '0'
+end
+
+--LEDGER--
+
+if KEYS[1] == KEYS[2] then
+  return { STATUS_SAME_ACCOUNTS }
+end
+
+if KEYS[6] then
+  local recordedFingerprint = redis.call('GET', KEYS[6])
+
+  if recordedFingerprint == ARGV[8] then
+    return { STATUS_DONE }
+  elseif recordedFingerprint then
+    return { STATUS_KEY_REUSED, recordedFingerprint }
+  end
+end
+
+local fromBalance = redis.call('HGET', KEYS[1], ARGV[1])
+
+if not fromBalance then
+  return { STATUS_FROM_NOT_FOUND }
+end
+
+local toBalance = redis.call('HGET', KEYS[2], ARGV[1])
+
+if not toBalance then
+  return { STATUS_TO_NOT_FOUND }
+end
+
+local sum = parse(ARGV[2])
+
+if not sum then
+  return { STATUS_ILLEGAL_SUM }
+end
+
+local oldFromBalance = parse(fromBalance)
+local oldToBalance = parse(toBalance)
+
+if not (oldFromBalance and oldToBalance) then
+  return redis.error_reply('Not a plain decimal: ' .. fromBalance .. ', ' .. toBalance)
+end
+
+local newFromBalance = add(oldFromBalance, negate(sum))
+
+if isNegative(newFromBalance) then
+  return { STATUS_NOT_ENOUGH_MONEY, fromBalance }
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], format(newFromBalance))
+redis.call('HSET', KEYS[2], ARGV[1], format(add(oldToBalance, sum)))
+local entryId = appendToLedger(KEYS[3], ARGV[3], ARGV[4], ARGV[2], ARGV[5])
+appendToHistories({ KEYS[4], KEYS[5] }, entryId, ARGV[3], ARGV[4], ARGV[2], ARGV[6], ARGV[7])
+
+if KEYS[6] then
+  redis.call('SET', KEYS[6], ARGV[8], 'EX', ARGV[9])
+end
+
+return { STATUS_OK }
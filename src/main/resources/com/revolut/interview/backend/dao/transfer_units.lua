@@ -0,0 +1,131 @@
+-- Transfers money between two accounts keeping balances as integer minor units atomically.
+-- KEYS[1] - the key of the account to transfer from
+-- KEYS[2] - the key of the account to transfer to
+-- KEYS[3] - the key of the ledger stream, an entry is appended to it per done transfer
+-- KEYS[4] - the key of the transfer history of the account to transfer from
+-- KEYS[5] - the key of the transfer history of the account to transfer to
+-- KEYS[6] - optional, the key of the idempotency key record, the transfer is done once per record
+-- ARGV[1] - the units field
+-- ARGV[2] - the scale field
+-- ARGV[3] - the sum, a non-negative decimal in plain notation
+-- ARGV[4] - the id of the account to transfer from
+-- ARGV[5] - the id of the account to transfer to
+-- ARGV[6] - the max length of the ledger, 0 if it's unlimited
+-- ARGV[7] - the max length of a transfer history, 0 if the histories aren't kept
+-- ARGV[8] - the max age of a transfer history entry, ms, 0 if it's unlimited
+-- ARGV[9] - the fingerprint of the transfer, only with KEYS[6]
+-- ARGV[10] - the time to keep the record, s, only with KEYS[6]
+-- Returns {status}, {status, fromBalance} or {status, recordedFingerprint}, see
+-- AccountDaoScriptImpl.STATUS_*
+-- NOTE balances are changed by HINCRBY, i.e. by exact 64-bit integer arithmetic of Redis
+
+local STATUS_OK = 0
+local STATUS_FROM_NOT_FOUND = 1
+local STATUS_TO_NOT_FOUND = 2
+local STATUS_NOT_ENOUGH_MONEY = 3
+local STATUS_SAME_ACCOUNTS = 4
+local STATUS_ILLEGAL_SUM = 5
+local STATUS_DONE = 7
+local STATUS_KEY_REUSED = 8
+
+local function stripZeros(digits)
+  local result = string.gsub(digits, '^0+', '')
+
+  if result == '' then
+    return '0'
+  end
+
+  return result
+end
+
+-- Returns nil if the sum has more significant fraction digits than the scale
+local function toUnits(sum, scale)
+  local int, frac = string.match(sum, '^(%d+)%.?(%d*)$')
+
+  if not int or string.find(string.sub(frac, scale + 1), '[1-9]') then
+    return nil
+  end
+
+  return stripZeros(int .. string.sub(frac, 1, scale) .. string.rep('0', scale - #frac))
+end
+
+local function toDecimal(units, scale)
+  local sign, digits = string.match(units, '^(%-?)(%d+)$')
+
+  if scale == 0 then
+    return units
+  end
+
+  if #digits <= scale then
+    digits = string.rep('0', scale - #digits + 1) .. digits
+  end
+
+  return sign .. string.sub(digits, 1, #digits - scale) .. '.'
+      .. string.sub(digits, #digits - scale + 1)
+end
+
+-- Both are canonical integers as Redis stores them, the amount is non-negative
+local function covers(balance, amount)
+  if string.sub(balance, 1, 1) == '-' then
+    return false
+  end
+
+  return #balance > #amount or (#balance == #amount and balance >= amount)
+end
+
+--LEDGER--
+
+if KEYS[1] == KEYS[2] then
+  return { STATUS_SAME_ACCOUNTS }
+end
+
+if KEYS[6] then
+  local recordedFingerprint = redis.call('GET', KEYS[6])
+
+  if recordedFingerprint == ARGV[9] then
+    return { STATUS_DONE }
+  elseif recordedFingerprint then
+    return { STATUS_KEY_REUSED, recordedFingerprint }
+  end
+end
+
+local from = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+
+if not from[1] then
+  return { STATUS_FROM_NOT_FOUND }
+end
+
+local to = redis.call('HMGET', KEYS[2], ARGV[1], ARGV[2])
+
+if not to[1] then
+  return { STATUS_TO_NOT_FOUND }
+end
+
+local fromScale = tonumber(from[2])
+local debit = toUnits(ARGV[3], fromScale)
+local credit = toUnits(ARGV[3], tonumber(to[2]))
+
+if not (debit and credit) then
+  return { STATUS_ILLEGAL_SUM }
+end
+
+if not covers(from[1], debit) then
+  return { STATUS_NOT_ENOUGH_MONEY, toDecimal(from[1], fromScale) }
+end
+
+-- The credit goes first: it fails on an overflow before anything is written
+redis.call('HINCRBY', KEYS[2], ARGV[1], credit)
+
+-- NOTE Redis doesn't parse '-0' as an integer
+if debit ~= '0' then
+  redis.call('HINCRBY', KEYS[1], ARGV[1], '-' .. debit)
+end
+
+local entryId = appendToLedger(KEYS[3], ARGV[4], ARGV[5], ARGV[3], ARGV[6])
+appendToHistories({ KEYS[4], KEYS[5] }, entryId, ARGV[4], ARGV[5], ARGV[3], ARGV[7], ARGV[8])
+
+if KEYS[6] then
+  redis.call('SET', KEYS[6], ARGV[9], 'EX', ARGV[10])
+end
+
+return { STATUS_OK }
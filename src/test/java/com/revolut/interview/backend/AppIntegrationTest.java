@@ -1,10 +1,12 @@
 package com.revolut.interview.backend;
 
 import static com.revolut.interview.backend.App.DEFAULT_REST_PORT;
+import static com.revolut.interview.backend.rest.TransferHandler.HEADER_IDEMPOTENCY_KEY;
 import static com.revolut.interview.backend.rest.TransferHandler.PARAM_FROM;
 import static com.revolut.interview.backend.rest.TransferHandler.PARAM_TO;
 import static java.util.stream.IntStream.rangeClosed;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.revolut.interview.backend.dao.AccountDao;
@@ -22,6 +24,8 @@ import java.net.http.HttpResponse.BodyHandlers;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -49,7 +53,7 @@ public class AppIntegrationTest {
   }
 
   @AfterClass
-  public static void tearDownOnce() {
+  public static void tearDownOnce() throws IOException {
     app.stop();
   }
 
@@ -68,6 +72,17 @@ public class AppIntegrationTest {
     transferFixture("a", fromAccountId, toAccountId, HttpStatus.BAD_REQUEST_400);
   }
 
+  @Test
+  public void transfer_HugeExponentSum() throws Exception {
+    transferFixture("1E+999999999", fromAccountId, toAccountId, HttpStatus.BAD_REQUEST_400);
+    transferFixture("1E+999", fromAccountId, toAccountId, HttpStatus.BAD_REQUEST_400);
+  }
+
+  @Test
+  public void transfer_NegativeSum() throws Exception {
+    transferFixture("-1", fromAccountId, toAccountId, HttpStatus.BAD_REQUEST_400);
+  }
+
   @Test
   public void transfer_EmptyFrom() throws Exception {
     transferFixture("100", "", toAccountId.toString(), HttpStatus.BAD_REQUEST_400);
@@ -103,6 +118,21 @@ public class AppIntegrationTest {
     transferFixture("100", fromAccountId, fromAccountId, HttpStatus.BAD_REQUEST_400);
   }
 
+  @Test
+  public void transfer_NotEnoughMoney() throws Exception {
+    // Given
+    final HttpRequest httpRequest = makeHttpRequest("100500", fromAccountId.toString(),
+        toAccountId.toString());
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST_400, response.statusCode());
+    assertTrue(response.body(),
+        response.body().startsWith("{\"status\":\"NOT_ENOUGH_MONEY\",\"message\":\"Not enough"));
+  }
+
   @Test
   public void transfer_OK() throws Exception {
     // Given & When & Then
@@ -113,6 +143,247 @@ public class AppIntegrationTest {
     assertEquals(BigDecimal.valueOf(1100L), accountDao.findById(toAccountId).getBalance());
   }
 
+  @Test
+  public void transfer_IdempotencyKey() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    final HttpRequest httpRequest = HttpRequest
+        .newBuilder(makeHttpRequest("5", accountId1.toString(), accountId2.toString()).uri())
+        .header(HEADER_IDEMPOTENCY_KEY, "transfer-" + accountId1)
+        .POST(BodyPublishers.noBody()).build();
+    final HttpRequest reusedKeyRequest = HttpRequest
+        .newBuilder(makeHttpRequest("1", accountId1.toString(), accountId2.toString()).uri())
+        .header(HEADER_IDEMPOTENCY_KEY, "transfer-" + accountId1)
+        .POST(BodyPublishers.noBody()).build();
+
+    // When
+    final int status = httpClient.send(httpRequest, BodyHandlers.ofString()).statusCode();
+    final int repeatedStatus = httpClient.send(httpRequest, BodyHandlers.ofString()).statusCode();
+    final int reusedKeyStatus = httpClient.send(reusedKeyRequest, BodyHandlers.ofString())
+        .statusCode();
+
+    // Then
+    assertEquals(HttpStatus.NO_CONTENT_204, status);
+    assertEquals(HttpStatus.NO_CONTENT_204, repeatedStatus);
+    assertEquals(HttpStatus.UNPROCESSABLE_ENTITY_422, reusedKeyStatus);
+    assertEquals(0, BigDecimal.valueOf(5).compareTo(accountDao.findById(accountId1).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(6).compareTo(accountDao.findById(accountId2).getBalance()));
+  }
+
+  @Test
+  public void transferBatch_OK() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/transfers/batch");
+    final String body = "[{\"sum\": 5, \"from\": " + accountId1 + ", \"to\": " + accountId2 + "}, "
+        + "{\"sum\": 7, \"from\": " + accountId1 + ", \"to\": " + accountId2 + "}]";
+    final HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+        .POST(BodyPublishers.ofString(body)).build();
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.OK_200, response.statusCode());
+    assertTrue(response.body().matches("\\[\\{\"status\":\"OK\".*},"
+        + "\\{\"status\":\"NOT_ENOUGH_MONEY\".*}]"));
+    assertEquals(0, BigDecimal.valueOf(5).compareTo(accountDao.findById(accountId1).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(6).compareTo(accountDao.findById(accountId2).getBalance()));
+  }
+
+  @Test
+  public void transferBatch_NotArray() throws Exception {
+    // Given
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/transfers/batch");
+    final HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+        .POST(BodyPublishers.ofString("{}")).build();
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST_400, response.statusCode());
+  }
+
+  @Test
+  public void accountsBulk_OK() throws Exception {
+    // Given
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/accounts/bulk");
+    final HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+        .POST(BodyPublishers.ofString("[100.5, 7]")).build();
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.OK_200, response.statusCode());
+    final Matcher matcher = Pattern.compile("\\[\\{\"from\":(\\d+),\"to\":(\\d+)}]")
+        .matcher(response.body());
+    assertTrue(response.body(), matcher.matches());
+    final long fromId = Long.parseLong(matcher.group(1));
+    assertEquals(fromId + 1, Long.parseLong(matcher.group(2)));
+    assertEquals(new BigDecimal("100.5"), accountDao.findById(fromId).getBalance());
+    assertEquals(new BigDecimal("7"), accountDao.findById(fromId + 1).getBalance());
+  }
+
+  @Test
+  public void accountsBulk_NotNumBalance() throws Exception {
+    // Given
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/accounts/bulk");
+    final HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+        .POST(BodyPublishers.ofString("[\"a\"]")).build();
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST_400, response.statusCode());
+  }
+
+  @Test
+  public void account_OK() throws Exception {
+    // Given
+    final Long accountId = accountDao.create(new Account(new BigDecimal("100.5"))).getId();
+
+    // When
+    final HttpResponse<String> response = getAccountFixture(accountId.toString());
+
+    // Then
+    assertEquals(HttpStatus.OK_200, response.statusCode());
+    assertEquals("{\"id\":" + accountId + ",\"balance\":100.5}", response.body());
+  }
+
+  @Test
+  public void account_NotFound() throws Exception {
+    // Given & When
+    final HttpResponse<String> response = getAccountFixture("100500");
+
+    // Then
+    assertEquals(HttpStatus.NOT_FOUND_404, response.statusCode());
+    assertTrue(response.body(),
+        response.body().startsWith("{\"status\":\"ACCOUNT_NOT_FOUND\",\"message\":"));
+  }
+
+  @Test
+  public void account_NotNumId() throws Exception {
+    // Given & When
+    final HttpResponse<String> response = getAccountFixture("a");
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST_400, response.statusCode());
+    assertEquals("{\"status\":\"ILLEGAL_ARGUMENT\","
+        + "\"message\":\"Expected format: /accounts/<AccountLongId>\"}", response.body());
+  }
+
+  @Test
+  public void account_TooBigId() throws Exception {
+    assertEquals(HttpStatus.BAD_REQUEST_400,
+        getAccountFixture("9223372036854775808").statusCode());
+  }
+
+  private HttpResponse<String> getAccountFixture(String accountId)
+      throws IOException, InterruptedException {
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/accounts/" + accountId);
+
+    return httpClient.send(HttpRequest.newBuilder(uri).GET().build(), BodyHandlers.ofString());
+  }
+
+  @Test
+  public void ledgerStream_OK() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    transferFixture("3", accountId1, accountId2, HttpStatus.NO_CONTENT_204);
+
+    // When
+    final HttpResponse<String> response = getLedgerFixture("?follow=false");
+
+    // Then
+    assertEquals(HttpStatus.OK_200, response.statusCode());
+    assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type")
+        .orElse(""));
+
+    final String[] lines = response.body().split("\n");
+    assertTrue(lines[lines.length - 1].matches(
+        "\\{\"id\":\"\\d+-\\d+\",\"from\":" + accountId1 + ",\"to\":" + accountId2
+            + ",\"sum\":3}"));
+  }
+
+  @Test
+  public void ledgerStream_IllegalFrom() throws Exception {
+    assertEquals(HttpStatus.BAD_REQUEST_400, getLedgerFixture("?from=a").statusCode());
+  }
+
+  private HttpResponse<String> getLedgerFixture(String query)
+      throws IOException, InterruptedException {
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/ledger/stream" + query);
+
+    return httpClient.send(HttpRequest.newBuilder(uri).GET().build(), BodyHandlers.ofString());
+  }
+
+  @Test
+  public void accountTransfers_OK() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    transferFixture("3", accountId1, accountId2, HttpStatus.NO_CONTENT_204);
+    transferFixture("1", accountId2, accountId1, HttpStatus.NO_CONTENT_204);
+
+    // When
+    final HttpResponse<String> page1 = getAccountFixture(accountId1 + "/transfers?limit=1");
+    final Matcher nextCursor = Pattern.compile("\"nextCursor\":\"(\\d+-\\d+)\"")
+        .matcher(page1.body());
+    assertTrue(page1.body(), nextCursor.find());
+    final HttpResponse<String> page2 = getAccountFixture(
+        accountId1 + "/transfers?limit=1&cursor=" + nextCursor.group(1));
+
+    // Then
+    assertEquals(HttpStatus.OK_200, page1.statusCode());
+    assertTrue(page1.body(), page1.body().matches("\\{\"transfers\":\\[\\{\"id\":\"\\d+-\\d+\","
+        + "\"from\":" + accountId2 + ",\"to\":" + accountId1 + ",\"sum\":1}],.*"));
+    assertEquals(HttpStatus.OK_200, page2.statusCode());
+    assertTrue(page2.body(), page2.body().matches("\\{\"transfers\":\\[\\{\"id\":\"\\d+-\\d+\","
+        + "\"from\":" + accountId1 + ",\"to\":" + accountId2 + ",\"sum\":3}],.*"));
+  }
+
+  @Test
+  public void accountTransfers_NotFound() throws Exception {
+    assertEquals(HttpStatus.NOT_FOUND_404, getAccountFixture("100500/transfers").statusCode());
+  }
+
+  @Test
+  public void accountTransfers_IllegalParams() throws Exception {
+    assertEquals(HttpStatus.BAD_REQUEST_400,
+        getAccountFixture(fromAccountId + "/transfers?cursor=a").statusCode());
+    assertEquals(HttpStatus.BAD_REQUEST_400,
+        getAccountFixture(fromAccountId + "/transfers?limit=0").statusCode());
+    assertEquals(HttpStatus.BAD_REQUEST_400,
+        getAccountFixture(fromAccountId + "/transfers?limit=a").statusCode());
+  }
+
+  @Test
+  public void metrics_OK() throws Exception {
+    // Given
+    transferFixture("a", fromAccountId, toAccountId, HttpStatus.BAD_REQUEST_400);
+    final URI uri = URI.create("http://localhost:" + DEFAULT_REST_PORT + "/metrics");
+    final HttpRequest httpRequest = HttpRequest.newBuilder(uri).GET().build();
+
+    // When
+    final HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+
+    // Then
+    assertEquals(HttpStatus.OK_200, response.statusCode());
+    assertTrue(response.body().contains("# TYPE transfer_request_duration_seconds summary\n"));
+    assertTrue(response.body().contains("transfer_request_duration_seconds{quantile=\"0.99\"} "));
+    assertTrue(response.body().contains("account_dao_transfer_retries_total "));
+    assertTrue(response.body().contains("redis_pool_active_connections "));
+    assertTrue(response.body().contains("app_start_duration_seconds "));
+    assertTrue(response.body()
+        .matches("(?s).*http_errors_total\\{status=\"400\",exception=\"IllegalRequestException\"} [1-9].*"));
+  }
+
   // FIXED Load test does not test concurrent transfers
   // NOTE it's not a load test but it does what required
   @Test(timeout = 60000)
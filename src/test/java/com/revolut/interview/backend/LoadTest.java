@@ -5,6 +5,7 @@ import static java.util.stream.LongStream.range;
 import com.revolut.interview.backend.dao.AccountDao;
 import com.revolut.interview.backend.dao.AccountDaoImpl;
 import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
 import java.math.BigDecimal;
 import org.jsmart.zerocode.core.domain.LoadWith;
 import org.jsmart.zerocode.core.domain.TestMapping;
@@ -40,7 +41,7 @@ public class LoadTest {
   }
 
   @AfterClass
-  public static void tearDownOnce() {
+  public static void tearDownOnce() throws IOException {
     app.stop();
   }
 
@@ -0,0 +1,26 @@
+package com.revolut.interview.backend;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class RejectionLogTest {
+
+  @Test
+  public void log_Sampled() throws Exception {
+    // Given
+    final RejectionLog rejectionLog = new RejectionLog(
+        LoggerFactory.getLogger(RejectionLogTest.class), "Test", 100);
+    final Exception exception = new Exception("Rejected");
+
+    // When & Then
+    assertTrue(rejectionLog.log(exception));
+    assertFalse(rejectionLog.log(exception));
+    assertFalse(rejectionLog.log(exception));
+    Thread.sleep(150);
+    assertTrue(rejectionLog.log(exception));
+    assertFalse(rejectionLog.log(exception));
+  }
+}
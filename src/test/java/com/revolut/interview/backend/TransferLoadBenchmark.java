@@ -0,0 +1,309 @@
+package com.revolut.interview.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * An open-loop load of transfers between random accounts over keep-alive HTTP/1.1 connections.
+ * Requests are sent at a fixed rate whatever the responses are, the latency of a request is
+ * measured from the time it was due to be sent, so a stalled server is charged for the requests
+ * which couldn't be sent meanwhile (the correction of the coordinated omission). At the end the
+ * sum of all balances must be the same as before and no balance may be negative.
+ * The load is set by system properties: load.accounts, load.rate (requests per second),
+ * load.durationSeconds, load.skew (uniform or zipfian), load.maxInFlight, load.accountDaoType
+ * (the application is started in this process) or load.url (the application is already running),
+ * e.g. -Dload.rate=5000 -Dload.skew=zipfian -Dload.accountDaoType=partitioned
+ * NOTE it's excluded from the regular build, run it with -PenableLoadTest
+ */
+public class TransferLoadBenchmark {
+
+  private static final int ACCOUNTS_NUM = Integer.getInteger("load.accounts", 10_000);
+  private static final int RATE = Integer.getInteger("load.rate", 1000);
+  private static final int DURATION_SECONDS = Integer.getInteger("load.durationSeconds", 30);
+  private static final String SKEW = System.getProperty("load.skew", "uniform");
+  private static final int MAX_IN_FLIGHT = Integer.getInteger("load.maxInFlight", 256);
+  private static final String ACCOUNT_DAO_TYPE = System
+      .getProperty("load.accountDaoType", App.DEFAULT_ACCOUNT_DAO_TYPE.name());
+  private static final String URL = System.getProperty("load.url");
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+  // The sums are 0.01-100.00, so the hot accounts of the Zipf's law run out of money sometimes
+  private static final int MAX_SUM_MINOR_UNITS = 10_000;
+  private static final int SEED_CHUNK_SIZE = 10_000;
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+  private static final Pattern ID_RANGE = Pattern.compile("\"from\":(\\d+),\"to\":(\\d+)");
+  private static final Pattern BALANCE = Pattern.compile("\"balance\":([^,}]+)");
+
+  private static App app;
+  private static String url;
+  private static HttpClient httpClient;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    if (URL == null) {
+      app = new App();
+      app.start(AccountDaoType.valueOf(ACCOUNT_DAO_TYPE.toUpperCase()));
+      url = "http://localhost:" + App.DEFAULT_REST_PORT;
+    } else {
+      url = URL;
+    }
+
+    httpClient = HttpClient.newBuilder().version(Version.HTTP_1_1).build();
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    if (app != null) {
+      app.stop();
+    }
+  }
+
+  @Test
+  public void transfer() throws Exception {
+    // Given
+    final long[] accountIds = seed();
+    final AccountPicker accountPicker = "zipfian".equals(SKEW)
+        ? new ZipfianAccountPicker(ACCOUNTS_NUM) : random -> random.nextInt(ACCOUNTS_NUM);
+
+    // When
+    final Results results = run(accountIds, accountPicker);
+
+    // Then
+    results.report();
+    assertEquals("Failed requests", 0, results.failuresNum.sum());
+
+    BigDecimal total = BigDecimal.ZERO;
+
+    for (BigDecimal balance : getBalances(accountIds)) {
+      assertTrue("Negative balance: " + balance, balance.signum() >= 0);
+      total = total.add(balance);
+    }
+
+    assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS_NUM)).compareTo(total));
+  }
+
+  /**
+   * Creates the accounts by POST /accounts/bulk
+   *
+   * @return the ids of the accounts
+   */
+  private static long[] seed() throws IOException, InterruptedException {
+    final long[] result = new long[ACCOUNTS_NUM];
+    int seeded = 0;
+
+    while (seeded < ACCOUNTS_NUM) {
+      final int chunkSize = Math.min(SEED_CHUNK_SIZE, ACCOUNTS_NUM - seeded);
+      final StringBuilder body = new StringBuilder();
+
+      for (int i = 0; i < chunkSize; i++) {
+        body.append(INITIAL_BALANCE).append('\n');
+      }
+
+      final HttpResponse<String> response = httpClient.send(
+          HttpRequest.newBuilder(URI.create(url + "/accounts/bulk"))
+              .POST(BodyPublishers.ofString(body.toString())).build(), BodyHandlers.ofString());
+      assertEquals(response.body(), HttpStatus.OK_200, response.statusCode());
+      final Matcher matcher = ID_RANGE.matcher(response.body());
+
+      while (matcher.find()) {
+        for (long id = Long.parseLong(matcher.group(1)); id <= Long.parseLong(matcher.group(2));
+            id++) {
+          result[seeded++] = id;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static Results run(long[] accountIds, AccountPicker accountPicker)
+      throws InterruptedException {
+    final int requestsNum = RATE * DURATION_SECONDS;
+    final long periodNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+    final Results result = new Results(requestsNum);
+    final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    final SplittableRandom random = new SplittableRandom();
+    final long startNanos = System.nanoTime();
+
+    for (int i = 0; i < requestsNum; i++) {
+      final long dueNanos = startNanos + i * periodNanos;
+      long delayNanos;
+
+      while ((delayNanos = dueNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(delayNanos);
+      }
+
+      final int from = accountPicker.pick(random);
+      int to = accountPicker.pick(random);
+
+      if (to == from) {
+        to = (from + 1) % ACCOUNTS_NUM;
+      }
+
+      final BigDecimal sum = BigDecimal.valueOf(1 + random.nextInt(MAX_SUM_MINOR_UNITS), 2);
+      final HttpRequest request = HttpRequest
+          .newBuilder(URI.create(url + "/transfer/" + sum + "?from=" + accountIds[from] + "&to="
+              + accountIds[to])).POST(BodyPublishers.noBody()).build();
+      // NOTE the wait for a free slot is a part of the latency, the due time doesn't move
+      inFlight.acquire();
+      final int index = i;
+      final long sentNanos = System.nanoTime();
+
+      httpClient.sendAsync(request, BodyHandlers.discarding()).whenComplete((response, e) -> {
+        final long doneNanos = System.nanoTime();
+        result.latencyNanos[index] = doneNanos - dueNanos;
+        result.serviceTimeNanos[index] = doneNanos - sentNanos;
+        result.count(response == null ? 0 : response.statusCode());
+        inFlight.release();
+      });
+    }
+
+    inFlight.acquire(MAX_IN_FLIGHT);
+    result.elapsedNanos = System.nanoTime() - startNanos;
+
+    return result;
+  }
+
+  private static List<BigDecimal> getBalances(long[] accountIds) {
+    final List<BigDecimal> result = new ArrayList<>(accountIds.length);
+
+    for (int from = 0; from < accountIds.length; from += MAX_IN_FLIGHT) {
+      final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+      for (int i = from; i < Math.min(from + MAX_IN_FLIGHT, accountIds.length); i++) {
+        responses.add(httpClient.sendAsync(
+            HttpRequest.newBuilder(URI.create(url + "/accounts/" + accountIds[i])).GET().build(),
+            BodyHandlers.ofString()));
+      }
+
+      for (CompletableFuture<HttpResponse<String>> response : responses) {
+        final Matcher matcher = BALANCE.matcher(response.join().body());
+        assertTrue(response.join().body(), matcher.find());
+        result.add(new BigDecimal(matcher.group(1)));
+      }
+    }
+
+    return result;
+  }
+
+  @FunctionalInterface
+  interface AccountPicker {
+
+    /**
+     * @return an index of an account
+     */
+    int pick(SplittableRandom random);
+  }
+
+  /**
+   * Like the one of AccountDaoBenchmark: the probability of the account k is proportional to
+   * 1 / k^{@link #EXPONENT}
+   */
+  static class ZipfianAccountPicker implements AccountPicker {
+
+    private static final double EXPONENT = 0.99;
+
+    private final double[] cumulativeProbabilities;
+
+    ZipfianAccountPicker(int accountsNum) {
+      cumulativeProbabilities = new double[accountsNum];
+      double sum = 0;
+
+      for (int i = 0; i < accountsNum; i++) {
+        sum += 1 / Math.pow(i + 1, EXPONENT);
+        cumulativeProbabilities[i] = sum;
+      }
+
+      for (int i = 0; i < accountsNum; i++) {
+        cumulativeProbabilities[i] /= sum;
+      }
+    }
+
+    @Override
+    public int pick(SplittableRandom random) {
+      final int result = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+
+      return Math.min(result < 0 ? -result - 1 : result, cumulativeProbabilities.length - 1);
+    }
+  }
+
+  private static class Results {
+
+    // Written by the threads of the HTTP client, read after all the requests are completed
+    private final long[] latencyNanos;
+    private final long[] serviceTimeNanos;
+    private final LongAdder doneNum = new LongAdder();
+    private final LongAdder rejectedNum = new LongAdder();
+    private final LongAdder conflictsNum = new LongAdder();
+    private final LongAdder failuresNum = new LongAdder();
+    private long elapsedNanos;
+
+    Results(int requestsNum) {
+      latencyNanos = new long[requestsNum];
+      serviceTimeNanos = new long[requestsNum];
+    }
+
+    private static String percentiles(long[] nanos) {
+      final long[] sorted = nanos.clone();
+      Arrays.sort(sorted);
+      final StringBuilder result = new StringBuilder();
+
+      for (double percentile : PERCENTILES) {
+        final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        result.append(String.format("p%s=%.2f ms, ",
+            percentile % 1 == 0 ? Long.toString((long) percentile) : Double.toString(percentile),
+            sorted[Math.max(index, 0)] / 1e6));
+      }
+
+      return result.append(String.format("max=%.2f ms", sorted[sorted.length - 1] / 1e6))
+          .toString();
+    }
+
+    void count(int status) {
+      if (status == HttpStatus.NO_CONTENT_204) {
+        doneNum.increment();
+      } else if (status == HttpStatus.BAD_REQUEST_400) {
+        rejectedNum.increment();
+      } else if (status == HttpStatus.CONFLICT_409) {
+        conflictsNum.increment();
+      } else {
+        failuresNum.increment();
+      }
+    }
+
+    void report() {
+      final double seconds = elapsedNanos / 1e9;
+      System.out.printf("%s, %s accounts, %,d requests/s for %d s: %,.0f requests/s done%n",
+          URL == null ? ACCOUNT_DAO_TYPE : URL, SKEW, RATE, DURATION_SECONDS,
+          latencyNanos.length / seconds);
+      System.out.printf("Transfers: %,d done, %,d rejected, %,d conflicts, %,d failed%n",
+          doneNum.sum(), rejectedNum.sum(), conflictsNum.sum(), failuresNum.sum());
+      System.out.println("Latency (from the due time): " + percentiles(latencyNanos));
+      System.out.println("Service time (from the send): " + percentiles(serviceTimeNanos));
+    }
+  }
+}
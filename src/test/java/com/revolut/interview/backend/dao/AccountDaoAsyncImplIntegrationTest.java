@@ -0,0 +1,217 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import io.lettuce.core.RedisClient;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+import redis.embedded.RedisServer;
+
+public class AccountDaoAsyncImplIntegrationTest {
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+  private static RedisClient redisClient;
+
+  private AccountDaoAsyncImpl accountDao;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+    redisClient = new TransferRedisClient(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT);
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    redisClient.shutdown();
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Before
+  public void setUp() {
+    accountDao = new AccountDaoAsyncImpl(jedisPool, redisClient);
+  }
+
+  @After
+  public void tearDown() {
+    accountDao.close();
+  }
+
+  @Test
+  public void transferMoneyAsync_OK() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal("10")));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("1")));
+
+    // When
+    accountDao.transferMoneyAsync(new BigDecimal("0.1"), fromAccount.getId(), toAccount.getId())
+        .get(5, TimeUnit.SECONDS);
+
+    // Then
+    assertEquals(new BigDecimal("9.90"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("1.10"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyAsync_ScriptFlushed() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal("10")));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("1")));
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.scriptFlush();
+    }
+
+    // When
+    accountDao.transferMoneyAsync(BigDecimal.ONE, fromAccount.getId(), toAccount.getId())
+        .get(5, TimeUnit.SECONDS);
+
+    // Then
+    assertEquals(new BigDecimal("9.00"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("2.00"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyAsync_NotEnoughMoney() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal("1")));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("10")));
+
+    // When
+    final Throwable e = getFailure(
+        accountDao.transferMoneyAsync(BigDecimal.TEN, fromAccount.getId(), toAccount.getId()));
+
+    // Then
+    assertTrue(e instanceof NotEnoughMoneyException);
+    assertEquals("Not enough money: (1.00 - 10) = -9.00 (from: " + fromAccount.getId() + ", to: "
+        + toAccount.getId() + ")", e.getMessage());
+    assertEquals(new BigDecimal("1.00"), accountDao.findById(fromAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyAsync_AccountNotFound() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+
+    // When
+    final Throwable e = getFailure(
+        accountDao.transferMoneyAsync(BigDecimal.ONE, fromAccount.getId(), 100500L));
+
+    // Then
+    assertTrue(e instanceof AccountNotFoundException);
+    assertEquals("100500", e.getMessage());
+  }
+
+  @Test
+  public void transferMoneyAsync_SameAccounts() throws Exception {
+    // When
+    final Throwable e = getFailure(accountDao.transferMoneyAsync(BigDecimal.ONE, 1L, 1L));
+
+    // Then
+    assertTrue(e instanceof FromAndToAccountsTheSameException);
+  }
+
+  @Test
+  public void transferMoneyOnceAsync_Repeated() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal("10")));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("1")));
+    final CompletableFuture<Void> first = accountDao
+        .transferMoneyOnceAsync(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(), "key");
+
+    // When
+    final CompletableFuture<Void> repeated = accountDao
+        .transferMoneyOnceAsync(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(), "key");
+    first.get(5, TimeUnit.SECONDS);
+    repeated.get(5, TimeUnit.SECONDS);
+
+    // Then
+    assertEquals(new BigDecimal("9.00"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("2.00"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyOnceAsync_KeyReused() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal("10")));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("1")));
+    accountDao.transferMoneyOnceAsync(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+        "key-reused").get(5, TimeUnit.SECONDS);
+
+    // When
+    final Throwable e = getFailure(accountDao.transferMoneyOnceAsync(BigDecimal.TEN,
+        fromAccount.getId(), toAccount.getId(), "key-reused"));
+
+    // Then
+    assertTrue(e instanceof IdempotencyKeyReusedException);
+    assertEquals(new BigDecimal("9.00"), accountDao.findById(fromAccount.getId()).getBalance());
+  }
+
+  @Test(timeout = 30000)
+  public void transferMoneyAsync_ConcurrentTransfersKeepTotal() throws Exception {
+    // Given
+    final List<Account> accounts = accountDao.createInBulk(range(0, 10)
+        .mapToObj(value -> new Account(BigDecimal.valueOf(100))).collect(toList()));
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    // When
+    final List<CompletableFuture<Void>> results = range(0, 5000).mapToObj(value -> {
+      final int from = random.nextInt(accounts.size());
+      final int to = (from + 1 + random.nextInt(accounts.size() - 1)) % accounts.size();
+
+      return accountDao.transferMoneyAsync(new BigDecimal("0.25"), accounts.get(from).getId(),
+          accounts.get(to).getId());
+    }).collect(toList());
+
+    for (CompletableFuture<Void> result : results) {
+      try {
+        result.get();
+      } catch (ExecutionException e) {
+        // It's possible
+        assertTrue(e.getCause() instanceof NotEnoughMoneyException);
+      }
+    }
+
+    // Then
+    BigDecimal total = BigDecimal.ZERO;
+
+    for (Account account : accounts) {
+      total = total.add(accountDao.findById(account.getId()).getBalance());
+    }
+
+    assertEquals(new BigDecimal("1000.00"), total);
+  }
+
+  private static Throwable getFailure(CompletableFuture<Void> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail();
+
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
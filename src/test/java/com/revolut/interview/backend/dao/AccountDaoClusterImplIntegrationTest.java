@@ -0,0 +1,442 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.embedded.RedisShardedCluster;
+
+public class AccountDaoClusterImplIntegrationTest {
+
+  private static final int FIRST_PORT = 7379;
+  private static final int GROUP_SIZE = 10;
+
+  private static RedisShardedCluster redisCluster;
+  private static JedisCluster jedisCluster;
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private AccountDaoClusterImpl accountDao;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisCluster = RedisShardedCluster.newRedisCluster()
+        .serverPorts(List.of(FIRST_PORT, FIRST_PORT + 1, FIRST_PORT + 2))
+        .shard("shard-0", 0).shard("shard-1", 0).shard("shard-2", 0)
+        .build();
+    redisCluster.start();
+
+    // Every node turns its state into OK on its own, a master waits ~2 s after its start
+    for (int port = FIRST_PORT; port <= FIRST_PORT + 2; port++) {
+      try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+        while (!jedis.clusterInfo().contains("cluster_state:ok")) {
+          Thread.sleep(100);
+        }
+      }
+    }
+
+    jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", FIRST_PORT));
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisCluster.close();
+    redisCluster.stop();
+  }
+
+  @Before
+  public void setUp() {
+    // The recovery is done by the tests only
+    accountDao = new AccountDaoClusterImpl(jedisCluster, GROUP_SIZE, Long.MAX_VALUE);
+  }
+
+  @After
+  public void tearDown() {
+    accountDao.close();
+  }
+
+  @Test
+  public void createFindById_OK() throws AccountNotFoundException {
+    // When
+    final Account savedAccount = accountDao.create(new Account(new BigDecimal("100500.105")));
+    final Account foundAccount = accountDao.findById(savedAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal("100500.105"), foundAccount.getBalance());
+  }
+
+  @Test
+  public void createInBulk_SeveralGroups() throws AccountNotFoundException {
+    // Given
+    final List<Account> accounts = range(0, GROUP_SIZE * 3 + 1)
+        .mapToObj(value -> new Account(BigDecimal.valueOf(value))).collect(toList());
+
+    // When
+    accountDao.createInBulk(accounts);
+
+    // Then
+    final long firstId = accounts.get(0).getId();
+
+    for (int i = 0; i < accounts.size(); i++) {
+      assertEquals(Long.valueOf(firstId + i), accounts.get(i).getId());
+      assertEquals(BigDecimal.valueOf(i, 0).setScale(2),
+          accountDao.findById(firstId + i).getBalance());
+    }
+  }
+
+  @Test(/* Then */ expected = AccountNotFoundException.class)
+  public void findById_NotFound() throws AccountNotFoundException {
+    // When
+    accountDao.findById(100500L);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_SameSlot() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(true, "10", "1");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.5"), accounts.get(0).getId(),
+        accounts.get(1).getId());
+
+    // Then
+    assertBalances(accounts, "9.50", "1.50");
+    assertLastLedgerEntry(accountDao.makeLedgerKey(accounts.get(0).getId()), accounts, "0.5");
+  }
+
+  private static void assertLastLedgerEntry(String ledgerKey, List<Account> accounts,
+      String sum) {
+    final Map<String, String> fields = jedisCluster.xrevrange(ledgerKey, null, null, 1).get(0)
+        .getFields();
+    assertEquals(accounts.get(0).getId().toString(), fields.get(TransferLedger.FIELD_FROM));
+    assertEquals(accounts.get(1).getId().toString(), fields.get(TransferLedger.FIELD_TO));
+    assertEquals(sum, fields.get(TransferLedger.FIELD_SUM));
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlot() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.5"), accounts.get(0).getId(),
+        accounts.get(1).getId());
+
+    // Then
+    assertBalances(accounts, "9.50", "1.50");
+    assertEquals(0, accountDao.recoverPendingTransfers(0));
+    assertLastLedgerEntry(accountDao.makeLedgerKey(accounts.get(1).getId()), accounts, "0.5");
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlotNotEnoughMoney() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "1", "10");
+
+    // Then
+    thrown.expect(NotEnoughMoneyException.class);
+    thrown.expectMessage("Not enough money: (1.00 - 10) = -9.00 (from: " + accounts.get(0).getId()
+        + ", to: " + accounts.get(1).getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.TEN, accounts.get(0).getId(),
+        accounts.get(1).getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlotFromAccountNotFound() throws Exception {
+    // Given
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+
+    // Then
+    thrown.expect(AccountNotFoundException.class);
+    thrown.expectMessage("100500");
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, 100500L, toAccount.getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlotToAccountNotFound() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+
+    try {
+      // When
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, fromAccount.getId(), 100500L);
+      fail();
+    } catch (AccountNotFoundException e) {
+      // Then
+      assertEquals("100500", e.getMessage());
+      assertEquals(new BigDecimal("1.00"), accountDao.findById(fromAccount.getId()).getBalance());
+    }
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlotSumScaleTooBig() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Illegal sum: 0.001 (from: " + accounts.get(0).getId() + ", to: "
+        + accounts.get(1).getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.001"), accounts.get(0).getId(),
+        accounts.get(1).getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CrossSlotOverflow() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "92233720368547758.00");
+
+    try {
+      // When
+      accountDao.transferMoneyTransactionally(BigDecimal.TEN, accounts.get(0).getId(),
+          accounts.get(1).getId());
+      fail();
+    } catch (JedisDataException e) {
+      // Then
+      assertBalances(accounts, "10.00", "92233720368547758.00");
+    }
+  }
+
+  @Test
+  public void transferMoneyOnce_SameSlotRepeated() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(true, "10", "1");
+    transferOnce(accounts, BigDecimal.ONE, "same-slot");
+
+    // When
+    transferOnce(accounts, BigDecimal.ONE, "same-slot");
+
+    // Then
+    assertBalances(accounts, "9.00", "2.00");
+  }
+
+  @Test
+  public void transferMoneyOnce_CrossSlotRepeated() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    transferOnce(accounts, BigDecimal.ONE, "cross-slot");
+
+    // When
+    transferOnce(accounts, BigDecimal.ONE, "cross-slot");
+
+    // Then
+    assertBalances(accounts, "9.00", "2.00");
+  }
+
+  @Test
+  public void transferMoneyOnce_CrossSlotKeyReused() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    transferOnce(accounts, BigDecimal.ONE, "cross-slot-reused");
+
+    // Then
+    thrown.expect(IdempotencyKeyReusedException.class);
+
+    // When
+    transferOnce(accounts, BigDecimal.TEN, "cross-slot-reused");
+  }
+
+  @Test
+  public void transferMoneyOnce_CrossSlotRefundedNotRecorded() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "92233720368547758.00");
+
+    try {
+      transferOnce(accounts, BigDecimal.TEN, "cross-slot-refunded");
+      fail();
+    } catch (JedisDataException e) {
+      // The credit overflows, the money is given back
+    }
+
+    jedisCluster.hmset(accountDao.makeAccountKey(accounts.get(1).getId()),
+        AccountDaoMinorUnitsImpl.makeUnitsHash(BigDecimal.ONE));
+
+    // When
+    transferOnce(accounts, BigDecimal.TEN, "cross-slot-refunded");
+
+    // Then
+    assertBalances(accounts, "0.00", "11.00");
+  }
+
+  @Test
+  public void recoverPendingTransfers_Credit() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    // The node fails right after the debit
+    accountDao.debit(BigDecimal.ONE, accounts.get(0).getId(), accounts.get(1).getId(), null);
+    assertBalances(accounts, "9.00", "1.00");
+
+    // When
+    final long result = accountDao.recoverPendingTransfers(0);
+
+    // Then
+    assertEquals(1, result);
+    assertBalances(accounts, "9.00", "2.00");
+    assertEquals(0, accountDao.recoverPendingTransfers(0));
+  }
+
+  @Test
+  public void recoverPendingTransfers_Refund() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    accountDao.debit(BigDecimal.ONE, accounts.get(0).getId(), accounts.get(1).getId(), null);
+    jedisCluster.del(accountDao.makeAccountKey(accounts.get(1).getId()));
+
+    // When
+    final long result = accountDao.recoverPendingTransfers(0);
+
+    // Then
+    assertEquals(1, result);
+    assertEquals(new BigDecimal("10.00"), accountDao.findById(accounts.get(0).getId()).getBalance());
+  }
+
+  @Test
+  public void recoverPendingTransfers_NotTimedOut() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    final String pendingTransferKey = accountDao
+        .debit(BigDecimal.ONE, accounts.get(0).getId(), accounts.get(1).getId(), null);
+
+    // When
+    final long result = accountDao.recoverPendingTransfers(60_000);
+
+    // Then
+    assertEquals(0, result);
+    accountDao.completePendingTransfer(pendingTransferKey);
+    assertBalances(accounts, "9.00", "2.00");
+  }
+
+  @Test
+  public void completePendingTransfer_Repeated() throws Exception {
+    // Given
+    final List<Account> accounts = createAccountsOfSlots(false, "10", "1");
+    final String pendingTransferKey = accountDao
+        .debit(BigDecimal.ONE, accounts.get(0).getId(), accounts.get(1).getId(), null);
+    accountDao.completePendingTransfer(pendingTransferKey);
+    // The pending transfer is read by another node before it's completed
+    jedisCluster.hset(pendingTransferKey, "to", accountDao.makeAccountKey(accounts.get(1).getId()));
+
+    // When
+    jedisCluster.del(pendingTransferKey);
+    final long result = accountDao.completePendingTransfer(pendingTransferKey);
+
+    // Then
+    assertEquals(AccountDaoScriptImpl.STATUS_OK, result);
+    assertBalances(accounts, "9.00", "2.00");
+  }
+
+  @Test(timeout = 30000)
+  public void transferMoneyTransactionally_ConcurrentTransfersKeepTotal() throws Exception {
+    // Given
+    final int threadsNum = 8;
+    final int transfersPerThreadNum = 200;
+    final List<Account> accounts = accountDao.createInBulk(range(0, GROUP_SIZE * 2)
+        .mapToObj(value -> new Account(BigDecimal.valueOf(100))).collect(toList()));
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadsNum);
+
+    try {
+      // When
+      final List<Future<?>> results = range(0, threadsNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            for (int i = 0; i < transfersPerThreadNum; i++) {
+              final int from = random.nextInt(accounts.size());
+              final int to = (from + 1 + random.nextInt(accounts.size() - 1)) % accounts.size();
+
+              try {
+                accountDao.transferMoneyTransactionally(new BigDecimal("0.25"),
+                    accounts.get(from).getId(), accounts.get(to).getId());
+              } catch (NotEnoughMoneyException e) {
+                // It's possible
+              }
+            }
+
+            return null;
+          }))
+          .collect(toList());
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      BigDecimal total = BigDecimal.ZERO;
+
+      for (Account account : accounts) {
+        total = total.add(accountDao.findById(account.getId()).getBalance());
+      }
+
+      assertEquals(new BigDecimal("2000.00"), total);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private void transferOnce(List<Account> accounts, BigDecimal sum, String idempotencyKey)
+      throws Exception {
+    accountDao.transferMoneyOnce(sum, accounts.get(0).getId(), accounts.get(1).getId(),
+        idempotencyKey);
+  }
+
+  private List<Account> createAccountsOfSlots(boolean sameSlot, String fromBalance,
+      String toBalance) {
+    final List<Account> accounts = accountDao.createInBulk(range(0, GROUP_SIZE * 2)
+        .mapToObj(value -> new Account(BigDecimal.ONE)).collect(toList()));
+    final Account fromAccount = accounts.get(0);
+    final Account toAccount = accounts.get(sameSlot ? 1 : GROUP_SIZE * 2 - 1);
+    final int fromSlot = JedisClusterCRC16.getSlot(accountDao.makeAccountKey(fromAccount.getId()));
+    final int toSlot = JedisClusterCRC16.getSlot(accountDao.makeAccountKey(toAccount.getId()));
+
+    if (sameSlot) {
+      assertEquals(fromSlot, toSlot);
+    } else {
+      assertNotEquals(fromSlot, toSlot);
+    }
+
+    jedisCluster.hmset(accountDao.makeAccountKey(fromAccount.getId()),
+        AccountDaoMinorUnitsImpl.makeUnitsHash(new BigDecimal(fromBalance)));
+    jedisCluster.hmset(accountDao.makeAccountKey(toAccount.getId()),
+        AccountDaoMinorUnitsImpl.makeUnitsHash(new BigDecimal(toBalance)));
+
+    return List.of(fromAccount, toAccount);
+  }
+
+  private void assertBalances(List<Account> accounts, String fromBalance, String toBalance)
+      throws AccountNotFoundException {
+    assertEquals(new BigDecimal(fromBalance),
+        accountDao.findById(accounts.get(0).getId()).getBalance());
+    assertEquals(new BigDecimal(toBalance),
+        accountDao.findById(accounts.get(1).getId()).getBalance());
+  }
+}
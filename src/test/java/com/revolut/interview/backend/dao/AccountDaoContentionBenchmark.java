@@ -0,0 +1,240 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+// NOTE it's excluded from the regular build, run it with -PenableLoadTest
+public class AccountDaoContentionBenchmark {
+
+  private static final int THREADS_NUM = 32;
+  private static final int HOT_ACCOUNTS_NUM = 4;
+  private static final int TRANSFERS_PER_THREAD = 1000;
+  private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000);
+  private static final String COMMANDS_PROCESSED = "total_commands_processed:";
+  private static final int PAYERS_NUM = 256;
+  private static final int HOT_SLOTS_NUM = 8;
+
+  private static RedisServer redisServer;
+  private final LongAdder conflictsNum = new LongAdder();
+  private static JedisPool jedisPool;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+
+    final JedisPoolConfig poolConfig = new JedisPoolConfig();
+    poolConfig.setMaxTotal(THREADS_NUM);
+    jedisPool = new JedisPool(poolConfig);
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Test
+  public void optimistic() throws Exception {
+    benchmark("WATCH/MULTI/EXEC", new AccountDaoImpl(jedisPool));
+  }
+
+  @Test
+  public void optimisticHotReceiver() throws Exception {
+    benchmarkHotReceiver("WATCH/MULTI/EXEC", merchantId -> new AccountDaoImpl(jedisPool));
+  }
+
+  @Test
+  public void optimisticHotReceiverSlots() throws Exception {
+    benchmarkHotReceiver("WATCH/MULTI/EXEC with " + HOT_SLOTS_NUM + " slots",
+        merchantId -> new AccountDaoImpl(jedisPool, 0,
+            new HotAccounts(id -> id == merchantId, HOT_SLOTS_NUM)));
+  }
+
+  @Test
+  public void script() throws Exception {
+    benchmark("EVALSHA", new AccountDaoScriptImpl(jedisPool));
+  }
+
+  @Test
+  public void scriptCoalesced() throws Exception {
+    try (CoalescingAccountDao accountDao = new CoalescingAccountDao(
+        new AccountDaoScriptImpl(jedisPool))) {
+      benchmark("EVALSHA of coalesced transfers", accountDao);
+    }
+  }
+
+  @Test
+  public void minorUnits() throws Exception {
+    benchmark("EVALSHA + HINCRBY", new AccountDaoMinorUnitsImpl(jedisPool));
+  }
+
+  @Test
+  public void inMemory() throws Exception {
+    benchmark("In-memory striped locks", new AccountDaoInMemoryImpl());
+  }
+
+  @Test
+  public void partitioned() throws Exception {
+    benchmark("Partitioned single writers", new AccountDaoPartitionedImpl());
+  }
+
+  private void benchmark(String name, AccountDao accountDao) throws Exception {
+    // Given
+    final List<Long> accountIds = range(0, HOT_ACCOUNTS_NUM)
+        .mapToObj(value -> accountDao.create(new Account(INITIAL_BALANCE)).getId())
+        .collect(toList());
+    final ExecutorService executorService = Executors.newFixedThreadPool(THREADS_NUM);
+
+    try {
+      // When
+      final long commandsBefore = getCommandsProcessed();
+      final long start = System.nanoTime();
+      final List<Future<?>> results = range(0, THREADS_NUM)
+          .mapToObj(value -> executorService.submit(() -> transfer(accountDao, accountIds)))
+          .collect(toList());
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      final long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      final int transfersNum = THREADS_NUM * TRANSFERS_PER_THREAD;
+      System.out.printf(
+          "%s: %d transfers between %d accounts by %d threads in %d ms (%d tps), conflicts: %d, "
+              + "Redis commands per transfer: %.2f%n",
+          name, transfersNum, HOT_ACCOUNTS_NUM, THREADS_NUM, elapsedMs,
+          transfersNum * 1000L / Math.max(elapsedMs, 1), conflictsNum.sum(),
+          (double) (getCommandsProcessed() - commandsBefore) / transfersNum);
+
+      // Then
+      BigDecimal total = BigDecimal.ZERO;
+
+      for (Long accountId : accountIds) {
+        total = total.add(accountDao.findById(accountId).getBalance());
+      }
+
+      assertEquals(0,
+          INITIAL_BALANCE.multiply(BigDecimal.valueOf(HOT_ACCOUNTS_NUM)).compareTo(total));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Every transfer credits the same merchant account from one of many payers
+   */
+  private void benchmarkHotReceiver(String name, LongFunction<AccountDaoImpl> accountDaoFactory)
+      throws Exception {
+    // Given
+    final List<Long> payerIds = new AccountDaoImpl(jedisPool).createInBulk(range(0, PAYERS_NUM)
+        .mapToObj(value -> new Account(INITIAL_BALANCE)).collect(toList())).stream()
+        .map(Account::getId).collect(toList());
+    final Long merchantId = new AccountDaoImpl(jedisPool).create(new Account(BigDecimal.ZERO))
+        .getId();
+    final AccountDaoImpl accountDao = accountDaoFactory.apply(merchantId);
+    final Metrics metrics = new Metrics();
+    accountDao.setMetrics(metrics);
+    final ExecutorService executorService = Executors.newFixedThreadPool(THREADS_NUM);
+
+    try {
+      // When
+      final long start = System.nanoTime();
+      final List<Future<?>> results = range(0, THREADS_NUM)
+          .mapToObj(value -> executorService.submit(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+              try {
+                accountDao.transferMoneyTransactionally(BigDecimal.ONE,
+                    payerIds.get(random.nextInt(PAYERS_NUM)), merchantId);
+              } catch (TransferConflictException e) {
+                conflictsNum.increment();
+              }
+            }
+
+            return null;
+          }))
+          .collect(toList());
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      final long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      final int transfersNum = THREADS_NUM * TRANSFERS_PER_THREAD;
+      System.out.printf(
+          "%s: %d transfers from %d payers to 1 merchant by %d threads in %d ms (%d tps), "
+              + "retries: %d, conflicts: %d%n",
+          name, transfersNum, PAYERS_NUM, THREADS_NUM, elapsedMs,
+          transfersNum * 1000L / Math.max(elapsedMs, 1),
+          metrics.counter("account_dao_transfer_retries_total", "", "").get(),
+          conflictsNum.sum());
+
+      // Then
+      BigDecimal total = accountDao.findById(merchantId).getBalance();
+
+      for (Long payerId : payerIds) {
+        total = total.add(accountDao.findById(payerId).getBalance());
+      }
+
+      assertEquals(0, INITIAL_BALANCE.multiply(BigDecimal.valueOf(PAYERS_NUM)).compareTo(total));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * @return the number of commands processed by Redis (0 for the DAOs keeping accounts in memory),
+   * a script is one command
+   */
+  private static long getCommandsProcessed() {
+    try (Jedis jedis = jedisPool.getResource()) {
+      for (String line : jedis.info("stats").split("\r\n")) {
+        if (line.startsWith(COMMANDS_PROCESSED)) {
+          return Long.parseLong(line.substring(COMMANDS_PROCESSED.length()));
+        }
+      }
+    }
+
+    throw new IllegalStateException("No " + COMMANDS_PROCESSED + " in INFO stats");
+  }
+
+  private Void transfer(AccountDao accountDao, List<Long> accountIds) throws Exception {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+      final int from = random.nextInt(accountIds.size());
+      final int to = (from + 1 + random.nextInt(accountIds.size() - 1)) % accountIds.size();
+
+      try {
+        accountDao
+            .transferMoneyTransactionally(BigDecimal.ONE, accountIds.get(from), accountIds.get(to));
+      } catch (TransferConflictException e) {
+        conflictsNum.increment();
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,56 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+public class AccountDaoImplBucketedIntegrationTest extends AccountDaoImplIntegrationTest {
+
+  private static final int BUCKET_SIZE = 512;
+
+  private JedisPool jedisPool;
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+
+    return new AccountDaoImpl(jedisPool, BUCKET_SIZE);
+  }
+
+  @Test
+  public void createInBulk_Bucketed() throws Exception {
+    // Given
+    final List<Account> accounts = accountDao.createInBulk(range(0, BUCKET_SIZE + 1)
+        .mapToObj(i -> new Account(BigDecimal.valueOf(i, 2))).collect(toList()));
+    final Account fromAccount = accounts.get(0);
+    final Account toAccount = accounts.get(BUCKET_SIZE);
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, toAccount.getId(), fromAccount.getId());
+
+    // Then
+    try (Jedis jedis = jedisPool.getResource()) {
+      final String fromKey = "acct:{" + fromAccount.getId() / BUCKET_SIZE + "}";
+      final String toKey = "acct:{" + toAccount.getId() / BUCKET_SIZE + "}";
+      assertTrue(!fromKey.equals(toKey));
+      assertEquals("1.00",
+          jedis.hget(fromKey, Long.toString(fromAccount.getId() % BUCKET_SIZE)));
+      assertEquals("4.12", jedis.hget(toKey, Long.toString(toAccount.getId() % BUCKET_SIZE)));
+      assertTrue(jedis.hlen(fromKey) <= BUCKET_SIZE);
+      // The compact encoding of Redis 6 and 7
+      assertTrue(jedis.objectEncoding(fromKey).matches("ziplist|listpack"));
+      assertEquals(Boolean.FALSE, jedis.exists("author:" + fromAccount.getId()));
+    }
+
+    assertEquals(new BigDecimal("1.00"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("4.12"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+}
@@ -0,0 +1,137 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Every account is hot here, so all the transfers of the base tests credit the slots
+ */
+public class AccountDaoImplHotIntegrationTest extends AccountDaoImplIntegrationTest {
+
+  private static final int SLOTS_NUM = 4;
+
+  private final HotAccounts hotAccounts = new HotAccounts(id -> true, SLOTS_NUM);
+  private JedisPool jedisPool;
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+
+    return new AccountDaoImpl(jedisPool, 0, hotAccounts);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_CreditedToSlot() throws Exception {
+    // Given
+    final Long fromAccountId = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long toAccountId = accountDao.create(new Account(BigDecimal.ONE)).getId();
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("2.50"), fromAccountId, toAccountId);
+
+    // Then
+    try (Jedis jedis = jedisPool.getResource()) {
+      assertEquals("1", jedis.hget("author:" + toAccountId, AccountDaoImpl.FIELD_BALANCE));
+      assertEquals(Arrays.asList("2.50"), getSlotBalances(jedis, toAccountId));
+    }
+
+    assertEquals(0, new BigDecimal("3.50")
+        .compareTo(accountDao.findById(toAccountId).getBalance()));
+  }
+
+  @Test
+  public void transferMoneyTransactionally_SlotsSwept() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+
+    for (int i = 0; i < 10; i++) {
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+    }
+
+    // When
+    // The main balance (1) isn't enough, so the slots (10) are swept into it
+    accountDao.transferMoneyTransactionally(BigDecimal.valueOf(7), accountId2, accountId1);
+
+    // Then
+    try (Jedis jedis = jedisPool.getResource()) {
+      assertEquals("4", jedis.hget("author:" + accountId2, AccountDaoImpl.FIELD_BALANCE));
+      assertEquals(0, getSlotBalances(jedis, accountId2).size());
+    }
+
+    assertEquals(0, BigDecimal.valueOf(4).compareTo(accountDao.findById(accountId2).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(7).compareTo(accountDao.findById(accountId1).getBalance()));
+  }
+
+  @Test
+  public void transferMoneyTransactionally_NotEnoughMoneyWithSlots() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    accountDao.transferMoneyTransactionally(BigDecimal.valueOf(2), accountId1, accountId2);
+
+    // When
+    try {
+      accountDao.transferMoneyTransactionally(BigDecimal.valueOf(4), accountId2, accountId1);
+      fail("Not enough money expected");
+    } catch (NotEnoughMoneyException e) {
+      // Then
+      assertEquals(0,
+          BigDecimal.valueOf(3).compareTo(accountDao.findById(accountId2).getBalance()));
+    }
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      assertEquals("1", jedis.hget("author:" + accountId2, AccountDaoImpl.FIELD_BALANCE));
+      assertEquals(Arrays.asList("2"), getSlotBalances(jedis, accountId2));
+    }
+  }
+
+  @Test
+  public void transferMoneyInBatch_SlotsSwept() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    accountDao.transferMoneyTransactionally(BigDecimal.valueOf(5), accountId1, accountId2);
+
+    // When
+    final Status status = accountDao.transferMoneyInBatch(
+        Arrays.asList(new Transfer(BigDecimal.valueOf(3), accountId2, accountId1))).get(0)
+        .getStatus();
+
+    // Then
+    assertEquals(Status.OK, status);
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      assertEquals("2", jedis.hget("author:" + accountId2, AccountDaoImpl.FIELD_BALANCE));
+      assertEquals(0, getSlotBalances(jedis, accountId2).size());
+      assertNull(jedis.hget("author:" + accountId1 + ":0", AccountDaoImpl.FIELD_BALANCE));
+    }
+
+    assertEquals(0, BigDecimal.valueOf(8).compareTo(accountDao.findById(accountId1).getBalance()));
+  }
+
+  private List<String> getSlotBalances(Jedis jedis, Long accountId) {
+    final List<String> result = new ArrayList<>();
+
+    for (String slotKey : hotAccounts.makeSlotKeys(accountId)) {
+      result.add(jedis.hget(slotKey, AccountDaoImpl.FIELD_BALANCE));
+    }
+
+    result.removeIf(Objects::isNull);
+
+    return result;
+  }
+}
@@ -1,22 +1,40 @@
 package com.revolut.interview.backend.dao;
 
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.IntStream.rangeClosed;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.LedgerEntry;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.StreamEntry;
 import redis.embedded.RedisServer;
 
 public class AccountDaoImplIntegrationTest {
@@ -27,7 +45,7 @@ public class AccountDaoImplIntegrationTest {
   @Rule
   public final ExpectedException thrown = ExpectedException.none();
 
-  private AccountDao accountDao;
+  AccountDao accountDao;
 
   @BeforeClass
   public static void setUpOnce() throws Exception {
@@ -37,14 +55,18 @@ public class AccountDaoImplIntegrationTest {
   }
 
   @AfterClass
-  public static void tearDownOnce() {
+  public static void tearDownOnce() throws IOException {
     jedisPool.destroy();
     redisServer.stop();
   }
 
   @Before
   public void setUp() {
-    accountDao = new AccountDaoImpl(jedisPool);
+    accountDao = makeAccountDao(jedisPool);
+  }
+
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    return new AccountDaoImpl(jedisPool);
   }
 
   @Test
@@ -60,6 +82,26 @@ public class AccountDaoImplIntegrationTest {
     assertEquals(account.getBalance(), foundAccount.getBalance());
   }
 
+  @Test
+  public void createInBulk_OK() throws AccountNotFoundException {
+    // Given
+    final List<Account> accounts = rangeClosed(1, 2500)
+        .mapToObj(value -> new Account(BigDecimal.valueOf(value, 1))).collect(toList());
+
+    // When
+    final List<Account> savedAccounts = accountDao.createInBulk(accounts);
+
+    // Then
+    assertEquals(accounts.size(), savedAccounts.size());
+    final long firstId = savedAccounts.get(0).getId();
+
+    for (int i = 0; i < savedAccounts.size(); i++) {
+      assertEquals(Long.valueOf(firstId + i), savedAccounts.get(i).getId());
+      assertEquals(0, accounts.get(i).getBalance()
+          .compareTo(accountDao.findById(firstId + i).getBalance()));
+    }
+  }
+
   @Test(/* Then */ expected = AccountNotFoundException.class)
   public void findById_NotFound() throws AccountNotFoundException {
     // When
@@ -76,6 +118,16 @@ public class AccountDaoImplIntegrationTest {
     accountDao.transferMoneyTransactionally(BigDecimal.valueOf(-1L), 1L, 2L);
   }
 
+  @Test
+  public void transferMoneyTransactionally_SumOutOfRange() throws Exception {
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Sum out of range: 1E+999999999 (from: 1, to: 2)");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("1E+999999999"), 1L, 2L);
+  }
+
   @Test
   public void transferMoneyTransactionally_SameFromToAccount() throws Exception {
     // Given
@@ -174,4 +226,343 @@ public class AccountDaoImplIntegrationTest {
       executorService.shutdown();
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void transferMoneyInBatch_OK() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final Long accountId3 = accountDao.create(new Account(BigDecimal.valueOf(5))).getId();
+    final BigDecimal six = BigDecimal.valueOf(6);
+    final List<Transfer> transfers = asList(
+        new Transfer(six, accountId1, accountId2),
+        new Transfer(six, accountId2, accountId3),
+        new Transfer(six, accountId1, accountId2),
+        new Transfer(BigDecimal.ONE, accountId1, accountId1),
+        new Transfer(BigDecimal.ONE, accountId1, 100500L),
+        new Transfer(BigDecimal.ONE, null, accountId2),
+        new Transfer(BigDecimal.valueOf(-1), accountId1, accountId2));
+
+    // When
+    final List<TransferResult> results = accountDao.transferMoneyInBatch(transfers);
+
+    // Then
+    assertEquals(asList(Status.OK, Status.OK, Status.NOT_ENOUGH_MONEY,
+        Status.FROM_AND_TO_ACCOUNTS_THE_SAME, Status.ACCOUNT_NOT_FOUND, Status.ILLEGAL_ARGUMENT,
+        Status.ILLEGAL_ARGUMENT),
+        results.stream().map(TransferResult::getStatus).collect(toList()));
+    assertEquals("100500", results.get(4).getMessage());
+    assertEquals(0, BigDecimal.valueOf(4).compareTo(accountDao.findById(accountId1).getBalance()));
+    assertEquals(0, BigDecimal.ZERO.compareTo(accountDao.findById(accountId2).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(11).compareTo(accountDao.findById(accountId3).getBalance()));
+  }
+
+  @Test
+  public void transferMoneyTransactionally_LedgerAppended() throws Exception {
+    // NOTE the DAOs keeping accounts in memory have no ledger
+    assumeTrue(accountDao instanceof AccountDaoImpl);
+
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final String lastId = getLastLedgerId();
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("2.50"), accountId1, accountId2);
+
+    try {
+      accountDao.transferMoneyTransactionally(BigDecimal.TEN, accountId1, accountId2);
+      fail();
+    } catch (NotEnoughMoneyException e) {
+      // Expected
+    }
+
+    // Then
+    final List<LedgerEntry> entries = readLedgerAfter(lastId);
+    assertEquals(1, entries.size());
+    assertEquals(accountId1, entries.get(0).getFrom());
+    assertEquals(accountId2, entries.get(0).getTo());
+    assertEquals(new BigDecimal("2.50"), entries.get(0).getSum());
+  }
+
+  @Test
+  public void transferMoneyInBatch_LedgerAppended() throws Exception {
+    assumeTrue(accountDao instanceof AccountDaoImpl);
+
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final String lastId = getLastLedgerId();
+
+    // When
+    accountDao.transferMoneyInBatch(asList(
+        new Transfer(BigDecimal.valueOf(6), accountId1, accountId2),
+        new Transfer(BigDecimal.valueOf(6), accountId1, accountId2),
+        new Transfer(BigDecimal.ONE, accountId2, accountId1)));
+
+    // Then
+    final List<LedgerEntry> entries = readLedgerAfter(lastId);
+    assertEquals(2, entries.size());
+    assertEquals(accountId1, entries.get(0).getFrom());
+    assertEquals(0, BigDecimal.valueOf(6).compareTo(entries.get(0).getSum()));
+    assertEquals(accountId2, entries.get(1).getFrom());
+    assertEquals(0, BigDecimal.ONE.compareTo(entries.get(1).getSum()));
+  }
+
+  private static String getLastLedgerId() {
+    try (Jedis jedis = jedisPool.getResource()) {
+      final List<StreamEntry> lastEntries = jedis.xrevrange(TransferLedger.KEY_LEDGER, null, null,
+          1);
+
+      return lastEntries.isEmpty() ? "0-0" : lastEntries.get(0).getID().toString();
+    }
+  }
+
+  private static List<LedgerEntry> readLedgerAfter(String lastId) throws IOException {
+    final List<LedgerEntry> result = new ArrayList<>();
+    new TransferLedger(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT)
+        .read(lastId, false, result::addAll);
+
+    return result;
+  }
+
+  @Test
+  public void transferMoneyInBatch_SeveralChunks() throws Exception {
+    // Given
+    final int transfersNum = 250;
+    final Long fromAccountId = accountDao.create(new Account(BigDecimal.valueOf(3))).getId();
+    final Long toAccountId = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final List<Transfer> transfers = rangeClosed(1, transfersNum)
+        .mapToObj(value -> new Transfer(new BigDecimal("0.01"), fromAccountId, toAccountId))
+        .collect(toList());
+
+    // When
+    final List<TransferResult> results = accountDao.transferMoneyInBatch(transfers);
+
+    // Then
+    assertTrue(results.stream().allMatch(result -> result.getStatus() == Status.OK));
+    assertEquals(0,
+        new BigDecimal("0.5").compareTo(accountDao.findById(fromAccountId).getBalance()));
+    assertEquals(0,
+        new BigDecimal("2.5").compareTo(accountDao.findById(toAccountId).getBalance()));
+  }
+
+  @Test(timeout = 30000)
+  public void transferMoneyTransactionally_ConcurrentTransfersKeepTotal() throws Exception {
+    // Given
+    final int accountsNum = 5;
+    final int threadsNum = 8;
+    final int transfersPerThread = 200;
+    final List<Long> accountIds = rangeClosed(1, accountsNum)
+        .mapToObj(value -> accountDao.create(new Account(BigDecimal.TEN)).getId())
+        .collect(toList());
+    final CountDownLatch startTransaction = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadsNum);
+
+    try {
+      // When
+      final List<Future<?>> results = rangeClosed(1, threadsNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            startTransaction.await();
+
+            final Random random = new Random(value);
+
+            for (int i = 0; i < transfersPerThread; i++) {
+              final Long fromAccountId = accountIds.get(random.nextInt(accountsNum));
+              final Long toAccountId = accountIds.get(random.nextInt(accountsNum));
+
+              try {
+                accountDao.transferMoneyTransactionally(BigDecimal.valueOf(random.nextInt(300), 2),
+                    fromAccountId, toAccountId);
+              } catch (NotEnoughMoneyException | FromAndToAccountsTheSameException
+                  | TransferConflictException e) {
+                // Expected
+              }
+            }
+
+            return null;
+          }))
+          .collect(toList());
+      startTransaction.countDown();
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      BigDecimal total = BigDecimal.ZERO;
+
+      for (Long accountId : accountIds) {
+        final BigDecimal balance = accountDao.findById(accountId).getBalance();
+        assertTrue(balance.signum() >= 0);
+        total = total.add(balance);
+      }
+
+      assertEquals(0, BigDecimal.TEN.multiply(BigDecimal.valueOf(accountsNum)).compareTo(total));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void transferMoneyTransactionally_Conflict() throws Exception {
+    // NOTE only WATCH/MULTI/EXEC has conflicts
+    assumeTrue(accountDao.getClass() == AccountDaoImpl.class);
+
+    // Given
+    ((AccountDaoImpl) accountDao).setRetryPolicy(new RetryPolicy(1, 0, 0));
+    final int threadsNum = 8;
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.valueOf(1000))).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.valueOf(1000))).getId();
+    final AtomicInteger conflictsNum = new AtomicInteger();
+    final CountDownLatch startTransaction = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadsNum);
+
+    try {
+      // When
+      final List<Future<?>> results = rangeClosed(1, threadsNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            startTransaction.await();
+
+            for (int i = 0; i < 100; i++) {
+              try {
+                accountDao.transferMoneyTransactionally(BigDecimal.ONE,
+                    i % 2 == 0 ? accountId1 : accountId2, i % 2 == 0 ? accountId2 : accountId1);
+              } catch (TransferConflictException e) {
+                conflictsNum.incrementAndGet();
+              }
+            }
+
+            return null;
+          }))
+          .collect(toList());
+      startTransaction.countDown();
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      assertTrue(conflictsNum.get() > 0);
+      assertEquals(0, BigDecimal.valueOf(2000).compareTo(accountDao.findById(accountId1)
+          .getBalance().add(accountDao.findById(accountId2).getBalance())));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void transferMoneyOnce_Repeated() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final String idempotencyKey = UUID.randomUUID().toString();
+    accountDao.transferMoneyOnce(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+        idempotencyKey);
+
+    // When
+    accountDao.transferMoneyOnce(new BigDecimal("1.00"), fromAccount.getId(), toAccount.getId(),
+        idempotencyKey);
+
+    // Then
+    assertEquals(0, BigDecimal.valueOf(9).compareTo(
+        accountDao.findById(fromAccount.getId()).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(2).compareTo(
+        accountDao.findById(toAccount.getId()).getBalance()));
+  }
+
+  @Test
+  public void transferMoneyOnce_KeyReused() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final String idempotencyKey = UUID.randomUUID().toString();
+    accountDao.transferMoneyOnce(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+        idempotencyKey);
+
+    try {
+      // When
+      accountDao.transferMoneyOnce(BigDecimal.TEN, fromAccount.getId(), toAccount.getId(),
+          idempotencyKey);
+      fail();
+    } catch (IdempotencyKeyReusedException e) {
+      // Then
+      assertTrue(e.getMessage().contains(idempotencyKey));
+      assertEquals(0, BigDecimal.valueOf(9).compareTo(
+          accountDao.findById(fromAccount.getId()).getBalance()));
+    }
+  }
+
+  @Test
+  public void transferMoneyOnce_FailedNotRecorded() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final String idempotencyKey = UUID.randomUUID().toString();
+
+    try {
+      accountDao.transferMoneyOnce(BigDecimal.TEN, fromAccount.getId(), toAccount.getId(),
+          idempotencyKey);
+      fail();
+    } catch (NotEnoughMoneyException e) {
+      // Expected
+    }
+
+    // When
+    accountDao.transferMoneyOnce(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+        idempotencyKey);
+
+    // Then
+    assertEquals(0, BigDecimal.ZERO.compareTo(
+        accountDao.findById(fromAccount.getId()).getBalance()));
+    assertEquals(0, BigDecimal.valueOf(2).compareTo(
+        accountDao.findById(toAccount.getId()).getBalance()));
+  }
+
+  @Test
+  public void transferMoneyOnce_IllegalKey() throws Exception {
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Idempotency key must have 1-" + IdempotencyKeys.MAX_LENGTH);
+
+    // When
+    accountDao.transferMoneyOnce(BigDecimal.ONE, 1L, 2L, "");
+  }
+
+  @Test(timeout = 30000)
+  public void transferMoneyOnce_ConcurrentRepeats() throws Exception {
+    // Given
+    final int threadsNum = 8;
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ZERO));
+    final String idempotencyKey = UUID.randomUUID().toString();
+    final CountDownLatch startTransaction = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadsNum);
+
+    try {
+      // When
+      final List<Future<?>> results = rangeClosed(1, threadsNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            startTransaction.await();
+            accountDao.transferMoneyOnce(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+                idempotencyKey);
+
+            return null;
+          }))
+          .collect(toList());
+      startTransaction.countDown();
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      assertEquals(0, BigDecimal.valueOf(9).compareTo(
+          accountDao.findById(fromAccount.getId()).getBalance()));
+      assertEquals(0, BigDecimal.ONE.compareTo(
+          accountDao.findById(toAccount.getId()).getBalance()));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+}
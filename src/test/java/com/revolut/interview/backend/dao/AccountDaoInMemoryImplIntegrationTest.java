@@ -0,0 +1,13 @@
+package com.revolut.interview.backend.dao;
+
+import java.util.concurrent.TimeUnit;
+import redis.clients.jedis.JedisPool;
+
+public class AccountDaoInMemoryImplIntegrationTest extends AccountDaoImplIntegrationTest {
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    // The idempotency keys are recorded by the decorator like in the app
+    return new LocalIdempotentAccountDao(new AccountDaoInMemoryImpl(), TimeUnit.MINUTES.toNanos(1));
+  }
+}
@@ -0,0 +1,234 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.embedded.RedisServer;
+
+public class AccountDaoMinorUnitsImplIntegrationTest {
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private AccountDaoMinorUnitsImpl accountDao;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Before
+  public void setUp() {
+    accountDao = new AccountDaoMinorUnitsImpl(jedisPool);
+  }
+
+  @Test
+  public void createFindById_OK() throws AccountNotFoundException {
+    createFindByIdFixture("100500.105", "100500.105");
+    createFindByIdFixture("10", "10.00");
+    createFindByIdFixture("-0.5", "-0.50");
+  }
+
+  private void createFindByIdFixture(String balance, String expectedBalance)
+      throws AccountNotFoundException {
+    // When
+    final Account savedAccount = accountDao.create(new Account(new BigDecimal(balance)));
+    final Account foundAccount = accountDao.findById(savedAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal(expectedBalance), foundAccount.getBalance());
+  }
+
+  @Test
+  public void create_TooBigBalance() {
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Balance doesn't fit into minor units: 100500.10");
+
+    // When
+    accountDao.create(new Account(new BigDecimal(100500.10500)));
+  }
+
+  @Test(/* Then */ expected = AccountNotFoundException.class)
+  public void findById_NotFound() throws AccountNotFoundException {
+    // When
+    accountDao.findById(100500L);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_OK() throws Exception {
+    transferFixture("10", "0.1", "1", "9.90", "1.10");
+    transferFixture("1.005", "1", "0", "0.005", "1.00");
+    transferFixture("5", "5", "92233720368547753.07", "0.00", "92233720368547758.07");
+  }
+
+  private void transferFixture(String fromBalance, String sum, String toBalance,
+      String expectedFromBalance, String expectedToBalance) throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal(fromBalance)));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal(toBalance)));
+
+    // When
+    accountDao
+        .transferMoneyTransactionally(new BigDecimal(sum), fromAccount.getId(), toAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal(expectedFromBalance),
+        accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal(expectedToBalance),
+        accountDao.findById(toAccount.getId()).getBalance());
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      final Map<String, String> lastEntry = jedis
+          .xrevrange(TransferLedger.KEY_LEDGER, null, null, 1).get(0).getFields();
+      assertEquals(fromAccount.getId().toString(), lastEntry.get(TransferLedger.FIELD_FROM));
+      assertEquals(toAccount.getId().toString(), lastEntry.get(TransferLedger.FIELD_TO));
+      assertEquals(sum, lastEntry.get(TransferLedger.FIELD_SUM));
+    }
+  }
+
+  @Test
+  public void transferMoneyTransactionally_Overflow() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("92233720368547758.00")));
+
+    try {
+      // When
+      accountDao.transferMoneyTransactionally(BigDecimal.TEN, fromAccount.getId(),
+          toAccount.getId());
+      fail();
+    } catch (JedisDataException e) {
+      // Then
+      assertEquals(new BigDecimal("10.00"), accountDao.findById(fromAccount.getId()).getBalance());
+    }
+  }
+
+  @Test
+  public void transferMoneyTransactionally_SumScaleTooBig() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Illegal sum: 0.001 (from: " + fromAccount.getId() + ", to: " + toAccount
+        .getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.001"), fromAccount.getId(),
+        toAccount.getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_NotEnoughMoney() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.TEN));
+
+    // Then
+    thrown.expect(NotEnoughMoneyException.class);
+    thrown.expectMessage(
+        "Not enough money: (1.00 - 10) = -9.00 (from: " + fromAccount.getId() + ", to: " + toAccount
+            .getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.TEN, fromAccount.getId(), toAccount.getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_AccountNotFound() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final long toAccountId = 100500L;
+
+    // Then
+    thrown.expect(AccountNotFoundException.class);
+    thrown.expectMessage(String.valueOf(toAccountId));
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, fromAccount.getId(), toAccountId);
+  }
+
+  @Test
+  public void transferMoneyOnce_Repeated() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+    accountDao.transferMoneyOnce(new BigDecimal("0.5"), fromAccount.getId(), toAccount.getId(),
+        "key-repeated");
+
+    // When
+    accountDao.transferMoneyOnce(new BigDecimal("0.50"), fromAccount.getId(), toAccount.getId(),
+        "key-repeated");
+
+    // Then
+    assertEquals(new BigDecimal("9.50"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("1.50"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyOnce_KeyReused() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+    accountDao.transferMoneyOnce(BigDecimal.ONE, fromAccount.getId(), toAccount.getId(),
+        "key-reused");
+
+    // Then
+    thrown.expect(IdempotencyKeyReusedException.class);
+    thrown.expectMessage("Idempotency key key-reused is used by another transfer (1:"
+        + toAccount.getId() + ":" + fromAccount.getId() + " vs 1:" + fromAccount.getId() + ":"
+        + toAccount.getId() + ")");
+
+    // When
+    accountDao.transferMoneyOnce(BigDecimal.ONE, toAccount.getId(), fromAccount.getId(),
+        "key-reused");
+  }
+
+  @Test
+  public void migrateDecimalBalances_OK() throws Exception {
+    // Given
+    final AccountDao decimalAccountDao = new AccountDaoImpl(jedisPool);
+    final Long accountId1 = decimalAccountDao.create(new Account(new BigDecimal("0.5"))).getId();
+    final Long accountId2 = decimalAccountDao.create(new Account(new BigDecimal("-12.345")))
+        .getId();
+    final Long accountId3 = decimalAccountDao
+        .create(new Account(new BigDecimal("12345678901234567.89"))).getId();
+
+    // When
+    accountDao.migrateDecimalBalances();
+
+    // Then
+    assertEquals(new BigDecimal("0.50"), accountDao.findById(accountId1).getBalance());
+    assertEquals(new BigDecimal("-12.345"), accountDao.findById(accountId2).getBalance());
+    assertEquals(0, accountDao.migrateDecimalBalances());
+    thrown.expect(AccountNotFoundException.class);
+    accountDao.findById(accountId3);
+  }
+}
@@ -0,0 +1,287 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class AccountDaoOffHeapImplTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private AccountDaoOffHeapImpl accountDao;
+
+  @Before
+  public void setUp() {
+    accountDao = new AccountDaoOffHeapImpl();
+  }
+
+  @Test
+  public void createFindById_OK() throws AccountNotFoundException {
+    createFindByIdFixture("100500.1", "100500.10");
+    createFindByIdFixture("10", "10.00");
+    createFindByIdFixture("-0.5", "-0.50");
+    createFindByIdFixture("92233720368547758.07", "92233720368547758.07");
+  }
+
+  private void createFindByIdFixture(String balance, String expectedBalance)
+      throws AccountNotFoundException {
+    // When
+    final Account savedAccount = accountDao.create(new Account(new BigDecimal(balance)));
+    final Account foundAccount = accountDao.findById(savedAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal(expectedBalance), foundAccount.getBalance());
+  }
+
+  @Test
+  public void transferMoneyOnce_NotDecorated() {
+    // Then
+    thrown.expect(UnsupportedOperationException.class);
+    thrown.expectMessage("AccountDaoOffHeapImpl is expected to be decorated by "
+        + "LocalIdempotentAccountDao");
+
+    // When
+    accountDao.transferMoneyOnce(BigDecimal.ONE, 1L, 2L, "key-not-decorated");
+  }
+
+  @Test
+  public void create_TooBigScale() {
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Balance doesn't fit into minor units: 100500.105");
+
+    // When
+    accountDao.create(new Account(new BigDecimal("100500.105")));
+  }
+
+  @Test
+  public void create_TooBigBalance() {
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Balance doesn't fit into minor units: 92233720368547758.08");
+
+    // When
+    accountDao.create(new Account(new BigDecimal("92233720368547758.08")));
+  }
+
+  @Test
+  public void createInBulk_TooBigScale() throws Exception {
+    // Given
+    final List<Account> accounts = asList(new Account(BigDecimal.ONE),
+        new Account(new BigDecimal("0.001")));
+
+    try {
+      // When
+      accountDao.createInBulk(accounts);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Then
+      assertEquals("Balance doesn't fit into minor units: 0.001", e.getMessage());
+      assertEquals(Long.valueOf(1), accountDao.create(new Account(BigDecimal.TEN)).getId());
+    }
+  }
+
+  @Test(/* Then */ expected = AccountNotFoundException.class)
+  public void findById_NotFound() throws AccountNotFoundException {
+    // When
+    accountDao.findById(100500L);
+  }
+
+  @Test(/* Then */ expected = AccountNotFoundException.class)
+  public void findById_NotPositiveId() throws AccountNotFoundException {
+    // When
+    accountDao.findById(0L);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_OK() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("0.5")));
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.1"), fromAccount.getId(),
+        toAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal("9.90"), accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal("0.60"), accountDao.findById(toAccount.getId()).getBalance());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_Overflow() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal("92233720368547758.00")));
+
+    try {
+      // When
+      accountDao.transferMoneyTransactionally(BigDecimal.TEN, fromAccount.getId(),
+          toAccount.getId());
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Then
+      assertEquals(new BigDecimal("10.00"), accountDao.findById(fromAccount.getId()).getBalance());
+      assertEquals(new BigDecimal("92233720368547758.00"),
+          accountDao.findById(toAccount.getId()).getBalance());
+    }
+  }
+
+  @Test
+  public void transferMoneyTransactionally_SumScaleTooBig() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.TEN));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.ONE));
+
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Illegal sum: 0.001 (from: " + fromAccount.getId() + ", to: " + toAccount
+        .getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.001"), fromAccount.getId(),
+        toAccount.getId());
+  }
+
+  @Test
+  public void create_ExactUnits() throws AccountNotFoundException {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    for (int i = 0; i < 100_000; i++) {
+      // Given
+      final BigDecimal balance = BigDecimal
+          .valueOf(random.nextLong(-999_999_999_999_999L, 1_000_000_000_000_000L),
+              random.nextInt(AccountDaoOffHeapImpl.SCALE + 1));
+
+      // When
+      final Account foundAccount = accountDao.findById(accountDao.create(new Account(balance))
+          .getId());
+
+      // Then
+      assertEquals(balance.setScale(AccountDaoOffHeapImpl.SCALE), foundAccount.getBalance());
+    }
+  }
+
+  @Test
+  public void transferMoneyTransactionally_NoAllocations() throws Exception {
+    // Given
+    final ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final Long fromAccountId = accountDao.create(new Account(BigDecimal.valueOf(100_000))).getId();
+    final Long toAccountId = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final BigDecimal sum = new BigDecimal("2.50");
+    threadMXBean.getThreadAllocatedBytes(threadId);
+
+    // When
+    final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+
+    for (int i = 0; i < 10_000; i++) {
+      accountDao.transferMoneyTransactionally(sum, fromAccountId, toAccountId);
+    }
+
+    final long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    // Then
+    // The units of the sum would be at least 2 objects per transfer
+    assertTrue(Long.toString(allocatedBytes), allocatedBytes < 10_000);
+    assertEquals(new BigDecimal("25000.00"), accountDao.findById(toAccountId).getBalance());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_NotEnoughMoney() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final Account toAccount = accountDao.create(new Account(BigDecimal.TEN));
+
+    // Then
+    thrown.expect(NotEnoughMoneyException.class);
+    thrown.expectMessage(
+        "Not enough money: (1.00 - 10.00) = -9.00 (from: " + fromAccount.getId() + ", to: "
+            + toAccount.getId() + ")");
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.TEN, fromAccount.getId(), toAccount.getId());
+  }
+
+  @Test
+  public void transferMoneyTransactionally_AccountNotFound() throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(BigDecimal.ONE));
+    final long toAccountId = 100500L;
+
+    // Then
+    thrown.expect(AccountNotFoundException.class);
+    thrown.expectMessage(String.valueOf(toAccountId));
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, fromAccount.getId(), toAccountId);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_ConcurrentTransfersKeepTotal() throws Exception {
+    // Given
+    final int accountsNum = 10;
+    final int threadsNum = 8;
+    final List<Long> accountIds = range(0, accountsNum)
+        .mapToObj(value -> accountDao.create(new Account(BigDecimal.TEN)).getId())
+        .collect(toList());
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadsNum);
+
+    try {
+      // When
+      final List<Future<?>> results = range(0, threadsNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            for (int i = 0; i < 1000; i++) {
+              final int fromIndex = random.nextInt(accountsNum);
+              final int toIndex = (fromIndex + 1 + random.nextInt(accountsNum - 1)) % accountsNum;
+              final long from = accountIds.get(fromIndex);
+              final long to = accountIds.get(toIndex);
+
+              try {
+                accountDao.transferUnits(random.nextInt(300), from, to);
+              } catch (NotEnoughMoneyException e) {
+                // It's expected
+              }
+            }
+
+            return null;
+          }))
+          .collect(toList());
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      BigDecimal total = BigDecimal.ZERO;
+
+      for (Long accountId : accountIds) {
+        total = total.add(accountDao.findById(accountId).getBalance());
+      }
+
+      assertEquals(0, BigDecimal.TEN.multiply(BigDecimal.valueOf(accountsNum)).compareTo(total));
+    } finally {
+      executorService.shutdown();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+public class AccountDaoPartitionedImplIntegrationTest extends AccountDaoImplIntegrationTest {
+
+  private static final int PARTITIONS_NUM = 4;
+
+  private final List<AccountDaoPartitionedImpl> partitionedDaos = new ArrayList<>();
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    final AccountDaoPartitionedImpl partitionedDao = new AccountDaoPartitionedImpl(PARTITIONS_NUM);
+    partitionedDaos.add(partitionedDao);
+
+    // The idempotency keys are recorded by the decorator like in the app
+    return new LocalIdempotentAccountDao(partitionedDao, TimeUnit.MINUTES.toNanos(1));
+  }
+
+  @After
+  public void closePartitionedDaos() {
+    partitionedDaos.forEach(AccountDaoPartitionedImpl::close);
+  }
+
+  @Test
+  public void close_ThreadsStopped() {
+    // Given
+    final AccountDaoPartitionedImpl partitionedDao = new AccountDaoPartitionedImpl(PARTITIONS_NUM);
+    final long threadsNum = countPartitionThreads();
+
+    // When
+    partitionedDao.close();
+
+    // Then
+    assertEquals(threadsNum - PARTITIONS_NUM, countPartitionThreads());
+  }
+
+  @Test
+  public void close_TransfersInFlightCompleted() throws Exception {
+    // Given
+    final AccountDaoPartitionedImpl partitionedDao = new AccountDaoPartitionedImpl(PARTITIONS_NUM);
+    final AtomicInteger journaledTransfersNum = new AtomicInteger();
+    partitionedDao.setJournal(new AccountJournal() {
+      @Override
+      public void created(long id, BigDecimal balance) {
+      }
+
+      @Override
+      public void transferred(BigDecimal sum, long fromAccountId, long toAccountId) {
+        journaledTransfersNum.incrementAndGet();
+      }
+    });
+
+    final List<Long> accountIds = new ArrayList<>();
+
+    for (int i = 0; i < PARTITIONS_NUM * 2; i++) {
+      accountIds.add(partitionedDao.create(new Account(BigDecimal.valueOf(1000))).getId());
+    }
+
+    final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+
+    for (int i = 0; i < 10_000; i++) {
+      transfers.add(partitionedDao.transferMoneyAsync(BigDecimal.ONE,
+          accountIds.get(i % accountIds.size()), accountIds.get((i + 1) % accountIds.size())));
+    }
+
+    // When
+    partitionedDao.close();
+
+    // Then
+    int doneTransfersNum = 0;
+
+    for (CompletableFuture<Void> transfer : transfers) {
+      try {
+        transfer.get(10, TimeUnit.SECONDS);
+        doneTransfersNum++;
+      } catch (ExecutionException e) {
+        // Not enough money
+      }
+    }
+
+    assertEquals(journaledTransfersNum.get(), doneTransfersNum);
+  }
+
+  @Test
+  public void close_LaterCallsRejected() throws Exception {
+    // Given
+    final AccountDaoPartitionedImpl partitionedDao = new AccountDaoPartitionedImpl(PARTITIONS_NUM);
+    final Long fromAccountId = partitionedDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long toAccountId = partitionedDao.create(new Account(BigDecimal.TEN)).getId();
+
+    // When
+    partitionedDao.close();
+
+    // Then
+    try {
+      partitionedDao.transferMoneyAsync(BigDecimal.ONE, fromAccountId, toAccountId)
+          .get(10, TimeUnit.SECONDS);
+      fail("Rejection expected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    thrown.expect(IllegalStateException.class);
+    partitionedDao.findById(fromAccountId);
+  }
+
+  private static long countPartitionThreads() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.isAlive() && thread.getName().startsWith("account-partition-"))
+        .count();
+  }
+}
@@ -0,0 +1,42 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+public class AccountDaoScriptImplIntegrationTest extends AccountDaoImplIntegrationTest {
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    return new AccountDaoScriptImpl(jedisPool);
+  }
+
+  @Test
+  public void transferMoneyTransactionally_DecimalArithmetic() throws Exception {
+    transferFixture("1", "0.005", "99.99", "0.995", "99.995");
+    transferFixture("0.10", "0.1", "0", "0.00", "0.1");
+    transferFixture("12345678901234567890.5", "0.5", "987654321987654321.75",
+        "12345678901234567890.0", "987654321987654322.25");
+    transferFixture("5", "5", "0.01", "0", "5.01");
+  }
+
+  private void transferFixture(String fromBalance, String sum, String toBalance,
+      String expectedFromBalance, String expectedToBalance) throws Exception {
+    // Given
+    final Account fromAccount = accountDao.create(new Account(new BigDecimal(fromBalance)));
+    final Account toAccount = accountDao.create(new Account(new BigDecimal(toBalance)));
+
+    // When
+    accountDao
+        .transferMoneyTransactionally(new BigDecimal(sum), fromAccount.getId(), toAccount.getId());
+
+    // Then
+    assertEquals(new BigDecimal(expectedFromBalance),
+        accountDao.findById(fromAccount.getId()).getBalance());
+    assertEquals(new BigDecimal(expectedToBalance),
+        accountDao.findById(toAccount.getId()).getBalance());
+  }
+}
@@ -0,0 +1,74 @@
+package com.revolut.interview.backend.dao;
+
+import com.revolut.interview.backend.model.Account;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+/**
+ * Compares the memory taken by N accounts in {@link AccountDaoInMemoryImpl} (a map of objects) and
+ * in {@link AccountDaoOffHeapImpl}. The numbers of accounts can be changed by the
+ * footprint.accounts system property, e.g. -Dfootprint.accounts=1000000,3000000
+ * NOTE it's excluded from the regular build, run it with -PenableLoadTest
+ */
+public class AccountStoreFootprintBenchmark {
+
+  private static final String ACCOUNTS_NUMS = System
+      .getProperty("footprint.accounts", "1000000,3000000,10000000");
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+
+  private static long toMb(long bytes) {
+    return bytes / (1024 * 1024);
+  }
+
+  @Test
+  public void footprint() {
+    final long[] accountsNums = Arrays.stream(ACCOUNTS_NUMS.split(","))
+        .mapToLong(Long::parseLong).toArray();
+
+    for (long accountsNum : accountsNums) {
+      report("Map of objects", accountsNum, AccountDaoInMemoryImpl::new, accountDao -> 0);
+      report("Off-heap longs", accountsNum, AccountDaoOffHeapImpl::new,
+          accountDao -> ((AccountDaoOffHeapImpl) accountDao).getOffHeapBytes());
+    }
+  }
+
+  private void report(String name, long accountsNum, Supplier<AccountDao> accountDaoFactory,
+      OffHeapBytes offHeapBytes) {
+    final long heapBefore = usedHeap();
+
+    try {
+      final AccountDao accountDao = accountDaoFactory.get();
+
+      for (long i = 0; i < accountsNum; i++) {
+        accountDao.create(new Account(BigDecimal.valueOf(i, AccountDaoOffHeapImpl.SCALE)));
+      }
+
+      // NOTE the heap taken by the off-heap store is within the measurement error
+      final long heap = Math.max(usedHeap() - heapBefore, 0);
+      final long offHeap = offHeapBytes.get(accountDao);
+      System.out.printf("%s: %,d accounts take %d MB of heap + %d MB off-heap (%d bytes each)%n",
+          name, accountsNum, toMb(heap), toMb(offHeap), (heap + offHeap) / accountsNum);
+    } catch (OutOfMemoryError e) {
+      System.out.printf("%s: %,d accounts don't fit into the heap of %d MB%n", name, accountsNum,
+          toMb(Runtime.getRuntime().maxMemory()));
+    }
+  }
+
+  @FunctionalInterface
+  private interface OffHeapBytes {
+
+    long get(AccountDao accountDao);
+  }
+}
@@ -0,0 +1,122 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+import redis.embedded.RedisServer;
+
+public class CachedAccountDaoIntegrationTest {
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  private AccountDao otherNodeAccountDao;
+  private CachedAccountDao accountDao;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Before
+  public void setUp() {
+    otherNodeAccountDao = new AccountDaoImpl(jedisPool);
+    accountDao = new CachedAccountDao(new AccountDaoImpl(jedisPool), Protocol.DEFAULT_HOST,
+        Protocol.DEFAULT_PORT, new Metrics());
+  }
+
+  @After
+  public void tearDown() {
+    accountDao.close();
+  }
+
+  @Test
+  public void findById_InvalidatedByTransfer() throws Exception {
+    // Given
+    final Long fromAccountId = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long toAccountId = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    accountDao.findById(fromAccountId);
+    accountDao.findById(toAccountId);
+
+    // When
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, fromAccountId, toAccountId);
+
+    // Then
+    assertEquals(0, BigDecimal.valueOf(9).compareTo(accountDao.findById(fromAccountId)
+        .getBalance()));
+    assertEquals(0, BigDecimal.valueOf(2).compareTo(accountDao.findById(toAccountId)
+        .getBalance()));
+  }
+
+  @Test(timeout = 10000)
+  public void findById_InvalidatedByOtherNode() throws Exception {
+    // Given
+    final Long fromAccountId = otherNodeAccountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long toAccountId = otherNodeAccountDao.create(new Account(BigDecimal.ONE)).getId();
+    assertEquals(0, BigDecimal.TEN.compareTo(accountDao.findById(fromAccountId).getBalance()));
+
+    // When
+    otherNodeAccountDao.transferMoneyTransactionally(BigDecimal.ONE, fromAccountId, toAccountId);
+
+    // Then
+    while (BigDecimal.valueOf(9).compareTo(accountDao.findById(fromAccountId).getBalance()) != 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void findById_InvalidatedByOtherNodeBucketed() throws Exception {
+    // Given
+    final int bucketSize = 512;
+    final AccountDao otherNodeBucketedAccountDao = new AccountDaoImpl(jedisPool, bucketSize);
+    System.setProperty(AccountDaoImpl.PROPERTY_BUCKET_SIZE, Integer.toString(bucketSize));
+    final CachedAccountDao bucketedAccountDao;
+
+    try {
+      bucketedAccountDao = new CachedAccountDao(new AccountDaoImpl(jedisPool, bucketSize),
+          Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT, new Metrics());
+    } finally {
+      System.clearProperty(AccountDaoImpl.PROPERTY_BUCKET_SIZE);
+    }
+
+    try {
+      final Long fromAccountId = otherNodeBucketedAccountDao.create(new Account(BigDecimal.TEN))
+          .getId();
+      final Long toAccountId = otherNodeBucketedAccountDao.create(new Account(BigDecimal.ONE))
+          .getId();
+      assertEquals(0, BigDecimal.TEN.compareTo(bucketedAccountDao.findById(fromAccountId)
+          .getBalance()));
+
+      // When
+      otherNodeBucketedAccountDao
+          .transferMoneyTransactionally(BigDecimal.ONE, fromAccountId, toAccountId);
+
+      // Then
+      while (BigDecimal.valueOf(9)
+          .compareTo(bucketedAccountDao.findById(fromAccountId).getBalance()) != 0) {
+        Thread.sleep(10);
+      }
+    } finally {
+      bucketedAccountDao.close();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+public class CoalescingAccountDaoIntegrationTest extends AccountDaoScriptImplIntegrationTest {
+
+  private static final long WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+  private static final int MAX_BATCH_SIZE = 256;
+
+  private JedisPool jedisPool;
+  private CoalescingAccountDao coalescingAccountDao;
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+    coalescingAccountDao = new CoalescingAccountDao(new AccountDaoScriptImpl(jedisPool),
+        WINDOW_NANOS, MAX_BATCH_SIZE);
+
+    return coalescingAccountDao;
+  }
+
+  @After
+  public void tearDown() {
+    coalescingAccountDao.close();
+  }
+
+  @Test
+  public void transferMoneyAsync_Coalesced() throws Exception {
+    // Given
+    final Metrics metrics = new Metrics();
+    // A long window, so the transfers are in one batch
+    final CoalescingAccountDao accountDao = new CoalescingAccountDao(
+        new AccountDaoScriptImpl(jedisPool), TimeUnit.SECONDS.toNanos(1), 3);
+    accountDao.setMetrics(metrics);
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final long ledgerLength;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      ledgerLength = jedis.xlen(TransferLedger.KEY_LEDGER);
+    }
+
+    try {
+      // When
+      final CompletableFuture<Void> transfer1 = accountDao
+          .transferMoneyAsync(BigDecimal.valueOf(6), accountId1, accountId2);
+      final CompletableFuture<Void> transfer2 = accountDao
+          .transferMoneyAsync(BigDecimal.valueOf(6), accountId1, accountId2);
+      final CompletableFuture<Void> transfer3 = accountDao
+          .transferMoneyAsync(BigDecimal.ONE, accountId2, accountId1);
+
+      // Then
+      assertNull(transfer1.join());
+      assertTrue(transfer2.handle((ignored, e) -> e).join() instanceof NotEnoughMoneyException);
+      assertNull(transfer3.join());
+      assertEquals(0,
+          BigDecimal.valueOf(5).compareTo(accountDao.findById(accountId1).getBalance()));
+      assertEquals(0,
+          BigDecimal.valueOf(5).compareTo(accountDao.findById(accountId2).getBalance()));
+      assertEquals(1, metrics.counter("account_coalescing_batches_total", "", "").get());
+      assertEquals(3, metrics.counter("account_coalescing_transfers_total", "", "").get());
+
+      try (Jedis jedis = jedisPool.getResource()) {
+        assertEquals(ledgerLength + 2, jedis.xlen(TransferLedger.KEY_LEDGER).longValue());
+      }
+    } finally {
+      accountDao.close();
+    }
+  }
+
+  @Test
+  public void transferMoneyAsync_Closed() throws Exception {
+    // Given
+    final CoalescingAccountDao accountDao = new CoalescingAccountDao(
+        new AccountDaoScriptImpl(jedisPool), WINDOW_NANOS, MAX_BATCH_SIZE);
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+
+    // When
+    accountDao.close();
+
+    // Then
+    thrown.expect(IllegalStateException.class);
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+  }
+}
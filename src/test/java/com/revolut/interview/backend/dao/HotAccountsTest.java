@@ -0,0 +1,61 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HotAccountsTest {
+
+  @After
+  public void tearDown() {
+    System.clearProperty(HotAccounts.PROPERTY_IDS);
+    System.clearProperty(HotAccounts.PROPERTY_SLOTS);
+  }
+
+  @Test
+  public void fromProperties_OK() {
+    // Given
+    System.setProperty(HotAccounts.PROPERTY_IDS, "5, 7");
+    System.setProperty(HotAccounts.PROPERTY_SLOTS, "2");
+
+    // When
+    final HotAccounts hotAccounts = HotAccounts.fromProperties();
+
+    // Then
+    assertTrue(hotAccounts.isHot(5L));
+    assertTrue(hotAccounts.isHot(7L));
+    assertFalse(hotAccounts.isHot(6L));
+    assertFalse(hotAccounts.isHot(null));
+    assertArrayEquals(new String[]{"author:5:0", "author:5:1"}, hotAccounts.makeSlotKeys(5L));
+  }
+
+  @Test
+  public void fromProperties_NoIds() {
+    // When
+    final HotAccounts hotAccounts = HotAccounts.fromProperties();
+
+    // Then
+    assertFalse(hotAccounts.isHot(1L));
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void new_NoSlots() {
+    // When
+    new HotAccounts(id -> true, 0);
+  }
+
+  @Test
+  public void parseSlotKey_OK() {
+    // When & Then
+    assertEquals(Long.valueOf(42), HotAccounts.parseSlotKey("author:42:3"));
+    assertNull(HotAccounts.parseSlotKey("author:42"));
+    assertNull(HotAccounts.parseSlotKey("author::3"));
+    assertNull(HotAccounts.parseSlotKey("author:x:3"));
+    assertNull(HotAccounts.parseSlotKey("acct:{42}"));
+  }
+}
@@ -0,0 +1,123 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+public class IdBlockAllocatorIntegrationTest {
+
+  private static final String COUNTER_KEY = "test_ids";
+  private static final String COUNTER_FIELD = "test";
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Test
+  public void nextId_BlockOfIds() {
+    // Given
+    final IdBlockAllocator allocator = new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD,
+        10);
+    final long firstId = allocator.nextId();
+
+    // When
+    final List<Long> result = range(0, 9).mapToObj(value -> allocator.nextId()).collect(toList());
+
+    // Then
+    assertEquals(range(1, 10).mapToObj(value -> firstId + value).collect(toList()), result);
+  }
+
+  @Test
+  public void nextId_Restart() {
+    // Given
+    final IdBlockAllocator allocator = new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD,
+        10);
+    final long oldId = allocator.nextId();
+
+    // When
+    final long result = new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD, 10).nextId();
+
+    // Then
+    assertTrue(result > oldId + 9);
+  }
+
+  @Test
+  public void nextIds_SeparateBlock() {
+    // Given
+    final IdBlockAllocator allocator = new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD,
+        10);
+    final long id = allocator.nextId();
+
+    // When
+    final long result = allocator.nextIds(25);
+
+    // Then
+    assertTrue(result > id + 9);
+    assertEquals(id + 1, allocator.nextId());
+    assertTrue(new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD, 10).nextId()
+        > result + 24);
+  }
+
+  @Test
+  public void nextId_ConcurrentNodes() throws Exception {
+    // Given
+    final int nodesNum = 4;
+    final int threadsPerNodeNum = 4;
+    final int idsPerThreadNum = 10_000;
+    final List<IdBlockAllocator> allocators = range(0, nodesNum)
+        .mapToObj(value -> new IdBlockAllocator(jedisPool, COUNTER_KEY, COUNTER_FIELD, 100))
+        .collect(toList());
+    final Set<Long> ids = ConcurrentHashMap.newKeySet();
+    final ExecutorService executorService = Executors
+        .newFixedThreadPool(nodesNum * threadsPerNodeNum);
+
+    try {
+      // When
+      final List<Future<?>> results = range(0, nodesNum * threadsPerNodeNum)
+          .mapToObj(value -> executorService.submit(() -> {
+            final IdBlockAllocator allocator = allocators.get(value % nodesNum);
+
+            for (int i = 0; i < idsPerThreadNum; i++) {
+              ids.add(allocator.nextId());
+            }
+          }))
+          .collect(toList());
+
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      // Then
+      assertEquals(nodesNum * threadsPerNodeNum * idsPerThreadNum, ids.size());
+    } finally {
+      executorService.shutdown();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class IdempotencyKeysTest {
+
+  @Test
+  public void makeFingerprint_SameForEqualSums() {
+    // When
+    final String fingerprint1 = IdempotencyKeys.makeFingerprint(new BigDecimal("10.50"), 1L, 2L);
+    final String fingerprint2 = IdempotencyKeys.makeFingerprint(new BigDecimal("10.5"), 1L, 2L);
+    final String fingerprint3 = IdempotencyKeys.makeFingerprint(new BigDecimal("1.00"), 1L, 2L);
+
+    // Then
+    assertEquals("105e-1:1:2", fingerprint1);
+    assertEquals(fingerprint1, fingerprint2);
+    assertEquals("1:1:2", fingerprint3);
+  }
+
+  @Test
+  public void makeFingerprint_HugeExponent() {
+    // When
+    final String fingerprint = IdempotencyKeys
+        .makeFingerprint(new BigDecimal("1E+999999999"), 1L, 2L);
+
+    // Then
+    assertEquals("1e999999999:1:2", fingerprint);
+  }
+}
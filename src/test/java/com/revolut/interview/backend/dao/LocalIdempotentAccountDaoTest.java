@@ -0,0 +1,88 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalIdempotentAccountDaoTest {
+
+  private AccountDao accountDaoMock;
+
+  @Before
+  public void setUp() {
+    accountDaoMock = mock(AccountDao.class);
+  }
+
+  @Test
+  public void transferMoneyOnceAsync_RepeatedWhileInFlight() throws Exception {
+    // Given
+    final LocalIdempotentAccountDao accountDao = new LocalIdempotentAccountDao(accountDaoMock,
+        TimeUnit.MINUTES.toNanos(1));
+    final CompletableFuture<Void> transfer = new CompletableFuture<>();
+    when(accountDaoMock.transferMoneyAsync(any(), any(), any())).thenReturn(transfer);
+    final CompletableFuture<Void> first = accountDao
+        .transferMoneyOnceAsync(BigDecimal.ONE, 1L, 2L, "key");
+
+    // When
+    final CompletableFuture<Void> repeated = accountDao
+        .transferMoneyOnceAsync(BigDecimal.ONE, 1L, 2L, "key");
+    transfer.complete(null);
+
+    // Then
+    first.get(1, TimeUnit.SECONDS);
+    repeated.get(1, TimeUnit.SECONDS);
+    verify(accountDaoMock).transferMoneyAsync(BigDecimal.ONE, 1L, 2L);
+  }
+
+  @Test
+  public void transferMoneyOnceAsync_FailedNotRecorded() throws Exception {
+    // Given
+    final LocalIdempotentAccountDao accountDao = new LocalIdempotentAccountDao(accountDaoMock,
+        TimeUnit.MINUTES.toNanos(1));
+    when(accountDaoMock.transferMoneyAsync(any(), any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(new NotEnoughMoneyException("1")))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    try {
+      accountDao.transferMoneyOnceAsync(BigDecimal.ONE, 1L, 2L, "key").get(1, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof NotEnoughMoneyException);
+    }
+
+    // When
+    accountDao.transferMoneyOnceAsync(BigDecimal.ONE, 1L, 2L, "key").get(1, TimeUnit.SECONDS);
+
+    // Then
+    verify(accountDaoMock, times(2)).transferMoneyAsync(BigDecimal.ONE, 1L, 2L);
+    assertEquals(1, accountDao.size());
+  }
+
+  @Test
+  public void transferMoneyOnceAsync_Expired() throws Exception {
+    // Given
+    final LocalIdempotentAccountDao accountDao = new LocalIdempotentAccountDao(accountDaoMock, 0);
+    when(accountDaoMock.transferMoneyAsync(any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    accountDao.transferMoneyOnceAsync(BigDecimal.ONE, 1L, 2L, "key").get(1, TimeUnit.SECONDS);
+
+    // When
+    accountDao.transferMoneyOnceAsync(BigDecimal.TEN, 1L, 2L, "key").get(1, TimeUnit.SECONDS);
+
+    // Then
+    verify(accountDaoMock).transferMoneyAsync(BigDecimal.TEN, 1L, 2L);
+    assertEquals(1, accountDao.size());
+  }
+}
@@ -0,0 +1,142 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.revolut.interview.backend.dao.NearCache.Stats;
+import com.revolut.interview.backend.metrics.Counter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NearCacheTest {
+
+  private Stats stats;
+  private AtomicInteger loadsNum;
+
+  @Before
+  public void setUp() {
+    stats = new Stats(new Counter(), new Counter(), new Counter(), new Counter(), new Counter());
+    loadsNum = new AtomicInteger();
+  }
+
+  private String load(Integer key) {
+    loadsNum.incrementAndGet();
+
+    return "value" + key;
+  }
+
+  @Test
+  public void get_Hit() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1),
+        stats);
+    cache.get(1, this::load);
+
+    // When
+    final String result = cache.get(1, this::load);
+
+    // Then
+    assertEquals("value1", result);
+    assertEquals(1, loadsNum.get());
+    assertEquals(1, stats.hits.get());
+    assertEquals(1, stats.misses.get());
+  }
+
+  @Test
+  public void get_Expired() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, 0, stats);
+    cache.get(1, this::load);
+
+    // When
+    cache.get(1, this::load);
+
+    // Then
+    assertEquals(2, loadsNum.get());
+    assertEquals(1, stats.expirations.get());
+  }
+
+  @Test
+  public void get_Evicted() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(16, TimeUnit.MINUTES.toNanos(1),
+        stats);
+
+    // When
+    for (int i = 0; i < 1000; i++) {
+      cache.get(i, this::load);
+    }
+
+    // Then
+    assertEquals(16, cache.size());
+    assertEquals(1000 - 16, stats.evictions.get());
+  }
+
+  @Test
+  public void get_InvalidatedWhileLoading() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1),
+        stats);
+
+    // When
+    cache.get(1, key -> {
+      cache.invalidate(key);
+
+      return load(key);
+    });
+    cache.get(1, this::load);
+
+    // Then
+    assertEquals(2, loadsNum.get());
+  }
+
+  @Test
+  public void invalidate_OK() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1),
+        stats);
+    cache.get(1, this::load);
+
+    // When
+    cache.invalidate(1);
+    cache.invalidate(2);
+
+    // Then
+    assertEquals(0, cache.size());
+    assertEquals(1, stats.invalidations.get());
+  }
+
+  @Test
+  public void getIfPresent_Put() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1),
+        stats);
+
+    // When
+    final String missing = cache.getIfPresent(1);
+    cache.put(1, "value1");
+    final String present = cache.getIfPresent(1);
+
+    // Then
+    assertNull(missing);
+    assertEquals("value1", present);
+    assertEquals(1, stats.hits.get());
+    assertEquals(1, stats.misses.get());
+  }
+
+  @Test
+  public void getIfPresent_Expired() {
+    // Given
+    final NearCache<Integer, String> cache = new NearCache<>(100, 0, stats);
+    cache.put(1, "value1");
+
+    // When
+    final String result = cache.getIfPresent(1);
+
+    // Then
+    assertNull(result);
+    assertEquals(1, stats.expirations.get());
+  }
+}
@@ -0,0 +1,37 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OffHeapLongArrayTest {
+
+  @Test
+  public void get_NotAllocated() {
+    // Given
+    final OffHeapLongArray array = new OffHeapLongArray(-1);
+
+    // When
+    final long result = array.get(100500);
+
+    // Then
+    assertEquals(-1, result);
+    assertEquals(0, array.getAllocatedBytes());
+  }
+
+  @Test
+  public void set_SecondSegment() {
+    // Given
+    final OffHeapLongArray array = new OffHeapLongArray(-1);
+    final long index = (1 << 20) + 1;
+
+    // When
+    array.set(index, Long.MAX_VALUE);
+
+    // Then
+    assertEquals(Long.MAX_VALUE, array.get(index));
+    assertEquals(-1, array.get(index - 1));
+    assertEquals(-1, array.get(0));
+    assertEquals(2L * (1 << 20) * Long.BYTES, array.getAllocatedBytes());
+  }
+}
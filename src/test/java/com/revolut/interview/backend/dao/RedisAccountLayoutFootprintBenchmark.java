@@ -0,0 +1,104 @@
+package com.revolut.interview.backend.dao;
+
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+/**
+ * Compares the memory taken by N accounts in embedded Redis (used_memory of INFO memory) with a
+ * hash per account and with bucket hashes of {@link AccountDaoImpl}. The numbers of accounts and
+ * the bucket sizes can be changed by the footprint.accounts and footprint.bucketSizes system
+ * properties, e.g. -Dfootprint.accounts=1000000,3000000 -Dfootprint.bucketSizes=0,128,512
+ * NOTE it's excluded from the regular build, run it with -PenableLoadTest
+ */
+public class RedisAccountLayoutFootprintBenchmark {
+
+  private static final String ACCOUNTS_NUMS = System
+      .getProperty("footprint.accounts", "1000000,3000000");
+  private static final String BUCKET_SIZES = System
+      .getProperty("footprint.bucketSizes", "0,512");
+  private static final int CREATE_CHUNK_SIZE = 10_000;
+  private static final String USED_MEMORY = "used_memory:";
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  private static long usedMemory(Jedis jedis) {
+    for (String line : jedis.info("memory").split("\r\n")) {
+      if (line.startsWith(USED_MEMORY)) {
+        return Long.parseLong(line.substring(USED_MEMORY.length()));
+      }
+    }
+
+    throw new IllegalStateException("No " + USED_MEMORY + " in INFO memory");
+  }
+
+  private static long toMb(long bytes) {
+    return bytes / (1024 * 1024);
+  }
+
+  @Test
+  public void footprint() {
+    final long[] accountsNums = Arrays.stream(ACCOUNTS_NUMS.split(","))
+        .mapToLong(Long::parseLong).toArray();
+    final int[] bucketSizes = Arrays.stream(BUCKET_SIZES.split(","))
+        .mapToInt(Integer::parseInt).toArray();
+
+    for (long accountsNum : accountsNums) {
+      for (int bucketSize : bucketSizes) {
+        report(accountsNum, bucketSize);
+      }
+    }
+  }
+
+  private void report(long accountsNum, int bucketSize) {
+    final long memoryBefore;
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.flushAll();
+      memoryBefore = usedMemory(jedis);
+    }
+
+    final AccountDao accountDao = new AccountDaoImpl(jedisPool, bucketSize);
+
+    for (long created = 0; created < accountsNum; created += CREATE_CHUNK_SIZE) {
+      final List<Account> accounts = new ArrayList<>(CREATE_CHUNK_SIZE);
+
+      for (long i = created; i < Math.min(created + CREATE_CHUNK_SIZE, accountsNum); i++) {
+        accounts.add(new Account(BigDecimal.valueOf(i, 2)));
+      }
+
+      accountDao.createInBulk(accounts);
+    }
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      final long memory = usedMemory(jedis) - memoryBefore;
+      System.out.printf("%s: %,d accounts take %d MB of Redis (%d bytes each), %,d keys%n",
+          bucketSize == 0 ? "Hash per account" : "Buckets of " + bucketSize, accountsNum,
+          toMb(memory), memory / accountsNum, jedis.dbSize());
+    }
+  }
+}
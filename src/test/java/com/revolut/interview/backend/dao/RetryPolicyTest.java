@@ -0,0 +1,51 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  @After
+  public void tearDown() {
+    System.clearProperty(RetryPolicy.PROPERTY_MAX_ATTEMPTS);
+  }
+
+  @Test
+  public void canRetry_OK() {
+    // Given
+    final RetryPolicy retryPolicy = new RetryPolicy(3, 0, 0);
+
+    // When & Then
+    assertTrue(retryPolicy.canRetry(1));
+    assertTrue(retryPolicy.canRetry(2));
+    assertFalse(retryPolicy.canRetry(3));
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void new_NoAttempts() {
+    // When
+    new RetryPolicy(0, 0, 0);
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void new_MaxDelayLessThanBase() {
+    // When
+    new RetryPolicy(1, 10, 1);
+  }
+
+  @Test
+  public void fromSystemProperties_OK() {
+    // Given
+    System.setProperty(RetryPolicy.PROPERTY_MAX_ATTEMPTS, "3");
+
+    // When
+    final RetryPolicy result = RetryPolicy.fromSystemProperties();
+
+    // Then
+    assertEquals(3, result.getMaxAttempts());
+  }
+}
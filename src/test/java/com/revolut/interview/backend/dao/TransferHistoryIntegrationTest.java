@@ -0,0 +1,188 @@
+package com.revolut.interview.backend.dao;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.LedgerEntry;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferPage;
+import java.io.IOException;
+import java.math.BigDecimal;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+public class TransferHistoryIntegrationTest {
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  private AccountDao accountDao;
+  private TransferHistory transferHistory;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Before
+  public void setUp() {
+    accountDao = makeAccountDao(jedisPool);
+    transferHistory = new TransferHistory(jedisPool);
+  }
+
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    return new AccountDaoImpl(jedisPool);
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(TransferHistory.PROPERTY_MAX_LENGTH);
+    System.clearProperty(TransferHistory.PROPERTY_MAX_AGE_SECONDS);
+  }
+
+  @Test
+  public void read_Paged() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+    accountDao.transferMoneyTransactionally(BigDecimal.valueOf(2), accountId2, accountId1);
+    accountDao.transferMoneyTransactionally(new BigDecimal("3.50"), accountId1, accountId2);
+
+    // When
+    final TransferPage page1 = transferHistory.read(accountId1, null, 2);
+    final TransferPage page2 = transferHistory.read(accountId1, page1.getNextCursor(), 2);
+
+    // Then
+    assertEquals(2, page1.getTransfers().size());
+    assertEntry(page1.getTransfers().get(0), new BigDecimal("3.50"), accountId1, accountId2);
+    assertEntry(page1.getTransfers().get(1), BigDecimal.valueOf(2), accountId2, accountId1);
+    assertEquals(page1.getTransfers().get(1).getId(), page1.getNextCursor());
+    assertEquals(1, page2.getTransfers().size());
+    assertEntry(page2.getTransfers().get(0), BigDecimal.ONE, accountId1, accountId2);
+    assertNull(page2.getNextCursor());
+    assertEquals(3, transferHistory.read(accountId2, null, 10).getTransfers().size());
+  }
+
+  @Test
+  public void read_FailedNotRecorded() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+
+    try {
+      accountDao.transferMoneyTransactionally(BigDecimal.TEN, accountId1, accountId2);
+    } catch (NotEnoughMoneyException e) {
+      // Expected
+    }
+
+    // When
+    final TransferPage page = transferHistory.read(accountId1, null, 10);
+
+    // Then
+    assertEquals(0, page.getTransfers().size());
+    assertNull(page.getNextCursor());
+  }
+
+  @Test
+  public void read_Batch() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    accountDao.transferMoneyInBatch(asList(
+        new Transfer(BigDecimal.ONE, accountId1, accountId2),
+        new Transfer(BigDecimal.valueOf(100), accountId1, accountId2),
+        new Transfer(BigDecimal.valueOf(2), accountId2, accountId1)));
+
+    // When
+    final TransferPage page = transferHistory.read(accountId1, null, 10);
+
+    // Then
+    assertEquals(2, page.getTransfers().size());
+    assertEntry(page.getTransfers().get(0), BigDecimal.valueOf(2), accountId2, accountId1);
+    assertEntry(page.getTransfers().get(1), BigDecimal.ONE, accountId1, accountId2);
+  }
+
+  @Test
+  public void read_Trimmed() throws Exception {
+    // Given
+    System.setProperty(TransferHistory.PROPERTY_MAX_LENGTH, "2");
+    System.setProperty(TransferHistory.PROPERTY_MAX_AGE_SECONDS, "60");
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+
+    for (int i = 1; i <= 3; i++) {
+      accountDao.transferMoneyTransactionally(BigDecimal.valueOf(i), accountId1, accountId2);
+    }
+
+    // When
+    final TransferPage page = transferHistory.read(accountId1, null, 10);
+
+    // Then
+    assertEquals(2, page.getTransfers().size());
+    assertEntry(page.getTransfers().get(0), BigDecimal.valueOf(3), accountId1, accountId2);
+    assertEntry(page.getTransfers().get(1), BigDecimal.valueOf(2), accountId1, accountId2);
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      final long ttlMillis = jedis.pttl(TransferHistory.makeKey(accountId2));
+      assertTrue(Long.toString(ttlMillis), ttlMillis > 0 && ttlMillis <= 60_000);
+    }
+  }
+
+  @Test
+  public void read_ScriptsFlushed() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.scriptFlush();
+    }
+
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+
+    // When
+    final TransferPage page = transferHistory.read(accountId1, null, 10);
+
+    // Then
+    assertEquals(1, page.getTransfers().size());
+    assertEntry(page.getTransfers().get(0), BigDecimal.ONE, accountId1, accountId2);
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void read_IllegalCursor() {
+    // When
+    transferHistory.read(1L, "1546300800000", 10);
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void read_IllegalLimit() {
+    // When
+    transferHistory.read(1L, null, TransferHistory.MAX_PAGE_SIZE + 1);
+  }
+
+  private static void assertEntry(LedgerEntry entry, BigDecimal sum, Long from, Long to) {
+    assertTrue(entry.getId(), entry.getId().matches("[1-9]\\d*-\\d+"));
+    assertEquals(0, sum.compareTo(entry.getSum()));
+    assertEquals(from, entry.getFrom());
+    assertEquals(to, entry.getTo());
+  }
+}
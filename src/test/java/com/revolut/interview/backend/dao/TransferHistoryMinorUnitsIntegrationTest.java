@@ -0,0 +1,11 @@
+package com.revolut.interview.backend.dao;
+
+import redis.clients.jedis.JedisPool;
+
+public class TransferHistoryMinorUnitsIntegrationTest extends TransferHistoryIntegrationTest {
+
+  @Override
+  AccountDao makeAccountDao(JedisPool jedisPool) {
+    return new AccountDaoMinorUnitsImpl(jedisPool);
+  }
+}
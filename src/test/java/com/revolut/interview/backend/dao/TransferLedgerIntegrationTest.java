@@ -0,0 +1,144 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.revolut.interview.backend.model.Account;
+import com.revolut.interview.backend.model.LedgerEntry;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+import redis.embedded.RedisServer;
+
+public class TransferLedgerIntegrationTest {
+
+  private static RedisServer redisServer;
+  private static JedisPool jedisPool;
+
+  private AccountDao accountDao;
+  private TransferLedger ledger;
+  private ExecutorService executor;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    redisServer = new RedisServer();
+    redisServer.start();
+    jedisPool = new JedisPool(new JedisPoolConfig());
+  }
+
+  @AfterClass
+  public static void tearDownOnce() throws IOException {
+    jedisPool.destroy();
+    redisServer.stop();
+  }
+
+  @Before
+  public void setUp() {
+    accountDao = new AccountDaoScriptImpl(jedisPool);
+    ledger = new TransferLedger(Protocol.DEFAULT_HOST, Protocol.DEFAULT_PORT);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    ledger.close();
+    executor.shutdownNow();
+  }
+
+  @Test(timeout = 10000)
+  public void read_FollowNewEntries() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+    final BlockingQueue<LedgerEntry> entries = new LinkedBlockingQueue<>();
+    final Future<?> follower = executor.submit(() -> {
+      ledger.read("$", true, entries::addAll);
+
+      return null;
+    });
+
+    // When
+    // NOTE "$" means the entries appended after XREAD is called, the follower might be late
+    do {
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+    } while (entries.poll(100, TimeUnit.MILLISECONDS) == null);
+
+    accountDao.transferMoneyTransactionally(new BigDecimal("0.5"), accountId2, accountId1);
+
+    // Then
+    LedgerEntry entry;
+
+    // The transfers of the loop might be read after the first one
+    do {
+      entry = entries.take();
+    } while (entry.getFrom().equals(accountId1));
+
+    assertEquals(accountId2, entry.getFrom());
+    assertEquals(accountId1, entry.getTo());
+    assertEquals(new BigDecimal("0.5"), entry.getSum());
+
+    ledger.close();
+    follower.get();
+  }
+
+  @Test
+  public void read_FromId() throws Exception {
+    // Given
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+
+    for (int i = 1; i <= TransferLedger.READ_BATCH_SIZE + 1; i++) {
+      accountDao.transferMoneyTransactionally(new BigDecimal("0.001"), accountId1, accountId2);
+    }
+
+    final List<LedgerEntry> firstEntries = new ArrayList<>();
+    ledger.read("0-0", false, firstEntries::addAll);
+    final LedgerEntry lastBefore = firstEntries.get(firstEntries.size() - 3);
+    final List<LedgerEntry> result = new ArrayList<>();
+
+    // When
+    ledger.read(lastBefore.getId(), false, result::addAll);
+
+    // Then
+    assertEquals(2, result.size());
+    assertEquals(firstEntries.get(firstEntries.size() - 1).getId(), result.get(1).getId());
+    assertTrue(firstEntries.size() > TransferLedger.READ_BATCH_SIZE);
+  }
+
+  @Test
+  public void isId_OK() {
+    assertTrue(TransferLedger.isId("0-0"));
+    assertTrue(TransferLedger.isId("1546300800000-3"));
+    assertTrue(TransferLedger.isId("$"));
+  }
+
+  @Test
+  public void isId_Illegal() {
+    assertFalse(TransferLedger.isId("1-a"));
+    assertFalse(TransferLedger.isId("1546300800000"));
+    assertFalse(TransferLedger.isId("9223372036854775808-0"));
+  }
+
+  @Test(/* Then */ expected = IllegalArgumentException.class)
+  public void read_IllegalId() throws Exception {
+    // When
+    ledger.read("1-a", false, entries -> {
+    });
+  }
+}
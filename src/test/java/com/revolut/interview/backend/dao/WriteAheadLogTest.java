@@ -0,0 +1,306 @@
+package com.revolut.interview.backend.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.revolut.interview.backend.metrics.Metrics;
+import com.revolut.interview.backend.model.Account;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class WriteAheadLogTest {
+
+  private static final long FLUSH_WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+  private static final int SEGMENT_BYTES = 1 << 20;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private final List<WriteAheadLog> logs = new ArrayList<>();
+
+  @After
+  public void tearDown() throws IOException {
+    for (WriteAheadLog log : logs) {
+      log.close();
+    }
+  }
+
+  private WriteAheadLog openLog(AccountJournal.Target target, int segmentBytes)
+      throws IOException {
+    final WriteAheadLog result = new WriteAheadLog(tempFolder.getRoot().toPath(),
+        FLUSH_WINDOW_NANOS, segmentBytes);
+    logs.add(result);
+    result.recover(target);
+
+    return result;
+  }
+
+  @Test
+  public void recover_InMemory() throws Exception {
+    recoverFixture(AccountDaoInMemoryImpl::new, (dao, log) -> dao.setJournal(log));
+  }
+
+  @Test
+  public void recover_OffHeap() throws Exception {
+    recoverFixture(AccountDaoOffHeapImpl::new, (dao, log) -> dao.setJournal(log));
+  }
+
+  @Test
+  public void recover_Partitioned() throws Exception {
+    recoverFixture(() -> new AccountDaoPartitionedImpl(2), (dao, log) -> dao.setJournal(log));
+  }
+
+  private <T extends AccountDao & AccountJournal.Target> void recoverFixture(Supplier<T> daoFactory,
+      JournalSetter<T> journalSetter) throws Exception {
+    // Given
+    final T accountDao = daoFactory.get();
+    final WriteAheadLog log = openLog(accountDao, SEGMENT_BYTES);
+    journalSetter.set(accountDao, log);
+    final DurableAccountDao durableAccountDao = new DurableAccountDao(accountDao, log);
+    final Long accountId1 = durableAccountDao.create(new Account(new BigDecimal("10.50"))).getId();
+    final List<Account> accounts = durableAccountDao
+        .createInBulk(List.of(new Account(BigDecimal.ONE), new Account(new BigDecimal("0.25"))));
+    durableAccountDao.transferMoneyTransactionally(new BigDecimal("0.5"), accountId1,
+        accounts.get(0).getId());
+    durableAccountDao.transferMoneyAsync(new BigDecimal("1.25"), accounts.get(0).getId(),
+        accounts.get(1).getId()).get(1, TimeUnit.SECONDS);
+
+    try {
+      durableAccountDao.transferMoneyTransactionally(BigDecimal.TEN, accounts.get(1).getId(),
+          accountId1);
+      fail();
+    } catch (NotEnoughMoneyException e) {
+      // The failed transfer isn't recorded
+    }
+
+    log.close();
+
+    // When
+    final T recoveredAccountDao = daoFactory.get();
+    final WriteAheadLog recoveredLog = openLog(recoveredAccountDao, SEGMENT_BYTES);
+    journalSetter.set(recoveredAccountDao, recoveredLog);
+
+    // Then
+    assertEquals(0, new BigDecimal("10.00")
+        .compareTo(recoveredAccountDao.findById(accountId1).getBalance()));
+    assertEquals(0, new BigDecimal("0.25")
+        .compareTo(recoveredAccountDao.findById(accounts.get(0).getId()).getBalance()));
+    assertEquals(0, new BigDecimal("1.50")
+        .compareTo(recoveredAccountDao.findById(accounts.get(1).getId()).getBalance()));
+    assertEquals(accounts.get(1).getId() + 1,
+        recoveredAccountDao.create(new Account(BigDecimal.ONE)).getId().longValue());
+  }
+
+  @Test
+  public void awaitDurable_GroupCommit() throws Exception {
+    // Given
+    final AccountDaoInMemoryImpl accountDao = new AccountDaoInMemoryImpl();
+    final WriteAheadLog log = new WriteAheadLog(tempFolder.getRoot().toPath(),
+        TimeUnit.MILLISECONDS.toNanos(1), SEGMENT_BYTES);
+    logs.add(log);
+    final Metrics metrics = new Metrics();
+    log.setMetrics(metrics);
+    log.recover(accountDao);
+    accountDao.setJournal(log);
+    final DurableAccountDao durableAccountDao = new DurableAccountDao(accountDao, log);
+    final int threadsNum = 16;
+    final int accountsNum = 100;
+    final ExecutorService executor = Executors.newFixedThreadPool(threadsNum);
+
+    // When
+    try {
+      final List<CompletableFuture<Void>> creations = new ArrayList<>();
+
+      for (int i = 0; i < threadsNum; i++) {
+        creations.add(CompletableFuture.runAsync(() -> {
+          for (int j = 0; j < accountsNum; j++) {
+            durableAccountDao.create(new Account(BigDecimal.ONE));
+          }
+        }, executor));
+      }
+
+      CompletableFuture.allOf(creations.toArray(new CompletableFuture<?>[0]))
+          .get(30, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+
+    // Then
+    final long records = metrics.counter("account_wal_records_total", "", "").get();
+    final long flushes = metrics.counter("account_wal_flushes_total", "", "").get();
+    assertEquals(threadsNum * accountsNum, records);
+    assertTrue("Flushes: " + flushes, flushes < records);
+  }
+
+  @Test
+  public void recover_TornTail() throws Exception {
+    // Given
+    final AccountDaoInMemoryImpl accountDao = new AccountDaoInMemoryImpl();
+    final WriteAheadLog log = openLog(accountDao, SEGMENT_BYTES);
+    accountDao.setJournal(log);
+    final Long accountId1 = accountDao.create(new Account(BigDecimal.TEN)).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+    accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+    log.awaitDurable();
+    log.close();
+
+    final Path segment = listSegments().get(0);
+
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    // When
+    final AccountDaoInMemoryImpl recoveredAccountDao = new AccountDaoInMemoryImpl();
+    final WriteAheadLog recoveredLog = openLog(recoveredAccountDao, SEGMENT_BYTES);
+    recoveredAccountDao.setJournal(recoveredLog);
+    recoveredAccountDao.transferMoneyTransactionally(new BigDecimal("0.5"), accountId1, accountId2);
+    recoveredLog.awaitDurable();
+    recoveredLog.close();
+
+    // Then
+    final AccountDaoInMemoryImpl finalAccountDao = new AccountDaoInMemoryImpl();
+    final WriteAheadLog finalLog = new WriteAheadLog(tempFolder.getRoot().toPath(),
+        FLUSH_WINDOW_NANOS, SEGMENT_BYTES);
+    logs.add(finalLog);
+    assertEquals(3, finalLog.recover(finalAccountDao));
+    assertEquals(new BigDecimal("9.5"), finalAccountDao.findById(accountId1).getBalance());
+    assertEquals(new BigDecimal("1.5"), finalAccountDao.findById(accountId2).getBalance());
+  }
+
+  @Test
+  public void recover_Rotated() throws Exception {
+    // Given
+    final AccountDaoOffHeapImpl accountDao = new AccountDaoOffHeapImpl();
+    final WriteAheadLog log = openLog(accountDao, 256);
+    accountDao.setJournal(log);
+    final Long accountId1 = accountDao.create(new Account(new BigDecimal(1000))).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+
+    for (int i = 0; i < 100; i++) {
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+      log.awaitDurable();
+    }
+
+    log.close();
+
+    // When
+    final AccountDaoOffHeapImpl recoveredAccountDao = new AccountDaoOffHeapImpl();
+    openLog(recoveredAccountDao, 256);
+
+    // Then
+    assertTrue(listSegments().size() > 1);
+    assertEquals(new BigDecimal("900.00"), recoveredAccountDao.findById(accountId1).getBalance());
+    assertEquals(new BigDecimal("100.00"), recoveredAccountDao.findById(accountId2).getBalance());
+  }
+
+  @Test
+  public void recover_Snapshot() throws Exception {
+    // Given
+    final AccountDaoInMemoryImpl accountDao = new AccountDaoInMemoryImpl();
+    final WriteAheadLog log = new WriteAheadLog(tempFolder.getRoot().toPath(), FLUSH_WINDOW_NANOS,
+        256, 2);
+    logs.add(log);
+    final Metrics metrics = new Metrics();
+    log.setMetrics(metrics);
+    log.recover(accountDao);
+    accountDao.setJournal(log);
+    final Long accountId1 = accountDao.create(new Account(new BigDecimal("1000.5"))).getId();
+    final Long accountId2 = accountDao.create(new Account(BigDecimal.ZERO)).getId();
+
+    for (int i = 0; i < 100; i++) {
+      final Long accountId3 = accountDao.create(new Account(BigDecimal.ONE)).getId();
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId1, accountId2);
+      accountDao.transferMoneyTransactionally(BigDecimal.ONE, accountId3, accountId2);
+      log.awaitDurable();
+    }
+
+    log.close();
+
+    // When
+    final AccountDaoInMemoryImpl recoveredAccountDao = new AccountDaoInMemoryImpl();
+    openLog(recoveredAccountDao, 256);
+
+    // Then
+    assertTrue(metrics.counter("account_wal_snapshots_total", "", "").get() > 1);
+    assertEquals(1, listFiles(AccountSnapshot.PREFIX + "*").size());
+    // The segments merged into it are removed
+    assertTrue(listSegments().size() <= 3);
+    assertEquals(new BigDecimal("900.5"), recoveredAccountDao.findById(accountId1).getBalance());
+    assertEquals(new BigDecimal("200"), recoveredAccountDao.findById(accountId2).getBalance());
+
+    for (long accountId = accountId2 + 1; accountId <= accountId2 + 100; accountId++) {
+      assertEquals(BigDecimal.ZERO, recoveredAccountDao.findById(accountId).getBalance());
+    }
+
+    assertEquals(accountId2 + 101,
+        recoveredAccountDao.create(new Account(BigDecimal.ONE)).getId().longValue());
+  }
+
+  @Test
+  public void recover_SnapshotCorrupted() throws Exception {
+    // Given
+    final Path snapshot;
+
+    try (AccountSnapshot.Writer writer = AccountSnapshot
+        .create(tempFolder.getRoot().toPath(), 0)) {
+      writer.add(1, BigDecimal.TEN);
+      snapshot = writer.commit();
+    }
+
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{1}), 20);
+    }
+
+    // Then
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Account snapshot is corrupted: " + snapshot);
+
+    // When
+    openLog(new AccountDaoInMemoryImpl(), SEGMENT_BYTES);
+  }
+
+  private List<Path> listSegments() throws IOException {
+    return listFiles("wal-*");
+  }
+
+  private List<Path> listFiles(String glob) throws IOException {
+    final List<Path> result = new ArrayList<>();
+
+    try (DirectoryStream<Path> paths = Files
+        .newDirectoryStream(tempFolder.getRoot().toPath(), glob)) {
+      paths.forEach(result::add);
+    }
+
+    Collections.sort(result);
+
+    return result;
+  }
+
+  private interface JournalSetter<T> {
+
+    void set(T accountDao, AccountJournal journal);
+  }
+}
@@ -0,0 +1,101 @@
+package com.revolut.interview.backend.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MetricsTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private Metrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new Metrics();
+  }
+
+  @Test
+  public void scrape_Counters() {
+    // Given
+    metrics.counter("errors_total", "Errors", "exception=\"B\"").increment();
+    metrics.counter("errors_total", "Errors", "exception=\"A\"");
+    metrics.counter("errors_total", "Errors", "exception=\"B\"").increment();
+
+    // When
+    final String result = metrics.scrape();
+
+    // Then
+    assertEquals("# HELP errors_total Errors\n"
+        + "# TYPE errors_total counter\n"
+        + "errors_total{exception=\"A\"} 0\n"
+        + "errors_total{exception=\"B\"} 2\n", result);
+  }
+
+  @Test
+  public void scrape_Histogram() {
+    // Given
+    final LatencyHistogram histogram = metrics.histogram("latency_seconds", "Latency", "");
+
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000_000);
+    }
+
+    // When
+    final String result = metrics.scrape();
+
+    // Then
+    assertEquals("# HELP latency_seconds Latency\n"
+        + "# TYPE latency_seconds summary\n"
+        + "latency_seconds{quantile=\"0.5\"} 0.500170751\n"
+        + "latency_seconds{quantile=\"0.9\"} 0.900202495\n"
+        + "latency_seconds{quantile=\"0.99\"} 0.990380031\n"
+        + "latency_seconds{quantile=\"0.999\"} 0.999292927\n"
+        + "latency_seconds_sum 500.5\n"
+        + "latency_seconds_count 1000\n", result);
+  }
+
+  @Test
+  public void scrape_Gauge() {
+    // Given
+    metrics.gauge("connections", "Connections", () -> 3);
+
+    // When
+    final String result = metrics.scrape();
+
+    // Then
+    assertEquals("# HELP connections Connections\n"
+        + "# TYPE connections gauge\n"
+        + "connections 3.0\n", result);
+  }
+
+  @Test
+  public void counter_AlreadyRegistered() {
+    // Given
+    final Counter counter = metrics.counter("errors_total", "Errors", "");
+
+    // When
+    final Counter result = metrics.counter("errors_total", "Errors", "");
+
+    // Then
+    assertSame(counter, result);
+  }
+
+  @Test
+  public void histogram_OtherType() {
+    // Given
+    metrics.counter("errors_total", "Errors", "");
+
+    // Then
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Metric errors_total is already registered as counter");
+
+    // When
+    metrics.histogram("errors_total", "Errors", "");
+  }
+}
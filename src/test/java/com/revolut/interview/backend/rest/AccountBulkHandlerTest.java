@@ -0,0 +1,189 @@
+package com.revolut.interview.backend.rest;
+
+import static com.revolut.interview.backend.rest.AccountBulkHandler.CHUNK_SIZE;
+import static com.revolut.interview.backend.rest.AccountBulkHandler.ERR_MSG;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.model.Account;
+import io.javalin.Context;
+import io.javalin.Javalin;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class AccountBulkHandlerTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+  private final List<List<Account>> chunks = new ArrayList<>();
+  private AccountDao accountDaoMock;
+  private AccountBulkHandler accountBulkHandler;
+
+  @Before
+  public void setUp() {
+    accountDaoMock = mock(AccountDao.class);
+    // Ids 1, 2, 3, ... but every chunk skips one id
+    when(accountDaoMock.createInBulk(any())).thenAnswer(invocation -> {
+      final List<Account> chunk = invocation.getArgument(0);
+      final long firstId = chunks.stream().mapToLong(List::size).sum() + chunks.size() + 1;
+
+      for (int i = 0; i < chunk.size(); i++) {
+        chunk.get(i).setId(firstId + i);
+      }
+
+      chunks.add(new ArrayList<>(chunk));
+
+      return chunk;
+    });
+    accountBulkHandler = new AccountBulkHandler(accountDaoMock);
+  }
+
+  @Test
+  public void handle_Array() throws Exception {
+    // Given
+    final Context ctx = makeContext("[100.50, 10, 0]");
+
+    // When
+    accountBulkHandler.handle(ctx);
+
+    // Then
+    assertEquals(1, chunks.size());
+    assertEquals(new BigDecimal("100.50"), chunks.get(0).get(0).getBalance());
+    assertEquals(BigDecimal.TEN, chunks.get(0).get(1).getBalance());
+    assertEquals(BigDecimal.ZERO, chunks.get(0).get(2).getBalance());
+    assertEquals("[{\"from\":1,\"to\":3}]", ctx.resultString());
+  }
+
+  @Test
+  public void handle_Lines() throws Exception {
+    // Given
+    final Context ctx = makeContext("1.5\n2\n");
+
+    // When
+    accountBulkHandler.handle(ctx);
+
+    // Then
+    assertEquals(1, chunks.size());
+    assertEquals(new BigDecimal("1.5"), chunks.get(0).get(0).getBalance());
+    assertEquals(new BigDecimal("2"), chunks.get(0).get(1).getBalance());
+    assertEquals("[{\"from\":1,\"to\":2}]", ctx.resultString());
+  }
+
+  @Test
+  public void handle_Chunks() throws Exception {
+    // Given
+    final Context ctx = makeContext(
+        range(0, CHUNK_SIZE + 1).mapToObj(String::valueOf).collect(joining(",", "[", "]")));
+
+    // When
+    accountBulkHandler.handle(ctx);
+
+    // Then
+    assertEquals(2, chunks.size());
+    assertEquals(CHUNK_SIZE, chunks.get(0).size());
+    assertEquals(BigDecimal.valueOf(CHUNK_SIZE), chunks.get(1).get(0).getBalance());
+    assertEquals("[{\"from\":1,\"to\":" + CHUNK_SIZE + "},"
+            + "{\"from\":" + (CHUNK_SIZE + 2) + ",\"to\":" + (CHUNK_SIZE + 2) + "}]",
+        ctx.resultString());
+  }
+
+  @Test
+  public void handle_EmptyArray() throws Exception {
+    // Given
+    final Context ctx = makeContext("[]");
+
+    // When
+    accountBulkHandler.handle(ctx);
+
+    // Then
+    verify(accountDaoMock, times(0)).createInBulk(any());
+    assertEquals("[]", ctx.resultString());
+  }
+
+  @Test
+  public void handle_NotNumBalance() throws Exception {
+    handleErrorFixture("[1, \"a\"]");
+  }
+
+  @Test
+  public void handle_Object() throws Exception {
+    handleErrorFixture("{\"balance\": 1}");
+  }
+
+  @Test
+  public void handle_NotClosedArray() throws Exception {
+    handleErrorFixture("[1, 2");
+  }
+
+  @Test
+  public void handle_InvalidAfterChunk() throws Exception {
+    // Given
+    final Context ctx = makeContext(range(0, CHUNK_SIZE).mapToObj(String::valueOf)
+        .collect(joining("\n", "", "\nnull")));
+
+    // Then
+    thrown.expect(IllegalRequestException.class);
+    thrown.expectMessage(ERR_MSG + ", created before the error: [IdRange{from=1, to=" + CHUNK_SIZE
+        + "}]");
+
+    // When
+    accountBulkHandler.handle(ctx);
+  }
+
+  private void handleErrorFixture(String body) throws Exception {
+    // Given
+    final Context ctx = makeContext(body);
+
+    // Then
+    thrown.expect(IllegalRequestException.class);
+    thrown.expectMessage(ERR_MSG);
+
+    // When
+    accountBulkHandler.handle(ctx);
+  }
+
+  private Context makeContext(String body) throws Exception {
+    final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+    final ByteArrayInputStream bodyStream = new ByteArrayInputStream(body.getBytes(UTF_8));
+    when(requestMock.getInputStream()).thenReturn(new ServletInputStream() {
+      @Override
+      public boolean isFinished() {
+        return bodyStream.available() == 0;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {
+      }
+
+      @Override
+      public int read() {
+        return bodyStream.read();
+      }
+    });
+
+    return new Context(requestMock, mock(HttpServletResponse.class), mock(Javalin.class));
+  }
+}
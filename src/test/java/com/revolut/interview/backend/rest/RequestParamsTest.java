@@ -0,0 +1,49 @@
+package com.revolut.interview.backend.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class RequestParamsTest {
+
+  @Test
+  public void isLong_Valid() {
+    for (String value : new String[]{"0", "1", "-1", "+1", "007", "9223372036854775807",
+        "-9223372036854775808", "9223372036854775799"}) {
+      // When & Then
+      assertTrue(value, RequestParams.isLong(value));
+      assertEquals(value, Long.valueOf(value).longValue(), Long.parseLong(value));
+    }
+  }
+
+  @Test
+  public void isLong_Invalid() {
+    for (String value : new String[]{null, "", "-", "+", "a", "1a", "1.0", "1e3", " 1", "1 ",
+        "--1", "9223372036854775808", "-9223372036854775809", "10000000000000000000"}) {
+      // When & Then
+      assertFalse(value, RequestParams.isLong(value));
+    }
+  }
+
+  @Test
+  public void isDecimal_Valid() {
+    for (String value : new String[]{"0", "100", "-0.5", "+0.5", ".5", "5.", "1E+3", "1e-3",
+        "1.5e10", "123456789012345678901234567890.01", "1e999", "1e-999"}) {
+      // When & Then
+      assertTrue(value, RequestParams.isDecimal(value));
+      assertEquals(value, BigDecimal.class, new BigDecimal(value).getClass());
+    }
+  }
+
+  @Test
+  public void isDecimal_Invalid() {
+    for (String value : new String[]{null, "", "-", ".", "-.", "a", "1a", "1.2.3", "1e", "1e+",
+        "e3", "1e1.5", "1e1000", "1e999999999", "1e1234567890", " 1", "1,5", "NaN", "Infinity"}) {
+      // When & Then
+      assertFalse(value, RequestParams.isDecimal(value));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.revolut.interview.backend.rest;
+
+import static com.revolut.interview.backend.rest.TransferBatchHandler.ERR_MSG;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.model.Transfer;
+import com.revolut.interview.backend.model.TransferResult;
+import com.revolut.interview.backend.model.TransferResult.Status;
+import io.javalin.Context;
+import io.javalin.Javalin;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
+public class TransferBatchHandlerTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+  private AccountDao accountDaoMock;
+  private TransferBatchHandler transferBatchHandler;
+
+  @Before
+  public void setUp() {
+    accountDaoMock = mock(AccountDao.class);
+    transferBatchHandler = new TransferBatchHandler(accountDaoMock);
+  }
+
+  @Test
+  public void handle_EmptyBody() throws Exception {
+    handleErrorFixture("");
+  }
+
+  @Test
+  public void handle_NotArray() throws Exception {
+    handleErrorFixture("{\"sum\": 1, \"from\": 1, \"to\": 2}");
+  }
+
+  @Test
+  public void handle_NotNumSum() throws Exception {
+    handleErrorFixture("[{\"sum\": \"a\", \"from\": 1, \"to\": 2}]");
+  }
+
+  @Test
+  public void handle_OK() throws Exception {
+    // Given
+    final Context ctx = makeContext(
+        "[{\"sum\": 100.50, \"from\": 1, \"to\": 2}, {\"sum\": \"0.1\", \"from\": 2, \"to\": 3}]");
+    @SuppressWarnings("unchecked")
+    final ArgumentCaptor<List<Transfer>> transfersCaptor = ArgumentCaptor.forClass(List.class);
+    when(accountDaoMock.transferMoneyInBatch(transfersCaptor.capture())).thenReturn(
+        asList(TransferResult.ok(), new TransferResult(Status.ACCOUNT_NOT_FOUND, "3")));
+
+    // When
+    transferBatchHandler.handle(ctx);
+
+    // Then
+    final List<Transfer> transfers = transfersCaptor.getValue();
+    assertEquals(2, transfers.size());
+    assertEquals(new BigDecimal("100.50"), transfers.get(0).getSum());
+    assertEquals(Long.valueOf(1), transfers.get(0).getFrom());
+    assertEquals(Long.valueOf(2), transfers.get(0).getTo());
+    assertEquals(new BigDecimal("0.1"), transfers.get(1).getSum());
+    assertEquals(
+        "[{\"status\":\"OK\",\"message\":null},{\"status\":\"ACCOUNT_NOT_FOUND\",\"message\":\"3\"}]",
+        ctx.resultString());
+  }
+
+  private void handleErrorFixture(String body) throws Exception {
+    // Given
+    final Context ctx = makeContext(body);
+
+    // Then
+    thrown.expect(IllegalRequestException.class);
+    thrown.expectMessage(ERR_MSG);
+
+    // When
+    transferBatchHandler.handle(ctx);
+  }
+
+  private Context makeContext(String body) throws Exception {
+    final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+    final ByteArrayInputStream bodyStream = new ByteArrayInputStream(body.getBytes(UTF_8));
+    when(requestMock.getInputStream()).thenReturn(new ServletInputStream() {
+      @Override
+      public boolean isFinished() {
+        return bodyStream.available() == 0;
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setReadListener(ReadListener readListener) {
+      }
+
+      @Override
+      public int read() {
+        return bodyStream.read();
+      }
+    });
+
+    return new Context(requestMock, mock(HttpServletResponse.class), mock(Javalin.class));
+  }
+}
@@ -1,23 +1,35 @@
 package com.revolut.interview.backend.rest;
 
 import static com.revolut.interview.backend.rest.TransferHandler.ERR_MSG;
+import static com.revolut.interview.backend.rest.TransferHandler.HEADER_IDEMPOTENCY_KEY;
 import static com.revolut.interview.backend.rest.TransferHandler.PARAM_FROM;
 import static com.revolut.interview.backend.rest.TransferHandler.PARAM_SUM;
 import static com.revolut.interview.backend.rest.TransferHandler.PARAM_TO;
 import static com.revolut.interview.backend.rest.TransferHandler.PATH;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.revolut.interview.backend.dao.AccountDao;
+import com.revolut.interview.backend.dao.IdempotencyKeyReusedException;
+import com.revolut.interview.backend.dao.NotEnoughMoneyException;
+import com.revolut.interview.backend.metrics.Metrics;
 import io.javalin.Context;
 import io.javalin.Javalin;
+import io.javalin.core.HandlerType;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpStatus;
@@ -37,7 +49,7 @@ public class TransferHandlerTest {
   @Before
   public void setUp() {
     accountDaoMock = mock(AccountDao.class);
-    transferHandler = new TransferHandler(accountDaoMock);
+    transferHandler = new TransferHandler(accountDaoMock, new Metrics());
   }
 
   @Test
@@ -50,6 +62,19 @@ public class TransferHandlerTest {
     handleErrorFixture("a", "1", "2");
   }
 
+  @Test
+  public void handle_NegativeSum() throws Exception {
+    // Given
+    final Context ctx = makeContext("-1", "1", "2");
+
+    // Then
+    thrown.expect(IllegalRequestException.class);
+    thrown.expectMessage(TransferHandler.ERR_MSG_SUM + "-1");
+
+    // When
+    transferHandler.handle(ctx);
+  }
+
   @Test
   public void handle_EmptyFrom() throws Exception {
     handleErrorFixture("100", "", "2");
@@ -77,23 +102,105 @@ public class TransferHandlerTest {
     final String fromStr = "1";
     final String toStr = "2";
     final Context ctx = makeContext(sumStr, fromStr, toStr);
+    when(accountDaoMock.transferMoneyAsync(any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
 
     // When
     transferHandler.handle(ctx);
 
     // Then
     verify(accountDaoMock)
-        .transferMoneyTransactionally(new BigDecimal(sumStr), Long.valueOf(fromStr),
-            Long.valueOf(toStr));
+        .transferMoneyAsync(new BigDecimal(sumStr), Long.valueOf(fromStr), Long.valueOf(toStr));
+    assertEquals(HttpStatus.NO_CONTENT_204, status);
+  }
+
+  @Test
+  public void handle_TransferFailed() throws Exception {
+    // Given
+    final Context ctx = makeContext("100", "1", "2");
+    final NotEnoughMoneyException exception = new NotEnoughMoneyException("1");
+    final CompletableFuture<Void> transfer = new CompletableFuture<>();
+    when(accountDaoMock.transferMoneyAsync(any(), any(), any())).thenReturn(transfer);
+
+    // Then
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(sameInstance(exception));
+
+    // When
+    transferHandler.handle(ctx);
+    transfer.completeExceptionally(exception);
+    Objects.requireNonNull(ctx.resultFuture()).get();
+  }
+
+  @Test
+  public void handle_IdempotencyKey() throws Exception {
+    // Given
+    final Context ctx = makeContext("100", "1", "2", "key");
+    when(accountDaoMock.transferMoneyOnceAsync(any(), any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    // When
+    transferHandler.handle(ctx);
+
+    // Then
+    verify(accountDaoMock).transferMoneyOnceAsync(new BigDecimal("100"), 1L, 2L, "key");
+    verify(accountDaoMock, never()).transferMoneyAsync(any(), any(), any());
     assertEquals(HttpStatus.NO_CONTENT_204, status);
   }
 
+  @Test
+  public void handle_IdempotencyKeyRepeated() throws Exception {
+    // Given
+    when(accountDaoMock.transferMoneyOnceAsync(any(), any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    transferHandler.handle(makeContext("100", "1", "2", "key"));
+    status = 0;
+    final Context ctx = makeContext("100.00", "1", "2", "key");
+
+    // When
+    transferHandler.handle(ctx);
+
+    // Then
+    verify(accountDaoMock).transferMoneyOnceAsync(any(), any(), any(), any());
+    assertEquals(HttpStatus.NO_CONTENT_204, status);
+  }
+
+  @Test
+  public void handle_IdempotencyKeyReused() throws Exception {
+    // Given
+    when(accountDaoMock.transferMoneyOnceAsync(any(), any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    transferHandler.handle(makeContext("100", "1", "2", "key"));
+    final Context ctx = makeContext("200", "1", "2", "key");
+
+    // Then
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(instanceOf(IdempotencyKeyReusedException.class));
+
+    // When
+    transferHandler.handle(ctx);
+    Objects.requireNonNull(ctx.resultFuture()).get();
+  }
+
+  @Test
+  public void handle_IllegalIdempotencyKey() throws Exception {
+    // Given
+    final Context ctx = makeContext("100", "1", "2", "");
+
+    // Then
+    thrown.expect(IllegalRequestException.class);
+    thrown.expectMessage("Idempotency key must have");
+
+    // When
+    transferHandler.handle(ctx);
+  }
+
   private void handleErrorFixture(String sumStr, String fromStr, String toStr) throws Exception {
     // Given
     final Context ctx = makeContext(sumStr, fromStr, toStr);
 
     // Then
-    thrown.expect(IllegalArgumentException.class);
+    thrown.expect(IllegalRequestException.class);
     thrown.expectMessage(ERR_MSG);
 
     // When
@@ -102,9 +209,15 @@ public class TransferHandlerTest {
 
   private Context makeContext(String sumStr, String fromStr, String toStr)
       throws NoSuchFieldException, IllegalAccessException {
+    return makeContext(sumStr, fromStr, toStr, null);
+  }
+
+  private Context makeContext(String sumStr, String fromStr, String toStr, String idempotencyKey)
+      throws NoSuchFieldException, IllegalAccessException {
     final HttpServletRequest requestMock = mock(HttpServletRequest.class);
     when(requestMock.getQueryString())
         .thenReturn(PARAM_FROM + "=" + fromStr + "&" + PARAM_TO + "=" + toStr);
+    when(requestMock.getHeader(HEADER_IDEMPOTENCY_KEY)).thenReturn(idempotencyKey);
 
     final HttpServletResponse responseMock = mock(HttpServletResponse.class);
     doAnswer(invocation -> {
@@ -115,6 +228,7 @@ public class TransferHandlerTest {
     final Context context = new Context(requestMock, responseMock, mock(Javalin.class));
     setField(context, "pathParamMap", Collections.singletonMap(PARAM_SUM, sumStr));
     setField(context, "matchedPath", PATH);
+    setField(context, "handlerType", HandlerType.POST);
 
     return context;
   }
@@ -0,0 +1,74 @@
+package com.revolut.interview.backend.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadPoolTest {
+
+  private ExecutorService executor;
+  private VirtualThreadPool threadPool;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    threadPool = new VirtualThreadPool(executor);
+  }
+
+  @Test
+  public void create_JavaVersion() {
+    // When
+    final boolean created = VirtualThreadPool.create("test-").isPresent();
+
+    // Then
+    assertEquals(Runtime.version().feature() >= 21, created);
+  }
+
+  @Test(timeout = 5000)
+  public void execute_ThreadsCounted() throws Exception {
+    // Given
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch finish = new CountDownLatch(1);
+    final Runnable task = () -> {
+      started.countDown();
+
+      try {
+        finish.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    // When
+    threadPool.execute(task);
+    threadPool.execute(task);
+    started.await();
+
+    // Then
+    assertEquals(2, threadPool.getThreads());
+    assertEquals(0, threadPool.getIdleThreads());
+
+    finish.countDown();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    assertEquals(0, threadPool.getThreads());
+  }
+
+  @Test
+  public void stop_ExecutorShutDown() throws Exception {
+    // Given
+    threadPool.start();
+
+    // When
+    threadPool.stop();
+
+    // Then
+    assertTrue(executor.isTerminated());
+  }
+}